@@ -21,6 +21,7 @@
 package org.ndnx.ndn;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
@@ -360,6 +361,22 @@ public class NDNHandle implements NDNBase {
 		return null;
 	}
 
+	/**
+	 * Put several content objects into the network at once. As for put(ContentObject), but
+	 * the objects are handed to ndnd together, in one write where the transport allows it.
+	 * @param cos the content objects to write, complete and well-formed.
+	 * @throws IOException
+	 */
+	public void put(List<ContentObject> cos) throws IOException {
+		synchronized(_openLock) {
+			if( !_isOpen )
+				throw new IOException(formatMessage("Handle is closed"));
+		}
+		if( Log.isLoggable(Level.FINEST) )
+			Log.finest(Log.FAC_NETMANAGER, formatMessage("Putting " + cos.size() + " content objects on wire"));
+		getNetworkManager().put(cos);
+	}
+
 	/**
 	 * Register a standing interest filter with callback to receive any 
 	 * matching interests seen
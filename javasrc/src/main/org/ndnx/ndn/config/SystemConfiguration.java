@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -199,6 +200,25 @@ public class SystemConfiguration {
 	protected static final String PIPELINE_STATS_PROPERTY = "org.ndnx.PipelineStats";
 	protected static final String PIPELINE_STATS_ENV_VAR = "JAVA_PIPELINE_STATS";
 	public static boolean PIPELINE_STATS = false;
+
+	/**
+	 * Adaptive pipeline window for NDNAbstractInputStream. If on, each stream starts with a
+	 * window of PIPELINE_SIZE interests and grows it as segments arrive in order, up to
+	 * PIPELINE_MAX_SIZE, backing off when it has to refetch segments. If off the window stays
+	 * at PIPELINE_SIZE.
+	 * Default is off
+	 */
+	protected static final String PIPELINE_ADAPTIVE_PROPERTY = "org.ndnx.PipelineAdaptive";
+	protected static final String PIPELINE_ADAPTIVE_ENV_VAR = "JAVA_PIPELINE_ADAPTIVE";
+	public static boolean PIPELINE_ADAPTIVE = false;
+
+	/**
+	 * Largest window for the adaptive pipeline in NDNAbstractInputStream
+	 * Default is 64
+	 */
+	protected static final String PIPELINE_MAX_SIZE_PROPERTY = "org.ndnx.PipelineMaxSize";
+	protected static final String PIPELINE_MAX_SIZE_ENV_VAR = "JAVA_PIPELINE_MAX_SIZE";
+	public static int PIPELINE_MAX_SIZE = 64;
 	
 	/**
 	 * Default block size for IO
@@ -261,6 +281,325 @@ public class SystemConfiguration {
 	protected final static String DUMP_NETMANAGER_STATS_ENV_VAR = "NDNX_DUMP_NETMANAGER_STATS";
 	public static boolean DUMP_NETMANAGER_STATS = false;
 
+	/**
+	 * Number of threads the network manager uses to run interest and content handlers.
+	 * Default is 0, meaning handlers are run directly on the network manager's reader thread.
+	 */
+	protected static final String DISPATCH_THREADS_PROPERTY = "org.ndnx.dispatch.threads";
+	protected final static String DISPATCH_THREADS_ENV_VAR = "NDNX_DISPATCH_THREADS";
+	public final static int DISPATCH_THREADS_DEFAULT = 0;
+	public static int DISPATCH_THREADS = DISPATCH_THREADS_DEFAULT;
+
+	/**
+	 * Most handler calls waiting on each dispatch thread before the network manager
+	 * stops reading from ndnd.
+	 */
+	protected static final String DISPATCH_QUEUE_SIZE_PROPERTY = "org.ndnx.dispatch.queue";
+	protected final static String DISPATCH_QUEUE_SIZE_ENV_VAR = "NDNX_DISPATCH_QUEUE";
+	public final static int DISPATCH_QUEUE_SIZE_DEFAULT = 1024;
+	public static int DISPATCH_QUEUE_SIZE = DISPATCH_QUEUE_SIZE_DEFAULT;
+
+	/**
+	 * Number of threads used to digest and sign segments in bulk (Merkle tree) signing, and to
+	 * sign one batch of segments while the previous batch is written out.
+	 * Default is 0, meaning all signing is done on the writer's thread.
+	 */
+	protected static final String SIGNING_THREADS_PROPERTY = "org.ndnx.signing.threads";
+	protected final static String SIGNING_THREADS_ENV_VAR = "NDNX_SIGNING_THREADS";
+	public final static int SIGNING_THREADS_DEFAULT = 0;
+	public static int SIGNING_THREADS = SIGNING_THREADS_DEFAULT;
+
+	/**
+	 * Smallest number of digests (leaves, or nodes in one level of the tree) that bulk signing
+	 * will spread across the signing threads. Smaller amounts of work are done serially.
+	 */
+	protected static final String SIGNING_PARALLEL_THRESHOLD_PROPERTY = "org.ndnx.signing.threshold";
+	protected final static String SIGNING_PARALLEL_THRESHOLD_ENV_VAR = "NDNX_SIGNING_THRESHOLD";
+	public final static int SIGNING_PARALLEL_THRESHOLD_DEFAULT = 16;
+	public static int SIGNING_PARALLEL_THRESHOLD = SIGNING_PARALLEL_THRESHOLD_DEFAULT;
+
+	/**
+	 * Number of threads used to decrypt the segments of encrypted streams as they arrive,
+	 * ahead of the reader. Default is 0, meaning each segment is decrypted on the reader's
+	 * thread when it is read.
+	 */
+	protected static final String DECRYPT_THREADS_PROPERTY = "org.ndnx.decrypt.threads";
+	protected final static String DECRYPT_THREADS_ENV_VAR = "NDNX_DECRYPT_THREADS";
+	public final static int DECRYPT_THREADS_DEFAULT = 0;
+	public static int DECRYPT_THREADS = DECRYPT_THREADS_DEFAULT;
+
+	/**
+	 * Number of successful signature verifications remembered so that verifying the same object
+	 * again, or another segment signed with the same Merkle tree root signature, doesn't redo the
+	 * public key operation. 0 turns the cache off.
+	 */
+	protected static final String VERIFY_CACHE_SIZE_PROPERTY = "org.ndnx.verify.cache.size";
+	protected final static String VERIFY_CACHE_SIZE_ENV_VAR = "NDNX_VERIFY_CACHE_SIZE";
+	public final static int VERIFY_CACHE_SIZE_DEFAULT = 4096;
+	public static int VERIFY_CACHE_SIZE = VERIFY_CACHE_SIZE_DEFAULT;
+
+	/**
+	 * Number of threads the network manager uses to verify the signatures of incoming content
+	 * before it is delivered (see VerificationStage). Handlers' own verification then finds the
+	 * result in the verification cache, so this needs VERIFY_CACHE_SIZE to be non-zero.
+	 * Default is 0, meaning content is delivered without being verified first.
+	 */
+	protected static final String VERIFY_THREADS_PROPERTY = "org.ndnx.verify.threads";
+	protected final static String VERIFY_THREADS_ENV_VAR = "NDNX_VERIFY_THREADS";
+	public final static int VERIFY_THREADS_DEFAULT = 0;
+	public static int VERIFY_THREADS = VERIFY_THREADS_DEFAULT;
+
+	/**
+	 * Most incoming objects waiting to be verified or delivered before the network manager
+	 * stops reading from ndnd.
+	 */
+	protected static final String VERIFY_QUEUE_SIZE_PROPERTY = "org.ndnx.verify.queue";
+	protected final static String VERIFY_QUEUE_SIZE_ENV_VAR = "NDNX_VERIFY_QUEUE";
+	public final static int VERIFY_QUEUE_SIZE_DEFAULT = 1024;
+	public static int VERIFY_QUEUE_SIZE = VERIFY_QUEUE_SIZE_DEFAULT;
+
+	/**
+	 * Memory budget for the sync tree nodes a sync monitor keeps so that it doesn't need to
+	 * fetch them again. Least recently used nodes beyond this are dropped.
+	 */
+	protected static final String SYNC_NODE_CACHE_BYTES_PROPERTY = "org.ndnx.sync.node.cache.bytes";
+	protected final static String SYNC_NODE_CACHE_BYTES_ENV_VAR = "NDNX_SYNC_NODE_CACHE_BYTES";
+	public final static long SYNC_NODE_CACHE_BYTES_DEFAULT = 64L * 1024 * 1024;
+	public static long SYNC_NODE_CACHE_BYTES = SYNC_NODE_CACHE_BYTES_DEFAULT;
+
+	/**
+	 * Most hashes each sync comparator remembers between comparisons. Hashes built locally
+	 * or in use by a comparison are always kept.
+	 */
+	protected static final String SYNC_HASH_CACHE_ENTRIES_PROPERTY = "org.ndnx.sync.hash.cache.entries";
+	protected final static String SYNC_HASH_CACHE_ENTRIES_ENV_VAR = "NDNX_SYNC_HASH_CACHE_ENTRIES";
+	public final static int SYNC_HASH_CACHE_ENTRIES_DEFAULT = 100000;
+	public static int SYNC_HASH_CACHE_ENTRIES = SYNC_HASH_CACHE_ENTRIES_DEFAULT;
+
+	/**
+	 * Time in ms after which a hash a sync comparator hasn't used is forgotten, 0 for no limit.
+	 */
+	protected static final String SYNC_HASH_CACHE_AGE_PROPERTY = "org.ndnx.sync.hash.cache.age";
+	protected final static String SYNC_HASH_CACHE_AGE_ENV_VAR = "NDNX_SYNC_HASH_CACHE_AGE";
+	public final static long SYNC_HASH_CACHE_AGE_DEFAULT = 60L * 60 * 1000;
+	public static long SYNC_HASH_CACHE_AGE = SYNC_HASH_CACHE_AGE_DEFAULT;
+
+	/**
+	 * Number of threads shared by sync comparators to decode fetched tree nodes and queue
+	 * requests for their children, 0 for one per processor.
+	 */
+	protected static final String SYNC_COMPARE_THREADS_PROPERTY = "org.ndnx.sync.compare.threads";
+	protected final static String SYNC_COMPARE_THREADS_ENV_VAR = "NDNX_SYNC_COMPARE_THREADS";
+	public final static int SYNC_COMPARE_THREADS_DEFAULT = 0;
+	public static int SYNC_COMPARE_THREADS = SYNC_COMPARE_THREADS_DEFAULT;
+
+	/**
+	 * Most tree node requests a sync comparator has outstanding while prefetching a new tree.
+	 * 0 turns prefetching off so nodes are only requested one level ahead of the comparison.
+	 */
+	protected static final String SYNC_FETCH_PIPELINE_PROPERTY = "org.ndnx.sync.fetch.pipeline";
+	protected final static String SYNC_FETCH_PIPELINE_ENV_VAR = "NDNX_SYNC_FETCH_PIPELINE";
+	public final static int SYNC_FETCH_PIPELINE_DEFAULT = 64;
+	public static int SYNC_FETCH_PIPELINE = SYNC_FETCH_PIPELINE_DEFAULT;
+
+	/**
+	 * Should registered statistics (see NDNStatsRegistry) be exported as JMX MBeans
+	 */
+	protected static final String STATS_JMX_PROPERTY = "org.ndnx.stats.jmx";
+	protected final static String STATS_JMX_ENV_VAR = "NDNX_STATS_JMX";
+	public final static boolean STATS_JMX_DEFAULT = false;
+	public static boolean STATS_JMX = STATS_JMX_DEFAULT;
+
+	/**
+	 * Local port on which registered statistics are served as text in the Prometheus exposition
+	 * format. Default is 0, meaning they are not served.
+	 */
+	protected static final String STATS_PORT_PROPERTY = "org.ndnx.stats.port";
+	protected final static String STATS_PORT_ENV_VAR = "NDNX_STATS_PORT";
+	public final static int STATS_PORT_DEFAULT = 0;
+	public static int STATS_PORT = STATS_PORT_DEFAULT;
+
+	/**
+	 * Number of threads a repository uses to serve interests. Default is 0, meaning
+	 * interests are served one at a time in the order they arrive.
+	 */
+	protected static final String REPO_INTEREST_THREADS_PROPERTY = "org.ndnx.repo.interest.threads";
+	protected final static String REPO_INTEREST_THREADS_ENV_VAR = "NDNX_REPO_INTEREST_THREADS";
+	public final static int REPO_INTEREST_THREADS_DEFAULT = 0;
+	public static int REPO_INTEREST_THREADS = REPO_INTEREST_THREADS_DEFAULT;
+
+	/**
+	 * Most interests waiting to be served when REPO_INTEREST_THREADS is set. Beyond this
+	 * the oldest waiting interests are dropped.
+	 */
+	protected static final String REPO_INTEREST_QUEUE_SIZE_PROPERTY = "org.ndnx.repo.interest.queue";
+	protected final static String REPO_INTEREST_QUEUE_SIZE_ENV_VAR = "NDNX_REPO_INTEREST_QUEUE";
+	public final static int REPO_INTEREST_QUEUE_SIZE_DEFAULT = 1024;
+	public static int REPO_INTEREST_QUEUE_SIZE = REPO_INTEREST_QUEUE_SIZE_DEFAULT;
+
+	/**
+	 * Number of threads a repository uses to prepare incoming content for its store (see
+	 * IngestPipeline). Content is always saved in order by a single thread. Default is 0,
+	 * meaning content is prepared by that thread as it is saved.
+	 */
+	protected static final String REPO_INGEST_THREADS_PROPERTY = "org.ndnx.repo.ingest.threads";
+	protected final static String REPO_INGEST_THREADS_ENV_VAR = "NDNX_REPO_INGEST_THREADS";
+	public final static int REPO_INGEST_THREADS_DEFAULT = 0;
+	public static int REPO_INGEST_THREADS = REPO_INGEST_THREADS_DEFAULT;
+
+	/**
+	 * Should ContentObjects decoded from the network keep a copy of their wire encoding, so that
+	 * digests, signature verification and re-sending them don't need to re-encode the object.
+	 * Costs roughly the size of the object again in memory for each object held, so is off by
+	 * default; worth turning on for applications which mostly forward or re-serve what they read.
+	 */
+	protected static final String RETAIN_WIRE_ENCODING_PROPERTY = "org.ndnx.retain.wire";
+	protected final static String RETAIN_WIRE_ENCODING_ENV_VAR = "NDNX_RETAIN_WIRE";
+	public final static boolean RETAIN_WIRE_ENCODING_DEFAULT = false;
+	public static boolean RETAIN_WIRE_ENCODING = RETAIN_WIRE_ENCODING_DEFAULT;
+
+	/**
+	 * Should packets written to ndnd over TCP by several threads at once be coalesced into
+	 * single writes, and how long (in microseconds) the writing thread should wait for more
+	 * packets before writing. With no wait, packets are only coalesced while another write is in progress.
+	 */
+	protected static final String WRITE_COALESCE_PROPERTY = "org.ndnx.write.coalesce";
+	protected final static String WRITE_COALESCE_ENV_VAR = "NDNX_WRITE_COALESCE";
+	public final static boolean WRITE_COALESCE_DEFAULT = true;
+	public static boolean WRITE_COALESCE = WRITE_COALESCE_DEFAULT;
+
+	protected static final String WRITE_COALESCE_DELAY_PROPERTY = "org.ndnx.write.coalesce.delay";
+	protected final static String WRITE_COALESCE_DELAY_ENV_VAR = "NDNX_WRITE_COALESCE_DELAY";
+	public final static int WRITE_COALESCE_DELAY_DEFAULT = 0;
+	public static int WRITE_COALESCE_DELAY = WRITE_COALESCE_DELAY_DEFAULT;
+
+	/**
+	 * Memory budget in bytes for the repository's cache of decoded content objects. 0 disables the cache.
+	 */
+	protected static final String REPO_CACHE_BYTES_PROPERTY = "org.ndnx.repo.cache.bytes";
+	protected final static String REPO_CACHE_BYTES_ENV_VAR = "NDNX_REPO_CACHE_BYTES";
+	public final static long REPO_CACHE_BYTES_DEFAULT = 32 * 1024 * 1024;
+	public static long REPO_CACHE_BYTES = REPO_CACHE_BYTES_DEFAULT;
+
+	/**
+	 * Most segments the repository reads ahead of a reader fetching a stream's segments in order,
+	 * staging them in the content cache. 0 disables read ahead, as does disabling the cache.
+	 */
+	protected static final String REPO_PREFETCH_DEPTH_PROPERTY = "org.ndnx.repo.prefetch.depth";
+	protected final static String REPO_PREFETCH_DEPTH_ENV_VAR = "NDNX_REPO_PREFETCH_DEPTH";
+	public final static int REPO_PREFETCH_DEPTH_DEFAULT = 8;
+	public static int REPO_PREFETCH_DEPTH = REPO_PREFETCH_DEPTH_DEFAULT;
+
+	/**
+	 * Whether the repository saves a checkpoint of its index so it doesn't need to read all its
+	 * files on startup, and how often in seconds it does so while running. With an interval of 0
+	 * the index is only saved on a clean shutdown.
+	 */
+	protected static final String REPO_INDEX_CHECKPOINT_PROPERTY = "org.ndnx.repo.index.checkpoint";
+	protected final static String REPO_INDEX_CHECKPOINT_ENV_VAR = "NDNX_REPO_INDEX_CHECKPOINT";
+	public final static boolean REPO_INDEX_CHECKPOINT_DEFAULT = true;
+	public static boolean REPO_INDEX_CHECKPOINT = REPO_INDEX_CHECKPOINT_DEFAULT;
+
+	protected static final String REPO_INDEX_CHECKPOINT_INTERVAL_PROPERTY = "org.ndnx.repo.index.checkpoint.interval";
+	protected final static String REPO_INDEX_CHECKPOINT_INTERVAL_ENV_VAR = "NDNX_REPO_INDEX_CHECKPOINT_INTERVAL";
+	public final static int REPO_INDEX_CHECKPOINT_INTERVAL_DEFAULT = 300;
+	public static int REPO_INDEX_CHECKPOINT_INTERVAL = REPO_INDEX_CHECKPOINT_INTERVAL_DEFAULT;
+
+	/**
+	 * Whether the repository reads content by memory mapping its files, which allows concurrent
+	 * reads, rather than through a shared file pointer.
+	 */
+	protected static final String REPO_MMAP_READS_PROPERTY = "org.ndnx.repo.mmap";
+	protected final static String REPO_MMAP_READS_ENV_VAR = "NDNX_REPO_MMAP";
+	public final static boolean REPO_MMAP_READS_DEFAULT = false;
+	public static boolean REPO_MMAP_READS = REPO_MMAP_READS_DEFAULT;
+
+	/**
+	 * The repository appends content to its files in batches of up to this many bytes. The
+	 * batch is written once it is full or the repository commits what it has been given so far.
+	 */
+	protected static final String REPO_WRITE_BATCH_BYTES_PROPERTY = "org.ndnx.repo.write.batch";
+	protected final static String REPO_WRITE_BATCH_BYTES_ENV_VAR = "NDNX_REPO_WRITE_BATCH";
+	public final static int REPO_WRITE_BATCH_BYTES_DEFAULT = 256 * 1024;
+	public static int REPO_WRITE_BATCH_BYTES = REPO_WRITE_BATCH_BYTES_DEFAULT;
+
+	/**
+	 * How the repository makes sure written content gets to disk:
+	 * NONE leaves it to the OS, PERIODIC syncs its files every REPO_SYNC_INTERVAL ms,
+	 * BATCH syncs after writing each batch, before the content is acknowledged.
+	 * Whatever the mode, saved content is batched, so it may not be written to the file
+	 * until REPO_WRITE_BATCH_BYTES have been saved or REPO_SYNC_INTERVAL ms have passed.
+	 */
+	public enum RepoSyncMode {NONE, PERIODIC, BATCH};
+	protected static final String REPO_SYNC_MODE_PROPERTY = "org.ndnx.repo.sync";
+	protected final static String REPO_SYNC_MODE_ENV_VAR = "NDNX_REPO_SYNC";
+	public final static RepoSyncMode REPO_SYNC_MODE_DEFAULT = RepoSyncMode.NONE;
+	public static RepoSyncMode REPO_SYNC_MODE = REPO_SYNC_MODE_DEFAULT;
+
+	/**
+	 * Period in ms for periodic syncs. Partial write batches are also written this often.
+	 */
+	protected static final String REPO_SYNC_INTERVAL_PROPERTY = "org.ndnx.repo.sync.interval";
+	protected final static String REPO_SYNC_INTERVAL_ENV_VAR = "NDNX_REPO_SYNC_INTERVAL";
+	public final static int REPO_SYNC_INTERVAL_DEFAULT = 1000;
+	public static int REPO_SYNC_INTERVAL = REPO_SYNC_INTERVAL_DEFAULT;
+
+	/**
+	 * The repository starts a new file once the one it is appending to reaches this many bytes.
+	 * 0 means never.
+	 */
+	protected static final String REPO_FILE_MAX_BYTES_PROPERTY = "org.ndnx.repo.file.max";
+	protected final static String REPO_FILE_MAX_BYTES_ENV_VAR = "NDNX_REPO_FILE_MAX";
+	public final static long REPO_FILE_MAX_BYTES_DEFAULT = 1024L * 1024 * 1024;
+	public static long REPO_FILE_MAX_BYTES = REPO_FILE_MAX_BYTES_DEFAULT;
+
+	/**
+	 * How often in seconds the repository looks for files to compact. 0 disables compaction.
+	 * A file is compacted, by copying its live content to the current file and deleting it, once
+	 * less than REPO_COMPACT_THRESHOLD percent of it is live. Compaction copies at most
+	 * REPO_COMPACT_RATE bytes per second (0 for no limit).
+	 */
+	protected static final String REPO_COMPACT_INTERVAL_PROPERTY = "org.ndnx.repo.compact.interval";
+	protected final static String REPO_COMPACT_INTERVAL_ENV_VAR = "NDNX_REPO_COMPACT_INTERVAL";
+	public final static int REPO_COMPACT_INTERVAL_DEFAULT = 0;
+	public static int REPO_COMPACT_INTERVAL = REPO_COMPACT_INTERVAL_DEFAULT;
+
+	protected static final String REPO_COMPACT_THRESHOLD_PROPERTY = "org.ndnx.repo.compact.threshold";
+	protected final static String REPO_COMPACT_THRESHOLD_ENV_VAR = "NDNX_REPO_COMPACT_THRESHOLD";
+	public final static int REPO_COMPACT_THRESHOLD_DEFAULT = 50;
+	public static int REPO_COMPACT_THRESHOLD = REPO_COMPACT_THRESHOLD_DEFAULT;
+
+	protected static final String REPO_COMPACT_RATE_PROPERTY = "org.ndnx.repo.compact.rate";
+	protected final static String REPO_COMPACT_RATE_ENV_VAR = "NDNX_REPO_COMPACT_RATE";
+	public final static long REPO_COMPACT_RATE_DEFAULT = 16 * 1024 * 1024;
+	public static long REPO_COMPACT_RATE = REPO_COMPACT_RATE_DEFAULT;
+
+	/**
+	 * Retention rules applied when the repository compacts. If REPO_KEEP_VERSIONS is more than 0
+	 * only that many of the latest versions of each versioned name are kept. If
+	 * REPO_PRUNE_OUTSIDE_NAMESPACE is set, content which is no longer in the repository's
+	 * policy namespace is removed. Pruned content is only removed from the index until its file
+	 * is compacted, so without REPO_INDEX_CHECKPOINT it comes back on restart until the next
+	 * compaction pass.
+	 */
+	protected static final String REPO_KEEP_VERSIONS_PROPERTY = "org.ndnx.repo.keep.versions";
+	protected final static String REPO_KEEP_VERSIONS_ENV_VAR = "NDNX_REPO_KEEP_VERSIONS";
+	public final static int REPO_KEEP_VERSIONS_DEFAULT = 0;
+	public static int REPO_KEEP_VERSIONS = REPO_KEEP_VERSIONS_DEFAULT;
+
+	protected static final String REPO_PRUNE_OUTSIDE_NAMESPACE_PROPERTY = "org.ndnx.repo.prune.namespace";
+	protected final static String REPO_PRUNE_OUTSIDE_NAMESPACE_ENV_VAR = "NDNX_REPO_PRUNE_NAMESPACE";
+	public final static boolean REPO_PRUNE_OUTSIDE_NAMESPACE_DEFAULT = false;
+	public static boolean REPO_PRUNE_OUTSIDE_NAMESPACE = REPO_PRUNE_OUTSIDE_NAMESPACE_DEFAULT;
+
+	/**
+	 * How long in milliseconds a GroupAccessControlManager may reuse the effective ACLs and
+	 * node keys it has looked up, rather than searching for them again. 0 disables the cache.
+	 */
+	protected static final String ACCESS_CONTROL_CACHE_TTL_PROPERTY = "org.ndnx.ac.cache.ttl";
+	protected final static String ACCESS_CONTROL_CACHE_TTL_ENV_VAR = "NDNX_AC_CACHE_TTL";
+	public final static long ACCESS_CONTROL_CACHE_TTL_DEFAULT = 0;
+	public static long ACCESS_CONTROL_CACHE_TTL = ACCESS_CONTROL_CACHE_TTL_DEFAULT;
 
 	/**
 	 * Settable system default timeout.
@@ -420,6 +759,15 @@ public class SystemConfiguration {
 		// Allow printing of pipeline stats in NDNAbstractInputStream
 		PIPELINE_STATS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(PIPELINE_STATS_PROPERTY, PIPELINE_STATS_ENV_VAR, STRING_FALSE));
 
+		// Allow the adaptive pipeline window in NDNAbstractInputStream to be turned on, and its limit set
+		PIPELINE_ADAPTIVE = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(PIPELINE_ADAPTIVE_PROPERTY, PIPELINE_ADAPTIVE_ENV_VAR, STRING_FALSE));
+		try {
+			PIPELINE_MAX_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(PIPELINE_MAX_SIZE_PROPERTY, PIPELINE_MAX_SIZE_ENV_VAR, "64"));
+		} catch (NumberFormatException e) {
+			System.err.println("The PipelineMaxSize must be an integer.");
+			throw e;
+		}
+
 		// Allow override of default ndndID discovery timeout.
 		try {
 			NDNDID_DISCOVERY_TIMEOUT = Integer.parseInt(System.getProperty(NDNDID_DISCOVERY_TIMEOUT_PROPERTY, Integer.toString(NDNDID_DISCOVERY_TIMEOUT_DEFAULT)));
@@ -486,6 +834,212 @@ public class SystemConfiguration {
 		
 		// Dump netmanager statistics if requested
 		DUMP_NETMANAGER_STATS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(DUMP_NETMANAGER_STATS_PROPERTY, DUMP_NETMANAGER_STATS_ENV_VAR, Boolean.toString(DUMP_NETMANAGER_STATS)));
+
+		// Allow handlers to be run on dispatch threads
+		try {
+			DISPATCH_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(DISPATCH_THREADS_PROPERTY, DISPATCH_THREADS_ENV_VAR, Integer.toString(DISPATCH_THREADS_DEFAULT)));
+			DISPATCH_QUEUE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(DISPATCH_QUEUE_SIZE_PROPERTY, DISPATCH_QUEUE_SIZE_ENV_VAR, Integer.toString(DISPATCH_QUEUE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The dispatch thread count and queue size must be integers.");
+			throw e;
+		}
+
+		// Allow bulk signing to be spread across threads
+		try {
+			SIGNING_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SIGNING_THREADS_PROPERTY, SIGNING_THREADS_ENV_VAR, Integer.toString(SIGNING_THREADS_DEFAULT)));
+			SIGNING_PARALLEL_THRESHOLD = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SIGNING_PARALLEL_THRESHOLD_PROPERTY, SIGNING_PARALLEL_THRESHOLD_ENV_VAR, Integer.toString(SIGNING_PARALLEL_THRESHOLD_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The signing thread count and threshold must be integers.");
+			throw e;
+		}
+
+		// Allow stream decryption to be spread across threads
+		try {
+			DECRYPT_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(DECRYPT_THREADS_PROPERTY, DECRYPT_THREADS_ENV_VAR, Integer.toString(DECRYPT_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The decryption thread count must be an integer.");
+			throw e;
+		}
+
+		// Allow the verification cache to be resized or turned off
+		try {
+			VERIFY_CACHE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(VERIFY_CACHE_SIZE_PROPERTY, VERIFY_CACHE_SIZE_ENV_VAR, Integer.toString(VERIFY_CACHE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The verification cache size must be an integer.");
+			throw e;
+		}
+
+		// Allow content to be verified before delivery
+		try {
+			VERIFY_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(VERIFY_THREADS_PROPERTY, VERIFY_THREADS_ENV_VAR, Integer.toString(VERIFY_THREADS_DEFAULT)));
+			VERIFY_QUEUE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(VERIFY_QUEUE_SIZE_PROPERTY, VERIFY_QUEUE_SIZE_ENV_VAR, Integer.toString(VERIFY_QUEUE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The verify thread count and queue size must be integers.");
+			throw e;
+		}
+
+		// Allow the sync caches to be resized
+		try {
+			SYNC_NODE_CACHE_BYTES = Long.parseLong(retrievePropertyOrEnvironmentVariable(SYNC_NODE_CACHE_BYTES_PROPERTY, SYNC_NODE_CACHE_BYTES_ENV_VAR, Long.toString(SYNC_NODE_CACHE_BYTES_DEFAULT)));
+			SYNC_HASH_CACHE_ENTRIES = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SYNC_HASH_CACHE_ENTRIES_PROPERTY, SYNC_HASH_CACHE_ENTRIES_ENV_VAR, Integer.toString(SYNC_HASH_CACHE_ENTRIES_DEFAULT)));
+			SYNC_HASH_CACHE_AGE = Long.parseLong(retrievePropertyOrEnvironmentVariable(SYNC_HASH_CACHE_AGE_PROPERTY, SYNC_HASH_CACHE_AGE_ENV_VAR, Long.toString(SYNC_HASH_CACHE_AGE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The sync cache sizes and age must be integers.");
+			throw e;
+		}
+
+		// Allow the sync comparison threads and node fetch pipeline to be adjusted
+		try {
+			SYNC_COMPARE_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SYNC_COMPARE_THREADS_PROPERTY, SYNC_COMPARE_THREADS_ENV_VAR, Integer.toString(SYNC_COMPARE_THREADS_DEFAULT)));
+			SYNC_FETCH_PIPELINE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SYNC_FETCH_PIPELINE_PROPERTY, SYNC_FETCH_PIPELINE_ENV_VAR, Integer.toString(SYNC_FETCH_PIPELINE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The sync compare threads and fetch pipeline must be integers.");
+			throw e;
+		}
+
+		// Allow statistics to be exported
+		STATS_JMX = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(STATS_JMX_PROPERTY, STATS_JMX_ENV_VAR, Boolean.toString(STATS_JMX_DEFAULT)));
+		try {
+			STATS_PORT = Integer.parseInt(retrievePropertyOrEnvironmentVariable(STATS_PORT_PROPERTY, STATS_PORT_ENV_VAR, Integer.toString(STATS_PORT_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The statistics port must be an integer.");
+			throw e;
+		}
+
+		// Allow the repository to serve interests on several threads
+		try {
+			REPO_INTEREST_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_INTEREST_THREADS_PROPERTY, REPO_INTEREST_THREADS_ENV_VAR, Integer.toString(REPO_INTEREST_THREADS_DEFAULT)));
+			REPO_INTEREST_QUEUE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_INTEREST_QUEUE_SIZE_PROPERTY, REPO_INTEREST_QUEUE_SIZE_ENV_VAR, Integer.toString(REPO_INTEREST_QUEUE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository interest thread count and queue size must be integers.");
+			throw e;
+		}
+
+		// Allow the repository to prepare incoming content on several threads
+		try {
+			REPO_INGEST_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_INGEST_THREADS_PROPERTY, REPO_INGEST_THREADS_ENV_VAR, Integer.toString(REPO_INGEST_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository ingest thread count must be an integer.");
+			throw e;
+		}
+
+		// Allow retention of wire encodings to be turned off
+		RETAIN_WIRE_ENCODING = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(RETAIN_WIRE_ENCODING_PROPERTY, RETAIN_WIRE_ENCODING_ENV_VAR, Boolean.toString(RETAIN_WIRE_ENCODING_DEFAULT)));
+
+		// Allow write coalescing to be turned off or delayed
+		WRITE_COALESCE = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(WRITE_COALESCE_PROPERTY, WRITE_COALESCE_ENV_VAR, Boolean.toString(WRITE_COALESCE_DEFAULT)));
+		try {
+			WRITE_COALESCE_DELAY = Integer.parseInt(retrievePropertyOrEnvironmentVariable(WRITE_COALESCE_DELAY_PROPERTY, WRITE_COALESCE_DELAY_ENV_VAR, Integer.toString(WRITE_COALESCE_DELAY_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The write coalesce delay must be an integer.");
+			throw e;
+		}
+
+		// Allow override of the repository cache size
+		try {
+			REPO_CACHE_BYTES = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_CACHE_BYTES_PROPERTY, REPO_CACHE_BYTES_ENV_VAR, Long.toString(REPO_CACHE_BYTES_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository cache size must be an integer.");
+			throw e;
+		}
+
+		// Allow repository read ahead to be resized or turned off
+		try {
+			REPO_PREFETCH_DEPTH = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_PREFETCH_DEPTH_PROPERTY, REPO_PREFETCH_DEPTH_ENV_VAR, Integer.toString(REPO_PREFETCH_DEPTH_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository prefetch depth must be an integer.");
+			throw e;
+		}
+
+		// Allow override of repository index checkpointing
+		try {
+			REPO_INDEX_CHECKPOINT = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_INDEX_CHECKPOINT_PROPERTY, REPO_INDEX_CHECKPOINT_ENV_VAR, Boolean.toString(REPO_INDEX_CHECKPOINT_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository index checkpoint setting must be a boolean.");
+			throw e;
+		}
+
+		try {
+			REPO_INDEX_CHECKPOINT_INTERVAL = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_INDEX_CHECKPOINT_INTERVAL_PROPERTY, REPO_INDEX_CHECKPOINT_INTERVAL_ENV_VAR, Integer.toString(REPO_INDEX_CHECKPOINT_INTERVAL_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository index checkpoint interval must be an integer.");
+			throw e;
+		}
+
+		// Allow override of the repository read mode
+		try {
+			REPO_MMAP_READS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_MMAP_READS_PROPERTY, REPO_MMAP_READS_ENV_VAR, Boolean.toString(REPO_MMAP_READS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository memory mapped read setting must be a boolean.");
+			throw e;
+		}
+
+		// Allow override of repository write batching and durability
+		try {
+			REPO_WRITE_BATCH_BYTES = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_WRITE_BATCH_BYTES_PROPERTY, REPO_WRITE_BATCH_BYTES_ENV_VAR, Integer.toString(REPO_WRITE_BATCH_BYTES_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository write batch size must be an integer.");
+			throw e;
+		}
+
+		try {
+			REPO_SYNC_MODE = RepoSyncMode.valueOf(retrievePropertyOrEnvironmentVariable(REPO_SYNC_MODE_PROPERTY, REPO_SYNC_MODE_ENV_VAR, REPO_SYNC_MODE_DEFAULT.toString()).toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("The repository sync mode must be one of " + Arrays.toString(RepoSyncMode.values()) + ".");
+			throw e;
+		}
+
+		try {
+			REPO_SYNC_INTERVAL = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_SYNC_INTERVAL_PROPERTY, REPO_SYNC_INTERVAL_ENV_VAR, Integer.toString(REPO_SYNC_INTERVAL_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository sync interval must be an integer.");
+			throw e;
+		}
+
+		try {
+			REPO_FILE_MAX_BYTES = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_FILE_MAX_BYTES_PROPERTY, REPO_FILE_MAX_BYTES_ENV_VAR, Long.toString(REPO_FILE_MAX_BYTES_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository maximum file size must be an integer.");
+			throw e;
+		}
+
+		try {
+			REPO_COMPACT_INTERVAL = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_COMPACT_INTERVAL_PROPERTY, REPO_COMPACT_INTERVAL_ENV_VAR, Integer.toString(REPO_COMPACT_INTERVAL_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository compaction interval must be an integer.");
+			throw e;
+		}
+
+		try {
+			REPO_COMPACT_THRESHOLD = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_COMPACT_THRESHOLD_PROPERTY, REPO_COMPACT_THRESHOLD_ENV_VAR, Integer.toString(REPO_COMPACT_THRESHOLD_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository compaction threshold must be an integer.");
+			throw e;
+		}
+
+		try {
+			REPO_COMPACT_RATE = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_COMPACT_RATE_PROPERTY, REPO_COMPACT_RATE_ENV_VAR, Long.toString(REPO_COMPACT_RATE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository compaction rate must be an integer.");
+			throw e;
+		}
+
+		try {
+			REPO_KEEP_VERSIONS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_KEEP_VERSIONS_PROPERTY, REPO_KEEP_VERSIONS_ENV_VAR, Integer.toString(REPO_KEEP_VERSIONS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The number of versions for the repository to keep must be an integer.");
+			throw e;
+		}
+
+		REPO_PRUNE_OUTSIDE_NAMESPACE = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_PRUNE_OUTSIDE_NAMESPACE_PROPERTY, REPO_PRUNE_OUTSIDE_NAMESPACE_ENV_VAR, Boolean.toString(REPO_PRUNE_OUTSIDE_NAMESPACE_DEFAULT)));
+
+		// Allow access control lookups to be cached
+		try {
+			ACCESS_CONTROL_CACHE_TTL = Long.parseLong(retrievePropertyOrEnvironmentVariable(ACCESS_CONTROL_CACHE_TTL_PROPERTY, ACCESS_CONTROL_CACHE_TTL_ENV_VAR, Long.toString(ACCESS_CONTROL_CACHE_TTL_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The access control cache lifetime must be an integer.");
+			throw e;
+		}
 	
 		// Allow override of block size
 		// TODO should we make sure its a reasonable number?
@@ -0,0 +1,249 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.encoding.ByteBufferOutputStream;
+import org.ndnx.ndn.impl.support.Log;
+
+/**
+ * Coalesces writes to a stream connection so that packets written by several threads at once
+ * go out in one write call rather than one each.
+ *
+ * There is no writer thread. The first thread to write while nothing is being flushed becomes
+ * the flusher: it optionally waits up to the configured delay for more packets, then writes out
+ * everything queued at that point. Threads which write while a flush is in progress just append
+ * to the queue and return. If more has been queued by the time the flusher's write completes,
+ * flushing is handed to a pool thread rather than holding up the caller for other threads'
+ * packets. So with no delay a packet is never held back behind more than the write already in
+ * progress, and interactive traffic isn't delayed.
+ *
+ * Packets are written in the order they were queued. If the queue is full writers block until
+ * the flusher takes it. A write error is thrown to the thread doing that flush, but since the
+ * batch may hold packets other threads have already been told were queued, it isn't dropped:
+ * it stays at the head of the queue and is written again by the next flush.
+ */
+public abstract class CoalescingWriter {
+
+	public static final int DEFAULT_MAX_BATCH = 64 * 1024;
+
+	protected final long _delayNanos;
+	protected final int _maxBatch;
+
+	protected ByteBufferOutputStream _pending;
+	protected ByteBufferOutputStream _spare;
+	protected int _pendingPackets = 0;
+	protected boolean _flushing = false;
+
+	protected final AtomicLong _batches = new AtomicLong(0);
+	protected final AtomicLong _packets = new AtomicLong(0);
+
+	/**
+	 * @param delayMicros how long the flushing thread waits for more packets before writing, 0 to
+	 * 		write immediately
+	 * @param maxBatch maximum number of bytes to queue before writers have to wait
+	 */
+	public CoalescingWriter(int delayMicros, int maxBatch) {
+		_delayNanos = delayMicros * 1000L;
+		_maxBatch = maxBatch;
+		_pending = new ByteBufferOutputStream(maxBatch);
+		_spare = new ByteBufferOutputStream(maxBatch);
+	}
+
+	/**
+	 * Write out a batch of queued packets. Called by one thread at a time.
+	 * @param batch the bytes to write
+	 * @return the number of bytes written, or -1 if the connection is closed
+	 * @throws IOException
+	 */
+	protected abstract int writeBatch(ByteBuffer batch) throws IOException;
+
+	/**
+	 * Queue a packet to be written.
+	 * @param src the encoded packet. Its remaining bytes are copied, so it may be reused on return.
+	 * @return the number of bytes queued, or -1 if this thread did the flush and found the
+	 * 		connection closed
+	 * @throws IOException if this thread did the flush and the write failed
+	 */
+	public int write(ByteBuffer src) throws IOException {
+		int length = src.remaining();
+		synchronized (this) {
+			waitForSpace(length);
+			_pending.write(src);
+			_pendingPackets++;
+			if (_flushing)
+				return length;
+			_flushing = true;
+		}
+		return (flush() < 0) ? -1 : length;
+	}
+
+	/**
+	 * Queue several packets to be written together.
+	 * @param srcs the encoded packets, copied as for write(ByteBuffer)
+	 * @return the number of bytes queued, or -1 as for write(ByteBuffer)
+	 * @throws IOException if this thread did the flush and the write failed
+	 */
+	public int write(ByteBuffer [] srcs) throws IOException {
+		int length = 0;
+		synchronized (this) {
+			for (ByteBuffer src : srcs) {
+				waitForSpace(src.remaining());
+				length += src.remaining();
+				_pending.write(src);
+				_pendingPackets++;
+			}
+			if (_flushing)
+				return length;
+			_flushing = true;
+		}
+		return (flush() < 0) ? -1 : length;
+	}
+
+	/**
+	 * @return the number of batches written on the connection
+	 */
+	public long getBatchCount() {
+		return _batches.get();
+	}
+
+	/**
+	 * @return the number of packets written
+	 */
+	public long getPacketCount() {
+		return _packets.get();
+	}
+
+	private void waitForSpace(int length) throws IOException {
+		// Don't block if we're the one who would have to flush, or if the packet could never fit
+		while (_flushing && _pending.size() > 0 && _pending.size() + length > _maxBatch) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted waiting to queue packet");
+			}
+		}
+	}
+
+	private int flush() throws IOException {
+		if (_delayNanos > 0) {
+			try {
+				Thread.sleep(_delayNanos / 1000000L, (int)(_delayNanos % 1000000L));
+			} catch (InterruptedException e) {}
+		}
+		int result = -1;
+		try {
+			result = flushBatch();
+		} finally {
+			if (!finished(result))
+				handOff();
+		}
+		return result;
+	}
+
+	/**
+	 * Keep flushing from a pool thread until the queue is empty or a write fails.
+	 */
+	private void handOff() {
+		Runnable flusher = new Runnable() {
+			public void run() {
+				try {
+					boolean done = false;
+					while (!done) {
+						int result = -1;
+						try {
+							result = flushBatch();
+						} finally {
+							done = finished(result);
+						}
+					}
+				} catch (IOException e) {
+					Log.warning(Log.FAC_NETMANAGER, "Write of queued packets failed, will retry on next write: {0}", e.getMessage());
+				}
+			}
+		};
+		try {
+			SystemConfiguration._systemThreadpool.execute(flusher);
+		} catch (RejectedExecutionException e) {
+			flusher.run();
+		}
+	}
+
+	/**
+	 * Called by the flushing thread after each batch.
+	 * @param result the result of the batch's write, -1 if it threw
+	 * @return true if flushing has stopped, false if this thread should write more
+	 */
+	private synchronized boolean finished(int result) {
+		if (result >= 0 && _pending.size() > 0)
+			return false;
+		// Let the next writer take over flushing
+		_flushing = false;
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Write out everything queued now. If the write fails the batch is put back at the head of
+	 * the queue.
+	 * @return the result of writeBatch
+	 * @throws IOException
+	 */
+	private int flushBatch() throws IOException {
+		ByteBufferOutputStream batch;
+		int packets;
+		synchronized (this) {
+			batch = _pending;
+			packets = _pendingPackets;
+			_pending = _spare;
+			_pendingPackets = 0;
+			_spare = batch;
+			notifyAll();
+		}
+		int result = -1;
+		try {
+			result = writeBatch(batch.getBuffer());
+		} finally {
+			synchronized (this) {
+				if (result >= 0) {
+					batch.reset();
+					_batches.incrementAndGet();
+					_packets.addAndGet(packets);
+				} else {
+					// Put it back, all of it as we can't tell how much reached the connection,
+					// followed by anything queued since
+					batch.restore();
+					batch.write(_pending.getBuffer());
+					_pending.reset();
+					_spare = _pending;
+					_pending = batch;
+					_pendingPackets += packets;
+				}
+			}
+		}
+		return result;
+	}
+}
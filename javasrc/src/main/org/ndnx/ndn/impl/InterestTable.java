@@ -26,7 +26,6 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Level;
@@ -225,16 +224,51 @@ public class InterestTable<V> {
 						if (Log.isLoggable(Log.FAC_ENCODING, Level.INFO)) {
 							Log.info(Log.FAC_ENCODING, "removing entry associated with name {0}", _contentNamesLRU.get(0));
 						}
-						_contents.remove(_contentNamesLRU.get(0));
+						removeName(_contentNamesLRU.get(0));
 						_contentNamesLRU.remove(0);
 					}
 					_contentNamesLRU.add(name);
 				}
-				_contents.put(name, list);
+				putName(name, list);
 			}
 		}
 	}
 
+	/**
+	 * Internal: add a new name key to the table. All insertions of new names go through
+	 * here so subclasses may keep additional indexes in step with _contents.
+	 * Must be called with _contents locked.
+	 *
+	 * @param name	the new name
+	 * @param list	holders for the name
+	 */
+	protected void putName(ContentName name, List<Holder<V>> list) {
+		_contents.put(name, list);
+	}
+
+	/**
+	 * Internal: remove a name key from the table. Must be called with _contents locked.
+	 *
+	 * @param name	the name to remove
+	 */
+	protected void removeName(ContentName name) {
+		_contents.remove(name);
+	}
+
+	/**
+	 * Internal: return the names which may possibly match a target name, longest first.
+	 * The base table has no index so this is all the names in the table - callers must
+	 * still check each candidate. Must be called (and the result used) with _contents locked.
+	 *
+	 * @param target			name to look up
+	 * @param includeDigest		also return names that could match target with an explicit
+	 * 							digest component appended, as may an Interest for a ContentObject
+	 * @return the candidate names
+	 */
+	protected Collection<ContentName> candidateNames(ContentName target, boolean includeDigest) {
+		return _contents.keySet();
+	}
+
 	protected Holder<V> getMatchByName(ContentName name, ContentObject target) {
 		List<Holder<V>> list;
 		synchronized (_contents) {
@@ -296,7 +330,7 @@ public class InterestTable<V> {
 						if (holder.interest().matches(target)) {
 							holdIt.remove();
 							if (list.size() == 0) {
-								_contents.remove(name);
+								removeName(name);
 							}
 							return holder;
 						}
@@ -335,9 +369,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					synchronized (_contents) {
-						_contents.remove(name);
-					}
+					removeName(name);
 				}
 			}
 		}
@@ -375,7 +407,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					_contents.remove(name);
+					removeName(name);
 				}
 			}
 		}
@@ -397,7 +429,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					_contents.remove(name);
+					removeName(name);
 				}
 			}
 		}
@@ -434,9 +466,9 @@ public class InterestTable<V> {
 		if(Log.isLoggable(Log.FAC_ENCODING, Level.FINEST))
 			Log.finest(Log.FAC_ENCODING, "target: {0}", target.name());
 		Entry<V> match = null;
-		Set<ContentName> names;
+		Collection<ContentName> names;
 		synchronized (_contents) {
-			names = _contents.keySet();
+			names = candidateNames(target.name(), true);
 			for (ContentName name : names) {
 				match = getMatchByName(name, target);
 				if (null != match)
@@ -485,7 +517,7 @@ public class InterestTable<V> {
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		if (null != target) {
 			synchronized (_contents) {
-				for (ContentName name : _contents.keySet()) {
+				for (ContentName name : candidateNames(target.name(), true)) {
 					// Name match - is there an interest match here?
 					matches.addAll(getAllMatchByName(name, target));
 				}
@@ -529,7 +561,7 @@ public class InterestTable<V> {
 
 		Entry<V> match = null;
 		synchronized (_contents) {
-			for (ContentName name : _contents.keySet()) {
+			for (ContentName name : candidateNames(target, false)) {
 				if (name.isPrefixOf(target)) {
 					match = _contents.get(name).get(0);
 					break;
@@ -573,7 +605,7 @@ public class InterestTable<V> {
 
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		synchronized (_contents) {
-			for (ContentName name : _contents.keySet()) {
+			for (ContentName name : candidateNames(target, false)) {
 				if (name.isPrefixOf(target)) {
 					matches.addAll(_contents.get(name));
 				}
@@ -632,9 +664,9 @@ public class InterestTable<V> {
 			ContentName matchName = null;
 			if(Log.isLoggable(Log.FAC_ENCODING, Level.FINEST))
 				Log.finest(Log.FAC_ENCODING, "removeMatch: looking for match to target {0} among {1} possibilities.", target.name(), _contents.keySet().size());
-			Set<ContentName> names;
+			Collection<ContentName> names;
 			synchronized (_contents) {
-				names = _contents.keySet();
+				names = candidateNames(target.name(), true);
 				for (ContentName name : names) {
 					match = getMatchByName(name, target);
 					if (null != match) {
@@ -683,9 +715,9 @@ public class InterestTable<V> {
 	public List<Entry<V>> removeMatches(ContentObject target) {
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		List<ContentName> names = new ArrayList<ContentName>();
-		Set<ContentName> LFCnames;
+		Collection<ContentName> LFCnames;
 		synchronized (_contents) {
-			LFCnames = _contents.keySet();
+			LFCnames = candidateNames(target.name(), true);
 			for (ContentName name : LFCnames) {
 				if (name.isPrefixOf(target.name())) {
 					// Name match - is there an interest match here?
@@ -22,6 +22,7 @@ package org.ndnx.ndn.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.TreeMap;
@@ -108,7 +109,7 @@ public class NDNFlowControl implements NDNInterestHandler {
 	protected static long _lastPurgeTime = 0;
 
 	protected TreeMap<ContentName, ContentObject> _holdingArea = new TreeMap<ContentName, ContentObject>();
-	protected InterestTable<UnmatchedInterest> _unmatchedInterests = new InterestTable<UnmatchedInterest>();
+	protected InterestTable<UnmatchedInterest> _unmatchedInterests = new PrefixIndexedInterestTable<UnmatchedInterest>();
 
 	// The namespaces served by this flow controller
 	protected HashSet<ContentName> _filteredNames = new HashSet<ContentName>();
@@ -330,6 +331,11 @@ public class NDNFlowControl implements NDNInterestHandler {
 	 * @throws IOException if the put fails
 	 */
 	public void put(ArrayList<ContentObject> cos) throws IOException {
+		if (!_flowControlEnabled) {
+			// Nothing to wait for, so write them all together
+			_handle.put(cos);
+			return;
+		}
 		for (ContentObject co : cos) {
 			put(co);
 		}
@@ -343,6 +349,10 @@ public class NDNFlowControl implements NDNInterestHandler {
 	 * @throws IOException if the put fails
 	 */
 	public void put(ContentObject [] cos) throws IOException {
+		if (!_flowControlEnabled) {
+			_handle.put(Arrays.asList(cos));
+			return;
+		}
 		for (ContentObject co : cos) {
 			put(co);
 		}
@@ -86,6 +86,10 @@ public class NDNNetworkChannel extends InputStream {
 
 	protected BinaryXMLDecoder _decoder = null;
 
+	// Serializes writes to the underlying channel
+	protected final Object _writeLock = new Object();
+	protected CoalescingWriter _coalescer = null;
+
 	// Allocate datagram buffer
 	protected ByteBuffer _datagram = ByteBuffer.allocateDirect(NDNNetworkManager.MAX_PAYLOAD);
 	// The following lines can be uncommented to help with debugging (i.e. you can't easily look at
@@ -105,6 +109,15 @@ public class NDNNetworkChannel extends InputStream {
 		_channelId = _channelIdCounter.incrementAndGet();
 		_decoder = new BinaryXMLDecoder();
 		_decoder.setResyncable(true);
+		_decoder.setRetainWire(SystemConfiguration.RETAIN_WIRE_ENCODING);
+		if (proto == NetworkProtocol.TCP && SystemConfiguration.WRITE_COALESCE) {
+			_coalescer = new CoalescingWriter(SystemConfiguration.WRITE_COALESCE_DELAY, CoalescingWriter.DEFAULT_MAX_BATCH) {
+				@Override
+				protected int writeBatch(ByteBuffer batch) throws IOException {
+					return writeDirect(batch);
+				}
+			};
+		}
 
 		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO))
 			Log.info(Log.FAC_NETMANAGER, "NetworkChannel {0}: Starting up NDNNetworkChannel using {1}.",  _channelId, proto.toString());
@@ -289,45 +302,118 @@ public class NDNNetworkChannel extends InputStream {
 	}
 
 	/**
-	 * Write to ndnd using methods based on the protocol type
-	 * @param src - ByteBuffer to write
-	 * @return - number of bytes written
+	 * Write a packet to ndnd. For TCP channels with write coalescing enabled this may just queue
+	 * the packet to go out with others being written at the same time - see CoalescingWriter.
+	 * Safe to call from multiple threads.
+	 *
+	 * @param src the encoded packet. May be reused once this returns.
+	 * @return the number of bytes written or queued, or -1 if the channel is not connected
 	 * @throws IOException
 	 */
 	public int write(ByteBuffer src) throws IOException {
 		if (! isConnected())
 			return -1; // XXX - is this documented?
+		if (null != _coalescer)
+			return _coalescer.write(src);
+		return writeDirect(src);
+	}
+
+	/**
+	 * Write several packets to ndnd. For TCP these are written with one gathering write, for UDP
+	 * each is sent as its own datagram.
+	 *
+	 * @param srcs the encoded packets. May be reused once this returns.
+	 * @return the number of bytes written or queued, or -1 if the channel is not connected
+	 * @throws IOException
+	 */
+	public int write(ByteBuffer [] srcs) throws IOException {
+		if (! isConnected())
+			return -1;
+		if (null != _coalescer)
+			return _coalescer.write(srcs);
+		return writeDirect(srcs);
+	}
+
+	protected int writeDirect(ByteBuffer src) throws IOException {
 		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST))
 			Log.finest(Log.FAC_NETMANAGER,
 					"NetworkChannel {0}: write() on port {1}", _channelId, _ncLocalPort);
 
-		try {
-			if (_ncDGrmChannel != null) {
-				return (_ncDGrmChannel.write(src));
-			} else {
-				// XXX -this depends on synchronization in caller, which is less than ideal.
-				// Need to handle partial writes
-				int written = 0;
-				while (src.hasRemaining()) {
-					if (! isConnected())
-						return -1;
-					int b = _ncSockChannel.write(src);
-					if (b > 0) {
-						written += b;
-					} else {
-						_ncWriteSelector.selectedKeys().clear();
-						_ncWriteSelector.select();
+		synchronized (_writeLock) {
+			if (! isConnected())
+				return -1;
+			try {
+				if (_ncDGrmChannel != null) {
+					return (_ncDGrmChannel.write(src));
+				} else {
+					// Need to handle partial writes
+					int written = 0;
+					while (src.hasRemaining()) {
+						if (! isConnected())
+							return -1;
+						int b = _ncSockChannel.write(src);
+						if (b > 0) {
+							written += b;
+						} else {
+							_ncWriteSelector.selectedKeys().clear();
+							_ncWriteSelector.select();
+						}
 					}
+					return written;
 				}
-				return written;
-			}
-		} catch (PortUnreachableException pue) {}
-		  catch (ClosedChannelException cce) {}
+			} catch (PortUnreachableException pue) {}
+			  catch (ClosedChannelException cce) {}
+		}
 		Log.info(Log.FAC_NETMANAGER, "NetworkChannel {0}: closing due to error on write", _channelId);
 		close(true);
 		return -1;
 	}
 
+	protected int writeDirect(ByteBuffer [] srcs) throws IOException {
+		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST))
+			Log.finest(Log.FAC_NETMANAGER,
+					"NetworkChannel {0}: write() of {1} packets on port {2}", _channelId, srcs.length, _ncLocalPort);
+
+		synchronized (_writeLock) {
+			if (! isConnected())
+				return -1;
+			try {
+				long written = 0;
+				if (_ncDGrmChannel != null) {
+					for (ByteBuffer src : srcs)
+						written += _ncDGrmChannel.write(src);
+				} else {
+					long total = 0;
+					for (ByteBuffer src : srcs)
+						total += src.remaining();
+					while (written < total) {
+						if (! isConnected())
+							return -1;
+						long b = _ncSockChannel.write(srcs);
+						if (b > 0) {
+							written += b;
+						} else {
+							_ncWriteSelector.selectedKeys().clear();
+							_ncWriteSelector.select();
+						}
+					}
+				}
+				return (int)written;
+			} catch (PortUnreachableException pue) {}
+			  catch (ClosedChannelException cce) {}
+		}
+		Log.info(Log.FAC_NETMANAGER, "NetworkChannel {0}: closing due to error on write", _channelId);
+		close(true);
+		return -1;
+	}
+
+	/**
+	 * @return the writer coalescing writes on this channel, or null if writes aren't coalesced
+	 */
+	public CoalescingWriter getCoalescingWriter() {
+		return _coalescer;
+	}
+
 	/**
 	 * Force wakeup from a select
 	 * @return the selector
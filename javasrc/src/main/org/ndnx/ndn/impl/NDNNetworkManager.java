@@ -30,7 +30,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -43,12 +45,15 @@ import org.ndnx.ndn.ContentVerifier;
 import org.ndnx.ndn.KeyManager;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
 import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
 import org.ndnx.ndn.impl.InterestTable.Entry;
+import org.ndnx.ndn.impl.encoding.BinaryXMLBufferEncoder;
 import org.ndnx.ndn.impl.encoding.GenericXMLEncodable;
 import org.ndnx.ndn.impl.encoding.XMLEncodable;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.io.content.ContentEncodingException;
+import org.ndnx.ndn.profiles.SegmentationProfile;
 import org.ndnx.ndn.profiles.ndnd.NDNDaemonException;
 import org.ndnx.ndn.profiles.ndnd.PrefixRegistrationManager;
 import org.ndnx.ndn.profiles.ndnd.PrefixRegistrationManager.ForwardingEntry;
@@ -67,11 +72,16 @@ import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
  * NDNHandle API rather than directly.
  *
  * The read API is implemented in a thread that continuously reads from ndnd. Whenever the thread reads
- * a complete packet, it calls back a handler or handlers that have been previously setup by users. Since
- * there is only one callback thread, users must take care to avoid slow or blocking processing directly
+ * a complete packet, it calls back a handler or handlers that have been previously setup by users. By
+ * default there is only one callback thread, so users must take care to avoid slow or blocking processing directly
  * within the callback. This is similar to the restrictions on the event dispatching thread in Swing. The
  * setup of callback handlers should also normally be done via the NDNHandle API.
  *
+ * Optionally (see setDispatchThreads and SystemConfiguration.DISPATCH_THREADS) the reader thread only decodes
+ * packets and hands them to a set of dispatch threads which call the handlers. Packets are assigned to a dispatch
+ * thread by name prefix - interests by the prefix of the filter they match, and content by its name without any
+ * segment number - so handlers still see the packets for one prefix in the order they arrived.
+ *
  * The class also has a separate timer process which is used to refresh unsatisfied interests and to
  * keep UDP connections alive by sending a heartbeat packet at regular intervals.
  *
@@ -81,7 +91,7 @@ import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
  * all the communications with ndnd.
  *
  */
-public class NDNNetworkManager implements Runnable {
+public class NDNNetworkManager implements Runnable, NDNStatistics {
 
 	public static final int DEFAULT_AGENT_PORT = 6363; // ndnx registered port
 	public static final String DEFAULT_AGENT_HOST = "localhost";
@@ -138,8 +148,8 @@ public class NDNNetworkManager implements Runnable {
 	protected KeyManager _keyManager;
 
 	// Tables of interests/filters
-	protected InterestTable<InterestRegistration> _myInterests = new InterestTable<InterestRegistration>();
-	protected InterestTable<Filter> _myFilters = new InterestTable<Filter>();
+	protected InterestTable<InterestRegistration> _myInterests = new PrefixIndexedInterestTable<InterestRegistration>();
+	protected InterestTable<Filter> _myFilters = new PrefixIndexedInterestTable<Filter>();
 
 	// Prefix registration handling. Only one registration change (add or remove a registration) with ndnd is
 	// allowed at once. To enforce this, before attempting a registration change, users must acquire
@@ -176,10 +186,18 @@ public class NDNNetworkManager implements Runnable {
 	protected long _currentHandler = 0;
 	protected long _lastHandler = -1;
 
-	// Atomic cancel
-	protected InterestRegistration _beingDelivered = null;
+	// Atomic cancel - there may be one delivery per dispatch thread in progress
+	protected ArrayList<InterestRegistration> _beingDelivered = new ArrayList<InterestRegistration>(1);
 	protected Object _beingDeliveredLock = new Object();
 
+	// Dispatch of handler callbacks to other threads. null means run them on the reader thread
+	protected volatile StripedDispatcher _dispatcher = null;
+	// A dispatcher we have stopped using, which must finish before handlers run on the reader thread
+	protected volatile StripedDispatcher _draining = null;
+
+	// Verification of incoming content before dispatch. null means content is dispatched unverified
+	protected volatile VerificationStage _verifier = null;
+
 	/**
 	 * Keep track of prefixes that are actually registered with ndnd (as opposed to Filters used
 	 * to dispatch interests). There may be several filters for each registered prefix.
@@ -344,6 +362,17 @@ public class NDNNetworkManager implements Runnable {
 	        		_timeForThisHandler = currentTime;
         		}
         	}
+        	// And any handlers on dispatch threads
+        	for (StripedDispatcher dispatcher : new StripedDispatcher[] { _dispatcher, _draining }) {
+        		if (null == dispatcher)
+        			continue;
+        		for (Thread hung : dispatcher.busyThreads(SystemConfiguration.MAX_TIMEOUT)) {
+        			Throwable t = new Throwable("Handler on " + hung.getName() + " took too long to return - stack trace follows");
+        			t.setStackTrace(hung.getStackTrace());
+        			Log.logStackTrace(Log.FAC_NETMANAGER, Level.SEVERE, t);
+        			hung.interrupt();
+        		}
+        	}
 
         	// Calculate when we should next be run
 			long checkInterestDelay = minInterestRefreshTime - currentTime;
@@ -492,7 +521,7 @@ public class NDNNetworkManager implements Runnable {
 		 */
 		public void deliver(ContentObject co) {
 			synchronized (_beingDeliveredLock) {
-				_beingDelivered = this;
+				_beingDelivered.add(this);
 			}
 			try {
 				if (null != this.handler) {
@@ -542,7 +571,12 @@ public class NDNNetworkManager implements Runnable {
 			}
 
 			synchronized (_beingDeliveredLock) {
-				_beingDelivered = null;
+				for (int i = 0; i < _beingDelivered.size(); i++) {
+					if (_beingDelivered.get(i) == this) {
+						_beingDelivered.remove(i);
+						break;
+					}
+				}
 			}
 		}
 
@@ -675,6 +709,12 @@ public class NDNNetworkManager implements Runnable {
 
 		_channel = new NDNNetworkChannel(_host, _port, _protocol, _tapStreamIn);
 		_channel.open();
+
+		if (SystemConfiguration.DISPATCH_THREADS > 0)
+			setDispatchThreads(SystemConfiguration.DISPATCH_THREADS);
+		if (SystemConfiguration.VERIFY_THREADS > 0)
+			setVerifyThreads(SystemConfiguration.VERIFY_THREADS);
+		NDNStatsRegistry.register("NetworkManager", this, "handle", Integer.toString(_managerId));
 	}
 
 	/**
@@ -688,6 +728,21 @@ public class NDNNetworkManager implements Runnable {
 			_periodicTimer.shutdownNow();
 		if (_thread != null)
 			_thread.interrupt();
+		StripedDispatcher dispatcher = _dispatcher;
+		_dispatcher = null;
+		if (null != dispatcher)
+			dispatcher.shutdownNow();
+		dispatcher = _draining;
+		_draining = null;
+		if (null != dispatcher)
+			dispatcher.shutdownNow();
+		VerificationStage verifier = _verifier;
+		_verifier = null;
+		if (null != verifier) {
+			verifier.shutdown();
+			NDNStatsRegistry.unregister(verifier);
+		}
+		NDNStatsRegistry.unregister(this);
 		if (null != _channel) {
 			try {
 				setTap(null);
@@ -703,8 +758,11 @@ public class NDNNetworkManager implements Runnable {
 		}
 
 		// Print the statistics for this network manager
-		if (SystemConfiguration.DUMP_NETMANAGER_STATS)
+		if (SystemConfiguration.DUMP_NETMANAGER_STATS) {
 			System.out.println(getStats().toString());
+			if (null != verifier)
+				System.out.println(verifier.getStats().toString());
+		}
 	}
 
 	@Override
@@ -719,6 +777,89 @@ public class NDNNetworkManager implements Runnable {
 		}
 	}
 
+	/**
+	 * Set the number of threads used to call interest and content handlers. With 0 threads
+	 * (the default) handlers are called directly from the thread reading from ndnd, so a slow
+	 * handler holds up all traffic for this network manager. Otherwise handlers for different
+	 * prefixes may run concurrently, while those for the same prefix are still called in order.
+	 * Handlers already queued on a previous set of threads are allowed to complete before any
+	 * handler is called by the new ones, or by the reader thread, so that handlers for a prefix
+	 * are still called in order. Each dispatch thread queues at most
+	 * SystemConfiguration.DISPATCH_QUEUE_SIZE calls, beyond which the reader thread waits.
+	 *
+	 * @param threads number of dispatch threads, 0 to dispatch from the reader thread
+	 */
+	public synchronized void setDispatchThreads(int threads) {
+		if (threads < 0)
+			throw new IllegalArgumentException(formatMessage("Invalid dispatch thread count " + threads));
+		StripedDispatcher old = _dispatcher;
+		if (null != old && old.threads() == threads)
+			return;
+		if (threads > 0) {
+			_dispatcher = new StripedDispatcher("NDNNetworkManager " + _managerId, threads,
+											SystemConfiguration.DISPATCH_QUEUE_SIZE, old);
+		} else {
+			_draining = old;
+			_dispatcher = null;
+		}
+		if (null != old)
+			old.shutdown();
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
+			Log.info(Log.FAC_NETMANAGER, formatMessage("Using {0} dispatch threads"), threads);
+	}
+
+	/**
+	 * Set the number of threads used to verify incoming content before it is dispatched (see
+	 * VerificationStage). Content is still delivered in the order it arrived. With 0 threads (the
+	 * default) content is dispatched as soon as it is read. Content already queued on a previous
+	 * set of threads is discarded.
+	 *
+	 * Deliveries are made from the verification stage's delivery thread rather than the reader
+	 * thread unless dispatch threads are also in use, so the same restrictions on handlers apply.
+	 *
+	 * @param threads number of verification threads, 0 to dispatch content without verifying it
+	 */
+	public synchronized void setVerifyThreads(int threads) {
+		if (threads < 0)
+			throw new IllegalArgumentException(formatMessage("Invalid verify thread count " + threads));
+		VerificationStage old = _verifier;
+		if (null != old && old.threads() == threads)
+			return;
+		_verifier = (threads > 0) ? new VerificationStage("NDNNetworkManager " + _managerId, threads,
+										SystemConfiguration.VERIFY_QUEUE_SIZE, _keyManager) : null;
+		if (null != _verifier)
+			NDNStatsRegistry.register("VerificationStage", _verifier, "handle", Integer.toString(_managerId));
+		if (null != old) {
+			old.shutdown();
+			NDNStatsRegistry.unregister(old);
+		}
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
+			Log.info(Log.FAC_NETMANAGER, formatMessage("Using {0} verify threads"), threads);
+	}
+
+	/**
+	 * @return the number of threads used to verify content, 0 if content is not verified before dispatch
+	 */
+	public int getVerifyThreads() {
+		VerificationStage verifier = _verifier;
+		return (null == verifier) ? 0 : verifier.threads();
+	}
+
+	/**
+	 * @return the verification stage, or null if content is not verified before dispatch
+	 */
+	public VerificationStage getVerificationStage() {
+		return _verifier;
+	}
+
+	/**
+	 * @return the number of threads used to call handlers, 0 if they are called from the reader thread
+	 */
+	public int getDispatchThreads() {
+		StripedDispatcher dispatcher = _dispatcher;
+		return (null == dispatcher) ? 0 : dispatcher.threads();
+	}
+
 	/**
 	 * Get the protocol this network manager is using
 	 * @return the protocol
@@ -802,6 +943,9 @@ public class NDNNetworkManager implements Runnable {
 	 */
 	public void setKeyManager(KeyManager manager) {
 		_keyManager = manager;
+		VerificationStage verifier = _verifier;
+		if (null != verifier)
+			verifier.setKeyManager(manager);
 	}
 
 	/**
@@ -826,6 +970,22 @@ public class NDNNetworkManager implements Runnable {
 		return co;
 	}
 
+	/**
+	 * Write several content objects to ndnd at once.
+	 * @see #write(List)
+	 *
+	 * @param cos the content
+	 * @throws IOException
+	 */
+	public void put(List<ContentObject> cos) throws IOException {
+		_stats.increment(StatsEnum.Puts, cos.size());
+		try {
+			write(cos);
+		} catch (ContentEncodingException e) {
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("Exception in lowest-level put for {0} objects! {1}"), cos.size(), e);
+		}
+	}
+
 	/**
 	 * get content matching an interest from ndnd. Expresses an interest, waits for ndnd to
 	 * return matching the data, then removes the interest and returns the data to the caller.
@@ -949,8 +1109,10 @@ public class NDNNetworkManager implements Runnable {
 
 		// Make sure potential remnants of cancelled interest are also cancelled
 		synchronized (_beingDeliveredLock) {
-			if (null != _beingDelivered  && _beingDelivered.equals(reg))
-				_beingDelivered.cancelled = true;
+			for (InterestRegistration delivering : _beingDelivered) {
+				if (delivering.equals(reg))
+					delivering.cancelled = true;
+			}
 		}
 	}
 
@@ -1206,39 +1368,96 @@ public class NDNNetworkManager implements Runnable {
 		writeInner(interest);
 	}
 
+	/**
+	 * Each writing thread encodes into its own reusable direct buffer, so we don't generate
+	 * garbage for every packet and the channel doesn't have to copy heap buffers.
+	 */
+	protected static final ThreadLocal<BinaryXMLBufferEncoder> _packetEncoder = new ThreadLocal<BinaryXMLBufferEncoder>() {
+		@Override
+		protected BinaryXMLBufferEncoder initialValue() {
+			return new BinaryXMLBufferEncoder(MAX_PAYLOAD);
+		}
+	};
+
+	/**
+	 * Write a batch of packets to ndnd with a single channel write where the transport allows
+	 * it (TCP). Packets are written in order. Use this rather than writing packets one at a
+	 * time when many are ready at once - it saves a lock round trip and a system call per packet.
+	 *
+	 * @param packets the ContentObjects and/or Interests to write
+	 * @throws ContentEncodingException
+	 */
+	public void write(List<? extends GenericXMLEncodable> packets) throws ContentEncodingException {
+		if (packets.isEmpty())
+			return;
+		_stats.increment(StatsEnum.WriteBatch);
+		for (GenericXMLEncodable packet : packets) {
+			if (packet instanceof ContentObject)
+				_stats.increment(StatsEnum.WriteObject);
+			else
+				_stats.increment(StatsEnum.WriteInterest);
+		}
+		try {
+			// Encode before writing - we only hold the channel's write lock for the write itself
+			ByteBuffer [] datagrams = _packetEncoder.get().encode(packets);
+			int length = 0;
+			for (ByteBuffer datagram : datagrams)
+				length += datagram.remaining();
+			ByteBuffer [] tap = null;
+			if (null != _tapStreamOut) {
+				tap = new ByteBuffer[datagrams.length];
+				for (int i = 0; i < datagrams.length; i++)
+					tap[i] = datagrams[i].duplicate();
+			}
+			int result = _channel.write(datagrams);
+			afterWrite(result, length, tap);
+		} catch (IOException io) {
+			_stats.increment(StatsEnum.WriteErrors);
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("Error sending packets: " + io.toString()));
+		}
+	}
+
 	// DKS TODO unthrown exception
 	private void writeInner(GenericXMLEncodable packet) throws ContentEncodingException {
 		try {
-			byte[] bytes = packet.encode();
-			ByteBuffer datagram = ByteBuffer.wrap(bytes);
-			synchronized (_channel) {
-				int result = _channel.write(datagram);
-				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
-					Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote datagram (" + datagram.position() + " bytes, result " + result + ")"));
+			// Encode before writing - we only hold the channel's write lock for the write itself
+			ByteBuffer datagram = _packetEncoder.get().encode(packet);
+			int length = datagram.remaining();
+			ByteBuffer [] tap = (null != _tapStreamOut) ? new ByteBuffer[]{datagram.duplicate()} : null;
+			int result = _channel.write(datagram);
+			afterWrite(result, length, tap);
+		} catch (IOException io) {
+			_stats.increment(StatsEnum.WriteErrors);
 
-				if( result < bytes.length ) {
-					_stats.increment(StatsEnum.WriteUnderflows);
-					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
-						Log.info(Log.FAC_NETMANAGER,
-								formatMessage("Wrote datagram {0} bytes to channel, but packet was {1} bytes"),
-								result,
-								bytes.length);
-				}
+			// We do not see errors on send typically even if
+			// agent is gone, so log each but do not track
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("Error sending packet: " + io.toString()));
+		}
+	}
+
+	private void afterWrite(int result, int length, ByteBuffer [] tap) {
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
+			Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote datagram (" + length + " bytes, result " + result + ")"));
+
+		if( result < length ) {
+			_stats.increment(StatsEnum.WriteUnderflows);
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
+				Log.info(Log.FAC_NETMANAGER,
+						formatMessage("Wrote datagram {0} bytes to channel, but packet was {1} bytes"),
+						result,
+						length);
+		}
 
+		if (null != tap) {
+			synchronized (_channel) {
 				if (null != _tapStreamOut) {
 					try {
-						_tapStreamOut.write(bytes);
+						_tapStreamOut.getChannel().write(tap);
 					} catch (IOException io) {
 						Log.warning(Log.FAC_NETMANAGER, formatMessage("Unable to write packet to tap stream for debugging"));
 					}
 				}
 			}
-		} catch (IOException io) {
-			_stats.increment(StatsEnum.WriteErrors);
-
-			// We do not see errors on send typically even if
-			// agent is gone, so log each but do not track
-			Log.warning(Log.FAC_NETMANAGER, formatMessage("Error sending packet: " + io.toString()));
 		}
 	}
 
@@ -1323,14 +1542,14 @@ public class NDNNetworkManager implements Runnable {
 
 					//	SystemConfiguration.logObject("Data from net:", co);
 
-					deliverContent(co);
+					verifyContent(co);
 				} else if (packet instanceof Interest) {
 					_stats.increment(StatsEnum.ReceiveInterest);
 					Interest interest = (Interest)	packet;
 					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
 						Log.finest(Log.FAC_NETMANAGER, formatMessage("Interest from net for port: " + _port + " {0}"), interest);
 					InterestRegistration oInterest = new InterestRegistration(interest, null, null);
-					deliverInterest(oInterest, interest);
+					dispatchInterest(oInterest, interest);
 				}  else { // for interests
 					_stats.increment(StatsEnum.ReceiveUnknown);
 				}
@@ -1350,6 +1569,118 @@ public class NDNNetworkManager implements Runnable {
 		Log.info(Log.FAC_NETMANAGER, formatMessage("Shutdown complete for port: " + _port));
 	}
 
+	/**
+	 * Deliver an interest, either directly or via the dispatch thread for the most specific filter
+	 * it matches
+	 * @param ireg
+	 */
+	protected void dispatchInterest(final InterestRegistration ireg, final Interest interest) {
+		if (null != _dispatcher) {
+			Entry<Filter> filter = _myFilters.getMatch(ireg.interest.name());
+			if (null != filter && dispatch(filter.name(), new Runnable() {
+					public void run() {
+						deliverInterest(ireg, interest);
+					}
+				}))
+				return;
+		}
+		awaitDrained();
+		deliverInterest(ireg, interest);
+	}
+
+	/**
+	 * Pass content to the verification stage, if there is one, to be dispatched once verified.
+	 * Otherwise dispatch it now. Called by the reader thread, which may block here while the
+	 * verification queue is full - that isn't running a handler, so the watchdog is told so.
+	 * @param co
+	 */
+	protected void verifyContent(final ContentObject co) throws InterruptedException {
+		VerificationStage verifier = _verifier;
+		if (null != verifier) {
+			boolean submitted;
+			_inHandler = false;
+			try {
+				submitted = verifier.submit(co, new Runnable() {
+						public void run() {
+							dispatchContent(co);
+						}
+					});
+			} finally {
+				_currentHandler++;
+				_inHandler = true;	// Do in this order
+			}
+			if (submitted)
+				return;
+		}
+		dispatchContent(co);
+	}
+
+	/**
+	 * Deliver content, either directly or via the dispatch thread for its name (without segment number)
+	 * @param co
+	 */
+	protected void dispatchContent(final ContentObject co) {
+		if (dispatch(SegmentationProfile.segmentRoot(co.name()), new Runnable() {
+				public void run() {
+					deliverContent(co);
+				}
+			}))
+			return;
+		awaitDrained();
+		deliverContent(co);
+	}
+
+	/**
+	 * Hand a delivery to a dispatch thread, recording queue statistics. Waits if the thread
+	 * for the prefix has a full queue.
+	 * @return false if there is no dispatcher and the delivery was not queued
+	 */
+	protected boolean dispatch(ContentName prefix, final Runnable delivery) {
+		final long queuedTime = System.nanoTime();
+		Runnable task = new Runnable() {
+			public void run() {
+				_stats.addSample(StatsEnum.DispatchQueueTime, System.nanoTime() - queuedTime);
+				delivery.run();
+			}
+		};
+		while (true) {
+			StripedDispatcher dispatcher = _dispatcher;
+			if (null == dispatcher)
+				return false;
+			try {
+				int depth = dispatcher.dispatch(prefix, task);
+				_stats.increment(StatsEnum.DispatchQueued);
+				_stats.addSample(StatsEnum.DispatchQueueDepth, depth);
+				return true;
+			} catch (RejectedExecutionException ree) {
+				// We've switched to a new dispatcher, which won't run anything until this one
+				// is done, or are shutting down
+				_stats.increment(StatsEnum.DispatchRejected);
+				if (!_run || Thread.currentThread().isInterrupted() || dispatcher == _dispatcher)
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * If we have just stopped using dispatch threads, wait for them to finish what they
+	 * had queued before calling a handler on this thread.
+	 */
+	protected void awaitDrained() {
+		StripedDispatcher draining = _draining;
+		if (null == draining || draining.isDispatchThread(Thread.currentThread()))
+			return;
+		try {
+			if (!draining.awaitTermination(SystemConfiguration.MAX_TIMEOUT))
+				Log.warning(Log.FAC_NETMANAGER, formatMessage("Dispatch threads still busy, calling handlers on reader thread anyway"));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (_draining == draining)
+			_draining = null;
+	}
+
 	/**
 	 * Internal delivery of interests to pending filter handlers
 	 * @param ireg
@@ -1396,6 +1727,15 @@ public class NDNNetworkManager implements Runnable {
 			t.setStackTrace(_thread.getStackTrace());
 			Log.logStackTrace(Log.FAC_NETMANAGER, Level.SEVERE, t);
 		}
+		for (StripedDispatcher dispatcher : new StripedDispatcher[] { _dispatcher, _draining }) {
+			if (null == dispatcher)
+				continue;
+			for (Thread thread : dispatcher.busyThreads(0)) {
+				Throwable t = new Throwable(message + " (" + thread.getName() + ")");
+				t.setStackTrace(thread.getStackTrace());
+				Log.logStackTrace(Log.FAC_NETMANAGER, Level.SEVERE, t);
+			}
+		}
 	}
 
 	protected PublisherPublicKeyDigest fetchNDNDId(NDNNetworkManager mgr, KeyManager keyManager) throws IOException {
@@ -1475,6 +1815,14 @@ public class NDNNetworkManager implements Runnable {
 		return _stats;
 	}
 
+	/**
+	 * @return the number distinguishing this network manager from others in the same process,
+	 * 	used in thread names and to label its statistics
+	 */
+	public int getId() {
+		return _managerId;
+	}
+
 	public enum StatsEnum implements IStatsEnum {
 		// ====================================
 		// Just edit this list, dont need to change anything else
@@ -1485,6 +1833,7 @@ public class NDNNetworkManager implements Runnable {
 		WriteObject ("calls", "The number of calls to write(ContentObject)"),
 		WriteErrors ("count", "Error count for writeInner()"),
 		WriteUnderflows ("count", "The count of times when the bytes written to the channel < buffer size"),
+		WriteBatch ("calls", "The number of calls to write a batch of packets"),
 
 		ExpressInterest ("calls", "The number of calls to expressInterest"),
 		CancelInterest ("calls", "The number of calls to cancelInterest"),
@@ -1498,6 +1847,11 @@ public class NDNNetworkManager implements Runnable {
 		InterestHandlerTime("nanos", "The average amount of time spent in interest handlers"),
 		ContentHandlerTime("nanos", "The average amount of time spent in content handlers"),
 
+		DispatchQueued ("packets", "The number of packets handed to dispatch threads"),
+		DispatchRejected ("packets", "The number of dispatches refused because the dispatcher was being replaced or shut down"),
+		DispatchQueueDepth ("packets", "The average number of packets waiting for dispatch threads"),
+		DispatchQueueTime ("nanos", "The average time packets wait for a dispatch thread"),
+
 		ReceiveObject ("objects", "Receive count of ContentObjects from channel"),
 		ReceiveInterest ("interests", "Receive count of Interests from channel"),
 		ReceiveUnknown ("calls", "Receive count of unknown type from channel"),
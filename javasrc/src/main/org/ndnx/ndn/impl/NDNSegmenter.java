@@ -29,6 +29,10 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 import javax.crypto.BadPaddingException;
@@ -42,6 +46,7 @@ import org.ndnx.ndn.impl.security.crypto.NDNAggregatedSigner;
 import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
 import org.ndnx.ndn.impl.security.crypto.NDNMerkleTreeSigner;
 import org.ndnx.ndn.impl.security.crypto.ContentKeys;
+import org.ndnx.ndn.impl.security.crypto.SigningThreadPool;
 import org.ndnx.ndn.impl.security.crypto.UnbufferedCipherInputStream;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.io.content.ContentEncodingException;
@@ -145,6 +150,12 @@ public class NDNSegmenter {
 	 */
 	protected ContentObject _firstSegment = null;
 
+	/**
+	 * A batch of blocks being signed on the signing threads, which has not yet been output
+	 * to the flow controller. See queueCurrentBlocks.
+	 */
+	protected Future<ContentObject[]> _signingBatch = null;
+
 	/**
 	 * Create a segmenter with default (Merkle hash tree) bulk signing
 	 * behavior, making a new handle for it to use.
@@ -508,8 +519,10 @@ public class NDNSegmenter {
 					new SignedInfo(publisher, timestamp, type, locator, freshnessSeconds, finalBlockID),
 					content, offset, length, blockWidth, keys, signingKey, null != finalSegmentIndex);
 
-		if (_blocks.size() >= HOLD_COUNT || null != finalSegmentIndex) {
+		if (null != finalSegmentIndex) {
 			outputCurrentBlocks(signingKey);
+		} else if (_blocks.size() >= HOLD_COUNT) {
+			queueCurrentBlocks(signingKey);
 		}
 
 		return nextSegmentIndex;
@@ -618,7 +631,7 @@ public class NDNSegmenter {
 								contentBlocks[i], 0, (i < firstBlockIndex + blockCount - 1)
 								?  contentBlocks[i].length : lastBlockLength, keys);
 			if (_blocks.size() >= HOLD_COUNT) {
-				outputCurrentBlocks(signingKey);
+				queueCurrentBlocks(signingKey);
 			}
 		}
 		if (flushNow || null != finalSegmentIndex) {
@@ -643,6 +656,8 @@ public class NDNSegmenter {
 	 * straight signature block in rare cases where only a single block is left over for the flush
 	 * after a bulk signing pass.
 	 *
+	 * Any batch still being signed by queueCurrentBlocks is output first.
+	 *
 	 * @param signingKey
 	 * @param finalFlush sign and dump everything if true
 	 * @throws InvalidKeyException
@@ -651,6 +666,7 @@ public class NDNSegmenter {
 	 * @throws IOException
 	 */
 	protected void outputCurrentBlocks(Key signingKey) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		outputSigningBatch();
 		if (_blocks.size() == 0)
 			return;
 
@@ -673,15 +689,110 @@ public class NDNSegmenter {
 			ContentObject[] blocks = new ContentObject[_blocks.size()];
 			_blocks.toArray(blocks);
 
-			if (Log.isLoggable(Log.FAC_IO, Level.INFO))
-				Log.info(Log.FAC_IO, "flush: putting merkle tree to the network, name starts with " + blocks[0].name() + "; "
-	                    + _blocks.size() + " blocks");
 			_bulkSigner.signBlocks(blocks, signingKey);
-			getFlowControl().put(blocks);
+			putBlocks(blocks);
 		}
 		_blocks.clear();
 	}
 
+	/**
+	 * Start signing the outstanding blocks on the signing threads (see SigningThreadPool) and
+	 * output the batch queued by the previous call, if any, to the flow controller while they are
+	 * signed. The new batch is output by the next call to this or outputCurrentBlocks. This lets
+	 * writers of large streams overlap signing with waiting for the flow controller.
+	 *
+	 * If there are no signing threads, or only one block, this is the same as outputCurrentBlocks.
+	 * Only one batch is signed at a time for each segmenter - the previous batch's signing is
+	 * finished before the new one is submitted - so the bulk signer is never used concurrently
+	 * by one segmenter.
+	 *
+	 * @param signingKey
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 * @throws NoSuchAlgorithmException
+	 * @throws IOException
+	 */
+	protected void queueCurrentBlocks(final Key signingKey) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		if (SigningThreadPool.threads() == 0 || _blocks.size() < 2) {
+			outputCurrentBlocks(signingKey);
+			return;
+		}
+
+		Future<ContentObject[]> previous = _signingBatch;
+		_signingBatch = null;
+		ContentObject[] signed = (null != previous) ? waitForBatch(previous) : null;
+
+		final ContentObject[] blocks = new ContentObject[_blocks.size()];
+		_blocks.toArray(blocks);
+		Future<ContentObject[]> batch;
+		try {
+			batch = SigningThreadPool.submit(new Callable<ContentObject[]>() {
+				public ContentObject[] call() throws Exception {
+					_bulkSigner.signBlocks(blocks, signingKey);
+					return blocks;
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			if (null != signed)
+				putBlocks(signed);
+			outputCurrentBlocks(signingKey);
+			return;
+		}
+		_blocks.clear();
+
+		_signingBatch = batch;
+		if (null != signed)
+			putBlocks(signed);
+	}
+
+	/**
+	 * Wait for the batch being signed by queueCurrentBlocks, if any, and output it to the
+	 * flow controller.
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 * @throws NoSuchAlgorithmException
+	 * @throws IOException
+	 */
+	protected void outputSigningBatch() throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		Future<ContentObject[]> batch = _signingBatch;
+		if (null == batch)
+			return;
+		_signingBatch = null;
+		putBlocks(waitForBatch(batch));
+	}
+
+	protected ContentObject[] waitForBatch(Future<ContentObject[]> batch) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		try {
+			return batch.get();
+		} catch (InterruptedException e) {
+			batch.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for segments to be signed");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InvalidKeyException)
+				throw (InvalidKeyException)cause;
+			if (cause instanceof SignatureException)
+				throw (SignatureException)cause;
+			if (cause instanceof NoSuchAlgorithmException)
+				throw (NoSuchAlgorithmException)cause;
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException("Unexpected exception signing segments: " + cause);
+		}
+	}
+
+	protected void putBlocks(ContentObject[] blocks) throws IOException {
+		if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+			Log.info(Log.FAC_IO, "flush: putting merkle tree to the network, name starts with " + blocks[0].name() + "; "
+                    + blocks.length + " blocks");
+		getFlowControl().put(blocks);
+	}
+
 	/**
 	 * Puts a single block of content of arbitrary length using a segment naming convention. The only
 	 * current use of this is to allow a Segmenter.put of less than a blocksize.
@@ -748,8 +859,10 @@ public class NDNSegmenter {
 
 		segmentNumber = newBlock(rootName, segmentNumber,
 				signedInfo, content, offset, length, keys);
-		if (_blocks.size() >= HOLD_COUNT + 1 || null != finalSegmentIndex)
+		if (null != finalSegmentIndex)
 			outputCurrentBlocks(signingKey);
+		else if (_blocks.size() >= HOLD_COUNT + 1)
+			queueCurrentBlocks(signingKey);
 
 		return segmentNumber;
 	}
@@ -814,8 +927,10 @@ public class NDNSegmenter {
 					co.contentLength());
 			offset += blockWidth;
 			length -= blockWidth;
-			if (_blocks.size() >= HOLD_COUNT + 1 || finalFlush) {
+			if (finalFlush) {
 				outputCurrentBlocks(signingKey);
+			} else if (_blocks.size() >= HOLD_COUNT + 1) {
+				queueCurrentBlocks(signingKey);
 			}
 		}
 		return nextSegmentIndex;
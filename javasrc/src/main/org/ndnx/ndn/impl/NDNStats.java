@@ -21,6 +21,8 @@
 package org.ndnx.ndn.impl;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
 
@@ -57,6 +59,13 @@ import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
  * of the Enums.  If you call addSample(item, value), then the item "item" will be
  * tagged as an averaging stat and the toString() method will format it as such.
  * 
+ * Averaging counters also keep a log-linear histogram of their samples so that
+ * percentiles (getPercentile) and the maximum can be reported - the mean hides the
+ * tail latencies which usually matter. Samples are added without locking, so the
+ * counters can be used on hot paths such as per packet handler timings. snapshot()
+ * takes a copy of all the counters, optionally resetting them, for reporting
+ * per interval values.
+ * 
  * Might want to add an EWMA type counter too.  I think we'll want to expand the
  * IStatsEnum to make it take a counter type argument.
  */
@@ -123,6 +132,30 @@ public abstract class NDNStats {
 	 */
 	public abstract double[] getAverageAndStdev(String name) throws IllegalArgumentException;
 
+	/**
+	 * The percentiles usually reported for an averaging counter
+	 */
+	public static final double [] REPORTED_PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+	/**
+	 * Return a percentile of the samples of an averaging counter. This
+	 * is accurate to within about 3% of the sample value.
+	 * 
+	 * @param name
+	 * @param percentile between 0 and 100
+	 * @return the percentile, NaN if there are no samples
+	 * @throws IllegalArgumentException if name unrecognized
+	 */
+	public abstract double getPercentile(String name, double percentile) throws IllegalArgumentException;
+
+	/**
+	 * Return the largest sample of an averaging counter
+	 * @param name
+	 * @return the maximum, NaN if there are no samples
+	 * @throws IllegalArgumentException if name unrecognized
+	 */
+	public abstract double getMaximum(String name) throws IllegalArgumentException;
+
 	/**
 	 * Return a text description of the units of the counter (e.g. packets, packets per second)
 	 * @param name
@@ -131,11 +164,30 @@ public abstract class NDNStats {
 	 */
 	public abstract String getCounterUnits(String name) throws IllegalArgumentException;
 
+	/**
+	 * Return a text description of what the counter counts
+	 * @param name
+	 * @return
+	 * @throws IllegalArgumentException if name unrecognized
+	 */
+	public abstract String getCounterDescription(String name) throws IllegalArgumentException;
+
 	/**
 	 * Reset all counters to zero
 	 */
 	public abstract void clearCounters();
 
+	/**
+	 * Take a copy of all the counters which won't change as more statistics are
+	 * gathered.
+	 * 
+	 * @param reset if true, also reset the counters to zero, so that successive snapshots
+	 * 		give the statistics for each interval. A sample added while this runs may
+	 * 		be split across intervals.
+	 * @return the copy
+	 */
+	public abstract NDNStats snapshot(boolean reset);
+
 	/**
 	 * Dump the counters in the preferred format to a String for display
 	 */
@@ -194,6 +246,17 @@ public abstract class NDNStats {
 			}
 		}
 
+		@Override
+		public NDNStats snapshot(boolean reset) {
+			NDNEnumStats<K> copy = new NDNEnumStats<K>(_resolver);
+			for(int i = 0; i < _counters.length; i++) {
+				copy._counters[i].set(reset ? _counters[i].getAndSet(0) : _counters[i].get());
+				_avgcounters[i].copyTo(copy._avgcounters[i], reset);
+			}
+			copy._enabled = false;
+			return copy;
+		}
+
 		@Override
 		public void clearCounters() {
 			for(AtomicLong al : _counters)
@@ -221,6 +284,18 @@ public abstract class NDNStats {
 			return _avgcounters[index].getAverageAndDeviation();
 		}
 
+		@Override
+		public double getPercentile(String name, double percentile) throws IllegalArgumentException {
+			int index = _resolver.getIndex(name);
+			return _avgcounters[index].getPercentile(percentile);
+		}
+
+		@Override
+		public double getMaximum(String name) throws IllegalArgumentException {
+			int index = _resolver.getIndex(name);
+			return _avgcounters[index].getMaximum();
+		}
+
 		@Override
 		public String [] getCounterNames() {
 			return _resolver.getNames();
@@ -232,6 +307,12 @@ public abstract class NDNStats {
 			return _resolver.getUnits(index);
 		}
 
+		@Override
+		public String getCounterDescription(String name) throws IllegalArgumentException {
+			int index = _resolver.getIndex(name);
+			return _resolver.getDescription(index);
+		}
+
 		@Override
 		public void setEnabled(boolean enabled) {
 			_enabled = enabled;	
@@ -312,78 +393,244 @@ public abstract class NDNStats {
 		 * deviation.  The sample standard deviation is:
 		 * 
 		 * 1/(N-1) * Sum(x_i - mean)^2 = N/(N-1) * ( 1/N * sum^2 - mean^2)
+		 * 
+		 * Also keeps a log-linear histogram of the samples for percentiles: values
+		 * below SUB_COUNT have a bucket each, and each power of 2 above that is split
+		 * into SUB_COUNT equal buckets, so a bucket is never wider than 1/SUB_COUNT of
+		 * the values in it. Negative samples are counted as 0 in the histogram.
+		 * 
+		 * To avoid contention the samples are spread over several cells by thread,
+		 * each holding the count, sum, sum^2, max and histogram for its samples.
+		 * Cells are only allocated once a thread adds a sample, as most counters
+		 * are never used as averaging counters.
 		 */
 		private static class AveragingCounter {
+			protected static final int SUB_BITS = 4;
+			protected static final int SUB_COUNT = 1 << SUB_BITS;
+			protected static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+			// Layout of a cell. The count is the total of the histogram.
+			protected static final int SUM = 0;
+			protected static final int SUM2 = 1;	// bits of a double since it can get large
+			protected static final int MAX = 2;
+			protected static final int HISTOGRAM = 3;
+
+			protected static final int CELLS;
+			static {
+				int cells = 1;
+				int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+				while (cells < processors)
+					cells <<= 1;
+				CELLS = cells;
+			}
+
+			protected final AtomicReferenceArray<AtomicLongArray> _cells = new AtomicReferenceArray<AtomicLongArray>(CELLS);
+
 			public AveragingCounter() {
-				clear();
 			}
 			
-			public synchronized void addSample(long sample) {
-				_sum += sample;
-				_sum2+= sample * sample;
-				_count++;
-				_dirty = true;
+			public void addSample(long sample) {
+				AtomicLongArray cell = cell();
+				cell.addAndGet(SUM, sample);
+				long bits;
+				do {
+					bits = cell.get(SUM2);
+				} while (!cell.compareAndSet(SUM2, bits,
+						Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + (double)sample * sample)));
+				long max;
+				do {
+					max = cell.get(MAX);
+				} while (sample > max && !cell.compareAndSet(MAX, max, sample));
+				cell.incrementAndGet(HISTOGRAM + bucket(sample));
 			}
 			
-			public synchronized void clear() {
-				_sum = 0;
-				_sum2= 0;
-				_count=0;
-				_dirty = true;
+			public void clear() {
+				for (int i = 0; i < CELLS; i++) {
+					AtomicLongArray cell = _cells.get(i);
+					if (null != cell)
+						reset(cell);
+				}
 			}
 			
 			/**
 			 * returns the [average, stdev] pair.  Both may be NaN if there
 			 * are not enough samples (need 1 for avg, 2 for stdev).
 			 */
-			public synchronized double[] getAverageAndDeviation() {
-				if(_dirty) {
-					calculate();
+			public double[] getAverageAndDeviation() {
+				long count = 0;
+				long sum = 0;
+				double sum2 = 0;
+				for (int i = 0; i < CELLS; i++) {
+					AtomicLongArray cell = _cells.get(i);
+					if (null != cell) {
+						count += count(cell);
+						sum += cell.get(SUM);
+						sum2 += Double.longBitsToDouble(cell.get(SUM2));
+					}
 				}
 				
-				// return a copy so values inside the array cannot be modified
 				double[] out = new double[2];
-				out[0] = _avg;
-				out[1] = _std;
+				out[0] = Double.NaN;
+				out[1] = Double.NaN;
+				if( count > 0 ) {
+					out[0] = (double) sum / count;
+					if( count > 1 ) {
+						double inner = sum2 / count - (out[0] * out[0]);
+						double var = (double) count / (count - 1) * inner;
+						out[1] = Math.sqrt(Math.max(var, 0.0));
+					}
+				}
 				return out;
 			}
 
-			public synchronized long getCount() {
-				return _count;
+			public long getCount() {
+				long count = 0;
+				for (int i = 0; i < CELLS; i++) {
+					AtomicLongArray cell = _cells.get(i);
+					if (null != cell)
+						count += count(cell);
+				}
+				return count;
 			}
-			
-			public synchronized String toString() {
-				if(_dirty) {
-					calculate();
+
+			public double getMaximum() {
+				boolean any = false;
+				long max = Long.MIN_VALUE;
+				for (int i = 0; i < CELLS; i++) {
+					AtomicLongArray cell = _cells.get(i);
+					if (null != cell && cell.get(MAX) != Long.MIN_VALUE) {
+						any = true;
+						max = Math.max(max, cell.get(MAX));
+					}
 				}
-				
-				return _string;
+				return any ? max : Double.NaN;
+			}
+
+			/**
+			 * Find the bucket holding the sample at the percentile and return the middle
+			 * of its range, but no more than the maximum.
+			 */
+			public double getPercentile(double percentile) {
+				long [] histogram = new long[BUCKETS];
+				long total = 0;
+				for (int i = 0; i < CELLS; i++) {
+					AtomicLongArray cell = _cells.get(i);
+					if (null == cell)
+						continue;
+					for (int b = 0; b < BUCKETS; b++) {
+						long n = cell.get(HISTOGRAM + b);
+						histogram[b] += n;
+						total += n;
+					}
+				}
+				if (total == 0)
+					return Double.NaN;
+				long rank = (long)Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * total);
+				if (rank < 1)
+					rank = 1;
+				long seen = 0;
+				for (int b = 0; b < BUCKETS; b++) {
+					seen += histogram[b];
+					if (seen >= rank) {
+						long low = bucketLow(b);
+						double value = low + (bucketWidth(b) - 1) / 2.0;
+						return Math.min(value, getMaximum());
+					}
+				}
+				return getMaximum();
+			}
+
+			/**
+			 * Add our samples to another counter, optionally resetting ourselves
+			 */
+			public void copyTo(AveragingCounter other, boolean reset) {
+				AtomicLongArray to = null;
+				for (int i = 0; i < CELLS; i++) {
+					AtomicLongArray cell = _cells.get(i);
+					if (null == cell || cell.get(MAX) == Long.MIN_VALUE)
+						continue;
+					if (null == to) {
+						to = new AtomicLongArray(HISTOGRAM + BUCKETS);
+						to.set(MAX, Long.MIN_VALUE);
+						other._cells.set(0, to);
+					}
+					to.addAndGet(SUM, reset ? cell.getAndSet(SUM, 0) : cell.get(SUM));
+					double sum2 = Double.longBitsToDouble(reset ? cell.getAndSet(SUM2, Double.doubleToRawLongBits(0.0)) : cell.get(SUM2));
+					to.set(SUM2, Double.doubleToRawLongBits(Double.longBitsToDouble(to.get(SUM2)) + sum2));
+					to.set(MAX, Math.max(to.get(MAX), reset ? cell.getAndSet(MAX, Long.MIN_VALUE) : cell.get(MAX)));
+					for (int b = 0; b < BUCKETS; b++) {
+						long n = reset ? cell.getAndSet(HISTOGRAM + b, 0) : cell.get(HISTOGRAM + b);
+						if (n != 0)
+							to.addAndGet(HISTOGRAM + b, n);
+					}
+				}
+			}
+
+			public String toString() {
+				double [] avgstd = getAverageAndDeviation();
+				StringBuilder sb = new StringBuilder(String.format("avg %.3g stdev %.3g", avgstd[0], avgstd[1]));
+				for (double percentile : REPORTED_PERCENTILES)
+					sb.append(String.format(" p%s %.3g", percentileLabel(percentile), getPercentile(percentile)));
+				sb.append(String.format(" max %.3g", getMaximum()));
+				return sb.toString();
 			}
 			
 			// ============================
-			private boolean _dirty = false;
-			private long _sum;
-			private long _sum2;
-			private long _count;
-			private double _avg, _std;
-			private String _string;
-			
-			// must be called in a synchronized method
-			private void calculate() {
-				_avg = Double.NaN;
-				_std = Double.NaN;
-				if( _count > 0 ) {
-					_avg = (double) _sum / _count;
-					
-					if( _count > 1 ) {
-						double inner = (double) _sum2 / _count - (_avg * _avg);
-						double var = _count/(_count-1) * inner ;
-						_std = Math.sqrt(var);
-					}
+			protected AtomicLongArray cell() {
+				int index = (int)Thread.currentThread().getId() & (CELLS - 1);
+				AtomicLongArray cell = _cells.get(index);
+				if (null == cell) {
+					cell = new AtomicLongArray(HISTOGRAM + BUCKETS);
+					cell.set(MAX, Long.MIN_VALUE);
+					if (!_cells.compareAndSet(index, null, cell))
+						cell = _cells.get(index);
 				}
-				
-				_string = String.format("avg %.3g stdev %.3g", _avg, _std);
-				_dirty = false;
+				return cell;
+			}
+
+			protected static long count(AtomicLongArray cell) {
+				long count = 0;
+				for (int b = 0; b < BUCKETS; b++)
+					count += cell.get(HISTOGRAM + b);
+				return count;
+			}
+
+			protected static void reset(AtomicLongArray cell) {
+				cell.set(SUM, 0);
+				cell.set(SUM2, Double.doubleToRawLongBits(0.0));
+				cell.set(MAX, Long.MIN_VALUE);
+				for (int b = 0; b < BUCKETS; b++)
+					cell.set(HISTOGRAM + b, 0);
+			}
+
+			protected static int bucket(long sample) {
+				if (sample < SUB_COUNT)
+					return sample < 0 ? 0 : (int)sample;
+				int exponent = 63 - Long.numberOfLeadingZeros(sample);
+				int sub = (int)(sample >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+				return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+			}
+
+			protected static long bucketLow(int bucket) {
+				if (bucket < SUB_COUNT)
+					return bucket;
+				int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+				long sub = bucket % SUB_COUNT;
+				return (SUB_COUNT | sub) << (exponent - SUB_BITS);
+			}
+
+			protected static long bucketWidth(int bucket) {
+				if (bucket < SUB_COUNT)
+					return 1;
+				return 1L << (bucket / SUB_COUNT - 1);
+			}
+
+			protected static String percentileLabel(double percentile) {
+				// 50 -> "50", 99.9 -> "999"
+				String label = Double.toString(percentile);
+				if (label.endsWith(".0"))
+					label = label.substring(0, label.length() - 2);
+				return label.replace(".", "");
 			}
 		}
 	}
@@ -0,0 +1,640 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStats.NDNCategorizedStatistics;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.support.Log;
+
+/**
+ * Exports the statistics of registered NDNStatistics and NDNCategorizedStatistics sources
+ * to monitoring tools, as JMX MBeans (see SystemConfiguration.STATS_JMX) and/or as text in the
+ * Prometheus exposition format served from a port on the loopback interface
+ * (see SystemConfiguration.STATS_PORT).
+ *
+ * Sources register with a type, which names the MBean type and prefixes the exported metric
+ * names, and optionally with pairs of label names and values to tell instances apart, such as the
+ * network manager ("handle") or repository they belong to. Categorized sources also give a label
+ * for their categories, typically "prefix".
+ *
+ * Counters are only read when a JMX client or scraper asks for them, so registration adds nothing
+ * to the cost of counting. Sources are held by weak reference and are dropped once collected, but
+ * long lived sources should unregister when they shut down.
+ */
+public class NDNStatsRegistry {
+
+	public static final String JMX_DOMAIN = "org.ndnx.ndn";
+	public static final String METRIC_PREFIX = "ndnx_";
+	public static final String SUMMARY_ATTRIBUTE = "Summary";
+
+	protected static final int SCRAPE_BACKLOG = 8;
+	protected static final int SCRAPE_TIMEOUT = 5000; // ms
+
+	/**
+	 * A registered source of statistics
+	 */
+	protected static class Source {
+		protected final String _type;
+		protected final String _categoryLabel;
+		protected final String [] _labels;
+		protected final WeakReference<Object> _source;
+		protected final int _id;
+		protected ObjectName _objectName = null;
+
+		protected Source(String type, String categoryLabel, Object source, String [] labels) {
+			if (null == type || null == source)
+				throw new IllegalArgumentException("Statistics must have a type and a source");
+			if (null == labels)
+				labels = new String[0];
+			if (labels.length % 2 != 0)
+				throw new IllegalArgumentException("Statistics labels must be name, value pairs: " + type);
+			_type = type;
+			_categoryLabel = categoryLabel;
+			_labels = new String[labels.length];
+			for (int i = 0; i < labels.length; i++)
+				_labels[i] = (null == labels[i]) ? "" : labels[i];
+			_source = new WeakReference<Object>(source);
+			_id = _nextId.getAndIncrement();
+		}
+
+		/**
+		 * @return the type and labels, which should tell this source apart from others
+		 */
+		protected String key() {
+			StringBuilder sb = new StringBuilder(_type);
+			for (String label : _labels)
+				sb.append('\0').append(label);
+			return sb.toString();
+		}
+
+		protected boolean isLive() {
+			return null != _source.get();
+		}
+
+		/**
+		 * @return the statistics of the source keyed by category, with a single null key if the
+		 * 		source isn't categorized. null if the source has been collected.
+		 */
+		protected Map<String, NDNStats> statsByCategory() {
+			Object source = _source.get();
+			if (null == source)
+				return null;
+			LinkedHashMap<String, NDNStats> result = new LinkedHashMap<String, NDNStats>();
+			if (null == _categoryLabel) {
+				NDNStats stats = ((NDNStatistics)source).getStats();
+				if (null != stats)
+					result.put(null, stats);
+			} else {
+				NDNCategorizedStatistics categorized = (NDNCategorizedStatistics)source;
+				Object [] categories = categorized.getCategoryNames();
+				if (null != categories) {
+					for (Object category : categories) {
+						NDNStats stats = categorized.getStatsByName(category);
+						if (null != stats)
+							result.put(category.toString(), stats);
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Presents a source as an MBean. The attributes are the plain counters by name, and the
+	 * mean, deviation, percentiles and maximum of averaging counters as "counter.avg",
+	 * "counter.p99" and so on - prefixed by "category:" for categorized sources - plus a
+	 * text summary of all the counters. As averaging counters are only recognised once they have
+	 * samples, and categories come and go, the attributes may change between calls to getMBeanInfo.
+	 */
+	protected static class SourceMBean implements DynamicMBean {
+		protected final Source _source;
+
+		protected SourceMBean(Source source) {
+			_source = source;
+		}
+
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Object value = attributes(_source).get(attribute);
+			if (null == value)
+				throw new AttributeNotFoundException(attribute);
+			return value;
+		}
+
+		public AttributeList getAttributes(String [] names) {
+			Map<String, Object> values = attributes(_source);
+			AttributeList result = new AttributeList();
+			for (String name : names) {
+				Object value = values.get(name);
+				if (null != value)
+					result.add(new Attribute(name, value));
+			}
+			return result;
+		}
+
+		public MBeanInfo getMBeanInfo() {
+			Map<String, Object> values = attributes(_source);
+			MBeanAttributeInfo [] infos = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				infos[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+						entry.getKey(), true, false, false);
+			}
+			return new MBeanInfo(getClass().getName(), "NDN statistics for " + _source._type, infos,
+					null, new MBeanOperationInfo[0], null);
+		}
+
+		public Object invoke(String action, Object [] params, String [] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(action));
+		}
+
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Statistics are read only: " + attribute.getName());
+		}
+
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+	}
+
+	/**
+	 * One metric in the text exposition - its samples must be written together
+	 */
+	protected static class Family {
+		protected final String _type;
+		protected final String _help;
+		protected final StringBuilder _samples = new StringBuilder();
+
+		protected Family(String type, String help) {
+			_type = type;
+			_help = help;
+		}
+	}
+
+	protected static final ArrayList<Source> _sources = new ArrayList<Source>();
+	protected static MBeanServer _mbeanServer = null;
+	protected static ServerSocket _scrapeServer = null;
+	protected static final AtomicInteger _nextId = new AtomicInteger(1);
+
+	static {
+		if (SystemConfiguration.STATS_JMX)
+			enableJmx();
+		if (SystemConfiguration.STATS_PORT > 0) {
+			try {
+				startScrapeServer(SystemConfiguration.STATS_PORT);
+			} catch (IOException e) {
+				Log.warning(Log.FAC_DEFAULT, "Cannot serve statistics on port {0}: {1}", SystemConfiguration.STATS_PORT, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Register a source of statistics
+	 *
+	 * @param type		names the source's kind, e.g. "NetworkManager"
+	 * @param source	the source
+	 * @param labels	label names and values identifying this instance, e.g. "handle", "3"
+	 */
+	public static void register(String type, NDNStatistics source, String... labels) {
+		add(new Source(type, null, source, labels));
+	}
+
+	/**
+	 * Register a source of statistics kept by category
+	 *
+	 * @param type			names the source's kind
+	 * @param categoryLabel	the label name for categories, e.g. "prefix"
+	 * @param source		the source
+	 * @param labels		label names and values identifying this instance
+	 */
+	public static void register(String type, String categoryLabel, NDNCategorizedStatistics source, String... labels) {
+		if (null == categoryLabel)
+			throw new IllegalArgumentException("Categorized statistics need a category label: " + type);
+		add(new Source(type, categoryLabel, source, labels));
+	}
+
+	/**
+	 * Stop exporting the statistics of a source
+	 * @param source a previously registered source. Ignored if not registered.
+	 */
+	public static synchronized void unregister(Object source) {
+		Iterator<Source> it = _sources.iterator();
+		while (it.hasNext()) {
+			Source s = it.next();
+			Object o = s._source.get();
+			if (null == o || o == source) {
+				it.remove();
+				unregisterMBean(s);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of sources currently registered
+	 */
+	public static synchronized int size() {
+		purge();
+		return _sources.size();
+	}
+
+	/**
+	 * Register all current and future sources as MBeans with the platform MBean server
+	 */
+	public static synchronized void enableJmx() {
+		if (null != _mbeanServer)
+			return;
+		_mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		purge();
+		for (Source s : _sources)
+			registerMBean(s);
+	}
+
+	/**
+	 * Remove all the sources' MBeans from the platform MBean server
+	 */
+	public static synchronized void disableJmx() {
+		if (null == _mbeanServer)
+			return;
+		for (Source s : _sources)
+			unregisterMBean(s);
+		_mbeanServer = null;
+	}
+
+	/**
+	 * @param source a registered source
+	 * @return the name of the source's MBean, or null if the source isn't registered or JMX is not enabled
+	 */
+	public static synchronized ObjectName getObjectName(Object source) {
+		for (Source s : _sources) {
+			if (s._source.get() == source)
+				return s._objectName;
+		}
+		return null;
+	}
+
+	/**
+	 * Serve the statistics as text in the Prometheus exposition format, in response to any GET
+	 * request on a port on the loopback interface. Stops any server already running.
+	 *
+	 * @param port	the port to listen on, 0 for any free port
+	 * @return		the port listened on
+	 * @throws IOException if the port can't be bound
+	 */
+	public static synchronized int startScrapeServer(int port) throws IOException {
+		stopScrapeServer();
+		final ServerSocket server = new ServerSocket(port, SCRAPE_BACKLOG, InetAddress.getByName(null));
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				serve(server);
+			}
+		}, "NDNStatsRegistry scrape " + server.getLocalPort());
+		thread.setDaemon(true);
+		thread.start();
+		_scrapeServer = server;
+		if (Log.isLoggable(Log.FAC_DEFAULT, Level.INFO))
+			Log.info(Log.FAC_DEFAULT, "Serving statistics on port {0}", server.getLocalPort());
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Stop serving the statistics as text
+	 */
+	public static synchronized void stopScrapeServer() {
+		if (null == _scrapeServer)
+			return;
+		try {
+			_scrapeServer.close();
+		} catch (IOException e) {
+			// Ignore since we're stopping
+		}
+		_scrapeServer = null;
+	}
+
+	/**
+	 * @return the statistics of all registered sources in the Prometheus text exposition format
+	 */
+	public static String scrape() {
+		TreeMap<String, Family> families = new TreeMap<String, Family>();
+		ArrayList<Source> sources = liveSources();
+		// Sources which can't be told apart by their labels, as JMX does, are given an id label
+		HashSet<String> keys = new HashSet<String>();
+		HashSet<String> duplicateKeys = new HashSet<String>();
+		for (Source s : sources) {
+			if (!keys.add(s.key()))
+				duplicateKeys.add(s.key());
+		}
+		for (Source s : sources) {
+			Map<String, NDNStats> all = s.statsByCategory();
+			if (null == all)
+				continue;
+			boolean needsId = duplicateKeys.contains(s.key());
+			for (Map.Entry<String, NDNStats> entry : all.entrySet()) {
+				NDNStats stats = entry.getValue();
+				String labels = labels(s, entry.getKey(), needsId);
+				for (String counter : stats.getCounterNames()) {
+					String name = metricName(s._type, counter);
+					String help = stats.getCounterDescription(counter) + " (" + stats.getCounterUnits(counter) + ")";
+					// A counter which only has samples in some instances is reported as a summary,
+					// dropping the plain values of the instances without samples
+					if (stats.isAveragingCounter(counter)) {
+						Family family = family(families, name, "summary", help);
+						if (!family._type.equals("summary")) {
+							family = new Family("summary", help);
+							families.put(name, family);
+						}
+						for (double percentile : NDNStats.REPORTED_PERCENTILES) {
+							String quantile = new BigDecimal(Double.toString(percentile)).movePointLeft(2).stripTrailingZeros().toPlainString();
+							sample(family, name, withLabel(labels, "quantile", quantile), stats.getPercentile(counter, percentile));
+						}
+						sample(family(families, name + "_avg", "gauge", help), name + "_avg", labels, stats.getAverageAndStdev(counter)[0]);
+						sample(family(families, name + "_max", "gauge", help), name + "_max", labels, stats.getMaximum(counter));
+					} else {
+						Family family = family(families, name, "untyped", help);
+						if (family._type.equals("summary"))
+							continue;
+						family._samples.append(name).append(labels).append(' ').append(stats.getCounter(counter)).append('\n');
+					}
+				}
+			}
+		}
+
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<String, Family> entry : families.entrySet()) {
+			Family family = entry.getValue();
+			if (null != family._help)
+				result.append("# HELP ").append(entry.getKey()).append(' ').append(family._help).append('\n');
+			result.append("# TYPE ").append(entry.getKey()).append(' ').append(family._type).append('\n');
+			result.append(family._samples);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Convert a type and counter name such as "NetworkManager" and "SendRequests" to a metric
+	 * name such as ndnx_network_manager_send_requests
+	 */
+	public static String metricName(String type, String counter) {
+		StringBuilder sb = new StringBuilder(METRIC_PREFIX);
+		appendSnakeCase(sb, type);
+		sb.append('_');
+		appendSnakeCase(sb, counter);
+		return sb.toString();
+	}
+
+	// ==============================================================
+	// Internal
+
+	protected static synchronized void add(Source source) {
+		purge();
+		_sources.add(source);
+		if (null != _mbeanServer)
+			registerMBean(source);
+	}
+
+	protected static synchronized ArrayList<Source> liveSources() {
+		purge();
+		return new ArrayList<Source>(_sources);
+	}
+
+	/**
+	 * Drop sources which have been collected. Called with the registry locked.
+	 */
+	protected static void purge() {
+		Iterator<Source> it = _sources.iterator();
+		while (it.hasNext()) {
+			Source s = it.next();
+			if (!s.isLive()) {
+				it.remove();
+				unregisterMBean(s);
+			}
+		}
+	}
+
+	/**
+	 * Called with the registry locked
+	 */
+	protected static void registerMBean(Source source) {
+		StringBuilder name = new StringBuilder(JMX_DOMAIN);
+		name.append(":type=").append(source._type);
+		for (int i = 0; i < source._labels.length; i += 2)
+			name.append(',').append(source._labels[i]).append('=').append(ObjectName.quote(source._labels[i + 1]));
+		try {
+			ObjectName objectName = new ObjectName(name.toString());
+			try {
+				_mbeanServer.registerMBean(new SourceMBean(source), objectName);
+			} catch (InstanceAlreadyExistsException e) {
+				// Another instance with the same labels - tell them apart by id
+				objectName = new ObjectName(name.toString() + ",id=" + source._id);
+				_mbeanServer.registerMBean(new SourceMBean(source), objectName);
+			}
+			source._objectName = objectName;
+		} catch (JMException e) {
+			Log.warning(Log.FAC_DEFAULT, "Cannot register statistics MBean {0}: {1}", name, e.getMessage());
+		}
+	}
+
+	/**
+	 * Called with the registry locked
+	 */
+	protected static void unregisterMBean(Source source) {
+		if (null == _mbeanServer || null == source._objectName)
+			return;
+		try {
+			_mbeanServer.unregisterMBean(source._objectName);
+		} catch (JMException e) {
+			// Already gone
+		}
+		source._objectName = null;
+	}
+
+	protected static Map<String, Object> attributes(Source source) {
+		LinkedHashMap<String, Object> values = new LinkedHashMap<String, Object>();
+		Map<String, NDNStats> all = source.statsByCategory();
+		if (null == all)
+			return values;
+		StringBuilder summary = new StringBuilder();
+		for (Map.Entry<String, NDNStats> entry : all.entrySet()) {
+			NDNStats stats = entry.getValue();
+			String prefix = "";
+			if (null != entry.getKey()) {
+				prefix = entry.getKey() + ":";
+				summary.append(entry.getKey()).append('\n');
+			}
+			for (String counter : stats.getCounterNames()) {
+				if (stats.isAveragingCounter(counter)) {
+					double [] avg = stats.getAverageAndStdev(counter);
+					values.put(prefix + counter + ".avg", avg[0]);
+					values.put(prefix + counter + ".stdev", avg[1]);
+					for (double percentile : NDNStats.REPORTED_PERCENTILES)
+						values.put(prefix + counter + ".p" + new BigDecimal(Double.toString(percentile)).stripTrailingZeros().toPlainString().replace(".", ""),
+								stats.getPercentile(counter, percentile));
+					values.put(prefix + counter + ".max", stats.getMaximum(counter));
+				} else {
+					values.put(prefix + counter, stats.getCounter(counter));
+				}
+			}
+			summary.append(stats.toString());
+		}
+		values.put(SUMMARY_ATTRIBUTE, summary.toString());
+		return values;
+	}
+
+	protected static Family family(TreeMap<String, Family> families, String name, String type, String help) {
+		Family family = families.get(name);
+		if (null == family) {
+			family = new Family(type, help);
+			families.put(name, family);
+		}
+		return family;
+	}
+
+	protected static void sample(Family family, String name, String labels, double value) {
+		family._samples.append(name).append(labels).append(' ');
+		if (Double.isNaN(value))
+			family._samples.append("NaN");
+		else if (Double.isInfinite(value))
+			family._samples.append(value > 0 ? "+Inf" : "-Inf");
+		else
+			family._samples.append(value);
+		family._samples.append('\n');
+	}
+
+	protected static String labels(Source source, String category, boolean withId) {
+		String labels = "";
+		for (int i = 0; i < source._labels.length; i += 2)
+			labels = withLabel(labels, source._labels[i], source._labels[i + 1]);
+		if (withId)
+			labels = withLabel(labels, "id", Integer.toString(source._id));
+		if (null != category)
+			labels = withLabel(labels, source._categoryLabel, category);
+		return labels;
+	}
+
+	protected static String withLabel(String labels, String name, String value) {
+		StringBuilder sb = new StringBuilder();
+		if (labels.length() == 0)
+			sb.append('{');
+		else
+			sb.append(labels, 0, labels.length() - 1).append(',');
+		sb.append(name).append("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\': sb.append("\\\\"); break;
+			case '"': sb.append("\\\""); break;
+			case '\n': sb.append("\\n"); break;
+			default: sb.append(c);
+			}
+		}
+		return sb.append("\"}").toString();
+	}
+
+	protected static void appendSnakeCase(StringBuilder sb, String name) {
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				if (i > 0 && (Character.isLowerCase(name.charAt(i - 1)) || Character.isDigit(name.charAt(i - 1))))
+					sb.append('_');
+				sb.append(Character.toLowerCase(c));
+			} else if (Character.isLetterOrDigit(c) && c < 128) {
+				sb.append(c);
+			} else {
+				sb.append('_');
+			}
+		}
+	}
+
+	protected static void serve(ServerSocket server) {
+		while (!server.isClosed()) {
+			Socket socket = null;
+			try {
+				socket = server.accept();
+				socket.setSoTimeout(SCRAPE_TIMEOUT);
+				respond(socket);
+			} catch (IOException e) {
+				if (!server.isClosed() && Log.isLoggable(Log.FAC_DEFAULT, Level.FINE))
+					Log.fine(Log.FAC_DEFAULT, "Error serving statistics: {0}", e.getMessage());
+			} finally {
+				if (null != socket) {
+					try {
+						socket.close();
+					} catch (IOException e) {}
+				}
+			}
+		}
+	}
+
+	protected static void respond(Socket socket) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+		String request = in.readLine();
+		String line;
+		while (null != (line = in.readLine()) && line.length() > 0)
+			; // skip the headers
+
+		String status = "200 OK";
+		byte [] body;
+		if (null != request && request.startsWith("GET ")) {
+			body = scrape().getBytes("UTF-8");
+		} else {
+			status = "405 Method Not Allowed";
+			body = new byte[0];
+		}
+		OutputStream out = socket.getOutputStream();
+		out.write(("HTTP/1.0 " + status + "\r\n"
+				+ "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+				+ "Content-Length: " + body.length + "\r\n"
+				+ "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+		out.write(body);
+		out.flush();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.ndnx.ndn.impl.support.ByteArrayCompare;
+import org.ndnx.ndn.protocol.ContentName;
+
+/**
+ * An InterestTable which keeps a component trie of the names in the table, so that
+ * lookups for a ContentObject or ContentName only visit the names which are prefixes
+ * of the target, rather than every name in the table.
+ *
+ * The trie is only an index - the names and their entries are still held in _contents, so
+ * the Entry, duplicate and LRU capacity semantics are exactly those of InterestTable. Matches are
+ * also returned in the same (longest first) order.
+ *
+ * This is worth using for tables which may hold many names, such as the pending interests
+ * of a network manager with pipelined readers.
+ */
+public class PrefixIndexedInterestTable<V> extends InterestTable<V> {
+
+	protected static final ByteArrayCompare _componentComparator = new ByteArrayCompare();
+
+	/**
+	 * Trie node for one name component. _name is non-null if the name ending at this
+	 * node is a key in the table.
+	 */
+	protected static class TrieNode {
+		protected final TrieNode _parent;
+		protected final byte [] _component;
+		protected TreeMap<byte [], TrieNode> _children = null;
+		protected ContentName _name = null;
+
+		protected TrieNode(TrieNode parent, byte [] component) {
+			_parent = parent;
+			_component = component;
+		}
+
+		protected TrieNode child(byte [] component) {
+			if (null == _children)
+				return null;
+			return _children.get(component);
+		}
+
+		protected boolean isEmpty() {
+			return null == _name && (null == _children || _children.size() == 0);
+		}
+	}
+
+	protected TrieNode _root = new TrieNode(null, null);
+
+	@Override
+	protected void putName(ContentName name, List<Holder<V>> list) {
+		super.putName(name, list);
+		TrieNode node = _root;
+		for (int i = 0; i < name.count(); i++) {
+			byte [] component = name.component(i);
+			TrieNode child = node.child(component);
+			if (null == child) {
+				if (null == node._children)
+					node._children = new TreeMap<byte [], TrieNode>(_componentComparator);
+				child = new TrieNode(node, component);
+				node._children.put(component, child);
+			}
+			node = child;
+		}
+		node._name = name;
+	}
+
+	@Override
+	protected void removeName(ContentName name) {
+		super.removeName(name);
+		TrieNode node = findNode(name);
+		if (null == node)
+			return;
+		node._name = null;
+
+		// Prune nodes which no longer lead to any name
+		while (node != _root && node.isEmpty()) {
+			node._parent._children.remove(node._component);
+			node = node._parent;
+		}
+	}
+
+	/**
+	 * Only the names along the path of the target through the trie can be prefixes of it.
+	 * If requested, the names one component below the target are also returned as they may
+	 * match a ContentObject by its digest - the Interest match will check that.
+	 */
+	@Override
+	protected Collection<ContentName> candidateNames(ContentName target, boolean includeDigest) {
+		ArrayList<ContentName> path = new ArrayList<ContentName>();
+		TrieNode node = _root;
+		if (null != node._name)
+			path.add(node._name);
+		int i = 0;
+		for (; i < target.count(); i++) {
+			node = node.child(target.component(i));
+			if (null == node)
+				break;
+			if (null != node._name)
+				path.add(node._name);
+		}
+
+		// Reverse to get longest first
+		ArrayList<ContentName> result = new ArrayList<ContentName>(path.size() + 1);
+		if (includeDigest && i == target.count() && null != node._children) {
+			for (TrieNode child : node._children.values()) {
+				if (null != child._name)
+					result.add(child._name);
+			}
+		}
+		for (int j = path.size() - 1; j >= 0; j--)
+			result.add(path.get(j));
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (_contents) {
+			super.clear();
+			_root = new TrieNode(null, null);
+		}
+	}
+
+	protected TrieNode findNode(ContentName name) {
+		TrieNode node = _root;
+		for (int i = 0; i < name.count() && null != node; i++)
+			node = node.child(name.component(i));
+		return node;
+	}
+}
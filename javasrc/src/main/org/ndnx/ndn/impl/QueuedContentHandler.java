@@ -20,20 +20,106 @@
 
 package org.ndnx.ndn.impl;
 
+import java.util.LinkedList;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.support.Log;
 
 /**
  * Asynchronously process data from a ContentHandler in cases in which there may be a
  * processing delay in order to allow the netmanager thread to continue to fetch data.
  * A new processing thread is started only when necessary.
+ *
+ * By default data is processed one at a time in the order it was added. Alternatively
+ * startWorkers() switches to a fixed set of worker threads sharing a bounded queue - when
+ * the queue is full the oldest entry is dropped to make room, and entries which have waited
+ * too long are dropped unprocessed.
  */
 public abstract class QueuedContentHandler<E> implements Runnable {
 	protected Queue<E> _queue = new ConcurrentLinkedQueue<E>();
 	protected boolean _isRunning = false;
 
+	protected static class Queued<E> {
+		protected final E _e;
+		protected final long _queuedTime = System.nanoTime();
+
+		protected Queued(E e) {
+			_e = e;
+		}
+	}
+
+	protected final Object _workLock = new Object();
+	protected LinkedList<Queued<E>> _workQueue = null;
+	protected Thread [] _workers = null;
+	protected int _capacity;
+	protected long _maxWait;
+	protected volatile boolean _workersRunning = false;
+
+	/**
+	 * Process data on a set of worker threads rather than one at a time. Must be called
+	 * before anything is added.
+	 *
+	 * @param name		used to name the worker threads
+	 * @param threads	number of worker threads, must be at least 1
+	 * @param capacity	most entries waiting to be processed, beyond this the oldest are dropped
+	 * @param maxWait	entries which have waited longer than this (in ms) are dropped rather
+	 * 					than processed, 0 to process everything. See maxWait(E)
+	 */
+	public void startWorkers(String name, int threads, int capacity, long maxWait) {
+		if (threads < 1)
+			throw new IllegalArgumentException("QueuedContentHandler needs at least one worker: " + threads);
+		if (capacity < 1)
+			throw new IllegalArgumentException("QueuedContentHandler needs a capacity of at least one: " + capacity);
+		_capacity = capacity;
+		_maxWait = maxWait * 1000000L;
+		_workQueue = new LinkedList<Queued<E>>();
+		_workersRunning = true;
+		_workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			_workers[i] = new Thread(new Runnable() {
+				public void run() {
+					workLoop();
+				}
+			}, name + " worker " + i);
+			_workers[i].setDaemon(true);
+			_workers[i].start();
+		}
+	}
+
+	/**
+	 * Stop the worker threads, discarding anything not yet processed. Data being processed
+	 * is allowed to finish.
+	 */
+	public void stopWorkers() {
+		if (null == _workers)
+			return;
+		synchronized (_workLock) {
+			_workersRunning = false;
+			_workQueue.clear();
+			_workLock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return the number of entries waiting for a worker, 0 if not using workers
+	 */
+	public int queueDepth() {
+		if (null == _workers)
+			return 0;
+		synchronized (_workLock) {
+			return _workQueue.size();
+		}
+	}
+
+	/**
+	 * @return the number of worker threads, 0 if not using workers
+	 */
+	public int workers() {
+		return (null == _workers) ? 0 : _workers.length;
+	}
+
 	/**
 	 * Add a content object to the queue for processing. If we aren't running a processing
 	 * thread right now, start one.
@@ -41,6 +127,20 @@ public abstract class QueuedContentHandler<E> implements Runnable {
 	 * @param ci encapsulated data from a content handler
 	 */
 	public void add(E e) {
+		if (null != _workers) {
+			Queued<E> dropped = null;
+			synchronized (_workLock) {
+				if (!_workersRunning)
+					return;
+				if (_workQueue.size() >= _capacity)
+					dropped = _workQueue.removeFirst();
+				_workQueue.add(new Queued<E>(e));
+				_workLock.notify();
+			}
+			if (null != dropped)
+				dropped(dropped._e, false);
+			return;
+		}
 		_queue.add(e);
 		if (!_isRunning) {
 			_isRunning = true;
@@ -63,6 +163,67 @@ public abstract class QueuedContentHandler<E> implements Runnable {
 		}
 	}
 
+	protected void workLoop() {
+		while (_workersRunning && !checkShutdown()) {
+			Queued<E> q;
+			synchronized (_workLock) {
+				while (_workersRunning && _workQueue.isEmpty()) {
+					try {
+						_workLock.wait();
+					} catch (InterruptedException ie) {}
+				}
+				if (!_workersRunning)
+					return;
+				q = _workQueue.removeFirst();
+			}
+			long start = System.nanoTime();
+			long waited = start - q._queuedTime;
+			long maxWait = maxWait(q._e);
+			if (maxWait > 0 && waited > maxWait) {
+				dropped(q._e, true);
+				continue;
+			}
+			try {
+				process(q._e);
+			} catch (RuntimeException re) {
+				Log.warning("QueuedContentHandler: unexpected {0} processing {1}: {2}", re.getClass().getName(), q._e, re.getMessage());
+				Log.warningStackTrace(re);
+			}
+			processed(q._e, waited, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * How long data may wait for a worker before it is dropped. Override for a limit
+	 * which depends on the data.
+	 *
+	 * @param e		the data
+	 * @return nanoseconds, 0 for no limit. By default the maxWait given to startWorkers()
+	 */
+	protected long maxWait(E e) {
+		return _maxWait;
+	}
+
+	/**
+	 * Called by a worker after processing data. Override to collect statistics.
+	 *
+	 * @param e			the data
+	 * @param waitTime	nanoseconds it waited for a worker
+	 * @param serviceTime	nanoseconds it took to process
+	 */
+	protected void processed(E e, long waitTime, long serviceTime) {
+	}
+
+	/**
+	 * Called when data is dropped without being processed by the workers.
+	 *
+	 * @param e			the data
+	 * @param expired	true if it waited longer than maxWait, false if it was pushed out of
+	 * 					a full queue
+	 */
+	protected void dropped(E e, boolean expired) {
+	}
+
 	/**
 	 * Override for different behavior
 	 * @return
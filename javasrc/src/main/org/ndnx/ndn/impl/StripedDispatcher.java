@@ -0,0 +1,252 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.support.Log;
+
+/**
+ * Runs tasks on a fixed set of single threaded "stripes". Each task is given a key and all
+ * tasks with equal keys run on the same stripe, so tasks for one key are run one at a time in the
+ * order they were dispatched while tasks for different keys may run concurrently.
+ *
+ * Each stripe queues at most a fixed number of tasks; beyond that dispatch() blocks until the
+ * stripe catches up, so a slow task holds up whoever is dispatching rather than letting the
+ * queue grow without limit.
+ *
+ * A dispatcher can take over from a previous one: its stripes don't start running tasks until
+ * the previous dispatcher has run everything it had queued, so tasks for a key are still run in
+ * order across the switch.
+ *
+ * Used by NDNNetworkManager to run handler callbacks off the network reader thread, keyed
+ * by name prefix.
+ */
+public class StripedDispatcher {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	protected class Stripe implements Runnable {
+		protected final LinkedBlockingQueue<Runnable> _queue;
+		protected final Thread _thread;
+		protected volatile long _taskStart = 0;	// when the running task started, 0 if none
+
+		protected Stripe(String name, int capacity) {
+			_queue = new LinkedBlockingQueue<Runnable>(capacity);
+			_thread = new Thread(this, name);
+			_thread.setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				if (null != _previous) {
+					while (!_previous.awaitTermination(SystemConfiguration.MAX_TIMEOUT))
+						Log.warning(Log.FAC_NETMANAGER, "{0} still waiting for the previous dispatcher to finish", _thread.getName());
+				}
+				while (true) {
+					Runnable task = _queue.poll(SystemConfiguration.MEDIUM_TIMEOUT, TimeUnit.MILLISECONDS);
+					if (null == task) {
+						// Nothing can be added once shut down and no dispatch is in progress
+						if (_shutdown && _dispatching.get() == 0 && _queue.isEmpty())
+							break;
+						continue;
+					}
+					_queued.decrementAndGet();
+					_taskStart = System.currentTimeMillis();
+					try {
+						task.run();
+					} catch (RuntimeException re) {
+						Log.warning(Log.FAC_NETMANAGER, "{0}: unexpected {1} running a task: {2}", _thread.getName(),
+								re.getClass().getName(), re.getMessage());
+						Log.warningStackTrace(Log.FAC_NETMANAGER, re);
+					} finally {
+						_taskStart = 0;
+					}
+					// A hung task may have been interrupted, that's not meant for us
+					if (Thread.interrupted() && _shutdownNow)
+						break;
+				}
+			} catch (InterruptedException ie) {
+				// shutdownNow
+			} finally {
+				_running.countDown();
+			}
+		}
+	}
+
+	protected final Stripe [] _stripes;
+	protected final AtomicInteger _queued = new AtomicInteger(0);
+	protected final AtomicInteger _dispatching = new AtomicInteger(0);
+	protected final StripedDispatcher _previous;
+	protected volatile boolean _shutdown = false;
+	protected volatile boolean _shutdownNow = false;
+	protected final CountDownLatch _running;
+
+	/**
+	 * @param name		used to name the dispatch threads
+	 * @param threads	number of stripes, must be at least 1
+	 */
+	public StripedDispatcher(String name, int threads) {
+		this(name, threads, DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * @param name		used to name the dispatch threads
+	 * @param threads	number of stripes, must be at least 1
+	 * @param capacity	most tasks queued on each stripe, must be at least 1
+	 * @param previous	if not null, a dispatcher being replaced - nothing is run until it has
+	 * 					been shut down and has run everything it had queued
+	 */
+	public StripedDispatcher(String name, int threads, int capacity, StripedDispatcher previous) {
+		if (threads < 1)
+			throw new IllegalArgumentException("StripedDispatcher needs at least one thread: " + threads);
+		if (capacity < 1)
+			throw new IllegalArgumentException("StripedDispatcher needs a capacity of at least one: " + capacity);
+		_previous = previous;
+		_running = new CountDownLatch(threads);
+		_stripes = new Stripe[threads];
+		for (int i = 0; i < threads; i++)
+			_stripes[i] = new Stripe(name + " dispatch " + i, capacity);
+		for (Stripe stripe : _stripes)
+			stripe._thread.start();
+	}
+
+	/**
+	 * Queue a task on the stripe for a key, waiting for room if the stripe is full
+	 *
+	 * @param key	tasks with equal keys are run in order on the same thread
+	 * @param task	the task to run
+	 * @return		the number of tasks queued across all stripes, including this one
+	 * @throws RejectedExecutionException if the dispatcher has been shut down, or we were
+	 * 	interrupted waiting for room
+	 */
+	public int dispatch(Object key, Runnable task) throws RejectedExecutionException {
+		_dispatching.incrementAndGet();
+		try {
+			if (_shutdown)
+				throw new RejectedExecutionException("StripedDispatcher has been shut down");
+			Stripe stripe = _stripes[stripe(key)];
+			int depth = _queued.incrementAndGet();
+			try {
+				while (!stripe._queue.offer(task, SystemConfiguration.MEDIUM_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					if (_shutdown)
+						throw new RejectedExecutionException("StripedDispatcher has been shut down");
+				}
+			} catch (InterruptedException ie) {
+				_queued.decrementAndGet();
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted waiting to dispatch", ie);
+			} catch (RejectedExecutionException ree) {
+				_queued.decrementAndGet();
+				throw ree;
+			}
+			return depth;
+		} finally {
+			_dispatching.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the number of tasks waiting to run across all stripes
+	 */
+	public int queueDepth() {
+		return _queued.get();
+	}
+
+	/**
+	 * @return the number of stripes
+	 */
+	public int threads() {
+		return _stripes.length;
+	}
+
+	/**
+	 * Find the stripes which have been running a task for a while, for example to report on a
+	 * handler which isn't returning.
+	 *
+	 * @param time	how long in ms a task must have been running, 0 for any running task
+	 * @return the threads of those stripes
+	 */
+	public List<Thread> busyThreads(long time) {
+		ArrayList<Thread> busy = new ArrayList<Thread>();
+		long now = System.currentTimeMillis();
+		for (Stripe stripe : _stripes) {
+			long start = stripe._taskStart;
+			if (start != 0 && now - start >= time)
+				busy.add(stripe._thread);
+		}
+		return busy;
+	}
+
+	/**
+	 * @return true if this is one of our stripe threads
+	 */
+	public boolean isDispatchThread(Thread thread) {
+		for (Stripe stripe : _stripes) {
+			if (stripe._thread == thread)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stop accepting new tasks. Tasks already queued are still run.
+	 */
+	public void shutdown() {
+		_shutdown = true;
+	}
+
+	/**
+	 * Stop accepting new tasks, discard any queued tasks and interrupt running ones.
+	 */
+	public void shutdownNow() {
+		_shutdown = true;
+		_shutdownNow = true;
+		for (Stripe stripe : _stripes) {
+			ArrayList<Runnable> discarded = new ArrayList<Runnable>();
+			stripe._queue.drainTo(discarded);
+			_queued.addAndGet(-discarded.size());
+			stripe._thread.interrupt();
+		}
+	}
+
+	/**
+	 * Wait for the stripes to finish once shut down
+	 *
+	 * @param timeout	ms to wait
+	 * @return true if every stripe has finished
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		return _running.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	protected int stripe(Object key) {
+		if (null == key)
+			return 0;
+		return (key.hashCode() & Integer.MAX_VALUE) % _stripes.length;
+	}
+}
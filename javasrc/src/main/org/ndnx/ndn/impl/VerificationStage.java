@@ -0,0 +1,358 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.logging.Level;
+
+import org.ndnx.ndn.KeyManager;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+
+/**
+ * Verifies the signatures of incoming ContentObjects on a set of worker threads before they
+ * are delivered, so that public key operations don't limit how fast a network manager can
+ * receive content.
+ *
+ * Objects are delivered in the order they were submitted, whatever order their verifications
+ * finish in, so handlers see content for each interest in the order it arrived. Workers take runs
+ * of consecutive objects from the same publisher and verify them together, so the publisher's key
+ * is only looked up once, and once the first segment of a bulk signed batch has been verified the
+ * rest are found in the VerifiedSignatureCache.
+ *
+ * Only keys already known to the KeyManager are used - the workers never go to the network for
+ * a key. Objects are delivered whether or not they verified; the stage doesn't replace the
+ * verification done by handlers, it does the expensive part early so that theirs is cheap.
+ *
+ * If capacity objects are waiting to be verified, waiting to be delivered or being delivered,
+ * submit blocks until there is room, pushing back on the reader.
+ */
+public class VerificationStage implements NDNStatistics {
+
+	/**
+	 * Most objects a worker verifies in one go
+	 */
+	public static final int MAX_BATCH = 32;
+
+	protected class Item {
+		protected final ContentObject _object;
+		protected final Runnable _delivery;
+		protected final long _queuedTime = System.nanoTime();
+		protected boolean _done = false;
+
+		protected Item(ContentObject object, Runnable delivery) {
+			_object = object;
+			_delivery = delivery;
+		}
+
+		protected PublisherPublicKeyDigest publisher() {
+			return (null == _object.signedInfo()) ? null : _object.signedInfo().getPublisherKeyID();
+		}
+	}
+
+	protected final Object _lock = new Object();
+	protected final LinkedList<Item> _toVerify = new LinkedList<Item>();
+	protected final LinkedList<Item> _toDeliver = new LinkedList<Item>();
+	protected final int _capacity;
+	protected int _held = 0; // objects submitted and not yet delivered
+	protected final Thread [] _workers;
+	protected final Thread _deliverer;
+	protected volatile KeyManager _keyManager;
+	protected volatile boolean _run = true;
+
+	/**
+	 * @param name			used to name the threads
+	 * @param threads		number of verification threads, must be at least 1
+	 * @param capacity		most objects waiting to be verified or delivered before submit blocks
+	 * @param keyManager	where to find verification keys
+	 */
+	public VerificationStage(String name, int threads, int capacity, KeyManager keyManager) {
+		if (threads < 1)
+			throw new IllegalArgumentException("VerificationStage needs at least one thread: " + threads);
+		if (capacity < 1)
+			throw new IllegalArgumentException("VerificationStage needs a capacity of at least one: " + capacity);
+		_capacity = capacity;
+		_keyManager = keyManager;
+		_workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			_workers[i] = new Thread(new Runnable() {
+				public void run() {
+					verifyLoop();
+				}
+			}, name + " verify " + i);
+			_workers[i].setDaemon(true);
+			_workers[i].start();
+		}
+		_deliverer = new Thread(new Runnable() {
+			public void run() {
+				deliverLoop();
+			}
+		}, name + " verify delivery");
+		_deliverer.setDaemon(true);
+		_deliverer.start();
+	}
+
+	public void setKeyManager(KeyManager keyManager) {
+		_keyManager = keyManager;
+	}
+
+	/**
+	 * Queue an object to be verified and then delivered.
+	 * @param object		the object
+	 * @param delivery		run, after the deliveries of all previously submitted objects, once the
+	 * 						object has been verified
+	 * @return false if the stage has been shut down and the object was not queued
+	 * @throws InterruptedException if interrupted waiting for room
+	 */
+	public boolean submit(ContentObject object, Runnable delivery) throws InterruptedException {
+		Item item = new Item(object, delivery);
+		synchronized (_lock) {
+			if (_run && _held >= _capacity) {
+				_stats.increment(StatsEnum.Blocked);
+				long start = System.nanoTime();
+				while (_run && _held >= _capacity)
+					_lock.wait();
+				_stats.addSample(StatsEnum.BlockedTime, System.nanoTime() - start);
+			}
+			if (!_run)
+				return false;
+			_toVerify.add(item);
+			_toDeliver.add(item);
+			_held++;
+			_stats.addSample(StatsEnum.QueueDepth, _held);
+			_lock.notifyAll();
+		}
+		_stats.increment(StatsEnum.Queued);
+		return true;
+	}
+
+	/**
+	 * @return the number of objects waiting to be verified or delivered
+	 */
+	public int queueDepth() {
+		synchronized (_lock) {
+			return _held;
+		}
+	}
+
+	public int threads() {
+		return _workers.length;
+	}
+
+	/**
+	 * Stop the threads, discarding anything not yet delivered.
+	 */
+	public void shutdown() {
+		synchronized (_lock) {
+			_run = false;
+			_toVerify.clear();
+			_toDeliver.clear();
+			_held = 0;
+			_lock.notifyAll();
+		}
+		for (Thread worker : _workers)
+			worker.interrupt();
+		_deliverer.interrupt();
+	}
+
+	protected void verifyLoop() {
+		ArrayList<Item> batch = new ArrayList<Item>(MAX_BATCH);
+		while (_run) {
+			batch.clear();
+			synchronized (_lock) {
+				while (_run && _toVerify.isEmpty()) {
+					try {
+						_lock.wait();
+					} catch (InterruptedException e) {}
+				}
+				if (!_run)
+					return;
+				Item first = _toVerify.removeFirst();
+				batch.add(first);
+				PublisherPublicKeyDigest publisher = first.publisher();
+				while (batch.size() < MAX_BATCH && !_toVerify.isEmpty() && null != publisher &&
+						publisher.equals(_toVerify.getFirst().publisher()))
+					batch.add(_toVerify.removeFirst());
+			}
+
+			try {
+				verify(batch);
+			} catch (RuntimeException e) {
+				// Still deliver, the handlers will decide what to do
+				Log.warning(Log.FAC_VERIFY, "VerificationStage: unexpected {0} verifying {1}: {2}", e.getClass().getName(),
+						batch.get(0)._object.name(), e.getMessage());
+			}
+
+			synchronized (_lock) {
+				for (Item item : batch)
+					item._done = true;
+				_lock.notifyAll();
+			}
+		}
+	}
+
+	protected void verify(ArrayList<Item> batch) {
+		long start = System.nanoTime();
+		_stats.addSample(StatsEnum.QueueTime, start - batch.get(0)._queuedTime);
+		_stats.addSample(StatsEnum.BatchSize, batch.size());
+
+		PublicKey key = getKey(batch.get(0).publisher());
+		if (null == key) {
+			_stats.increment(StatsEnum.NoKey, batch.size());
+			return;
+		}
+
+		for (Item item : batch) {
+			boolean verified;
+			try {
+				verified = ContentObject.verify(item._object, key);
+			} catch (Exception e) {
+				verified = false;
+			}
+			if (verified) {
+				_stats.increment(StatsEnum.Verified);
+			} else {
+				_stats.increment(StatsEnum.Failed);
+				if (Log.isLoggable(Log.FAC_VERIFY, Level.FINE))
+					Log.fine(Log.FAC_VERIFY, "VerificationStage: {0} failed to verify", item._object.name());
+			}
+		}
+		_stats.addSample(StatsEnum.VerifyTime, (System.nanoTime() - start) / batch.size());
+	}
+
+	/**
+	 * @param publisher
+	 * @return the publisher's key if the KeyManager already has it, otherwise null
+	 */
+	protected PublicKey getKey(PublisherPublicKeyDigest publisher) {
+		KeyManager keyManager = _keyManager;
+		if (null == keyManager || null == publisher)
+			return null;
+		return keyManager.getPublicKey(publisher);
+	}
+
+	protected void deliverLoop() {
+		ArrayList<Item> ready = new ArrayList<Item>();
+		while (_run) {
+			ready.clear();
+			synchronized (_lock) {
+				while (_run && (_toDeliver.isEmpty() || !_toDeliver.getFirst()._done)) {
+					try {
+						_lock.wait();
+					} catch (InterruptedException e) {}
+				}
+				if (!_run)
+					return;
+				while (!_toDeliver.isEmpty() && _toDeliver.getFirst()._done)
+					ready.add(_toDeliver.removeFirst());
+			}
+
+			long now = System.nanoTime();
+			for (Item item : ready) {
+				_stats.addSample(StatsEnum.Latency, now - item._queuedTime);
+				try {
+					item._delivery.run();
+				} catch (RuntimeException e) {
+					Log.warning(Log.FAC_VERIFY, "VerificationStage: delivery of {0} failed: {1}", item._object.name(), e.getMessage());
+					Log.warningStackTrace(Log.FAC_VERIFY, e);
+				}
+				synchronized (_lock) {
+					if (_held > 0)
+						_held--;
+					_lock.notifyAll(); // room for submitters
+				}
+			}
+		}
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Queued);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Queued ("objects", "Number of objects queued for verification"),
+		Verified ("objects", "Number of objects whose signature verified"),
+		Failed ("objects", "Number of objects whose signature did not verify"),
+		NoKey ("objects", "Number of objects passed on unverified as their key was not known"),
+		Blocked ("objects", "Number of submits which had to wait for room in the queue"),
+		BlockedTime ("nanos", "The average time a submit waited for room"),
+		QueueDepth ("objects", "The average number of objects waiting to be verified or delivered"),
+		QueueTime ("nanos", "The average time objects wait for a verification thread"),
+		BatchSize ("objects", "The average number of objects verified together"),
+		VerifyTime ("nanos", "The average time to verify an object"),
+		Latency ("nanos", "The average time from queueing to delivery"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
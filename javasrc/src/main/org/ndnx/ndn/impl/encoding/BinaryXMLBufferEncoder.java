@@ -0,0 +1,101 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.encoding;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.ndnx.ndn.io.content.ContentEncodingException;
+
+/**
+ * A BinaryXMLEncoder which encodes whole packets into a reusable (by default direct) ByteBuffer,
+ * so that encoding a packet for the network doesn't allocate a ByteArrayOutputStream, a copy of
+ * its contents and a heap buffer to wrap them every time.
+ *
+ * Not thread safe, and the buffer returned by encode() is only valid until the next call - the
+ * network manager keeps one of these per writing thread.
+ */
+public class BinaryXMLBufferEncoder extends BinaryXMLEncoder {
+
+	protected final ByteBufferOutputStream _output;
+
+	/**
+	 * @param capacity initial buffer size, the buffer grows if a packet doesn't fit
+	 */
+	public BinaryXMLBufferEncoder(int capacity) {
+		super();
+		_output = new ByteBufferOutputStream(capacity);
+	}
+
+	/**
+	 * Encode a packet into our buffer.
+	 * @param packet the packet to encode
+	 * @return the encoding, ready to be written. Only valid until the next call to encode.
+	 * @throws ContentEncodingException
+	 */
+	public ByteBuffer encode(XMLEncodable packet) throws ContentEncodingException {
+		_output.reset();
+		beginEncoding(_output);
+		packet.encode(this);
+		endEncoding();
+		return _output.getBuffer();
+	}
+
+	/**
+	 * Encode several packets one after the other into our buffer.
+	 * @param packets the packets to encode
+	 * @return one buffer per packet, each a view of our buffer ready to be written. Only valid
+	 * 	until the next call to encode.
+	 * @throws ContentEncodingException
+	 */
+	public ByteBuffer [] encode(List<? extends XMLEncodable> packets) throws ContentEncodingException {
+		int [] ends = new int[packets.size()];
+		_output.reset();
+		beginEncoding(_output);
+		int i = 0;
+		for (XMLEncodable packet : packets) {
+			packet.encode(this);
+			ends[i++] = _output.size();
+		}
+		endEncoding();
+		ByteBuffer buffer = _output.getBuffer();
+		ByteBuffer [] result = new ByteBuffer[ends.length];
+		int start = 0;
+		for (i = 0; i < ends.length; i++) {
+			buffer.limit(ends[i]).position(start);
+			result[i] = buffer.slice();
+			start = ends[i];
+		}
+		buffer.limit(start).position(0);
+		return result;
+	}
+
+	/**
+	 * @return a copy of the most recent encoding
+	 */
+	public byte [] encodedBytes() {
+		ByteBuffer view = _output._buffer.duplicate();
+		view.rewind();
+		byte [] result = new byte[view.remaining()];
+		view.get(result);
+		return result;
+	}
+}
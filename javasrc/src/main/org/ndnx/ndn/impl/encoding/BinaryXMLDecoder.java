@@ -22,6 +22,7 @@ package org.ndnx.ndn.impl.encoding;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.TreeMap;
 import java.util.logging.Level;
 
@@ -74,6 +75,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	public final int RESYNC_LIMIT = 512;	// Default max we can go back for a resync
 	protected int _resyncLimit = RESYNC_LIMIT;
 	protected boolean _resyncable = false;
+	protected boolean _retainWire = false;
 
 	public BinaryXMLDecoder() {
 		super();
@@ -129,6 +131,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		_elements_type = new byte[_currentElements];
 		_elements_value = new int[_currentElements];
 		_elements_blob = new byte[_currentElements][];
+		_elements_offset = _retainWire ? new int[_currentElements] : null;
 
 		try {
 			setupForDecoding(istream);
@@ -227,6 +230,13 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private byte [] _elements_type;
 	private int [] _elements_value;
 	private byte [][] _elements_blob;
+	private int [] _elements_offset;
+
+	// Bytes read for the current packet, only kept if _retainWire is set. The buffer is reused
+	// across packets and callers get copies via wireBytes().
+	private final static int WIRE_FIRST = 1024;
+	private byte [] _wire = null;
+	private int _wireLength = 0;
 
 	// BLOB and UDATA now go in their own buffers, so don't really need the full BLOCKSIZE
 
@@ -241,6 +251,27 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private void initialize() {
 		_elementCount = 0;
 		_parsingElement = 0;
+		_wireLength = 0;
+	}
+
+	private void retain(int b) {
+		if (null == _wire)
+			_wire = new byte[WIRE_FIRST];
+		else if (_wireLength == _wire.length)
+			_wire = Arrays.copyOf(_wire, _wire.length * 2);
+		_wire[_wireLength++] = (byte)b;
+	}
+
+	private void retain(byte [] buffer) {
+		int needed = _wireLength + buffer.length;
+		if (null == _wire || needed > _wire.length) {
+			int size = (null == _wire) ? WIRE_FIRST : _wire.length * 2;
+			while (size < needed)
+				size *= 2;
+			_wire = (null == _wire) ? new byte[size] : Arrays.copyOf(_wire, size);
+		}
+		System.arraycopy(buffer, 0, _wire, _wireLength, buffer.length);
+		_wireLength = needed;
 	}
 
 	/**
@@ -264,6 +295,8 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 				throw new IOException(e.getMessage());
 			}
 		} while(read < buffer.length);
+		if (_retainWire)
+			retain(buffer);
 
 		// now advance the buffers position
 //		_buffer.position(offset + read);
@@ -279,10 +312,13 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private final int readTypeAndValue(final InputStream istream) throws IOException {
 		byte typ = -1;
 		long val = 0;
+		int offset = _wireLength;
 
 		int next;
 		boolean more = false;
 		while( (next = istream.read()) > -1 ) {
+			if (_retainWire)
+				retain(next);
 
 			// detect the CLOSE marker
 			if( !more && (0 == next) ) {
@@ -323,7 +359,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 //		System.out.println(String.format("Decode tag 0x%02x value 0x%02x pos %d", typ, val, pos));
 
 		int index = _elementCount;
-		setElement(index, typ, (int)val, buffer);
+		setElement(index, typ, (int)val, buffer, offset);
 		_elementCount++;
 		return index;
 	}
@@ -334,8 +370,9 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	 * @param typ
 	 * @param val
 	 * @param buffer
+	 * @param offset start of the element in the retained wire bytes, ignored if not retaining
 	 */
-	private void setElement(int index, byte typ, int val, byte[] buffer) {
+	private void setElement(int index, byte typ, int val, byte[] buffer, int offset) {
 		try {
 			_elements_type[index]  = typ;
 		} catch (ArrayIndexOutOfBoundsException aiobe) {
@@ -351,12 +388,19 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 			byte[][] newBlobs = new byte[_currentElements][];
 			System.arraycopy(_elements_blob, 0, newBlobs, 0, prevElements);
 			_elements_blob = newBlobs;
+			if (null != _elements_offset) {
+				int[] newOffsets = new int[_currentElements];
+				System.arraycopy(_elements_offset, 0, newOffsets, 0, prevElements);
+				_elements_offset = newOffsets;
+			}
 			_elements_type[index] = typ;
 			if (Log.isLoggable(Log.FAC_ENCODING, Level.INFO))
 				Log.info(Log.FAC_ENCODING, "Reset decode array sizes to {0}", _currentElements);
 		}
 		_elements_value[index] = val;
 		_elements_blob[index]  = buffer;
+		if (null != _elements_offset)
+			_elements_offset[index] = offset;
 	}
 
 	/**
@@ -397,7 +441,8 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		// This seems a little bogus but it emulates what the original code did...
 		if (type == BinaryXMLCodec.XML_BLOB) {
 			for (int i = _elementCount; i > _parsingElement; i--) {
-				setElement(i, _elements_type[i - 1], _elements_value[i - 1], _elements_blob[i - 1]);
+				setElement(i, _elements_type[i - 1], _elements_value[i - 1], _elements_blob[i - 1],
+						(null == _elements_offset) ? 0 : _elements_offset[i - 1]);
 			}
 			_elementCount++;
 			_elements_blob[_parsingElement] = new byte[0];
@@ -625,6 +670,45 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		_resyncable = value;
 	}
 
+	/**
+	 * Keep a copy of the bytes read for each packet so that decoded objects can hold on to their
+	 * original wire encoding (see ContentObject) rather than re-encoding themselves later.
+	 * @param value
+	 */
+	public void setRetainWire(boolean value) {
+		_retainWire = value;
+	}
+
+	public boolean retainWire() {
+		return _retainWire;
+	}
+
+	/**
+	 * Get the position of the current element within the bytes read for this packet. Once
+	 * all elements have been parsed this is the length of the packet.
+	 * Does not advance the parser.
+	 * @return the offset, or -1 if wire bytes are not being retained
+	 */
+	public int wireOffset() {
+		if (!_retainWire || null == _elements_offset)
+			return -1;
+		if (_parsingElement >= _elementCount)
+			return _wireLength;
+		return _elements_offset[_parsingElement];
+	}
+
+	/**
+	 * Get a copy of a range of the bytes read for this packet.
+	 * @param start offset of the first byte, as returned by wireOffset()
+	 * @param end offset after the last byte, as returned by wireOffset()
+	 * @return the bytes, or null if wire bytes are not being retained
+	 */
+	public byte [] wireBytes(int start, int end) {
+		if (!_retainWire || null == _wire || start < 0 || end > _wireLength || start > end)
+			return null;
+		return Arrays.copyOfRange(_wire, start, end);
+	}
+
 	public void setLimit(int limit) {
 		_resyncLimit = limit;
 	}
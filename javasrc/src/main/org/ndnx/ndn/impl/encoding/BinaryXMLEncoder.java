@@ -70,6 +70,19 @@ public class BinaryXMLEncoder extends GenericXMLEncoder implements XMLEncoder {
 		}
 	}
 
+	/**
+	 * Write bytes which are already in ndnb encoding, such as the retained wire encoding
+	 * of a decoded object.
+	 * @param encoded the encoding, written as is
+	 */
+	public void writeEncoded(byte [] encoded) throws ContentEncodingException {
+		try {
+			_ostream.write(encoded);
+		} catch (IOException e) {
+			throw new ContentEncodingException(e.getMessage(), e);
+		}
+	}
+
 	public void writeUString(String utf8Content) throws ContentEncodingException {
 		try {
 			BinaryXMLCodec.encodeUString(_ostream, utf8Content);
@@ -0,0 +1,92 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.encoding;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream which reads the remaining bytes of a ByteBuffer, such as a slice of a
+ * memory mapped file. Reading advances the position of the buffer given to the constructor, so
+ * callers sharing a buffer between threads should give each stream its own duplicate().
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	protected final ByteBuffer _buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		_buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!_buffer.hasRemaining())
+			return -1;
+		return _buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte [] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!_buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, _buffer.remaining());
+		_buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0)
+			return 0;
+		int skipped = (int)Math.min(n, _buffer.remaining());
+		_buffer.position(_buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return _buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		_buffer.mark();
+	}
+
+	@Override
+	public synchronized void reset() {
+		_buffer.reset();
+	}
+
+	/**
+	 * @return the position in the underlying buffer
+	 */
+	public int position() {
+		return _buffer.position();
+	}
+}
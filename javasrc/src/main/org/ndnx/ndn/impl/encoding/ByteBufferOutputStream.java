@@ -0,0 +1,131 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.encoding;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream which writes into a ByteBuffer, by default a direct one, replacing it with
+ * a larger one if it fills. Intended to be reused - reset() makes the whole buffer available
+ * again without allocating, and getBuffer() gives the bytes written so far ready to hand to
+ * a channel.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+	protected final boolean _direct;
+	protected ByteBuffer _buffer;
+
+	/**
+	 * @param capacity initial size of the buffer
+	 * @param direct true to use a direct buffer
+	 */
+	public ByteBufferOutputStream(int capacity, boolean direct) {
+		_direct = direct;
+		_buffer = allocate(capacity);
+	}
+
+	public ByteBufferOutputStream(int capacity) {
+		this(capacity, true);
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(1);
+		_buffer.put((byte)b);
+	}
+
+	@Override
+	public void write(byte [] b, int off, int len) {
+		ensureCapacity(len);
+		_buffer.put(b, off, len);
+	}
+
+	/**
+	 * Write the remaining bytes of a buffer, advancing its position.
+	 * @param src
+	 */
+	public void write(ByteBuffer src) {
+		ensureCapacity(src.remaining());
+		_buffer.put(src);
+	}
+
+	/**
+	 * Discard anything written so far.
+	 */
+	public void reset() {
+		_buffer.clear();
+	}
+
+	/**
+	 * Discard anything written after the first size bytes, for instance to back out a
+	 * partly written object.
+	 * @param size
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > _buffer.position())
+			throw new IllegalArgumentException("Can't truncate " + _buffer.position() + " bytes to " + size);
+		_buffer.position(size);
+	}
+
+	/**
+	 * @return the number of bytes written since the last reset
+	 */
+	public int size() {
+		return _buffer.position();
+	}
+
+	/**
+	 * Get the bytes written since the last reset. The returned buffer is our own, flipped so that
+	 * it is ready to be read - nothing more can be written until reset() is called.
+	 * @return the buffer
+	 */
+	public ByteBuffer getBuffer() {
+		_buffer.flip();
+		return _buffer;
+	}
+
+	/**
+	 * Undo getBuffer() without discarding anything, however much of the buffer has been read, so
+	 * that more can be written after the bytes already there. Used to keep hold of bytes which
+	 * could not be written out.
+	 */
+	public void restore() {
+		_buffer.position(_buffer.limit());
+		_buffer.limit(_buffer.capacity());
+	}
+
+	protected ByteBuffer allocate(int capacity) {
+		return _direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	protected void ensureCapacity(int needed) {
+		if (_buffer.remaining() >= needed)
+			return;
+		int capacity = _buffer.capacity() * 2;
+		while (capacity - _buffer.position() < needed)
+			capacity *= 2;
+		ByteBuffer larger = allocate(capacity);
+		_buffer.flip();
+		larger.put(_buffer);
+		_buffer = larger;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * A bounded LRU cache of decoded ContentObjects, keyed by the ContentRef used to find them in
+ * a RepositoryStore's backing storage. The bound is an estimate of the memory held by the cached
+ * objects rather than a count, since repository objects vary from a few bytes to a full segment.
+ *
+ * Cached objects are shared between callers, so must be treated as read only.
+ */
+public class ContentObjectCache implements NDNStatistics {
+
+	// Rough allowance for the object headers, SignedInfo, Signature etc. of a ContentObject
+	protected static final int OBJECT_OVERHEAD = 512;
+
+	protected final long _maxBytes;
+	protected long _bytes = 0;
+
+	/**
+	 * A cached object and the size charged for it when it was added. The object's estimated size
+	 * can change while it is cached (e.g. setSignature drops a retained wire encoding), so the
+	 * charged size is what is given back when it goes.
+	 */
+	protected static class Entry {
+		protected final ContentObject _co;
+		protected final long _size;
+
+		protected Entry(ContentObject co, long size) {
+			_co = co;
+			_size = size;
+		}
+	}
+
+	protected final LinkedHashMap<ContentRef, Entry> _cache =
+				new LinkedHashMap<ContentRef, Entry>(1024, 0.75f, true);
+
+	/**
+	 * @param maxBytes the memory budget for cached objects
+	 */
+	public ContentObjectCache(long maxBytes) {
+		_maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param ref
+	 * @return the cached object for ref, or null if there isn't one
+	 */
+	public ContentObject get(ContentRef ref) {
+		Entry entry;
+		synchronized (_cache) {
+			entry = _cache.get(ref);
+		}
+		ContentObject co = (null == entry) ? null : entry._co;
+		_stats.increment((null == co) ? StatsEnum.Misses : StatsEnum.Hits);
+		return co;
+	}
+
+	/**
+	 * Add an object to the cache, evicting the least recently used objects if
+	 * we go over budget. Objects bigger than the whole budget aren't cached.
+	 * @param ref
+	 * @param co
+	 */
+	public void put(ContentRef ref, ContentObject co) {
+		long size = sizeOf(co);
+		if (size > _maxBytes)
+			return;
+		synchronized (_cache) {
+			Entry old = _cache.put(ref, new Entry(co, size));
+			if (null != old)
+				_bytes -= old._size;
+			_bytes += size;
+			Iterator<Map.Entry<ContentRef, Entry>> it = _cache.entrySet().iterator();
+			while (_bytes > _maxBytes && it.hasNext()) {
+				Map.Entry<ContentRef, Entry> eldest = it.next();
+				_bytes -= eldest.getValue()._size;
+				it.remove();
+				_stats.increment(StatsEnum.Evictions);
+			}
+		}
+		_stats.increment(StatsEnum.Inserts);
+	}
+
+	/**
+	 * Drop the object for ref, if it is cached.
+	 * @param ref
+	 */
+	public void remove(ContentRef ref) {
+		synchronized (_cache) {
+			Entry old = _cache.remove(ref);
+			if (null != old) {
+				_bytes -= old._size;
+				_stats.increment(StatsEnum.Invalidations);
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized (_cache) {
+			_cache.clear();
+			_bytes = 0;
+		}
+	}
+
+	public int size() {
+		synchronized (_cache) {
+			return _cache.size();
+		}
+	}
+
+	/**
+	 * @return the estimated memory held by cached objects
+	 */
+	public long bytes() {
+		synchronized (_cache) {
+			return _bytes;
+		}
+	}
+
+	public long maxBytes() {
+		return _maxBytes;
+	}
+
+	/**
+	 * @return a summary of the cache state and statistics for display
+	 */
+	public String getStatus() {
+		long hits = _stats.getCounter(StatsEnum.Hits.toString());
+		long misses = _stats.getCounter(StatsEnum.Misses.toString());
+		long lookups = hits + misses;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Cached objects: %d, %d of %d bytes, hit rate %.1f%%\n", size(), bytes(), _maxBytes,
+				(lookups == 0) ? 0.0 : (100.0 * hits / lookups)));
+		sb.append(_stats.toString());
+		return sb.toString();
+	}
+
+	/**
+	 * Estimate the memory used by a decoded object.
+	 */
+	protected static long sizeOf(ContentObject co) {
+		long payload = co.contentLength();
+		ContentName name = co.name();
+		for (int i = 0; i < name.count(); i++)
+			payload += name.component(i).length + 16;
+		// A retained wire encoding holds the name and content over again
+		return OBJECT_OVERHEAD + (co.hasWireEncoding() ? 2 * payload : payload);
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("lookups", "Number of lookups which found a cached object"),
+		Misses ("lookups", "Number of lookups which found no cached object"),
+		Inserts ("objects", "Number of objects added to the cache"),
+		Evictions ("objects", "Number of objects evicted to stay within the byte budget"),
+		Invalidations ("objects", "Number of objects explicitly removed from the cache"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
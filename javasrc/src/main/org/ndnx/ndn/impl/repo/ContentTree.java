@@ -22,18 +22,25 @@ package org.ndnx.ndn.impl.repo;
 
 import static org.ndnx.ndn.profiles.CommandMarker.COMMAND_MARKER_BASIC_ENUMERATION;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 
 import org.ndnx.ndn.impl.support.DataUtils;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
 import org.ndnx.ndn.profiles.nameenum.NameEnumerationResponse;
 import org.ndnx.ndn.protocol.NDNTime;
 import org.ndnx.ndn.protocol.Component;
@@ -54,6 +61,25 @@ public class ContentTree {
 	public interface ContentGetter {
 		public ContentObject get(ContentRef ref);
 	}
+
+	/**
+	 * Called for refs in the tree by visitContent() and by the prune methods for the refs they remove
+	 */
+	public interface ContentVisitor {
+		/**
+		 * @param name the full name, including digest, the ref is stored under
+		 * @param ref
+		 */
+		public void visit(ContentName name, ContentRef ref);
+	}
+
+	/**
+	 * Reads and writes the store specific ContentRefs when the tree is saved with write()
+	 */
+	public interface ContentRefCodec {
+		public void writeRef(DataOutput out, ContentRef ref) throws IOException;
+		public ContentRef readRef(DataInput in) throws IOException;
+	}
 	
 	/**
 	 * TreeNode is the data structure representing one
@@ -221,8 +247,20 @@ public class ContentTree {
 			if (null != _children) {
 				byte[] interestComp = _interest.name().component(depth);
 				Iterator<TreeNode>it = initIterator(leftSearch, interestComp);
-				while(it.hasNext()) {
+				// _children is reset by searches of the children, so keep our own
+				SortedMap<TreeNode, TreeNode> children = _children;
+				// Children at the exclude level are checked against the exclude here, so that
+				// runs of excluded children (e.g. versions already seen) are skipped in one step
+				Exclude exclude = (depth + 1 == _ips._excludeLevel) ? _ips._exclude : null;
+				while(null != it && it.hasNext()) {
 					TreeNode child = it.next();
+					if (null != exclude) {
+						byte [][] run = exclude.excludedRun(child.component);
+						if (null != run) {
+							it = skipRun(children, leftSearch, run);
+							continue;
+						}
+					}
 					int comp = DataUtils.compare(child.component, interestComp);
 					if (leftSearch || comp >= 0) {
 						ContentObject result = null;
@@ -246,6 +284,44 @@ public class ContentTree {
 		 */
 		protected abstract Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp);
 		
+		/**
+		 * Return an iterator through the children at this level which are after a run of
+		 * excluded children in the search order.
+		 * 
+		 * @param children the children at this level
+		 * @param leftSearch as for initIterator
+		 * @param run the first and last components of the run, as returned by Exclude.excludedRun
+		 * @return the iterator, or null if no children remain to be searched
+		 */
+		protected abstract Iterator<TreeNode> skipRun(SortedMap<TreeNode, TreeNode> children, boolean leftSearch, byte [][] run);
+		
+		/**
+		 * @return an iterator forwards through the children after the run
+		 */
+		protected Iterator<TreeNode> skipForward(SortedMap<TreeNode, TreeNode> children, byte [][] run) {
+			if (null == run[1])
+				return null;
+			TreeNode testNode = new TreeNode();
+			testNode.component = run[1];
+			SortedMap<TreeNode, TreeNode> tail = children.tailMap(testNode);
+			Iterator<TreeNode> it = tail.keySet().iterator();
+			// The tail includes the last component of the run if it's a child, which is excluded
+			if (!tail.isEmpty() && tail.firstKey().compEquals(run[1]))
+				it.next();
+			return it;
+		}
+		
+		/**
+		 * @return an iterator backwards through the children before the run
+		 */
+		protected Iterator<TreeNode> skipBackward(SortedMap<TreeNode, TreeNode> children, byte [][] run) {
+			if (null == run[0])
+				return null;
+			TreeNode testNode = new TreeNode();
+			testNode.component = run[0];
+			return new RightIterator(children.headMap(testNode));
+		}
+		
 		/**
 		 * 
 		 */
@@ -270,6 +346,11 @@ public class ContentTree {
 			return map.keySet().iterator();
 		}
 
+		@Override
+		protected Iterator<TreeNode> skipRun(SortedMap<TreeNode, TreeNode> children, boolean leftSearch, byte [][] run) {
+			return skipForward(children, run);
+		}
+
 		@Override
 		protected boolean continueSearch(boolean leftSearch, TreeNode child,
 				byte[] component) {
@@ -295,6 +376,11 @@ public class ContentTree {
 			return new RightIterator(_children);
 		}
 
+		@Override
+		protected Iterator<TreeNode> skipRun(SortedMap<TreeNode, TreeNode> children, boolean leftSearch, byte [][] run) {
+			return leftSearch ? skipForward(children, run) : skipBackward(children, run);
+		}
+
 		@Override
 		protected boolean continueSearch(boolean leftSearch, TreeNode child,
 				byte[] component) {
@@ -313,7 +399,8 @@ public class ContentTree {
 		}
 
 		public boolean hasNext() {
-			return _map.size() > 0;
+			// size() of a sub map counts its entries, isEmpty() doesn't
+			return !_map.isEmpty();
 		}
 
 		public TreeNode next() {
@@ -327,6 +414,10 @@ public class ContentTree {
 	}
 	
 	protected TreeNode _root;
+
+	// Inserts hold the read lock, so they can run concurrently with each other but not while
+	// subtrees are being removed
+	protected final ReentrantReadWriteLock _structureLock = new ReentrantReadWriteLock();
 	
 	public ContentTree() {
 		_root = new TreeNode();
@@ -350,6 +441,15 @@ public class ContentTree {
 	 * @return - true if content is not exact duplicate of existing content.
 	 */
 	public boolean insert(ContentObject content, ContentRef ref, long ts, ContentGetter getter, NameEnumerationResponse ner) {
+		_structureLock.readLock().lock();
+		try {
+			return doInsert(content, ref, ts, getter, ner);
+		} finally {
+			_structureLock.readLock().unlock();
+		}
+	}
+
+	protected boolean doInsert(ContentObject content, ContentRef ref, long ts, ContentGetter getter, NameEnumerationResponse ner) {
 		final ContentName name = content.fullName();
 		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
 			Log.fine(Log.FAC_REPO, "inserting content: {0}", name);
@@ -449,18 +549,20 @@ public class ContentTree {
 
 		// At conclusion of this loop, node must be holding the last node for this name
 		// so we insert the ref there
-		if (null == node.oneContent && null == node.content) {
-			// This is first and only content at this leaf
-			node.oneContent = ref;
-		} else if (null == node.oneContent) {
-			// Multiple content already at this node, add this one
-			node.content.add(ref);
-		} else {
-			// Second content at current node, need to switch to list
-			node.content = new ArrayList<ContentRef>();
-			node.content.add(node.oneContent);
-			node.content.add(ref);
-			node.oneContent = null;
+		synchronized (node) {
+			if (null == node.oneContent && null == node.content) {
+				// This is first and only content at this leaf
+				node.oneContent = ref;
+			} else if (null == node.oneContent) {
+				// Multiple content already at this node, add this one
+				node.content.add(ref);
+			} else {
+				// Second content at current node, need to switch to list
+				node.content = new ArrayList<ContentRef>();
+				node.content.add(node.oneContent);
+				node.content.add(ref);
+				node.oneContent = null;
+			}
 		}
 		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
 			Log.fine(Log.FAC_REPO, "Inserted: {0}", content.name());
@@ -745,6 +847,282 @@ public class ContentTree {
 		return null;
 	}
 	
+	/**
+	 * Replace a ref, for instance when the content it refers to has been moved.
+	 * 
+	 * @param name the full name, including digest, of the content
+	 * @param oldRef
+	 * @param newRef
+	 * @return false if oldRef is no longer in the tree under name
+	 */
+	public boolean replace(ContentName name, ContentRef oldRef, ContentRef newRef) {
+		TreeNode node = lookupNode(name, name.count());
+		if (null == node)
+			return false;
+		synchronized (node) {
+			if (null != node.oneContent) {
+				if (node.oneContent.equals(oldRef)) {
+					node.oneContent = newRef;
+					return true;
+				}
+			} else if (null != node.content) {
+				int index = node.content.indexOf(oldRef);
+				if (index >= 0) {
+					node.content.set(index, newRef);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Call the visitor for every ref in the tree. Inserts may continue while we do this; each
+	 * node is visited as it was when we got to it.
+	 * 
+	 * @param visitor
+	 */
+	public void visitContent(ContentVisitor visitor) {
+		visitNode(_root, new ContentName(), visitor);
+	}
+
+	protected void visitNode(TreeNode node, ContentName name, ContentVisitor visitor) {
+		ContentRef [] refs;
+		TreeNode [] children;
+		synchronized (node) {
+			refs = getRefs(node);
+			children = getChildren(node);
+		}
+		for (ContentRef ref : refs)
+			visitor.visit(name, ref);
+		for (TreeNode child : children)
+			visitNode(child, new ContentName(name, child.component), visitor);
+	}
+
+	/**
+	 * Remove all but the newest keep versions of each versioned name, as identified by
+	 * VersioningProfile, along with everything stored under the removed versions.
+	 * 
+	 * @param keep how many versions to keep, must be at least 1
+	 * @param removed if non null, called for each ref removed
+	 * @return the number of versions removed
+	 */
+	public int pruneVersions(int keep, ContentVisitor removed) {
+		if (keep < 1)
+			throw new IllegalArgumentException("Must keep at least one version");
+		return pruneVersions(_root, new ContentName(), keep, removed);
+	}
+
+	protected int pruneVersions(TreeNode node, ContentName name, int keep, ContentVisitor removed) {
+		TreeNode [] children;
+		synchronized (node) {
+			children = getChildren(node);
+		}
+		ArrayList<TreeNode> versions = new ArrayList<TreeNode>();
+		int count = 0;
+		for (TreeNode child : children) {
+			if (VersioningProfile.isVersionComponent(child.component))
+				versions.add(child);
+			else
+				count += pruneVersions(child, new ContentName(name, child.component), keep, removed);
+		}
+		if (versions.size() > keep) {
+			Collections.sort(versions, new Comparator<TreeNode>() {
+				public int compare(TreeNode n1, TreeNode n2) {
+					long v1 = VersioningProfile.getVersionComponentAsLong(n1.component);
+					long v2 = VersioningProfile.getVersionComponentAsLong(n2.component);
+					return (v1 < v2) ? -1 : ((v1 == v2) ? 0 : 1);
+				}
+			});
+			for (int i = 0; i < versions.size() - keep; i++) {
+				if (removeChild(node, versions.get(i), name, removed))
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Remove everything which is not under one of the given prefixes
+	 * 
+	 * @param prefixes
+	 * @param removed if non null, called for each ref removed
+	 * @return the number of subtrees removed
+	 */
+	public int pruneOutside(List<ContentName> prefixes, ContentVisitor removed) {
+		return pruneOutside(_root, new ContentName(), prefixes, removed);
+	}
+
+	protected int pruneOutside(TreeNode node, ContentName name, List<ContentName> prefixes, ContentVisitor removed) {
+		for (ContentName prefix : prefixes) {
+			if (prefix.isPrefixOf(name))
+				return 0;
+		}
+		TreeNode [] children;
+		synchronized (node) {
+			children = getChildren(node);
+		}
+		int count = 0;
+		for (TreeNode child : children) {
+			ContentName childName = new ContentName(name, child.component);
+			boolean onPath = false;
+			for (ContentName prefix : prefixes) {
+				if (childName.isPrefixOf(prefix) || prefix.isPrefixOf(childName)) {
+					onPath = true;
+					break;
+				}
+			}
+			if (onPath)
+				count += pruneOutside(child, childName, prefixes, removed);
+			else if (removeChild(node, child, name, removed))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Detach a child and everything under it from the tree. Once it is detached nothing else
+	 * can be inserted under it so we can then report what was removed at leisure.
+	 * 
+	 * @return false if the child was no longer there
+	 */
+	protected boolean removeChild(TreeNode parent, TreeNode child, ContentName parentName, ContentVisitor removed) {
+		_structureLock.writeLock().lock();
+		try {
+			synchronized (parent) {
+				if (parent.oneChild == child) {
+					parent.oneChild = null;
+				} else if (null != parent.children && parent.children.get(child) == child) {
+					parent.children.remove(child);
+				} else {
+					return false;
+				}
+				// So name enumeration sees a change
+				parent.timestamp = System.currentTimeMillis();
+				parent.neSent = false;
+			}
+		} finally {
+			_structureLock.writeLock().unlock();
+		}
+		if (null != removed)
+			visitNode(child, new ContentName(parentName, child.component), removed);
+		return true;
+	}
+
+	protected static ContentRef [] getRefs(TreeNode node) {
+		if (null != node.oneContent)
+			return new ContentRef[] { node.oneContent };
+		if (null != node.content)
+			return node.content.toArray(new ContentRef[node.content.size()]);
+		return new ContentRef[0];
+	}
+
+	protected static TreeNode [] getChildren(TreeNode node) {
+		if (null != node.oneChild)
+			return new TreeNode[] { node.oneChild };
+		if (null != node.children)
+			return node.children.values().toArray(new TreeNode[node.children.size()]);
+		return new TreeNode[0];
+	}
+
+	/**
+	 * Save the tree, including node timestamps, so that it can be restored by read() without
+	 * reading any of the content. Inserts may continue while the tree is being written; each node
+	 * is written as it was when it was visited.
+	 * 
+	 * @param out where to write the tree
+	 * @param codec to write the refs
+	 * @return the number of refs written
+	 * @throws IOException
+	 */
+	public long write(DataOutput out, ContentRefCodec codec) throws IOException {
+		return writeNode(out, _root, codec);
+	}
+
+	protected long writeNode(DataOutput out, TreeNode node, ContentRefCodec codec) throws IOException {
+		ContentRef [] refs;
+		TreeNode [] children;
+		long timestamp;
+		synchronized (node) {
+			timestamp = node.timestamp;
+			refs = getRefs(node);
+			children = getChildren(node);
+		}
+		if (null == node.component) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(node.component.length);
+			out.write(node.component);
+		}
+		out.writeLong(timestamp);
+		out.writeInt(refs.length);
+		for (ContentRef ref : refs)
+			codec.writeRef(out, ref);
+		out.writeInt(children.length);
+		long count = refs.length;
+		for (TreeNode child : children)
+			count += writeNode(out, child, codec);
+		return count;
+	}
+
+	/**
+	 * Restore a tree saved by write()
+	 * 
+	 * @param in where to read the tree from
+	 * @param codec to read the refs
+	 * @return the tree
+	 * @throws IOException if the saved tree can't be read or is malformed
+	 */
+	public static ContentTree read(DataInput in, ContentRefCodec codec) throws IOException {
+		ContentTree tree = new ContentTree();
+		tree._root = tree.readNode(in, codec);
+		if (null != tree._root.component)
+			throw new IOException("Saved content tree does not start at the root");
+		return tree;
+	}
+
+	protected TreeNode readNode(DataInput in, ContentRefCodec codec) throws IOException {
+		TreeNode node = new TreeNode();
+		int length = in.readInt();
+		if (length >= 0) {
+			node.component = new byte[length];
+			in.readFully(node.component);
+		} else if (length != -1) {
+			throw new IOException("Bad component length in saved content tree: " + length);
+		}
+		node.timestamp = in.readLong();
+		int refCount = in.readInt();
+		if (refCount == 1) {
+			node.oneContent = codec.readRef(in);
+		} else if (refCount > 1) {
+			node.content = new ArrayList<ContentRef>(refCount);
+			for (int i = 0; i < refCount; i++)
+				node.content.add(codec.readRef(in));
+		} else if (refCount < 0) {
+			throw new IOException("Bad content count in saved content tree: " + refCount);
+		}
+		int childCount = in.readInt();
+		if (childCount == 1) {
+			node.oneChild = readChild(in, codec);
+		} else if (childCount > 1) {
+			node.children = new TreeMap<TreeNode, TreeNode>();
+			for (int i = 0; i < childCount; i++) {
+				TreeNode child = readChild(in, codec);
+				node.children.put(child, child);
+			}
+		} else if (childCount < 0) {
+			throw new IOException("Bad child count in saved content tree: " + childCount);
+		}
+		return node;
+	}
+
+	protected TreeNode readChild(DataInput in, ContentRefCodec codec) throws IOException {
+		TreeNode child = readNode(in, codec);
+		if (null == child.component)
+			throw new IOException("Saved content tree has a second root");
+		return child;
+	}
+
 	/**
 	 * Determine if there is data with exactly the given name.
 	 * @param name to match, including explicit digest as final component
@@ -0,0 +1,397 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.profiles.nameenum.NameEnumerationResponse;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * Saves content to a RepositoryStore in stages. Content is first prepared - checked to be complete
+ * and its digest, which the store needs to index it, calculated. Preparation needs no shared
+ * state so is done on a set of worker threads. The prepared content is then saved by a single
+ * thread (the one calling run()) in the order it was added, so the segments of each stream being
+ * written are appended in order, and committed in batches of up to ACKNOWLEDGE_BATCH objects, after
+ * which the listener is told what was committed.
+ *
+ * With no worker threads content is prepared by the saving thread as it is saved, which is how
+ * the repository has always ingested content.
+ *
+ * The listener is asked to throttle once more than THROTTLE_TOP objects are waiting to be saved, and
+ * released once that falls below THROTTLE_BOTTOM; the repository stops expressing interests for
+ * more content while throttled.
+ */
+public class IngestPipeline implements NDNStatistics {
+	public static final int THROTTLE_TOP = 2000;
+	public static final int THROTTLE_BOTTOM = 1800;
+	public static final int ACKNOWLEDGE_BATCH = 100;
+
+	/**
+	 * Told about progress through the pipeline
+	 */
+	public interface IngestListener {
+
+		/**
+		 * Called when the number of objects waiting to be saved crosses THROTTLE_TOP or THROTTLE_BOTTOM.
+		 * @param throttle true to stop asking for more content, false to resume
+		 */
+		public void throttle(boolean throttle);
+
+		/**
+		 * Called on the saving thread once content has been committed to the store
+		 * @param saved			the content committed, in the order it was saved
+		 * @param responses		name enumeration responses triggered by the saves
+		 */
+		public void committed(List<ContentObject> saved, List<NameEnumerationResponse> responses);
+	}
+
+	protected static class Item {
+		protected final ContentObject _content;
+		protected final long _queuedTime = System.nanoTime();
+		protected boolean _done = false;
+		protected boolean _valid = true;
+
+		protected Item(ContentObject content) {
+			_content = content;
+		}
+	}
+
+	protected final RepositoryStore _store;
+	protected final IngestListener _listener;
+	protected final Object _lock = new Object();
+	protected final LinkedList<Item> _toPrepare = new LinkedList<Item>();
+	protected final LinkedList<Item> _toSave = new LinkedList<Item>();
+	protected int _held = 0; // objects added and not yet taken to be saved
+	protected boolean _throttled = false;
+	protected final Thread [] _workers;
+	protected boolean _shutdown = false;
+	protected boolean _shutdownComplete = false;
+
+	/**
+	 * @param name		used to name the worker threads
+	 * @param store		where to save content
+	 * @param threads	number of threads preparing content, 0 to prepare it as it is saved
+	 * @param listener	told about throttling and commits, may be null
+	 */
+	public IngestPipeline(String name, RepositoryStore store, int threads, IngestListener listener) {
+		if (threads < 0)
+			throw new IllegalArgumentException("IngestPipeline can't have a negative number of threads: " + threads);
+		_store = store;
+		_listener = listener;
+		_workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			_workers[i] = new Thread(new Runnable() {
+				public void run() {
+					prepareLoop();
+				}
+			}, name + " prepare " + i);
+			_workers[i].setDaemon(true);
+			_workers[i].start();
+		}
+	}
+
+	/**
+	 * Queue content to be saved
+	 * @param co
+	 */
+	public void add(ContentObject co) {
+		Item item = new Item(co);
+		boolean throttle = false;
+		synchronized (_lock) {
+			if (_workers.length > 0)
+				_toPrepare.add(item);
+			else
+				item._done = true;
+			_toSave.add(item);
+			_held++;
+			if (!_throttled && _held > THROTTLE_TOP) {
+				_throttled = true;
+				throttle = true;
+			}
+			_lock.notifyAll();
+		}
+		_stats.increment(StatsEnum.Queued);
+		if (throttle) {
+			_stats.increment(StatsEnum.Throttled);
+			if (null != _listener)
+				_listener.throttle(true);
+		}
+	}
+
+	/**
+	 * @return the number of objects waiting to be saved
+	 */
+	public int queueDepth() {
+		synchronized (_lock) {
+			return _held;
+		}
+	}
+
+	public int threads() {
+		return _workers.length;
+	}
+
+	/**
+	 * Save content as it becomes ready, until shut down. Nothing is done about saved content which
+	 * could be seen outside the repository until the store has committed it, which we do whenever
+	 * we run out of content ready to save or have saved ACKNOWLEDGE_BATCH objects.
+	 */
+	public void run() {
+		ArrayList<ContentObject> saved = new ArrayList<ContentObject>();
+		ArrayList<NameEnumerationResponse> responses = new ArrayList<NameEnumerationResponse>();
+		ArrayList<Item> ready = new ArrayList<Item>();
+		while (true) {
+			ready.clear();
+			boolean unthrottle = false;
+			boolean finished = false;
+			synchronized (_lock) {
+				while (!_toSave.isEmpty() && _toSave.getFirst()._done)
+					ready.add(_toSave.removeFirst());
+				if (ready.isEmpty()) {
+					if (_shutdown && _toSave.isEmpty()) {
+						finished = true;
+					} else if (saved.isEmpty()) {
+						try {
+							_lock.wait(SystemConfiguration.MEDIUM_TIMEOUT);
+						} catch (InterruptedException e) {}
+						continue;
+					}
+				} else {
+					_held -= ready.size();
+					_stats.addSample(StatsEnum.QueueDepth, _held);
+					if (_throttled && _held < THROTTLE_BOTTOM) {
+						_throttled = false;
+						unthrottle = true;
+					}
+				}
+			}
+			if (unthrottle && null != _listener)
+				_listener.throttle(false);
+
+			if (ready.isEmpty()) {
+				// Nothing ready - commit what we have while we wait
+				acknowledge(saved, responses);
+				if (finished) {
+					synchronized (_lock) {
+						_shutdownComplete = true;
+						_lock.notifyAll();
+					}
+					return;
+				}
+				continue;
+			}
+
+			for (Item item : ready) {
+				save(item, saved, responses);
+				if (saved.size() >= ACKNOWLEDGE_BATCH)
+					acknowledge(saved, responses);
+			}
+		}
+	}
+
+	protected void save(Item item, ArrayList<ContentObject> saved, ArrayList<NameEnumerationResponse> responses) {
+		if (_workers.length == 0)
+			prepare(item);
+		if (!item._valid) {
+			_stats.increment(StatsEnum.Invalid);
+			return;
+		}
+		ContentObject co = item._content;
+		long start = System.nanoTime();
+		try {
+			if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
+				Log.finer(Log.FAC_REPO, "Saving content in: " + co.toString());
+			}
+			NameEnumerationResponse ner = _store.saveContent(co);
+			saved.add(co);
+			if (ner!=null && ner.hasNames())
+				responses.add(ner);
+			_stats.increment(StatsEnum.Saved);
+		} catch (Exception e) {
+			_stats.increment(StatsEnum.Errors);
+			e.printStackTrace();
+			Log.logStackTrace(Level.WARNING, e);
+		}
+		long now = System.nanoTime();
+		_stats.addSample(StatsEnum.SaveTime, now - start);
+		_stats.addSample(StatsEnum.Latency, now - item._queuedTime);
+	}
+
+	/**
+	 * Commit the content saved since we last did this, then tell the listener.
+	 *
+	 * @param saved the content saved, cleared once dealt with
+	 * @param responses the name enumeration responses triggered, cleared once dealt with
+	 */
+	protected void acknowledge(ArrayList<ContentObject> saved, ArrayList<NameEnumerationResponse> responses) {
+		if (saved.isEmpty())
+			return;
+		try {
+			_store.commit();
+			_stats.increment(StatsEnum.Commits);
+			if (null != _listener)
+				_listener.committed(saved, responses);
+		} catch (Exception e) {
+			_stats.increment(StatsEnum.Errors);
+			e.printStackTrace();
+			Log.logStackTrace(Level.WARNING, e);
+		}
+		saved.clear();
+		responses.clear();
+	}
+
+	protected void prepareLoop() {
+		while (true) {
+			Item item;
+			synchronized (_lock) {
+				while (!_shutdownComplete && _toPrepare.isEmpty()) {
+					try {
+						_lock.wait();
+					} catch (InterruptedException e) {}
+				}
+				if (_shutdownComplete)
+					return;
+				item = _toPrepare.removeFirst();
+			}
+			prepare(item);
+			synchronized (_lock) {
+				item._done = true;
+				_lock.notifyAll();
+			}
+		}
+	}
+
+	protected void prepare(Item item) {
+		long start = System.nanoTime();
+		item._valid = prepare(item._content);
+		_stats.addSample(StatsEnum.PrepareTime, System.nanoTime() - start);
+	}
+
+	/**
+	 * Do the work needed to save content which doesn't depend on the store
+	 * @param co
+	 * @return false if the content can't be saved
+	 */
+	protected boolean prepare(ContentObject co) {
+		try {
+			if (!co.validate()) {
+				Log.warning(Log.FAC_REPO, "Not saving incomplete content {0}", co.name());
+				return false;
+			}
+			co.digest();
+			return true;
+		} catch (RuntimeException e) {
+			Log.warning(Log.FAC_REPO, "Not saving content {0}: {1}", co.name(), e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Save everything queued, then stop. Waits for run() to finish.
+	 */
+	public void shutdown() {
+		synchronized (_lock) {
+			_shutdown = true;
+			_lock.notifyAll();
+			while (!_shutdownComplete) {
+				try {
+					_lock.wait(SystemConfiguration.LONG_TIMEOUT);
+				} catch (InterruptedException e) {}
+			}
+		}
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Queued);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Queued ("objects", "Number of objects queued to be saved"),
+		Saved ("objects", "Number of objects saved"),
+		Invalid ("objects", "Number of objects not saved because they were incomplete"),
+		Errors ("errors", "Number of errors saving or committing content"),
+		Commits ("commits", "Number of commits"),
+		Throttled ("events", "Number of times the queue grew enough to throttle"),
+		QueueDepth ("objects", "The average number of objects waiting to be saved"),
+		PrepareTime ("nanos", "The average time to prepare an object"),
+		SaveTime ("nanos", "The average time to save an object"),
+		Latency ("nanos", "The average time from queueing to saving an object"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
@@ -21,20 +21,35 @@
 package org.ndnx.ndn.impl.repo;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidKeyException;
 import java.security.InvalidParameterException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.KeyManager;
@@ -42,6 +57,10 @@ import org.ndnx.ndn.config.ConfigurationException;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.config.UserConfiguration;
 import org.ndnx.ndn.config.SystemConfiguration.DEBUGGING_FLAGS;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
+import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
+import org.ndnx.ndn.impl.encoding.ByteBufferInputStream;
+import org.ndnx.ndn.impl.encoding.ByteBufferOutputStream;
 import org.ndnx.ndn.impl.repo.PolicyXML.PolicyObject;
 import org.ndnx.ndn.impl.security.keys.BasicKeyManager;
 import org.ndnx.ndn.impl.support.Log;
@@ -84,6 +103,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		public static final String REPOSITORY_KEYSTORE_ALIAS = REPOSITORY_USER.toLowerCase();
 
 		public static String CONTENT_FILE_PREFIX = "repoFile";
+		public static final String INDEX_CHECKPOINT_FILE = "index";
 		private static String DEBUG_TREEDUMP_FILE = "debugNamesTree";
 
 		private static String DIAG_NAMETREE = "nametree"; // Diagnostic/signal to dump name tree to debug file
@@ -96,21 +116,60 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	protected boolean _useStoredPolicy = true;
 
 	Map<Integer,RepoFile> _files;
-	RepoFile _activeWriteFile = null;
+	volatile RepoFile _activeWriteFile = null;
 	Integer _currentFileIndex = 0;
+	protected final Object _fileIndexLock = new Object();
 	ContentTree _index;
+	ContentObjectCache _cache = null;
+	SegmentPrefetcher _prefetcher = null;
 	
 	protected HashMap<String, String> _bulkImportInProgress = new HashMap<String, String>();
+
+	// Index checkpoint - see checkpointIndex()
+	protected static final int CHECKPOINT_MAGIC = 0x4e444e49;
+	protected static final int CHECKPOINT_VERSION = 2;
+	protected final Object _checkpointLock = new Object();
+	protected Map<Integer, Long> _checkpointExtents = null;
+	protected Timer _checkpointTimer = null;
+
+	// Group commit - see saveContent() and commit()
+	protected ByteBufferOutputStream _batch = new ByteBufferOutputStream(SystemConfiguration.REPO_WRITE_BATCH_BYTES + 16 * 1024);
+	protected ByteBufferOutputStream _spareBatch = new ByteBufferOutputStream(SystemConfiguration.REPO_WRITE_BATCH_BYTES + 16 * 1024);
+	protected long _batchStart = 0;		// offset in the active file of the start of _batch
+	protected final Map<FileRef, ContentObject> _unwritten = new ConcurrentHashMap<FileRef, ContentObject>();
+	protected final Object _commitLock = new Object();
+	protected boolean _syncNeeded = false;
+	protected Timer _syncTimer = null;
+
+	protected RepoCompactor _compactor = null;
 	
 	public static class RepoFile {
 		File file;
 		RandomAccessFile openFile;
-		long nextWritePos;
+		volatile long nextWritePos;		// Including content batched but not yet written
+		volatile long writtenPos;		// Only content actually written to the file
+		volatile MappedRepoFile mapped;	// Only used for memory mapped reads
 	}
 	
 	protected static class FileRef extends ContentRef {
 		int id;
 		long offset;
+		int length;		// of the encoded content, not part of its identity
+
+		@Override
+		public int hashCode() {
+			return 31 * id + (int)(offset ^ (offset >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof FileRef))
+				return false;
+			FileRef other = (FileRef)obj;
+			return id == other.id && offset == other.offset;
+		}
 	}
 
 	/**
@@ -124,6 +183,8 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		ContentObject co =  _index.get(interest, this);
 		if( Log.isLoggable(Log.FAC_REPO, Level.FINE) )
 			Log.fine(Log.FAC_REPO, "Looking for: " + interest.name() + (co == null ? ": Didn't find it" : ": Found it"));
+		if (null != co && null != _prefetcher)
+			_prefetcher.accessed(co.name());
 		return co;
 	}
 
@@ -133,7 +194,17 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * @return true if there is a ContentObject with exactly the given name, false otherwise
 	 */
 	public boolean hasContent(ContentName name) throws RepositoryException {
-		return _index.matchContent(name);
+		List<ContentRef> refs = _index.lookup(name);
+		if (null == refs)
+			return false;
+		// This may be taken as an acknowledgement that we have it, so make sure we really do
+		for (ContentRef ref : refs) {
+			if (_unwritten.containsKey(ref)) {
+				commit();
+				break;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -165,13 +236,20 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 
 	/**
 	 * Read the current repository file(s) for this repository and create an index for them.
+	 * If there is a usable index checkpoint we start from that and only read the content
+	 * written after it.
 	 * WARNING: multiple files are not well tested
 	 * 
 	 * @return the number of files making up the repository
 	 */
 	protected Integer createIndex() {
 		int max = 0;
-		_index = new ContentTree();
+		Map<Integer, Long> extents = null;
+		if (SystemConfiguration.REPO_INDEX_CHECKPOINT)
+			extents = readCheckpoint();
+		if (null == extents)
+			_index = new ContentTree();
+		_checkpointExtents = extents;
 		assert(null != _repositoryFile);
 		assert(_repositoryFile.isDirectory());
 		String[] filenames = _repositoryFile.list();
@@ -183,8 +261,9 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 					if (index > max) {
 						max = index.intValue();
 					}
+					Long extent = (null == extents) ? null : extents.get(index);
 					try {
-						createIndex(filenames[i], index, false);
+						createIndex(filenames[i], index, false, (null == extent) ? 0 : extent.longValue());
 					} catch (RepositoryException e) {}	// This can't happen
 				}
 			}
@@ -204,9 +283,10 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * @param fileName
 	 * @param index
 	 * @param fromImport - this is an "import" file.
+	 * @param startOffset - where to start reading; content before this is already in the index
 	 * @throws RepositoryException 
 	 */
-	private void createIndex(String fileName, Integer index, boolean fromImport) throws RepositoryException {
+	private void createIndex(String fileName, Integer index, boolean fromImport, long startOffset) throws RepositoryException {
 		try {
 			RepoFile rfile = new RepoFile();
 			rfile.file = new File(_repositoryFile,fileName);
@@ -214,7 +294,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			InputStream is = new BufferedInputStream(new RandomAccessInputStream(rfile.openFile),8192);
 			
 			if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-				Log.fine(Log.FAC_REPO, "Creating index for {0}", fileName);
+				Log.fine(Log.FAC_REPO, "Creating index for {0} from offset {1}", fileName, startOffset);
 			}
 			
 			// Must be done before inserting into the index because once objects are inserted into the
@@ -233,7 +313,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			// keep track of where our pointer was also synchronized under the RepoFile so we can restore
 			// it to where it was in the case someone was reading one of our previously created nodes
 			// while the index creation is in progress.
-			long nextOffset = 0;
+			long nextOffset = startOffset;
 			while (true) {
 				FileRef ref = new FileRef();
 				ContentObject tmp = new ContentObject();
@@ -247,6 +327,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 						if (rfile.openFile.getFilePointer()<rfile.openFile.length() || is.available()!=0) {
 							tmp.decode(is);
 							nextOffset = rfile.openFile.getFilePointer();
+							ref.length = (int)(nextOffset - is.available() - ref.offset);
 						}
 						else{
 							if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
@@ -381,27 +462,50 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 
 		// Internal initialization
 		_files = new HashMap<Integer, RepoFile>();
+		if (SystemConfiguration.REPO_CACHE_BYTES > 0) {
+			_cache = new ContentObjectCache(SystemConfiguration.REPO_CACHE_BYTES);
+			NDNStatsRegistry.register("RepoCache", _cache, "repo", _repositoryRoot);
+		}
 		_currentFileIndex = createIndex();
-		
-		try {
-			if (_currentFileIndex == 0) {
-				_currentFileIndex = 1; // the index of a file we will actually write
-				RepoFile rfile = new RepoFile();
-				rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX+"1");
-				rfile.openFile = new RandomAccessFile(rfile.file, "rw");
-				rfile.nextWritePos = 0;
-				_files.put(new Integer(_currentFileIndex), rfile);
-				_activeWriteFile = rfile;
-			} else {
-				RepoFile rfile = _files.get(new Integer(_currentFileIndex));
-				long cursize = rfile.file.length();
-				rfile.openFile = new RandomAccessFile(rfile.file, "rw");
-				rfile.nextWritePos = cursize;
-				_activeWriteFile = rfile;
-			}
-			
-		} catch (FileNotFoundException e) {
-			Log.warning(Log.FAC_REPO, "Error opening content output file index " + _currentFileIndex);
+		openWriteFile();
+		// Prefetched segments are staged in the cache, so there's no point without it
+		if (null != _cache && SystemConfiguration.REPO_PREFETCH_DEPTH > 0) {
+			_prefetcher = new SegmentPrefetcher("Repository", _index, this, SystemConfiguration.REPO_PREFETCH_DEPTH);
+			NDNStatsRegistry.register("RepoPrefetch", _prefetcher, "repo", _repositoryRoot);
+		}
+		if (SystemConfiguration.REPO_COMPACT_INTERVAL > 0) {
+			_compactor = new RepoCompactor(this);
+			NDNStatsRegistry.register("RepoCompactor", _compactor, "repo", _repositoryRoot);
+			_compactor.start(SystemConfiguration.REPO_COMPACT_INTERVAL * 1000L);
+		}
+
+		if (SystemConfiguration.REPO_SYNC_INTERVAL > 0) {
+			if (null != _syncTimer)
+				_syncTimer.cancel();
+			_syncTimer = new Timer("Repository sync", true);
+			_syncTimer.schedule(new TimerTask() {
+				public void run() {
+					try {
+						commit();
+						if (SystemConfiguration.REPO_SYNC_MODE == SystemConfiguration.RepoSyncMode.PERIODIC)
+							sync();
+					} catch (RepositoryException e) {
+						Log.warning(Log.FAC_REPO, "Periodic commit failed: {0}", e.getMessage());
+					}
+				}
+			}, SystemConfiguration.REPO_SYNC_INTERVAL, SystemConfiguration.REPO_SYNC_INTERVAL);
+		}
+
+		if (SystemConfiguration.REPO_INDEX_CHECKPOINT && SystemConfiguration.REPO_INDEX_CHECKPOINT_INTERVAL > 0) {
+			if (null != _checkpointTimer)
+				_checkpointTimer.cancel();
+			long period = SystemConfiguration.REPO_INDEX_CHECKPOINT_INTERVAL * 1000L;
+			_checkpointTimer = new Timer("Repository index checkpoint", true);
+			_checkpointTimer.schedule(new TimerTask() {
+				public void run() {
+					checkpointIndex();
+				}
+			}, period, period);
 		}
 			
 		// Verify stored policy info
@@ -438,6 +542,36 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		}
 	}
 	
+	/**
+	 * Open the file we append content to - the last one, or a new one if there are no files yet.
+	 */
+	protected void openWriteFile() {
+		try {
+			if (_currentFileIndex == 0) {
+				_currentFileIndex = 1; // the index of a file we will actually write
+				RepoFile rfile = new RepoFile();
+				rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX+"1");
+				rfile.openFile = new RandomAccessFile(rfile.file, "rw");
+				rfile.nextWritePos = 0;
+				synchronized (_files) {
+					_files.put(new Integer(_currentFileIndex), rfile);
+				}
+				_activeWriteFile = rfile;
+			} else {
+				RepoFile rfile = _files.get(new Integer(_currentFileIndex));
+				long cursize = rfile.file.length();
+				rfile.openFile = new RandomAccessFile(rfile.file, "rw");
+				rfile.nextWritePos = cursize;
+				_activeWriteFile = rfile;
+			}
+			_activeWriteFile.writtenPos = _activeWriteFile.nextWritePos;
+			_batchStart = _activeWriteFile.nextWritePos;
+			
+		} catch (FileNotFoundException e) {
+			Log.warning(Log.FAC_REPO, "Error opening content output file index " + _currentFileIndex);
+		}
+	}
+
 	/**
 	 * Write/rewrite the policy file if different from what we have now
 	 * @throws RepositoryException 
@@ -468,7 +602,12 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	}
 
 	/**
-	 * Save the given content in the repository store
+	 * Save the given content in the repository store. The content is added to the index and to a
+	 * batch of content to be appended to the active file, and can be read back straight away.
+	 * The batch is written when it gets to SystemConfiguration.REPO_WRITE_BATCH_BYTES, when
+	 * commit() is called, or by a timer every SystemConfiguration.REPO_SYNC_INTERVAL ms. Callers
+	 * which need to know the content is stored, for instance before acknowledging it, should
+	 * call commit().
 	 * 
 	 * @param content the content to save
 	 * @throws RepositoryException it the content can not be written or encoded
@@ -480,17 +619,16 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			Log.warning(Log.FAC_REPO, "Tried to save: {0}, presumably after repo shutdown", content.name());
 			return null;
 		}
-		try {	
-			NameEnumerationResponse ner = new NameEnumerationResponse();
-			synchronized(_activeWriteFile) {
-				assert(null != _activeWriteFile.openFile);
-				FileRef ref = new FileRef();
-				ref.id = Integer.parseInt(_activeWriteFile.file.getName().substring(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX.length()));
-				ref.offset = _activeWriteFile.nextWritePos;
-				_activeWriteFile.openFile.seek(_activeWriteFile.nextWritePos);
-				OutputStream os = new RandomAccessOutputStream(_activeWriteFile.openFile);
-				content.encode(os);
-				_activeWriteFile.nextWritePos = _activeWriteFile.openFile.getFilePointer();
+		boolean full;
+		boolean rollover;
+		NameEnumerationResponse ner = new NameEnumerationResponse();
+		while (true) {
+			RepoFile file = _activeWriteFile;
+			synchronized (file) {
+				if (file != _activeWriteFile)
+					continue;		// Rolled over to a new file while we waited
+				assert(null != file.openFile);
+				FileRef ref = append(file, content);
 				_index.insert(content, ref, System.currentTimeMillis(), this, ner);
 				if (ner==null || ner.getPrefix()==null) {
 					if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
@@ -501,18 +639,278 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 						Log.fine(Log.FAC_REPO, "new content was added where there was a name enumeration response interest flag");
 					}
 				}
-				return ner;
+				full = _batch.size() >= SystemConfiguration.REPO_WRITE_BATCH_BYTES;
+				rollover = SystemConfiguration.REPO_FILE_MAX_BYTES > 0 && file.nextWritePos >= SystemConfiguration.REPO_FILE_MAX_BYTES;
+				break;
 			}
+		}
+		if (rollover)
+			rollover();
+		else if (full)
+			commit();
+		return ner;
+	}
+
+	/**
+	 * Add content to the batch for the active file. Must be called synchronized on the file.
+	 * 
+	 * @param file the active file
+	 * @param content
+	 * @return a ref to where the content will be written
+	 * @throws RepositoryException if the content can not be encoded
+	 */
+	protected FileRef append(RepoFile file, ContentObject content) throws RepositoryException {
+		FileRef ref = new FileRef();
+		ref.id = fileId(file);
+		ref.offset = file.nextWritePos;
+		int start = _batch.size();
+		try {
+			// Content received from the network still holds its wire encoding, which this writes
+			// out directly rather than re-encoding
+			content.encode(_batch);
 		} catch (ContentEncodingException e) {
+			_batch.truncate(start);
 			throw new RepositoryException("Failed to encode content: " + e.getMessage());
-		} catch (IOException e) {
-			throw new RepositoryException("Failed to write content: " + e.getMessage());
+		}
+		ref.length = _batch.size() - start;
+		file.nextWritePos += ref.length;
+		_unwritten.put(ref, content);
+		return ref;
+	}
+
+	/**
+	 * Copy content to the active file and point the index at the copy. Used by compaction to move
+	 * live content out of files which are mostly garbage.
+	 * 
+	 * @param name the full name of the content, including digest
+	 * @param oldRef where the content is now
+	 * @param content the content
+	 * @return the number of bytes copied, 0 if the content was no longer in the index under oldRef
+	 * @throws RepositoryException
+	 */
+	protected int relocate(ContentName name, FileRef oldRef, ContentObject content) throws RepositoryException {
+		boolean full;
+		int length;
+		while (true) {
+			RepoFile file = _activeWriteFile;
+			if (null == file || null == file.openFile)
+				throw new RepositoryException("Repository is shut down");
+			synchronized (file) {
+				if (file != _activeWriteFile)
+					continue;
+				FileRef ref = append(file, content);
+				if (_index.replace(name, oldRef, ref)) {
+					length = ref.length;
+				} else {
+					// It's gone - leave the copy as garbage
+					_unwritten.remove(ref);
+					length = 0;
+				}
+				full = _batch.size() >= SystemConfiguration.REPO_WRITE_BATCH_BYTES;
+				break;
+			}
+		}
+		if (null != _cache)
+			_cache.remove(oldRef);
+		if (full)
+			commit();
+		return length;
+	}
+
+	/**
+	 * @return the index for a new file
+	 */
+	protected int nextFileIndex() {
+		synchronized (_fileIndexLock) {
+			return ++_currentFileIndex;
+		}
+	}
+
+	/**
+	 * Finish with the active file and start appending to a new one. Everything for the old
+	 * file is written first, and synced unless we've been asked not to sync at all.
+	 * 
+	 * @throws RepositoryException if the old file can't be written or the new one can't be created
+	 */
+	protected void rollover() throws RepositoryException {
+		synchronized (_commitLock) {
+			RepoFile old = _activeWriteFile;
+			if (null == old || null == old.openFile)
+				return;
+			synchronized (old) {
+				if (SystemConfiguration.REPO_FILE_MAX_BYTES <= 0 || old.nextWritePos < SystemConfiguration.REPO_FILE_MAX_BYTES)
+					return;		// Someone else got here first
+				commit();
+				if (SystemConfiguration.REPO_SYNC_MODE != SystemConfiguration.RepoSyncMode.NONE)
+					sync();
+				RepoFile rfile = new RepoFile();
+				int index = nextFileIndex();
+				rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + index);
+				try {
+					rfile.openFile = new RandomAccessFile(rfile.file, "rw");
+				} catch (FileNotFoundException e) {
+					throw new RepositoryException("Can not create repository file " + rfile.file + ": " + e.getMessage());
+				}
+				synchronized (_files) {
+					_files.put(index, rfile);
+				}
+				_batchStart = 0;
+				_syncNeeded = false;
+				_activeWriteFile = rfile;
+				try {
+					// It's reopened read only if we need to read from it
+					old.openFile.close();
+				} catch (IOException e) {}
+				old.openFile = null;
+				if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+					Log.info(Log.FAC_REPO, "Repository file {0} is full at {1} bytes, now writing to {2}", old.file.getName(),
+							old.nextWritePos, rfile.file.getName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Delete a file which compaction has emptied of live content. Before it goes the index is
+	 * checkpointed without it, or if that can't be done the checkpoint is discarded, so that
+	 * nothing refers to it on restart.
+	 * 
+	 * If the file was memory mapped its space isn't freed until the mapping has been released,
+	 * see MappedRepoFile.released().
+	 * 
+	 * @param id the index of the file
+	 * @param unmapped if not null, the file's mapping, if it had one, is added to this once closed
+	 * @return false if the file isn't one we can delete
+	 */
+	protected boolean deleteFile(int id, List<MappedRepoFile> unmapped) {
+		RepoFile rfile;
+		synchronized (_files) {
+			rfile = _files.get(id);
+			if (null == rfile || rfile == _activeWriteFile)
+				return false;
+			_files.remove(id);
+		}
+		if (SystemConfiguration.REPO_INDEX_CHECKPOINT && !checkpointIndex()) {
+			synchronized (_checkpointLock) {
+				new File(_repositoryMeta, LogStructRepoStoreProfile.INDEX_CHECKPOINT_FILE).delete();
+				_checkpointExtents = null;
+			}
+		}
+		synchronized (rfile) {
+			if (null != rfile.openFile) {
+				try {
+					rfile.openFile.close();
+				} catch (IOException e) {}
+				rfile.openFile = null;
+			}
+			if (null != rfile.mapped) {
+				rfile.mapped.close();
+				if (null != unmapped)
+					unmapped.add(rfile.mapped);
+				rfile.mapped = null;
+			}
+			if (!rfile.file.delete())
+				Log.warning(Log.FAC_REPO, "Unable to delete compacted repository file {0}", rfile.file);
+		}
+		return true;
+	}
+
+	/**
+	 * Write everything saved so far to the active file, and if the sync mode is BATCH make sure
+	 * it is on disk. Only one commit runs at a time but saves can continue into a new batch while
+	 * it does, so a caller whose content was in an earlier batch may find it has nothing left to do.
+	 * 
+	 * If the write fails the batch is kept, ahead of anything saved since, at the same position in
+	 * the file so the next commit writes it again. Until then the content is still read from
+	 * memory, and nothing after it is written so the file never has a hole in it.
+	 * 
+	 * @throws RepositoryException if the content can't be written
+	 */
+	public void commit() throws RepositoryException {
+		synchronized (_commitLock) {
+			RepoFile file = _activeWriteFile;
+			if (null == file)
+				return;
+			ByteBufferOutputStream batch;
+			long start;
+			synchronized (file) {
+				if (_batch.size() == 0 || null == file.openFile)
+					return;
+				batch = _batch;
+				_batch = _spareBatch;
+				start = _batchStart;
+				_batchStart = file.nextWritePos;
+			}
+			long position = start;
+			try {
+				ByteBuffer buffer = batch.getBuffer();
+				FileChannel channel = file.openFile.getChannel();
+				while (buffer.hasRemaining())
+					position += writeBatch(channel, buffer, position);
+				if (SystemConfiguration.REPO_SYNC_MODE == SystemConfiguration.RepoSyncMode.BATCH)
+					channel.force(false);
+				else
+					_syncNeeded = true;
+			} catch (IOException e) {
+				synchronized (file) {
+					// Put back what we took, with anything saved since after it
+					batch.restore();
+					batch.write(_batch.getBuffer());
+					_batch.reset();
+					_spareBatch = _batch;
+					_batch = batch;
+					_batchStart = start;
+				}
+				throw new RepositoryException("Failed to write content: " + e.getMessage());
+			}
+			batch.reset();
+			_spareBatch = batch;
+
+			// Readers now find the content in the file - this must come after it is written
+			file.writtenPos = position;
+			int id = fileId(file);
+			Iterator<FileRef> refs = _unwritten.keySet().iterator();
+			while (refs.hasNext()) {
+				FileRef ref = refs.next();
+				if (ref.id == id && ref.offset < position)
+					refs.remove();
+			}
+		}
+	}
+
+	/**
+	 * Write some or all of a batch to the active file
+	 * @param channel the active file's channel
+	 * @param buffer what is left of the batch
+	 * @param position where in the file it goes
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	protected int writeBatch(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		return channel.write(buffer, position);
+	}
+
+	/**
+	 * Make sure everything written to the active file is on disk
+	 * @throws RepositoryException
+	 */
+	public void sync() throws RepositoryException {
+		synchronized (_commitLock) {
+			if (!_syncNeeded || null == _activeWriteFile || null == _activeWriteFile.openFile)
+				return;
+			try {
+				_activeWriteFile.openFile.getChannel().force(false);
+				_syncNeeded = false;
+			} catch (IOException e) {
+				throw new RepositoryException("Failed to sync content: " + e.getMessage());
+			}
 		}
 	}
 
 	/**
 	 * Get content for the given reference from the storage files. Used to retrieve content for 
-	 * comparison operations.
+	 * comparison operations. Recently used objects are served from the cache, if enabled, without
+	 * reading the file - the returned object may be shared so must not be modified.
 	 * 
 	 * @param ref the reference
 	 * @return ContentObject at the referenced slot in the storage files
@@ -521,6 +919,23 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		// This is a call back based on what we put in ContentTree, so it must be
 		// using our subtype of ContentRef
 		FileRef fref = (FileRef)ref;
+		if (null != _cache) {
+			ContentObject content = _cache.get(fref);
+			if (null != content)
+				return content;
+		}
+		ContentObject content = read(fref);
+		if (null != content && null != _cache)
+			_cache.put(fref, content);
+		return content;
+	}
+
+	/**
+	 * Read and decode the content at a reference from the storage files
+	 * @param fref the reference
+	 * @return the ContentObject or null if it couldn't be read
+	 */
+	protected ContentObject read(FileRef fref) {
 		try {
 			RepoFile file = null;
 			synchronized (_files) {
@@ -528,6 +943,14 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			}
 			if (null == file)
 				return null;
+			ContentObject unwritten = _unwritten.get(fref);
+			if (null != unwritten)
+				return unwritten;
+			if (SystemConfiguration.REPO_MMAP_READS) {
+				ContentObject content = readMapped(file, fref);
+				if (null != content)
+					return content;
+			}
 			synchronized (file) {
 				if (null == file.openFile) {
 					file.openFile = new RandomAccessFile(file.file, "r");
@@ -535,7 +958,11 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 				file.openFile.seek(fref.offset);
 				ContentObject content = new ContentObject();
 				InputStream is = new BufferedInputStream(new RandomAccessInputStream(file.openFile), 8192);
-				content.decode(is);
+				BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+				decoder.setRetainWire(SystemConfiguration.RETAIN_WIRE_ENCODING);
+				decoder.beginDecoding(is);
+				content.decode(decoder);
+				decoder.endDecoding();
 				return content;
 			}
 		} catch (Exception e) {
@@ -544,6 +971,248 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		}
 	}
 	
+	/**
+	 * @param rfile
+	 * @return the index of the file in the repository
+	 */
+	protected static int fileId(RepoFile rfile) {
+		return Integer.parseInt(rfile.file.getName().substring(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX.length()));
+	}
+
+	/**
+	 * Save the index to the meta directory so that on startup we only have to read the content
+	 * written since, rather than decoding every object in the repository. Along with the
+	 * index we record how far into each file it is complete (its "extent"). Content saved while
+	 * the checkpoint is being written is either in the checkpoint or beyond the extent of the
+	 * active file and so gets read on startup; anything which is both is detected as a
+	 * duplicate when it is reinserted.
+	 * 
+	 * This is called periodically and on shutdown. Nothing is written if the repository
+	 * hasn't changed since the last checkpoint or if a bulk import is still being indexed.
+	 * 
+	 * @return true if a checkpoint was written
+	 */
+	public boolean checkpointIndex() {
+		synchronized (_checkpointLock) {
+			try {
+				commit();
+			} catch (RepositoryException e) {
+				Log.warning(Log.FAC_REPO, "Unable to checkpoint index: {0}", e.getMessage());
+				return false;
+			}
+			TreeMap<Integer, Long> extents = new TreeMap<Integer, Long>();
+			synchronized (_files) {
+				for (Map.Entry<Integer, RepoFile> entry : _files.entrySet()) {
+					if (entry.getValue() != _activeWriteFile)
+						extents.put(entry.getKey(), entry.getValue().file.length());
+				}
+			}
+			if (null != _activeWriteFile) {
+				synchronized (_activeWriteFile) {
+					extents.put(fileId(_activeWriteFile), _activeWriteFile.writtenPos);
+				}
+			}
+			synchronized (_bulkImportInProgress) {
+				if (!_bulkImportInProgress.isEmpty())
+					return false;
+			}
+			if (extents.equals(_checkpointExtents))
+				return false;
+
+			long start = System.currentTimeMillis();
+			File checkpoint = new File(_repositoryMeta, LogStructRepoStoreProfile.INDEX_CHECKPOINT_FILE);
+			File tmp = new File(_repositoryMeta, LogStructRepoStoreProfile.INDEX_CHECKPOINT_FILE + ".tmp");
+			FileOutputStream fos = null;
+			try {
+				fos = new FileOutputStream(tmp);
+				BufferedOutputStream bos = new BufferedOutputStream(fos, 65536);
+				CheckedOutputStream cos = new CheckedOutputStream(bos, new CRC32());
+				DataOutputStream dos = new DataOutputStream(cos);
+				dos.writeInt(CHECKPOINT_MAGIC);
+				dos.writeInt(CHECKPOINT_VERSION);
+				dos.writeInt(extents.size());
+				for (Map.Entry<Integer, Long> entry : extents.entrySet()) {
+					dos.writeInt(entry.getKey());
+					dos.writeLong(entry.getValue());
+				}
+				long count = _index.write(dos, checkpointCodec(null));
+				dos.flush();
+				// The checksum itself isn't part of the checksummed data
+				DataOutputStream trailer = new DataOutputStream(bos);
+				trailer.writeLong(cos.getChecksum().getValue());
+				trailer.flush();
+				fos.getFD().sync();
+				fos.close();
+				fos = null;
+				if (!tmp.renameTo(checkpoint)) {
+					checkpoint.delete();
+					if (!tmp.renameTo(checkpoint))
+						throw new IOException("Can not rename " + tmp + " to " + checkpoint);
+				}
+				_checkpointExtents = extents;
+				if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+					Log.info(Log.FAC_REPO, "Checkpointed index of {0} objects in {1} files in {2} ms", count, extents.size(), 
+							System.currentTimeMillis() - start);
+				}
+				return true;
+			} catch (IOException e) {
+				Log.warning(Log.FAC_REPO, "Unable to checkpoint index to {0}: {1}", checkpoint, e.getMessage());
+				return false;
+			} finally {
+				if (null != fos) {
+					try {
+						fos.close();
+					} catch (IOException e) {}
+					tmp.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checkpoint the index even if no content has been written since the last checkpoint,
+	 * because entries have been removed from it.
+	 * 
+	 * @return true if a checkpoint was written
+	 */
+	public boolean checkpointIndexNow() {
+		synchronized (_checkpointLock) {
+			_checkpointExtents = null;
+			return checkpointIndex();
+		}
+	}
+
+	/**
+	 * Load the index checkpoint, if there is one, into _index. The checkpoint is only used if it is
+	 * intact and all the files it covers are at least as long as they were when it was written.
+	 * 
+	 * @return the extent of each file covered by the checkpoint, or null if there is no usable checkpoint
+	 */
+	protected Map<Integer, Long> readCheckpoint() {
+		File checkpoint = new File(_repositoryMeta, LogStructRepoStoreProfile.INDEX_CHECKPOINT_FILE);
+		if (!checkpoint.exists())
+			return null;
+		long start = System.currentTimeMillis();
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(checkpoint);
+			BufferedInputStream bis = new BufferedInputStream(fis, 65536);
+			CheckedInputStream cis = new CheckedInputStream(bis, new CRC32());
+			DataInputStream dis = new DataInputStream(cis);
+			if (dis.readInt() != CHECKPOINT_MAGIC || dis.readInt() != CHECKPOINT_VERSION)
+				throw new IOException("unrecognized format");
+			int count = dis.readInt();
+			TreeMap<Integer, Long> extents = new TreeMap<Integer, Long>();
+			for (int i = 0; i < count; i++) {
+				int id = dis.readInt();
+				long extent = dis.readLong();
+				File file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + id);
+				if (file.length() < extent)
+					throw new IOException(file.getName() + " is shorter than when the checkpoint was written");
+				extents.put(id, extent);
+			}
+			ContentTree index = ContentTree.read(dis, checkpointCodec(_repositoryFile));
+			long checksum = cis.getChecksum().getValue();
+			if (new DataInputStream(bis).readLong() != checksum)
+				throw new IOException("bad checksum");
+			_index = index;
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+				Log.info(Log.FAC_REPO, "Loaded index checkpoint for {0} files in {1} ms", extents.size(),
+						System.currentTimeMillis() - start);
+			}
+			return extents;
+		} catch (IOException e) {
+			Log.warning(Log.FAC_REPO, "Ignoring index checkpoint {0}: {1}", checkpoint, e.toString());
+			return null;
+		} finally {
+			if (null != fis) {
+				try {
+					fis.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * @param directory if non null, refs read are checked to be within the files in this directory.
+	 * 	Saves which happened while the checkpoint was written may be beyond the extents of the
+	 * 	checkpoint, but they must still be in the files.
+	 * @return codec for our FileRefs
+	 */
+	protected static ContentTree.ContentRefCodec checkpointCodec(final File directory) {
+		final HashMap<Integer, Long> lengths = new HashMap<Integer, Long>();
+		return new ContentTree.ContentRefCodec() {
+			public void writeRef(DataOutput out, ContentRef ref) throws IOException {
+				FileRef fref = (FileRef)ref;
+				out.writeInt(fref.id);
+				out.writeLong(fref.offset);
+				out.writeInt(fref.length);
+			}
+
+			public ContentRef readRef(DataInput in) throws IOException {
+				FileRef fref = new FileRef();
+				fref.id = in.readInt();
+				fref.offset = in.readLong();
+				fref.length = in.readInt();
+				if (null != directory) {
+					Long length = lengths.get(fref.id);
+					if (null == length) {
+						length = new File(directory, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + fref.id).length();
+						lengths.put(fref.id, length);
+					}
+					if (fref.offset < 0 || fref.offset >= length)
+						throw new IOException("Reference outside of repository files: " + fref.id + "/" + fref.offset);
+				}
+				return fref;
+			}
+		};
+	}
+
+	/**
+	 * Read content from a memory mapping of the file. This doesn't lock the file so any number
+	 * of threads can read at once.
+	 * 
+	 * @param file
+	 * @param fref
+	 * @return the content, or null if it couldn't be read this way, in which case the caller
+	 * 	should read it from the file
+	 */
+	protected ContentObject readMapped(RepoFile file, FileRef fref) {
+		try {
+			MappedRepoFile mapped = file.mapped;
+			if (null == mapped) {
+				synchronized (file) {
+					if (null == file.mapped)
+						file.mapped = new MappedRepoFile(file.file);
+					mapped = file.mapped;
+				}
+			}
+			// Only what has been completely written can be read from the file being written to.
+			// Other files don't change so once mapped we don't need to check their length again.
+			long sealed;
+			if (file == _activeWriteFile)
+				sealed = file.writtenPos;
+			else if (fref.offset < mapped.mappedLength())
+				sealed = mapped.mappedLength();
+			else
+				sealed = file.file.length();
+			ByteBuffer buffer = mapped.slice(fref.offset, sealed);
+			if (null == buffer)
+				return null;
+			ContentObject content = new ContentObject();
+			BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+			decoder.setRetainWire(SystemConfiguration.RETAIN_WIRE_ENCODING);
+			decoder.beginDecoding(new ByteBufferInputStream(buffer));
+			content.decode(decoder);
+			decoder.endDecoding();
+			return content;
+		} catch (Exception e) {
+			if (Log.isLoggable(Log.FAC_REPO, Level.FINE))
+				Log.fine(Log.FAC_REPO, "Can't read mapped content at {0}/{1}: {2}", fref.id, fref.offset, e);
+			return null;
+		}
+	}
+
 	/**
 	 * Check/write files that contain meta data for the repo
 	 * @throws RepositoryException
@@ -638,6 +1307,37 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		if (null != _km) {
 			KeyManager.closeDefaultKeyManager();
 		}
+
+		if (null != _checkpointTimer) {
+			_checkpointTimer.cancel();
+			_checkpointTimer = null;
+		}
+		if (null != _syncTimer) {
+			_syncTimer.cancel();
+			_syncTimer = null;
+		}
+		if (null != _compactor) {
+			_compactor.stop();
+			NDNStatsRegistry.unregister(_compactor);
+			_compactor = null;
+		}
+		if (null != _prefetcher) {
+			_prefetcher.shutdown();
+			NDNStatsRegistry.unregister(_prefetcher);
+			_prefetcher = null;
+		}
+		if (null != _cache) {
+			NDNStatsRegistry.unregister(_cache);
+		}
+		try {
+			commit();
+			if (SystemConfiguration.REPO_SYNC_MODE != SystemConfiguration.RepoSyncMode.NONE)
+				sync();
+		} catch (RepositoryException e) {
+			Log.warning(Log.FAC_REPO, "Unable to write content on shutdown: {0}", e.getMessage());
+		}
+		if (SystemConfiguration.REPO_INDEX_CHECKPOINT && null != _index)
+			checkpointIndex();
 		
 		if (null != _activeWriteFile && null != _activeWriteFile.openFile) {
 			try {
@@ -647,6 +1347,16 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 				}
 			} catch (IOException e) {}
 		}
+		if (null != _files) {
+			synchronized (_files) {
+				for (RepoFile rfile : _files.values()) {
+					if (null != rfile.mapped) {
+						rfile.mapped.close();
+						rfile.mapped = null;
+					}
+				}
+			}
+		}
 		if (SystemConfiguration.checkDebugFlag(DEBUGGING_FLAGS.REPO_EXITDUMP)) {
 			Log.warning(Log.FAC_REPO, "Debug flag ({0}) is set: dumping nametree now (on shutdown)", DEBUGGING_FLAGS.REPO_EXITDUMP.toString());
 			dumpNames(-1);
@@ -654,10 +1364,32 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	}
 
 	public Object getStatus(String type) {
+		if (type.equals(RepositoryStore.REPO_CACHE_STATUS_REQUEST))
+			return (null == _cache) ? "Content cache disabled" : _cache.getStatus();
+		if (type.equals(RepositoryStore.REPO_COMPACT_STATUS_REQUEST))
+			return (null == _compactor) ? "Compaction disabled" : _compactor.getStatus();
+		if (type.equals(RepositoryStore.REPO_PREFETCH_STATUS_REQUEST))
+			return (null == _prefetcher) ? "Prefetch disabled" : _prefetcher.getStatus();
 		return type.equals(RepositoryStore.REPO_SIMPLE_STATUS_REQUEST) 
 				? ((null == _activeWriteFile.openFile) ? null : "running") : null;
 	}
 
+	/**
+	 * @return true if bulk imports are still being indexed
+	 */
+	protected boolean bulkImportInProgress() {
+		synchronized (_bulkImportInProgress) {
+			return !_bulkImportInProgress.isEmpty();
+		}
+	}
+
+	/**
+	 * @return the cache of decoded content objects, or null if caching is disabled
+	 */
+	public ContentObjectCache getCache() {
+		return _cache;
+	}
+
 	synchronized public boolean bulkImport(String name) throws RepositoryException {
 		if (name.contains(UserConfiguration.FILE_SEP))
 			throw new RepositoryException("Bulk import data can not contain pathnames");
@@ -673,12 +1405,12 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			
 			_bulkImportInProgress.put(name, name);
 		}
-		_currentFileIndex++;
-		File repoFile = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + _currentFileIndex);
+		int index = nextFileIndex();
+		File repoFile = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + index);
 		if (!file.renameTo(repoFile))
 			throw new RepositoryException("Can not rename file: " + file);
 		try {
-			createIndex(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + _currentFileIndex, _currentFileIndex, true);
+			createIndex(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + index, index, true, 0);
 		} catch (RepositoryException re) {
 			// The seemingly logical thing to do would be to verify the data for errors first and then submit it if it
 			// was OK. But that would require 2 passes through the data in the mainline case in which the data is good
@@ -0,0 +1,162 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Read only memory mapping of a repository file, so that content can be read by position
+ * from many threads at once without sharing a file pointer.
+ * 
+ * A mapping can only cover 2GB so the file is mapped as a series of regions. Each region
+ * overlaps the next by REGION_OVERLAP so that an object starting in one region can be read
+ * without crossing into the next - objects bigger than that have to be read some other way.
+ * Only the part of the file which has been completely written may be mapped; for the file
+ * still being written to the mapping is extended as readers ask for more.
+ * 
+ * There is no way to unmap a region: it stays mapped, and holds on to the disk space of
+ * the file even once the file is deleted, until it and every buffer sliced from it have
+ * been garbage collected. released() says when that has happened.
+ */
+public class MappedRepoFile {
+
+	public static final long DEFAULT_REGION_SIZE = 256 * 1024 * 1024;
+	public static final int REGION_OVERLAP = 64 * 1024;
+
+	protected final RandomAccessFile _file;
+	protected final FileChannel _channel;
+	protected final long _regionSize;
+	protected volatile MappedByteBuffer [] _regions = new MappedByteBuffer[0];
+	protected volatile long _mappedLength = 0;
+	protected boolean _closed = false;
+
+	// Every region ever mapped, including those replaced by extend(), until it is collected
+	protected final ReferenceQueue<MappedByteBuffer> _collected = new ReferenceQueue<MappedByteBuffer>();
+	protected final HashSet<Reference<MappedByteBuffer>> _live = new HashSet<Reference<MappedByteBuffer>>();
+
+	/**
+	 * @param file the repository file
+	 * @param regionSize size of each mapped region, not including the overlap
+	 * @throws IOException if the file can't be opened
+	 */
+	public MappedRepoFile(File file, long regionSize) throws IOException {
+		if (regionSize <= 0 || regionSize + REGION_OVERLAP > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Bad region size: " + regionSize);
+		_regionSize = regionSize;
+		_file = new RandomAccessFile(file, "r");
+		_channel = _file.getChannel();
+	}
+
+	public MappedRepoFile(File file) throws IOException {
+		this(file, DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Get a buffer to read the content starting at an offset in the file.
+	 * 
+	 * @param offset where the content starts
+	 * @param sealedLength how much of the file has been completely written
+	 * @return a buffer of its own positioned at offset, running to the end of the mapped
+	 * 	region, or null if offset is not within the sealed part of the file
+	 * @throws IOException if the file can't be mapped
+	 */
+	public ByteBuffer slice(long offset, long sealedLength) throws IOException {
+		if (offset < 0 || offset >= sealedLength)
+			return null;
+		if (offset >= _mappedLength)
+			extend(sealedLength);
+		MappedByteBuffer [] regions = _regions;
+		int index = (int)(offset / _regionSize);
+		if (index >= regions.length)
+			return null;
+		ByteBuffer buffer = regions[index].duplicate();
+		buffer.position((int)(offset - index * _regionSize));
+		return buffer;
+	}
+
+	/**
+	 * Map the file up to length. Regions already mapped to their full size are kept, only
+	 * the last partial region is remapped.
+	 * 
+	 * @param length
+	 * @throws IOException
+	 */
+	public synchronized void extend(long length) throws IOException {
+		if (_closed)
+			throw new IOException("Mapped file is closed");
+		if (length <= _mappedLength)
+			return;
+		int count = (int)((length + _regionSize - 1) / _regionSize);
+		MappedByteBuffer [] regions = Arrays.copyOf(_regions, count);
+		int first = (_mappedLength == 0) ? 0 : (int)((_mappedLength - 1) / _regionSize);
+		for (int i = first; i < count; i++) {
+			long start = i * _regionSize;
+			long size = Math.min(_regionSize + REGION_OVERLAP, length - start);
+			if (null != regions[i] && regions[i].capacity() == size)
+				continue;
+			regions[i] = _channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			_live.add(new PhantomReference<MappedByteBuffer>(regions[i], _collected));
+		}
+		_regions = regions;
+		_mappedLength = length;
+	}
+
+	/**
+	 * @return how much of the file is currently mapped
+	 */
+	public long mappedLength() {
+		return _mappedLength;
+	}
+
+	/**
+	 * Close the file and drop our references to the mapped regions. Buffers already sliced
+	 * from them remain valid until they are garbage collected.
+	 */
+	public synchronized void close() {
+		_closed = true;
+		_regions = new MappedByteBuffer[0];
+		_mappedLength = 0;
+		try {
+			_file.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * @return true once the file is closed and every region mapped from it has been garbage
+	 * 	collected, so the mappings no longer hold on to the file's disk space
+	 */
+	public synchronized boolean released() {
+		Reference<? extends MappedByteBuffer> ref;
+		while (null != (ref = _collected.poll()))
+			_live.remove(ref);
+		return _closed && _live.isEmpty();
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.FileRef;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.RepoFile;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * Reclaims space in a LogStructRepoStore. Content is only ever appended to the store's files, so
+ * content which has been replaced or removed from the index stays on disk. Each compaction pass:
+ * 
+ * - applies the retention rules in SystemConfiguration: REPO_KEEP_VERSIONS and REPO_PRUNE_OUTSIDE_NAMESPACE
+ * - works out how much of each file other than the one being written is still referred to by the index
+ * - for each file in which that is less than REPO_COMPACT_THRESHOLD percent, copies its live content to
+ *   the end of the active file, points the index at the copies, and deletes the file.
+ * 
+ * Copying is limited to REPO_COMPACT_RATE bytes per second so that compaction doesn't starve
+ * the repository's normal work.
+ * 
+ * Pruning only removes content from the index; it stays in its file until that file is compacted.
+ * After pruning the index is checkpointed so that a restart doesn't bring the pruned content back,
+ * but if there is no usable checkpoint the files are reread and it is back until the next pass
+ * prunes it again.
+ * 
+ * The space of a deleted file which was memory mapped isn't freed until its mappings have been
+ * garbage collected, so it is only counted as reclaimed once a later pass finds that they have.
+ */
+public class RepoCompactor implements NDNStatistics {
+
+	protected final LogStructRepoStore _store;
+	protected Timer _timer = null;
+	protected final Object _runLock = new Object();
+	protected volatile boolean _stopped = false;
+
+	protected long _lastPass = 0;
+	protected long _lastPassTime = 0;
+
+	/**
+	 * A deleted file whose space is held until its mappings are released
+	 */
+	protected static class Unreleased {
+		protected final int _id;
+		protected final long _bytes;
+		protected final List<MappedRepoFile> _mappings;
+
+		protected Unreleased(int id, long bytes, List<MappedRepoFile> mappings) {
+			_id = id;
+			_bytes = bytes;
+			_mappings = mappings;
+		}
+	}
+	protected final ArrayList<Unreleased> _unreleased = new ArrayList<Unreleased>();
+
+	/**
+	 * @param store the store to compact
+	 */
+	public RepoCompactor(LogStructRepoStore store) {
+		_store = store;
+	}
+
+	/**
+	 * Start running compaction passes in the background
+	 * @param period ms between passes
+	 */
+	public synchronized void start(long period) {
+		if (null != _timer)
+			_timer.cancel();
+		_stopped = false;
+		_timer = new Timer("Repository compaction", true);
+		_timer.schedule(new TimerTask() {
+			public void run() {
+				try {
+					compact();
+				} catch (RepositoryException e) {
+					Log.warning(Log.FAC_REPO, "Repository compaction failed: {0}", e.getMessage());
+				}
+			}
+		}, period, period);
+	}
+
+	/**
+	 * Stop compacting. If a pass is running this waits for it to get to a point where it can stop.
+	 */
+	public void stop() {
+		_stopped = true;
+		synchronized (this) {
+			if (null != _timer) {
+				_timer.cancel();
+				_timer = null;
+			}
+		}
+		synchronized (_runLock) {}
+	}
+
+	/**
+	 * Run one compaction pass
+	 * 
+	 * @return the number of files compacted
+	 * @throws RepositoryException if live content couldn't be copied
+	 */
+	public int compact() throws RepositoryException {
+		synchronized (_runLock) {
+			if (_stopped || _store.bulkImportInProgress())
+				return 0;
+			long start = System.currentTimeMillis();
+			reclaimReleased();
+			prune();
+
+			// Find files which are mostly garbage
+			final HashMap<Integer, long[]> live = new HashMap<Integer, long[]>();
+			_store._index.visitContent(new ContentTree.ContentVisitor() {
+				public void visit(ContentName name, ContentRef ref) {
+					FileRef fref = (FileRef)ref;
+					long [] bytes = live.get(fref.id);
+					if (null == bytes) {
+						bytes = new long[1];
+						live.put(fref.id, bytes);
+					}
+					bytes[0] += fref.length;
+				}
+			});
+			ArrayList<Integer> candidates = new ArrayList<Integer>();
+			synchronized (_store._files) {
+				for (Map.Entry<Integer, RepoFile> entry : _store._files.entrySet()) {
+					if (entry.getValue() == _store._activeWriteFile)
+						continue;
+					long length = entry.getValue().file.length();
+					long [] bytes = live.get(entry.getKey());
+					long liveBytes = (null == bytes) ? 0 : bytes[0];
+					if (length > 0 && liveBytes * 100 < length * SystemConfiguration.REPO_COMPACT_THRESHOLD)
+						candidates.add(entry.getKey());
+				}
+			}
+
+			int compacted = 0;
+			for (Integer id : candidates) {
+				if (_stopped)
+					break;
+				if (compactFile(id))
+					compacted++;
+			}
+			_lastPass = start;
+			_lastPassTime = System.currentTimeMillis() - start;
+			_stats.increment(StatsEnum.Passes);
+			return compacted;
+		}
+	}
+
+	/**
+	 * Apply the retention rules to the index
+	 */
+	protected void prune() {
+		ContentTree.ContentVisitor removed = new ContentTree.ContentVisitor() {
+			public void visit(ContentName name, ContentRef ref) {
+				if (null != _store.getCache())
+					_store.getCache().remove(ref);
+				_stats.increment(StatsEnum.ObjectsPruned);
+			}
+		};
+		int pruned = 0;
+		if (SystemConfiguration.REPO_KEEP_VERSIONS > 0)
+			pruned += _store._index.pruneVersions(SystemConfiguration.REPO_KEEP_VERSIONS, removed);
+		Policy policy = _store.getPolicy();
+		if (SystemConfiguration.REPO_PRUNE_OUTSIDE_NAMESPACE && null != policy) {
+			ArrayList<ContentName> keep = new ArrayList<ContentName>(policy.getNamespace());
+			// The repository's own policy lives under the global prefix
+			keep.add(policy.getGlobalPrefix());
+			pruned += _store._index.pruneOutside(keep, removed);
+		}
+		if (SystemConfiguration.REPO_INDEX_CHECKPOINT && pruned > 0)
+			_store.checkpointIndexNow();
+	}
+
+	/**
+	 * Copy the live content out of a file and delete it
+	 * 
+	 * @param id the file
+	 * @return true if the file was deleted
+	 * @throws RepositoryException
+	 */
+	protected boolean compactFile(final int id) throws RepositoryException {
+		final ArrayList<ContentName> names = new ArrayList<ContentName>();
+		final ArrayList<FileRef> refs = new ArrayList<FileRef>();
+		_store._index.visitContent(new ContentTree.ContentVisitor() {
+			public void visit(ContentName name, ContentRef ref) {
+				FileRef fref = (FileRef)ref;
+				if (fref.id == id) {
+					names.add(name);
+					refs.add(fref);
+				}
+			}
+		});
+		RepoFile rfile;
+		synchronized (_store._files) {
+			rfile = _store._files.get(id);
+		}
+		if (null == rfile)
+			return false;
+		long length = rfile.file.length();
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Compacting repository file {0}: {1} live objects in {2} bytes", id, refs.size(), length);
+		}
+
+		long start = System.currentTimeMillis();
+		long copied = 0;
+		for (int i = 0; i < refs.size(); i++) {
+			if (_stopped)
+				return false;
+			ContentObject content = _store.read(refs.get(i));
+			if (null == content) {
+				// Don't lose it - leave the file for now
+				Log.warning(Log.FAC_REPO, "Unable to read live content {0} from file {1}, not compacting it", names.get(i), id);
+				return false;
+			}
+			int moved = _store.relocate(names.get(i), refs.get(i), content);
+			if (moved > 0) {
+				copied += moved;
+				_stats.increment(StatsEnum.ObjectsCopied);
+				_stats.increment(StatsEnum.BytesCopied, moved);
+			}
+			throttle(start, copied);
+		}
+
+		// The copies must be safely on disk before the originals go
+		_store.commit();
+		_store.sync();
+		ArrayList<MappedRepoFile> mappings = new ArrayList<MappedRepoFile>();
+		if (!_store.deleteFile(id, mappings))
+			return false;
+		_stats.increment(StatsEnum.SegmentsCompacted);
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Compacted repository file {0}: copied {1} bytes of {2} in {3} ms", id, copied,
+					length, System.currentTimeMillis() - start);
+		}
+		if (rfile.file.exists()) {
+			// Deletion already logged, nothing freed
+			return true;
+		}
+		synchronized (_unreleased) {
+			_unreleased.add(new Unreleased(id, length, mappings));
+		}
+		reclaimReleased();
+		return true;
+	}
+
+	/**
+	 * Count the space of deleted files as reclaimed once nothing holds on to it
+	 */
+	protected void reclaimReleased() {
+		synchronized (_unreleased) {
+			for (Iterator<Unreleased> iter = _unreleased.iterator(); iter.hasNext(); ) {
+				Unreleased file = iter.next();
+				boolean released = true;
+				for (MappedRepoFile mapped : file._mappings)
+					released &= mapped.released();
+				if (!released)
+					continue;
+				iter.remove();
+				_stats.increment(StatsEnum.BytesReclaimed, (int)Math.min(Integer.MAX_VALUE, file._bytes));
+				if (Log.isLoggable(Log.FAC_REPO, Level.INFO))
+					Log.info(Log.FAC_REPO, "Reclaimed {0} bytes of repository file {1}", file._bytes, file._id);
+			}
+		}
+	}
+
+	/**
+	 * @return bytes of deleted files whose space is still held by memory mappings
+	 */
+	public long unreleasedBytes() {
+		reclaimReleased();
+		long bytes = 0;
+		synchronized (_unreleased) {
+			for (Unreleased file : _unreleased)
+				bytes += file._bytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Sleep if we are copying faster than REPO_COMPACT_RATE
+	 */
+	protected void throttle(long start, long copied) {
+		long rate = SystemConfiguration.REPO_COMPACT_RATE;
+		if (rate <= 0)
+			return;
+		long ahead = (copied * 1000 / rate) - (System.currentTimeMillis() - start);
+		if (ahead > 0) {
+			try {
+				Thread.sleep(ahead);
+			} catch (InterruptedException e) {}
+		}
+	}
+
+	/**
+	 * @return a summary of compaction activity for display
+	 */
+	public String getStatus() {
+		StringBuilder sb = new StringBuilder();
+		if (0 == _lastPass)
+			sb.append("No compaction yet\n");
+		else
+			sb.append(String.format("Last compaction at %s took %d ms\n", new Date(_lastPass), _lastPassTime));
+		long unreleased = unreleasedBytes();
+		if (unreleased > 0)
+			sb.append(String.format("%d bytes of deleted files still memory mapped\n", unreleased));
+		sb.append(_stats.toString());
+		return sb.toString();
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Passes);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Passes ("passes", "Number of compaction passes run"),
+		SegmentsCompacted ("files", "Number of repository files compacted and deleted"),
+		ObjectsCopied ("objects", "Number of live objects copied out of compacted files"),
+		BytesCopied ("bytes", "Bytes of live content copied out of compacted files"),
+		BytesReclaimed ("bytes", "Bytes of disk space freed by compaction, once deleted files are no longer mapped"),
+		ObjectsPruned ("objects", "Number of objects removed from the index by retention rules"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
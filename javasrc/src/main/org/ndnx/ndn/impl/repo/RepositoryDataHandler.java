@@ -21,13 +21,13 @@
 package org.ndnx.ndn.impl.repo;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
 import java.util.logging.Level;
 
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.InterestTable;
 import org.ndnx.ndn.impl.InterestTable.Entry;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.profiles.nameenum.NameEnumerationResponse;
 import org.ndnx.ndn.protocol.ContentName;
@@ -36,33 +36,31 @@ import org.ndnx.ndn.protocol.Interest;
 
 /**
  * So the main listener can output interests sooner, we do the data store work
- * in a separate thread.
+ * in a separate thread, through an IngestPipeline. With SystemConfiguration.REPO_INGEST_THREADS
+ * set, the preparation of content for the store is also spread over that many threads.
+ *
+ * @see IngestPipeline
  */
 
-public class RepositoryDataHandler implements Runnable {
-	public static final int THROTTLE_TOP = 2000;
-	public static final int THROTTLE_BOTTOM = 1800;
+public class RepositoryDataHandler implements Runnable, IngestPipeline.IngestListener {
+	public static final int THROTTLE_TOP = IngestPipeline.THROTTLE_TOP;
+	public static final int THROTTLE_BOTTOM = IngestPipeline.THROTTLE_BOTTOM;
+	public static final int ACKNOWLEDGE_BATCH = IngestPipeline.ACKNOWLEDGE_BATCH;
 
 	private final RepositoryServer _server;
-	private final Queue<ContentObject> _queue = new ConcurrentLinkedQueue<ContentObject>();
+	private final IngestPipeline _pipeline;
 	private final InterestTable<ContentName> _pendingKeyChecks = new InterestTable<ContentName>();
 	private boolean _shutdown = false;
-	private boolean _shutdownComplete = false;
-	protected int _currentQueueSize;
-	protected boolean _throttled = false;
 
 	public RepositoryDataHandler(RepositoryServer server) {
 		_server = server;
+		_pipeline = new IngestPipeline("RepositoryDataHandler", server.getRepository(),
+				SystemConfiguration.REPO_INGEST_THREADS, this);
+		NDNStatsRegistry.register("RepoIngest", _pipeline);
 	}
 
 	public void add(ContentObject co) {
-		_currentQueueSize++;
-		if (!_throttled && _currentQueueSize > THROTTLE_TOP) {
-			_throttled = true;
-			_server.setThrottle(true);
-		}
-		_queue.add(co);
-		_queue.notify();
+		_pipeline.add(co);
 	}
 
 	public void addKeyCheck(ContentName target) {
@@ -78,40 +76,34 @@ public class RepositoryDataHandler implements Runnable {
 	 * @see RepositoryStore
 	 */
 	public void run() {
-		while (!_shutdownComplete) {
-			ContentObject co = null;
-			do {
-				co = _queue.poll();
-				if (null == co) {
-					if (_shutdown) {
-						synchronized (this) {
-							_shutdownComplete = true;
-							notifyAll();
-						}
-						return;
-					}
-					try {
-						_queue.wait(SystemConfiguration.MEDIUM_TIMEOUT);
-					} catch (InterruptedException e) {}
-				}
-			} while (null == co);
-			_currentQueueSize--;
-			if (_throttled && _currentQueueSize < THROTTLE_BOTTOM) {
-				_throttled = false;
-				_server.setThrottle(false);
-			}
-			try {
-				if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
-					Log.finer(Log.FAC_REPO, "Saving content in: " + co.toString());
-				}
+		_pipeline.run();
+	}
 
-				NameEnumerationResponse ner = _server.getRepository().saveContent(co);
-				if (!_shutdown) {
-					if (ner!=null && ner.hasNames()) {
-						_server.sendEnumerationResponse(ner);
-					}
+	public void throttle(boolean throttle) {
+		_server.setThrottle(throttle);
+	}
+
+	/**
+	 * Once content is committed, send the name enumeration responses its saves triggered and
+	 * check that we have the keys it needs.
+	 *
+	 * @param saved the content committed
+	 * @param responses the name enumeration responses triggered
+	 */
+	public void committed(List<ContentObject> saved, List<NameEnumerationResponse> responses) {
+		if (!_shutdown) {
+			for (NameEnumerationResponse ner : responses) {
+				try {
+					_server.sendEnumerationResponse(ner);
+				} catch (Exception e) {
+					e.printStackTrace();
+					Log.logStackTrace(Level.WARNING, e);
 				}
+			}
+		}
 
+		for (ContentObject co : saved) {
+			try {
 				// When a write or some syncs are first requested we don't know what key data
 				// was being used because this is in the ContentObject which of course we didn't
 				// have yet. Bbut we need this data to make sure the key is saved along with the file.
@@ -159,16 +151,11 @@ public class RepositoryDataHandler implements Runnable {
 
 	public void shutdown() {
 		_shutdown = true;
-		synchronized (this) {
-			while (!_shutdownComplete) {
-				try {
-					wait(SystemConfiguration.LONG_TIMEOUT);
-				} catch (InterruptedException e) {}
-			}
-		}
+		_pipeline.shutdown();
+		NDNStatsRegistry.unregister(_pipeline);
 	}
 
 	public int getCurrentQueueSize() {
-		return _currentQueueSize;
+		return _pipeline.queueDepth();
 	}
 }
@@ -55,6 +55,12 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 	public RepositoryInterestHandler(RepositoryServer server) {
 		_server = server;
 		_handle = server.getHandle();
+		if (SystemConfiguration.REPO_INTEREST_THREADS > 0) {
+			// An interest which has waited longer than its lifetime will have been reexpressed,
+			// so there is no point answering it - see maxWait().
+			startWorkers("RepositoryInterestHandler", SystemConfiguration.REPO_INTEREST_THREADS,
+					SystemConfiguration.REPO_INTEREST_QUEUE_SIZE, SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT);
+		}
 	}
 
 	public boolean handleInterest(Interest interest) {
@@ -132,6 +138,36 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 		return _shutdown;
 	}
 
+	@Override
+	protected void processed(Interest interest, long waitTime, long serviceTime) {
+		_server._stats.addSample(RepositoryServer.StatsEnum.HandleInterestQueueTime, waitTime);
+		_server._stats.addSample(RepositoryServer.StatsEnum.HandleInterestServiceTime, serviceTime);
+	}
+
+	/**
+	 * An interest may wait for its own lifetime, or the default lifetime if it doesn't give one
+	 */
+	@Override
+	protected long maxWait(Interest interest) {
+		byte [] lifetime = interest.interestLifetime();
+		if (null == lifetime || lifetime.length == 0)
+			return super.maxWait(interest);
+		if (lifetime.length > 4)
+			return 0;	// Days - longer than anything will wait
+		// An unsigned count of 1/4096 seconds
+		long ticks = 0;
+		for (byte b : lifetime)
+			ticks = (ticks << 8) | (b & 0xff);
+		return (ticks * 1000000000L) >> 12;
+	}
+
+	@Override
+	protected void dropped(Interest interest, boolean expired) {
+		_server._stats.increment(expired ? RepositoryServer.StatsEnum.HandleInterestExpired : RepositoryServer.StatsEnum.HandleInterestDropped);
+		if (Log.isLoggable(Log.FAC_REPO, Level.FINE))
+			Log.fine(Log.FAC_REPO, "Dropped {0} interest: {1}", expired ? "expired" : "queued", interest.name());
+	}
+
 	protected boolean allowGenerated(Interest interest) {
 		if (null != interest.answerOriginKind() && (interest.answerOriginKind() & Interest.ANSWER_GENERATED) == 0)
 			return false;	// Request to not answer
@@ -350,5 +386,6 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 
 	public void shutdown() {
 		_shutdown = true;
+		stopWorkers();
 	}
 }
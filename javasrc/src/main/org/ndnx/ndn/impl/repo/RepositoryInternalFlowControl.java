@@ -21,6 +21,7 @@
 package org.ndnx.ndn.impl.repo;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.impl.NDNFlowControl;
@@ -51,8 +52,26 @@ public class RepositoryInternalFlowControl extends NDNFlowControl {
 		return co;
 	}
 	
+	@Override
+	public void put(ArrayList<ContentObject> cos) throws IOException {
+		for (ContentObject co : cos)
+			put(co);
+	}
+
+	@Override
+	public void put(ContentObject [] cos) throws IOException {
+		for (ContentObject co : cos)
+			put(co);
+	}
+
 	/**
-	 * Don't do waitForPutDrain
+	 * Don't do waitForPutDrain, but make sure what was put is stored
 	 */
-	public void afterClose() throws IOException {};
+	public void afterClose() throws IOException {
+		try {
+			_repo.commit();
+		} catch (RepositoryException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
 }
@@ -34,6 +34,7 @@ import org.ndnx.ndn.impl.NDNStats;
 import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
 import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
 import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.io.NDNWriter;
 import org.ndnx.ndn.io.content.ContentDecodingException;
@@ -178,6 +179,7 @@ public class RepositoryServer implements NDNStatistics {
 			_dataHandler = new RepositoryDataHandler(this);
 			Thread dataHandlerThread = new Thread(_dataHandler, "RepositoryDataHandler");
 			dataHandlerThread.start();
+			NDNStatsRegistry.register("RepositoryServer", this);
 	}
 
 	/**
@@ -268,6 +270,7 @@ public class RepositoryServer implements NDNStatistics {
 		_dataHandler.shutdown();
 		_repo.shutDown();
 		_iHandler.shutdown();
+		NDNStatsRegistry.unregister(this);
 
 		// This closes our handle....
 		_handle = null;
@@ -679,6 +682,10 @@ public class RepositoryServer implements NDNStatistics {
 		HandleInterestStartWritePolicyHandlers ("responses", "Number of RepositoryPolicyHandler created for StartWrite"),
 		HandleInterestStartWriteExpressInterest ("responses", "Number of expressInterests created for StartWrite"),
 		HandleInterestNameEnumResponses ("responses", "Number of responses sent for Name Enums"),
+		HandleInterestQueueTime ("nanos", "The average time interests wait for a serving thread"),
+		HandleInterestServiceTime ("nanos", "The average time to serve an interest"),
+		HandleInterestDropped ("interests", "Number of waiting interests dropped because the queue was full"),
+		HandleInterestExpired ("interests", "Number of interests dropped because they waited longer than their lifetime"),
 
 		HandleContent ("objects", "Calls to ResponsitoryDataListener.handleContent()"),
 		HandleContentHandleData ("objects", "Calls to handleData in RepositoryDataListener"),
@@ -54,6 +54,9 @@ public interface RepositoryStore {
 	public static final String REPO_LOGGING = "repo";
 	
 	public static final String REPO_SIMPLE_STATUS_REQUEST = "simpleStatus";
+	public static final String REPO_CACHE_STATUS_REQUEST = "cacheStatus";
+	public static final String REPO_COMPACT_STATUS_REQUEST = "compactStatus";
+	public static final String REPO_PREFETCH_STATUS_REQUEST = "prefetchStatus";
 		
 	/**
 	 * Initialize the repository
@@ -96,6 +99,14 @@ public interface RepositoryStore {
 	 * @return NameEnumerationResponse
 	 */
 	public NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException;
+
+	/**
+	 * Make sure all content saved so far is stored, to the degree of durability the store is
+	 * configured for. Stores may buffer saved content, so this should be called before telling
+	 * anyone outside the repository that content has been stored.
+	 * @throws RepositoryException if the content could not be stored
+	 */
+	public void commit() throws RepositoryException;
 	
 	/**
 	 * Return the matching content if it exists
@@ -206,6 +206,11 @@ public abstract class RepositoryStoreBase implements RepositoryStore {
 
 	public abstract NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException;
 
+	/**
+	 * By default content is stored as soon as it is saved so there is nothing to do
+	 */
+	public void commit() throws RepositoryException {}
+
 	public void setPolicy(Policy policy) {
 		_policy = policy;
 	}
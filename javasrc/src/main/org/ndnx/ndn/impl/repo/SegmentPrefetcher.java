@@ -0,0 +1,310 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.Interest;
+
+/**
+ * Reads ahead of sequential readers of segmented content. The repository tells us the name of
+ * each object it serves; when the segments of a stream are being read in order we look up the
+ * following segments on a background thread so that the getter (normally a RepositoryStore
+ * backed by a ContentObjectCache) has them staged by the time their interests arrive.
+ *
+ * The read ahead depth for a stream starts small once a reader is seen to be sequential and
+ * doubles, up to the maximum, each time the reader consumes a segment we prefetched. It is reset
+ * when the reader jumps, and the segments prefetched but not read are counted as wasted.
+ */
+public class SegmentPrefetcher implements NDNStatistics {
+
+	/**
+	 * Depth of read ahead for a stream which has just been seen to be sequential
+	 */
+	public static final int MIN_DEPTH = 2;
+
+	/**
+	 * Most streams we track at once - the least recently read are forgotten
+	 */
+	public static final int MAX_STREAMS = 256;
+
+	/**
+	 * Most prefetch requests waiting for the prefetch thread
+	 */
+	public static final int MAX_PENDING = 256;
+
+	protected static class Stream {
+		protected long _last;			// last segment read
+		protected long _prefetched;		// highest segment prefetched or requested
+		protected int _depth = 0;
+
+		protected Stream(long segment) {
+			_last = segment;
+			_prefetched = segment;
+		}
+	}
+
+	protected final ContentTree _index;
+	protected final ContentTree.ContentGetter _getter;
+	protected final int _maxDepth;
+	protected final ThreadPoolExecutor _executor;
+
+	protected final LinkedHashMap<ContentName, Stream> _streams = new LinkedHashMap<ContentName, Stream>(64, 0.75f, true) {
+		private static final long serialVersionUID = 6120427148946264530L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ContentName, Stream> eldest) {
+			if (size() <= MAX_STREAMS)
+				return false;
+			wasted(eldest.getValue());
+			return true;
+		}
+	};
+
+	/**
+	 * @param name		used to name the prefetch thread
+	 * @param index		where to find segments
+	 * @param getter	reads segments from storage - it is expected to keep what it reads
+	 * @param maxDepth	most segments to read ahead of a reader, must be at least 1
+	 */
+	public SegmentPrefetcher(final String name, ContentTree index, ContentTree.ContentGetter getter, int maxDepth) {
+		if (maxDepth < 1)
+			throw new IllegalArgumentException("SegmentPrefetcher needs a depth of at least one: " + maxDepth);
+		_index = index;
+		_getter = getter;
+		_maxDepth = maxDepth;
+		_executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name + " prefetch");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Note that an object has been read, and if it is the next segment of a stream being read
+	 * in order, start reading ahead.
+	 *
+	 * @param name	the name of the object read, without its digest
+	 */
+	public void accessed(ContentName name) {
+		if (!SegmentationProfile.isSegment(name))
+			return;
+		ContentName root = name.parent();
+		long segment = SegmentationProfile.getSegmentNumber(name.lastComponent());
+		final Stream stream;
+		final long from, to;
+		synchronized (_streams) {
+			Stream s = _streams.get(root);
+			if (null == s) {
+				_streams.put(root, new Stream(segment));
+				return;
+			}
+			if (segment == s._last)
+				return;		// A reexpression, or a second reader
+			if (segment != s._last + 1) {
+				// Not sequential - start again from here
+				wasted(s);
+				s._last = segment;
+				s._prefetched = segment;
+				s._depth = 0;
+				return;
+			}
+			if (segment <= s._prefetched) {
+				_stats.increment(StatsEnum.Useful);
+				s._depth = Math.min(_maxDepth, s._depth * 2);
+			} else if (s._depth == 0) {
+				s._depth = Math.min(_maxDepth, MIN_DEPTH);
+			}
+			s._last = segment;
+			from = Math.max(s._prefetched, segment) + 1;
+			to = segment + s._depth;
+			if (from > to)
+				return;
+			s._prefetched = to;
+			stream = s;
+		}
+
+		final ContentName streamName = root;
+		try {
+			_executor.execute(new Runnable() {
+				public void run() {
+					prefetch(streamName, stream, from, to);
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			_stats.increment(StatsEnum.Rejected);
+			synchronized (_streams) {
+				if (stream._prefetched == to)
+					stream._prefetched = from - 1;
+			}
+		}
+	}
+
+	protected void prefetch(ContentName root, Stream stream, long from, long to) {
+		for (long segment = from; segment <= to; segment++) {
+			long start = System.nanoTime();
+			Object found = null;
+			try {
+				found = _index.get(new Interest(SegmentationProfile.segmentName(root, segment)), _getter);
+			} catch (RuntimeException e) {
+				if (Log.isLoggable(Log.FAC_REPO, Level.WARNING))
+					Log.warning(Log.FAC_REPO, "SegmentPrefetcher: unexpected {0} prefetching {1}: {2}", e.getClass().getName(), root, e.getMessage());
+			}
+			if (null == found) {
+				// Past the end, or not here yet. Allow it to be tried again later.
+				_stats.increment(StatsEnum.Missing);
+				synchronized (_streams) {
+					if (stream._prefetched >= segment)
+						stream._prefetched = segment - 1;
+				}
+				return;
+			}
+			_stats.increment(StatsEnum.Prefetched);
+			_stats.addSample(StatsEnum.PrefetchTime, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Count the segments prefetched for a stream which won't now be read
+	 */
+	protected void wasted(Stream s) {
+		if (s._prefetched > s._last)
+			_stats.increment(StatsEnum.Wasted, (int)(s._prefetched - s._last));
+	}
+
+	/**
+	 * @return the number of streams being tracked
+	 */
+	public int streams() {
+		synchronized (_streams) {
+			return _streams.size();
+		}
+	}
+
+	/**
+	 * @return the current read ahead depth for a stream, 0 if it isn't being read sequentially
+	 */
+	public int depth(ContentName root) {
+		synchronized (_streams) {
+			Stream s = _streams.get(root);
+			return (null == s) ? 0 : s._depth;
+		}
+	}
+
+	/**
+	 * Stop prefetching, discarding anything not yet started
+	 */
+	public void shutdown() {
+		_executor.shutdownNow();
+	}
+
+	/**
+	 * @return a summary of prefetch accuracy and statistics for display
+	 */
+	public String getStatus() {
+		long prefetched = _stats.getCounter(StatsEnum.Prefetched.toString());
+		long useful = _stats.getCounter(StatsEnum.Useful.toString());
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Streams: %d, prefetched %d segments, accuracy %.1f%%\n", streams(), prefetched,
+				(prefetched == 0) ? 0.0 : (100.0 * useful / prefetched)));
+		sb.append(_stats.toString());
+		return sb.toString();
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Prefetched);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Prefetched ("segments", "Number of segments read ahead of a reader"),
+		Useful ("segments", "Number of prefetched segments which were then read"),
+		Wasted ("segments", "Number of prefetched segments which the reader skipped"),
+		Missing ("segments", "Number of segments to prefetch which weren't in the repository"),
+		Rejected ("requests", "Number of prefetches not done because too many were waiting"),
+		PrefetchTime ("nanos", "The average time to prefetch a segment"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
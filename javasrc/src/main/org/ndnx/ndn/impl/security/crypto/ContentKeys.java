@@ -28,7 +28,9 @@ import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.HashMap;
 
+import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -63,6 +65,17 @@ public abstract class ContentKeys implements Cloneable {
 	 */
 	private static SecureRandom _random;
 
+	/**
+	 * Ciphers kept by each thread, by algorithm, for work which is finished within one call.
+	 * Getting a Cipher from the provider costs more than decrypting a segment with it.
+	 */
+	private static final ThreadLocal<HashMap<String, Cipher>> _threadCiphers = new ThreadLocal<HashMap<String, Cipher>>() {
+		@Override
+		protected HashMap<String, Cipher> initialValue() {
+			return new HashMap<String, Cipher>();
+		}
+	};
+
 	protected String _encryptionAlgorithm;
 	protected KeyAndIV _masterKeyAndIVCtr;
 	
@@ -284,6 +297,22 @@ public abstract class ContentKeys implements Cloneable {
 		}
 	}
 
+	/**
+	 * Get this thread's cipher for the encryption algorithm used by this ContentKeys. Unlike
+	 * #getCipher() this isn't a new cipher, so it must be initialized and used by the caller
+	 * without calling anything else which might use it, and not kept.
+	 * @return the cipher
+	 */
+	protected Cipher getThreadCipher() {
+		HashMap<String, Cipher> ciphers = _threadCiphers.get();
+		Cipher cipher = ciphers.get(_encryptionAlgorithm);
+		if (null == cipher) {
+			cipher = getCipher();
+			ciphers.put(_encryptionAlgorithm, cipher);
+		}
+		return cipher;
+	}
+
 	/**
 	 * Make an encrypting or decrypting Cipher to be used in making a CipherStream to
 	 * wrap NDN data.
@@ -308,6 +337,27 @@ public abstract class ContentKeys implements Cloneable {
 		return getSegmentCipher(contentName, publisher, segmentNumber, false);
 	}
 
+	/**
+	 * Decrypt the whole of a segment. Cheaper than getSegmentDecryptionCipher when the
+	 * segment is decrypted in one go, as it uses this thread's cipher rather than a new one.
+	 * Segments are keyed independently, so different segments may be decrypted at once
+	 * on different threads.
+	 * @param segmentNumber the segment to decrypt
+	 * @param content the encrypted content of the segment
+	 * @return the decrypted content
+	 * @throws InvalidKeyException
+	 * @throws InvalidAlgorithmParameterException
+	 * @throws ContentEncodingException
+	 * @throws IllegalBlockSizeException
+	 * @throws BadPaddingException
+	 */
+	public byte [] decryptSegment(ContentName contentName, PublisherPublicKeyDigest publisher, long segmentNumber, byte [] content)
+	throws InvalidKeyException, InvalidAlgorithmParameterException, ContentEncodingException, 
+			IllegalBlockSizeException, BadPaddingException {
+		Cipher cipher = initSegmentCipher(getThreadCipher(), contentName, publisher, segmentNumber, false);
+		return cipher.doFinal(content);
+	}
+
 	/**
 	 * Generate a segment encryption or decryption cipher using these ContentKeys
 	 * to encrypt or decrypt a particular segment.
@@ -319,7 +369,23 @@ public abstract class ContentKeys implements Cloneable {
 	 * @throws ContentEncodingException 
 	 * @see getSegmentEncryptionCipher(long)
 	 */
-	protected abstract Cipher getSegmentCipher(ContentName contentName, PublisherPublicKeyDigest publisher, long segmentNumber, boolean encryption)
+	protected Cipher getSegmentCipher(ContentName contentName, PublisherPublicKeyDigest publisher, long segmentNumber, boolean encryption)
+			throws InvalidKeyException, InvalidAlgorithmParameterException, ContentEncodingException {
+		return initSegmentCipher(getCipher(), contentName, publisher, segmentNumber, encryption);
+	}
+
+	/**
+	 * Initialize a cipher for the encryption algorithm used by these ContentKeys to encrypt
+	 * or decrypt a particular segment.
+	 * @param cipher the cipher to initialize
+	 * @param segmentNumber segment to encrypt/decrypt
+	 * @param encryption true for encryption, false for decryption
+	 * @return the Cipher
+	 * @throws InvalidKeyException
+	 * @throws InvalidAlgorithmParameterException
+	 * @throws ContentEncodingException 
+	 */
+	protected abstract Cipher initSegmentCipher(Cipher cipher, ContentName contentName, PublisherPublicKeyDigest publisher, long segmentNumber, boolean encryption)
 			throws InvalidKeyException, InvalidAlgorithmParameterException, ContentEncodingException;
 	
 	/**
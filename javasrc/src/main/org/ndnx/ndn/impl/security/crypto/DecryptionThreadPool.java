@@ -0,0 +1,90 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.ndnx.ndn.impl.security.crypto;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+
+/**
+ * Shared threads for decrypting segments of encrypted streams. Used by NDNAbstractInputStream
+ * to decrypt pipelined segments as they arrive, possibly out of order, so the reader only has
+ * to wait for the decryption of the segment it is reading to finish.
+ *
+ * The number of threads is SystemConfiguration.DECRYPT_THREADS; if that is 0 decryption is
+ * done on the reader's thread and this pool should not be used.
+ */
+public class DecryptionThreadPool {
+
+	protected static ThreadPoolExecutor _pool = null;
+
+	/**
+	 * @return the number of threads decryption may use, 0 if decryption is done by the reader
+	 */
+	public static int threads() {
+		return Math.max(0, SystemConfiguration.DECRYPT_THREADS);
+	}
+
+	/**
+	 * Decrypt a segment on the decryption threads. Should only be used if threads() is non-zero.
+	 * @param keys the keys for the content
+	 * @param contentName the name of the segment
+	 * @param publisher the publisher of the segment
+	 * @param segmentNumber the segment number
+	 * @param content the encrypted content
+	 * @return the Future for the decrypted content
+	 * @throws RejectedExecutionException if the pool cannot take the task
+	 */
+	public static Future<byte []> decrypt(final ContentKeys keys, final ContentName contentName, 
+			final PublisherPublicKeyDigest publisher, final long segmentNumber, final byte [] content) 
+			throws RejectedExecutionException {
+		return pool().submit(new Callable<byte []>() {
+			public byte [] call() throws Exception {
+				return keys.decryptSegment(contentName, publisher, segmentNumber, content);
+			}
+		});
+	}
+
+	protected static synchronized ThreadPoolExecutor pool() {
+		if (null == _pool) {
+			int threads = Math.max(1, threads());
+			final AtomicInteger number = new AtomicInteger(0);
+			_pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Decryption thread " + number.getAndIncrement());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			_pool.allowCoreThreadTimeOut(true);
+		}
+		return _pool;
+	}
+}
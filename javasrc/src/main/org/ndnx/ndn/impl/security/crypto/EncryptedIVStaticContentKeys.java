@@ -148,7 +148,9 @@ public class EncryptedIVStaticContentKeys extends StaticContentKeys implements C
 	public IvParameterSpec buildEncryptedIV(KeyAndIV keyAndIV, long segmentNumber, int ivLen) throws InvalidKeyException, InvalidAlgorithmParameterException {
 		Log.finest("Thread="+Thread.currentThread()+" Building CTR - master="+DataUtils.printHexBytes(keyAndIV.getIV())+" segment="+segmentNumber+" ivLen="+ivLen);
 
-		Cipher cipher = getCipher();
+		// This thread's cipher may be the one the IV is being built for, but we are done with it
+		// before it is initialized for the segment.
+		Cipher cipher = getThreadCipher();
 		IvParameterSpec zeroIv = new IvParameterSpec(new byte[cipher.getBlockSize()]);
 		cipher.init(Cipher.ENCRYPT_MODE, keyAndIV.getKey(), zeroIv);
 
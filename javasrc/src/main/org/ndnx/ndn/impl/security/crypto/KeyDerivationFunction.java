@@ -77,6 +77,22 @@ public class KeyDerivationFunction {
 	 * but is not universally available yet.
 	 */
 	protected static final String MAC_ALGORITHM = "HmacSHA256";
+
+	/**
+	 * Getting a Mac from the provider costs more than using it for the short inputs we
+	 * have, so each thread keeps one. It is initialized with the key on each use.
+	 */
+	protected static final ThreadLocal<Mac> _hmac = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance(MAC_ALGORITHM);
+			} catch (NoSuchAlgorithmException e1) {
+				Log.severe("No HMAC-SHA256 available! Serious configuration issue!");
+				throw new RuntimeException("No HMAC-SHA256 available! Serious configuration issue!");
+			}
+		}
+	};
 	
 	/**
 	 * Default parameterization of the KDF for standard algorithm type. This is the
@@ -249,13 +265,7 @@ public class KeyDerivationFunction {
 		if (allzeros) {
 			Log.warning("Warning: DeriveKey called with all 0's key of length " + masterKeyBytes.length);
 		}
-		Mac hmac;
-		try {
-			hmac = Mac.getInstance("HmacSHA256");
-		} catch (NoSuchAlgorithmException e1) {
-			Log.severe("No HMAC-SHA256 available! Serious configuration issue!");
-			throw new RuntimeException("No HMAC-SHA256 available! Serious configuration issue!");
-		}
+		Mac hmac = _hmac.get();
 		hmac.init(new SecretKeySpec(masterKeyBytes, hmac.getAlgorithm()));
 		
 		// Precompute data used from block to block.
@@ -531,12 +531,39 @@ public class MerkleTree {
 	/**
 	 * Compute the intermediate node values by digesting the concatenation of the
 	 * left and right children (or the left child alone if there is no right child).
+	 * The nodes at one depth only depend on nodes below them, so the tree is climbed a level at
+	 * a time, and wide levels are split across the signing threads (see SigningThreadPool).
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
 	protected void computeNodeValues() throws NoSuchAlgorithmException {
 		// Climb the tree
-		int firstNode = firstLeaf()-1;
-		for (int i=firstNode; i >= ROOT_NODE; --i) {
+		int lastNode = firstLeaf()-1;
+		if (!SigningThreadPool.parallel(lastNode/2)) {
+			computeNodeValues(ROOT_NODE, lastNode);
+			return;
+		}
+		int levelStart = Integer.highestOneBit(lastNode);
+		while (levelStart >= ROOT_NODE) {
+			final int start = levelStart;
+			int end = Math.min(lastNode, 2*levelStart - 1);
+			SigningThreadPool.run(end - start + 1, new SigningThreadPool.RangeTask() {
+				public void run(int first, int last) throws NoSuchAlgorithmException {
+					computeNodeValues(start + first, start + last - 1);
+				}
+			});
+			levelStart /= 2;
+		}
+	}
+
+	/**
+	 * Compute the values of the intermediate nodes firstNode through lastNode, working from
+	 * the highest index down. Their children must already have been computed.
+	 * @param firstNode the lowest node index to compute
+	 * @param lastNode the highest node index to compute
+	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
+	 */
+	protected void computeNodeValues(int firstNode, int lastNode) throws NoSuchAlgorithmException {
+		for (int i=lastNode; i >= firstNode; --i) {
 			byte [] nodeDigest = NDNDigestHelper.digest(digestAlgorithm(), get(leftChild(i)), get(rightChild(i)));
 			_tree[i-1] = new DEROctetString(nodeDigest);
 		}
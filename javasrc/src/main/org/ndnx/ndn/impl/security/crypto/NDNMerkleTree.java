@@ -163,8 +163,17 @@ public class NDNMerkleTree extends MerkleTree {
 	 * Sets the signatures of all the contained ContentObjects.
 	 */
 	public void setSignatures() {
-		for (int i=0; i < numLeaves(); ++i) {
-			segmentSignature(i); // DKS TODO refactor, sets signature as a side effect
+		try {
+			SigningThreadPool.run(numLeaves(), new SigningThreadPool.RangeTask() {
+				public void run(int start, int end) {
+					for (int i=start; i < end; ++i) {
+						segmentSignature(i); // DKS TODO refactor, sets signature as a side effect
+					}
+				}
+			});
+		} catch (NoSuchAlgorithmException e) {
+			// segmentSignature doesn't digest
+			throw new RuntimeException(e);
 		}
 	}
 			
@@ -228,9 +237,23 @@ public class NDNMerkleTree extends MerkleTree {
 	 * @param contentObjects the content
 	 * @throws NoSuchAlgorithmException if the digestAlgorithm unknown
 	 */
-	protected void computeLeafValues(ContentObject [] contentObjects) throws NoSuchAlgorithmException {
-		// Hash the leaves
-		for (int i=0; i < numLeaves(); ++i) {
+	protected void computeLeafValues(final ContentObject [] contentObjects) throws NoSuchAlgorithmException {
+		// Hash the leaves, across the signing threads if there are enough of them
+		SigningThreadPool.run(numLeaves(), new SigningThreadPool.RangeTask() {
+			public void run(int start, int end) {
+				computeLeafValues(contentObjects, start, end);
+			}
+		});
+	}
+
+	/**
+	 * Compute the leaf values for objects start through end-1.
+	 * @param contentObjects the objects
+	 * @param start the first leaf to compute
+	 * @param end one past the last leaf to compute
+	 */
+	protected void computeLeafValues(ContentObject [] contentObjects, int start, int end) {
+		for (int i=start; i < end; ++i) {
 			// DKS -- need to make sure content() doesn't clone
 			try {
 				ContentObject co = contentObjects[i];
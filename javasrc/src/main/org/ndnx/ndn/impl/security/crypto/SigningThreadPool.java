@@ -0,0 +1,179 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.security.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+
+/**
+ * Shared threads for bulk signing. Used by MerkleTree and NDNMerkleTree to split digesting
+ * of leaves and tree levels across threads, and by NDNSegmenter to sign one batch of segments
+ * while the previous batch is handed to the flow controller.
+ *
+ * The number of threads is SystemConfiguration.SIGNING_THREADS; if that is 0 nothing is run
+ * in parallel. Work smaller than SystemConfiguration.SIGNING_PARALLEL_THRESHOLD is always
+ * done serially on the caller's thread, as the cost of handing it off is more than the digests.
+ *
+ * The caller of run() takes part in the work and only waits for pieces which are already
+ * running on other threads, so run() may safely be called from tasks running in this pool.
+ */
+public class SigningThreadPool {
+
+	/**
+	 * A piece of work over the indices [start, end)
+	 */
+	public interface RangeTask {
+		public void run(int start, int end) throws NoSuchAlgorithmException;
+	}
+
+	/**
+	 * How many pieces each thread's share of the work is split into, so threads which
+	 * finish early can help with the rest.
+	 */
+	protected static final int PIECES_PER_THREAD = 4;
+
+	protected static ThreadPoolExecutor _pool = null;
+
+	/**
+	 * @return the number of threads signing may use, 0 if signing is serial
+	 */
+	public static int threads() {
+		return Math.max(0, SystemConfiguration.SIGNING_THREADS);
+	}
+
+	/**
+	 * @param count number of independent digests to be done
+	 * @return true if work of this size would be run in parallel
+	 */
+	public static boolean parallel(int count) {
+		return threads() > 0 && count >= Math.max(2, SystemConfiguration.SIGNING_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Run a task over [0, count), splitting the range across the signing threads if
+	 * it is large enough, and return once all of it is done.
+	 * @param count size of the range
+	 * @param task the work to do
+	 * @throws NoSuchAlgorithmException if any piece of the task throws it
+	 */
+	public static void run(final int count, final RangeTask task) throws NoSuchAlgorithmException {
+		if (count <= 0)
+			return;
+		if (!parallel(count)) {
+			task.run(0, count);
+			return;
+		}
+
+		int threads = threads();
+		final int grain = Math.max(1, count / ((threads + 1) * PIECES_PER_THREAD));
+		final int pieces = (count + grain - 1) / grain;
+		final AtomicInteger next = new AtomicInteger(0);
+		final CountDownLatch done = new CountDownLatch(pieces);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Runnable worker = new Runnable() {
+			public void run() {
+				int piece;
+				while ((piece = next.getAndIncrement()) < pieces) {
+					try {
+						if (null == failure.get())
+							task.run(piece * grain, Math.min(count, (piece + 1) * grain));
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						done.countDown();
+					}
+				}
+			}
+		};
+
+		ThreadPoolExecutor pool = pool();
+		for (int i = 0; i < Math.min(threads, pieces - 1); i++) {
+			try {
+				pool.execute(worker);
+			} catch (RejectedExecutionException ree) {
+				break; // we'll do it ourselves
+			}
+		}
+		worker.run();
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		Throwable t = failure.get();
+		if (null == t)
+			return;
+		if (t instanceof NoSuchAlgorithmException)
+			throw (NoSuchAlgorithmException)t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException)t;
+		if (t instanceof Error)
+			throw (Error)t;
+		throw new RuntimeException(t);
+	}
+
+	/**
+	 * Run a task on the signing threads. Should only be used if threads() is non-zero.
+	 * @param task the task
+	 * @return the Future for its result
+	 * @throws RejectedExecutionException if the pool cannot take the task
+	 */
+	public static <V> Future<V> submit(Callable<V> task) throws RejectedExecutionException {
+		return pool().submit(task);
+	}
+
+	protected static synchronized ThreadPoolExecutor pool() {
+		if (null == _pool) {
+			int threads = Math.max(1, threads());
+			final AtomicInteger number = new AtomicInteger(0);
+			_pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Signing thread " + number.getAndIncrement());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			_pool.allowCoreThreadTimeOut(true);
+		}
+		return _pool;
+	}
+}
@@ -20,13 +20,11 @@
 
 package org.ndnx.ndn.impl.security.crypto;
 
-import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.spec.InvalidParameterSpecException;
 
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
@@ -194,11 +192,9 @@ public class StaticContentKeys extends ContentKeys implements Cloneable {
 	 * @throws ContentEncodingException 
 	 * @see getSegmentEncryptionCipher(long)
 	 */
-	protected Cipher getSegmentCipher(ContentName contentName, PublisherPublicKeyDigest publisher, long segmentNumber, boolean encryption)
+	protected Cipher initSegmentCipher(Cipher cipher, ContentName contentName, PublisherPublicKeyDigest publisher, long segmentNumber, boolean encryption)
 		throws InvalidKeyException, InvalidAlgorithmParameterException, ContentEncodingException {
 
-		Cipher cipher = getCipher();
-
 		// Construct the IV/initial counter.
 		if (0 == cipher.getBlockSize()) {
 			Log.warning(_encryptionAlgorithm + " is not a block cipher!");
@@ -212,20 +208,10 @@ public class StaticContentKeys extends ContentKeys implements Cloneable {
 		}
 
 		IvParameterSpec iv_ctrSpec = buildIVCtr(keyAndIV, segmentNumber, cipher.getBlockSize());
-		AlgorithmParameters algorithmParams = null;
-		try {
-			algorithmParams = AlgorithmParameters.getInstance(getBaseAlgorithm());
-			algorithmParams.init(iv_ctrSpec);
-		} catch (NoSuchAlgorithmException e) {
-			Log.warning("Unexpected exception: have already validated that algorithm {0} exists: {1}", cipher.getAlgorithm(), e);
-			throw new InvalidKeyException("Unexpected exception: have already validated that algorithm " + cipher.getAlgorithm() + " exists: " + e);
-		} catch (InvalidParameterSpecException e) {
-			Log.warning("InvalidParameterSpecException attempting to create algorithm parameters: {0}", e);
-			throw new InvalidAlgorithmParameterException("Error creating a parameter object from IV/CTR spec!", e);
-		}
 		
 		Log.finest(encryption?"En":"De"+"cryption Key: "+DataUtils.printHexBytes(keyAndIV.getKey().getEncoded())+" iv="+DataUtils.printHexBytes(iv_ctrSpec.getIV()));
-		cipher.init(encryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, keyAndIV.getKey(), algorithmParams);
+		// Init from the spec directly, a provider AlgorithmParameters per segment costs more than the decryption
+		cipher.init(encryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, keyAndIV.getKey(), iv_ctrSpec);
 
 		return cipher;
 	}
@@ -0,0 +1,289 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.security.crypto;
+
+import java.security.Key;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
+import org.ndnx.ndn.impl.support.DataUtils;
+
+/**
+ * A bounded cache of signatures which have been successfully verified, so that checking
+ * the same signature again doesn't need another public key operation.
+ *
+ * Entries are keyed by what the signature was verified over - either the proxy computed from
+ * the object's witness (the Merkle tree root for bulk signed segments), or the digest of the
+ * signed part of the object when there is no witness - together with the signature bits, digest
+ * algorithm and the key used. All segments signed in one NDNMerkleTree share a root and signature, so once
+ * one has been verified the others only need their MerklePath checked.
+ *
+ * Only successful verifications are cached; a changed object gives a different proxy or digest,
+ * so never matches an entry for the original.
+ *
+ * The cache is split into stripes, each an LRU map with its own lock, to keep verifying threads
+ * from contending with each other.
+ */
+public class VerifiedSignatureCache implements NDNStatistics {
+
+	protected static final int STRIPES = 16;
+
+	protected static VerifiedSignatureCache _defaultCache = null;
+
+	/**
+	 * What a signature was verified over.
+	 */
+	protected static class VerifiedSignature {
+		protected final byte [] _signed;
+		protected final boolean _isProxy;
+		protected final byte [] _signature;
+		protected final String _digestAlgorithm;
+		protected final Key _key;
+		protected final int _hash;
+
+		protected VerifiedSignature(byte [] signed, boolean isProxy, byte [] signature, String digestAlgorithm, Key key) {
+			_signed = signed;
+			_isProxy = isProxy;
+			_signature = signature;
+			_digestAlgorithm = digestAlgorithm;
+			_key = key;
+			_hash = Arrays.hashCode(signed) * 31 + Arrays.hashCode(signature);
+		}
+
+		@Override
+		public int hashCode() {
+			return _hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof VerifiedSignature))
+				return false;
+			VerifiedSignature other = (VerifiedSignature)obj;
+			return _hash == other._hash && _isProxy == other._isProxy &&
+				DataUtils.arrayEquals(_signed, other._signed) &&
+				DataUtils.arrayEquals(_signature, other._signature) &&
+				((null == _digestAlgorithm) ? (null == other._digestAlgorithm) : _digestAlgorithm.equals(other._digestAlgorithm)) &&
+				_key.equals(other._key);
+		}
+	}
+
+	protected static class Stripe extends LinkedHashMap<VerifiedSignature, VerifiedSignature> {
+		private static final long serialVersionUID = 4411583047914203017L;
+
+		protected final int _maxEntries;
+		protected final NDNEnumStats<StatsEnum> _stats;
+
+		protected Stripe(int maxEntries, NDNEnumStats<StatsEnum> stats) {
+			super(16, 0.75f, true);
+			_maxEntries = maxEntries;
+			_stats = stats;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<VerifiedSignature, VerifiedSignature> eldest) {
+			if (size() <= _maxEntries)
+				return false;
+			_stats.increment(StatsEnum.Evictions);
+			return true;
+		}
+	}
+
+	protected final Stripe [] _stripes;
+	protected final int _maxEntries;
+
+	/**
+	 * @return the cache shared by ContentObject.verify, or null if
+	 * 	SystemConfiguration.VERIFY_CACHE_SIZE turns it off
+	 */
+	public static synchronized VerifiedSignatureCache getDefaultCache() {
+		if (SystemConfiguration.VERIFY_CACHE_SIZE <= 0)
+			return null;
+		if (null == _defaultCache) {
+			_defaultCache = new VerifiedSignatureCache(SystemConfiguration.VERIFY_CACHE_SIZE);
+			NDNStatsRegistry.register("VerifiedSignatureCache", _defaultCache);
+		}
+		return _defaultCache;
+	}
+
+	/**
+	 * @param maxEntries the number of verified signatures to remember
+	 */
+	public VerifiedSignatureCache(int maxEntries) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("VerifiedSignatureCache needs room for at least one entry: " + maxEntries);
+		_maxEntries = maxEntries;
+		int stripes = Math.min(STRIPES, maxEntries);
+		_stripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++)
+			_stripes[i] = new Stripe((maxEntries + stripes - 1) / stripes, _stats);
+	}
+
+	/**
+	 * @param signed the proxy or digest of the content the signature covers
+	 * @param isProxy true if signed is a proxy computed from the object's witness, false if it is
+	 * 	the digest of the object's signed content
+	 * @param signature the signature bits
+	 * @param digestAlgorithm the signature's digest algorithm
+	 * @param key the key used to verify
+	 * @return true if this signature has been verified with this key
+	 */
+	public boolean isVerified(byte [] signed, boolean isProxy, byte [] signature, String digestAlgorithm, Key key) {
+		if (null == signed || null == signature || null == key)
+			return false;
+		VerifiedSignature entry = new VerifiedSignature(signed, isProxy, signature, digestAlgorithm, key);
+		Stripe stripe = stripe(entry);
+		boolean found;
+		synchronized (stripe) {
+			found = null != stripe.get(entry);
+		}
+		_stats.increment(found ? StatsEnum.Hits : StatsEnum.Misses);
+		return found;
+	}
+
+	/**
+	 * Record a successful verification. Arguments as for isVerified.
+	 */
+	public void verified(byte [] signed, boolean isProxy, byte [] signature, String digestAlgorithm, Key key) {
+		if (null == signed || null == signature || null == key)
+			return;
+		VerifiedSignature entry = new VerifiedSignature(signed, isProxy, signature, digestAlgorithm, key);
+		Stripe stripe = stripe(entry);
+		synchronized (stripe) {
+			stripe.put(entry, entry);
+		}
+		_stats.increment(StatsEnum.Inserts);
+	}
+
+	public void clear() {
+		for (Stripe stripe : _stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : _stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public int maxEntries() {
+		return _maxEntries;
+	}
+
+	/**
+	 * @return the fraction of lookups which found a verified signature, 0 if there have been none
+	 */
+	public double hitRate() {
+		long hits = _stats.getCounter(StatsEnum.Hits.toString());
+		long lookups = hits + _stats.getCounter(StatsEnum.Misses.toString());
+		return (lookups == 0) ? 0.0 : ((double)hits / lookups);
+	}
+
+	/**
+	 * @return a summary of the cache state and statistics for display
+	 */
+	public String getStatus() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Verified signatures: %d of %d, hit rate %.1f%%\n", size(), _maxEntries, 100.0 * hitRate()));
+		sb.append(_stats.toString());
+		return sb.toString();
+	}
+
+	protected Stripe stripe(VerifiedSignature entry) {
+		return _stripes[(entry._hash & Integer.MAX_VALUE) % _stripes.length];
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("verifications", "Number of verifications which found the signature already verified"),
+		Misses ("verifications", "Number of verifications which needed a public key operation"),
+		Inserts ("signatures", "Number of verified signatures added to the cache"),
+		Evictions ("signatures", "Number of verified signatures evicted to stay within the bound"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
@@ -29,6 +29,7 @@ import org.ndnx.ndn.NDNContentHandler;
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.NDNInterestHandler;
 import org.ndnx.ndn.NDNSyncHandler;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.io.content.ConfigSlice;
 import org.ndnx.ndn.profiles.sync.Sync;
@@ -96,6 +97,7 @@ public class ProtocolBasedSyncMonitor extends SyncMonitor implements NDNContentH
 				if (null == sd) {
 					newData = true;
 					sd = new SliceData();
+					NDNStatsRegistry.register("SyncNodeCache", sd._snc, "slice", slice.prefix.toString());
 				}
 				SliceComparator sc = new SliceComparator(newData ? null : sd._leadComparator, sd._snc, syncHandler, slice, startHash, startName, _handle);
 				if (newData)
@@ -155,6 +157,7 @@ public class ProtocolBasedSyncMonitor extends SyncMonitor implements NDNContentH
 				// Now shutdown the lead
 				sd._leadComparator.shutdownIfUseless();
 				_sliceData.remove(she);
+				NDNStatsRegistry.unregister(sd._snc);
 			}
 		}
 	}
@@ -20,6 +20,9 @@
 package org.ndnx.ndn.impl.sync;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Stack;
@@ -27,8 +30,12 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
@@ -36,6 +43,7 @@ import org.ndnx.ndn.NDNContentHandler;
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.NDNSyncHandler;
 import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
 import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
 import org.ndnx.ndn.impl.support.DataUtils;
 import org.ndnx.ndn.impl.support.Log;
@@ -73,6 +81,12 @@ import org.ndnx.ndn.protocol.Interest;
  * glance would seem to need synchronization. However care has been taken to insure that the "run" loop can not be
  * run more than once simultaneously and that all unsynchronized global fields are only referenced from the run
  * routine or by internal methods called only by it so that synchronization is in fact unnecessary.
+ * 
+ * The exception is prefetching. When a new tree arrives we request its missing nodes ahead of the comparison,
+ * with up to SystemConfiguration.SYNC_FETCH_PIPELINE requests outstanding. Nodes which come back are decoded
+ * and their children requested on a pool of threads shared by all comparators, so independent subtrees are
+ * fetched and decoded concurrently and the comparison itself rarely has to wait for the network. The prefetch
+ * code only uses the caches, the tree entries and the fetch queue, which are all safe to share.
  *
  */
 public class SliceComparator implements Runnable {
@@ -112,6 +126,22 @@ public class SliceComparator implements Runnable {
 	
 	protected SyncHashCache _shc = new SyncHashCache();
 	
+	// Prefetching - entries waiting to be requested and the requests outstanding, both guarded by _fetchQueue
+	protected int _fetchWindow = SystemConfiguration.SYNC_FETCH_PIPELINE;
+	protected LinkedList<SyncTreeEntry> _fetchQueue = new LinkedList<SyncTreeEntry>();
+	protected HashMap<SyncHashEntry, Long> _inFlight = new HashMap<SyncHashEntry, Long>();
+	
+	// Shared by all comparators to decode fetched nodes
+	protected static ThreadPoolExecutor _decodePool = null;
+	protected static final ThreadLocal<BinaryXMLDecoder> _poolDecoders = new ThreadLocal<BinaryXMLDecoder>() {
+		@Override
+		protected BinaryXMLDecoder initialValue() {
+			BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+			decoder.setInitialBufferSize(DECODER_SIZE);
+			return decoder;
+		}
+	};
+	
 	/**
 	 * Start a comparison on a slice which will call back each registered "callback" each time
 	 * a previously unseen name is seen. Note that with the 0 length hash we can only base the "start" of our
@@ -149,6 +179,7 @@ public class SliceComparator implements Runnable {
 			_doCallbacks = false;
 		_decoder = new BinaryXMLDecoder();
 		_decoder.setInitialBufferSize(DECODER_SIZE);
+		NDNStatsRegistry.register("SyncHashCache", _shc, "slice", slice.prefix.toString());
 	}
 	
 	/**
@@ -299,6 +330,7 @@ public class SliceComparator implements Runnable {
 			if (_callbacks.size() == 0) {
 				_shutdown = true;
 				_executor.shutdownNow();
+				NDNStatsRegistry.unregister(_shc);
 			}
 			return _shutdown;
 		}
@@ -371,6 +403,153 @@ public class SliceComparator implements Runnable {
 		}
 	}
 	
+	/**
+	 * Request a node for a tree we will be comparing if we don't already have it and nobody else has
+	 * asked for it. If we already have as many requests outstanding as we are allowed, queue the entry
+	 * to be requested later. The node's children are prefetched in turn when it arrives.
+	 * 
+	 * The queue is last in first out so that we fetch roughly depth first, in the order the comparison
+	 * will want the nodes.
+	 * 
+	 * @param srt
+	 * @throws SyncException
+	 */
+	protected void prefetchNode(SyncTreeEntry srt) throws SyncException {
+		if (srt.isCovered() || null != srt.getNode())
+			return;
+		Pending lock = _snc.pending(srt.getHash());
+		synchronized (_fetchQueue) {
+			expireFetches();
+			if (_inFlight.size() >= _fetchWindow) {
+				_fetchQueue.addFirst(srt);
+				return;
+			}
+			synchronized (lock) {
+				if (lock.getPending())
+					return;
+				lock.setPending(true);
+			}
+			_inFlight.put(new SyncHashEntry(srt.getHash()), System.currentTimeMillis());
+		}
+		requestNode(srt);
+	}
+	
+	/**
+	 * Request queued entries while we have room for more requests
+	 * @throws SyncException
+	 */
+	protected void fillFetchWindow() throws SyncException {
+		while (true) {
+			SyncTreeEntry srt;
+			synchronized (_fetchQueue) {
+				expireFetches();
+				if (_inFlight.size() >= _fetchWindow || _fetchQueue.isEmpty())
+					return;
+				srt = _fetchQueue.removeFirst();
+			}
+			prefetchNode(srt);
+		}
+	}
+	
+	/**
+	 * Don't let requests which were never answered hold up the pipeline. The interests
+	 * themselves are still outstanding. Must be called with _fetchQueue locked.
+	 */
+	private void expireFetches() {
+		if (_inFlight.isEmpty())
+			return;
+		long expired = System.currentTimeMillis() - SystemConfiguration.LONG_TIMEOUT;
+		Iterator<Long> it = _inFlight.values().iterator();
+		while (it.hasNext()) {
+			if (it.next() < expired)
+				it.remove();
+		}
+	}
+	
+	/**
+	 * Decode a newly arrived node and prefetch its children. Runs in the decode pool.
+	 * @param ste
+	 */
+	protected void expandNode(SyncTreeEntry ste) {
+		if (isShutdown())
+			return;
+		try {
+			SyncNodeComposite node = ste.getNode(_poolDecoders.get());
+			if (null != node && !ste.isCovered()) {
+				// Queue the children ahead of anything already queued, first child first
+				ArrayList<SyncTreeEntry> children = new ArrayList<SyncTreeEntry>();
+				for (SyncNodeElement sne : node.getRefs()) {
+					if (sne.getType() == SyncNodeType.HASH)
+						children.add(_shc.addHash(sne.getData(), _snc));
+				}
+				synchronized (_fetchQueue) {
+					for (int i = children.size() - 1; i >= 0; i--)
+						_fetchQueue.addFirst(children.get(i));
+				}
+			}
+			fillFetchWindow();
+		} catch (SyncException e) {
+			Log.warning(Log.FAC_SYNC, "Node prefetch failed: {0}", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Handle node content from the network. If we are prefetching, decoding is done in the
+	 * decode pool rather than here since this may be called from a handler.
+	 * 
+	 * @param hash the hash of the node
+	 * @param content the encoded node
+	 */
+	protected void nodeArrived(final byte[] hash, byte[] content) {
+		final SyncTreeEntry ste = _shc.addHash(hash, _snc);
+		ste.setRawContent(content);
+		if (_fetchWindow > 0) {
+			synchronized (_fetchQueue) {
+				_inFlight.remove(new SyncHashEntry(hash));
+			}
+			try {
+				decodePool().execute(new Runnable() {
+					public void run() {
+						expandNode(ste);
+						_snc.wakeupPending(hash);
+						kickCompare();
+					}
+				});
+				return;
+			} catch (RejectedExecutionException ree) {}	// Leave the decoding to the comparison
+		}
+		_snc.wakeupPending(hash);
+		kickCompare();
+	}
+	
+	/**
+	 * Send a request for a node. The answer should be passed to nodeArrived.
+	 * @param srt
+	 * @throws SyncException
+	 */
+	protected void requestNode(SyncTreeEntry srt) throws SyncException {
+		ProtocolBasedSyncMonitor.requestNode(_slice, srt.getHash(), _handle, _nfh);
+	}
+	
+	protected static synchronized ThreadPoolExecutor decodePool() {
+		if (null == _decodePool) {
+			int threads = SystemConfiguration.SYNC_COMPARE_THREADS;
+			if (threads <= 0)
+				threads = Runtime.getRuntime().availableProcessors();
+			_decodePool = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						int _count = 0;
+						public synchronized Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Sync decode " + _count++);
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			_decodePool.allowCoreThreadTimeOut(true);
+		}
+		return _decodePool;
+	}
+	
 	/**
 	 * Nodes can be shared across comparators so if we are missing a node, we really only want to
 	 * do one request for the node for the whole slice. Then when the node is returned other comparators
@@ -415,7 +594,7 @@ public class SliceComparator implements Runnable {
 				return null;
 			lock.setPending(true);
 		}
-		ProtocolBasedSyncMonitor.requestNode(_slice, srt.getHash(), _handle, _nfh);
+		requestNode(srt);
 		return null;
 	}
 	
@@ -900,6 +1079,24 @@ public class SliceComparator implements Runnable {
 			_shc.removeHashEntry(ste);
 	}
 	
+	/**
+	 * Bound the hash cache between rounds. The entries we still hold must stay in the cache
+	 * so that lookups during the next round find the same entries.
+	 */
+	protected void trimHashCache() {
+		ArrayList<SyncTreeEntry> inUse = new ArrayList<SyncTreeEntry>();
+		synchronized (this) {
+			inUse.add(_currentRoot);
+			inUse.add(_startHash);
+			inUse.addAll(_current);
+			inUse.addAll(_next);
+			inUse.addAll(_pendingEntries);
+		}
+		int dropped = _shc.trim(inUse);
+		if (dropped > 0 && Log.isLoggable(Log.FAC_SYNC, Level.FINE))
+			Log.fine(Log.FAC_SYNC, "Dropped {0} hashes from cache, {1} left", dropped, _shc.size());
+	}
+	
 	/**
 	 * Separate thread for running comparisons. We run until we can't do anything
 	 * anymore, then rely on "kickCompare" to restart the thread. It uses a state
@@ -1064,6 +1261,7 @@ public class SliceComparator implements Runnable {
 							}
 						}
 					}
+					trimHashCache();
 					synchronized (this) {
 						changeState(SyncCompareState.INIT);
 						if (_pendingEntries.size() > 0) {
@@ -1115,10 +1313,7 @@ public class SliceComparator implements Runnable {
 			byte[] hash = name.component(hashComponent + 2);
 			if (Log.isLoggable(Log.FAC_SYNC, Level.FINE))
 				Log.fine(Log.FAC_SYNC, "Saw data from nodefind: hash: {0}", Component.printURI(hash));
-			SyncTreeEntry ste = _shc.addHash(hash, _snc);
-			ste.setRawContent(data.content());
-			_snc.wakeupPending(hash);
-			kickCompare();
+			nodeArrived(hash, data.content());
 			return null;
 		}
 	}
@@ -19,15 +19,70 @@
  */
 package org.ndnx.ndn.impl.sync;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
 
 /**
  * This cache hashes sync hashes to their "SyncTreeEntry" used to walk through trees of hashes.
  * Since SyncTreeEntries can not be shared across comparators since they contain information about where
  * in the walk the comparator currently is, these hashes can not be shared on a slice either.
+ * 
+ * Lookups and inserts don't lock. The cache is bounded by trim, which the comparator calls between
+ * comparisons: entries unused for longer than the maximum age are dropped, then least recently used
+ * entries until the cache is back to its maximum size. Entries for local nodes and entries the
+ * comparator is still using are never dropped - losing a local entry would lose the node, and
+ * replacing an entry in use would separate the comparator's state from the cache. Dropping any other
+ * entry only loses its covered flag, so at worst part of a later comparison is redone.
  */
-public class SyncHashCache {
-	protected HashMap<SyncHashEntry, SyncTreeEntry> _hashes = new HashMap<SyncHashEntry, SyncTreeEntry>();
+public class SyncHashCache implements NDNStatistics {
+	
+	/**
+	 * An entry together with when it was last looked up. The time needn't be exact.
+	 */
+	protected static class Slot {
+		protected final SyncTreeEntry _entry;
+		protected volatile long _lastUsed;
+		
+		protected Slot(SyncTreeEntry entry, long now) {
+			_entry = entry;
+			_lastUsed = now;
+		}
+	}
+	
+	protected ConcurrentHashMap<SyncHashEntry, Slot> _hashes = new ConcurrentHashMap<SyncHashEntry, Slot>();
+	protected final int _maxEntries;
+	protected final long _maxAge;
+	
+	// Only look for expired entries a few times per maximum age
+	protected static final int AGE_SCANS = 4;
+	protected long _lastAgeScan = 0;
+	
+	/**
+	 * Create a cache bounded by SystemConfiguration.SYNC_HASH_CACHE_ENTRIES and SYNC_HASH_CACHE_AGE
+	 */
+	public SyncHashCache() {
+		this(SystemConfiguration.SYNC_HASH_CACHE_ENTRIES, SystemConfiguration.SYNC_HASH_CACHE_AGE);
+	}
+	
+	/**
+	 * @param maxEntries	entries to keep after a trim, not counting ones which can't be dropped
+	 * @param maxAge		time in ms after which an unused entry is dropped on trim, 0 for no limit
+	 */
+	public SyncHashCache(int maxEntries, long maxAge) {
+		_maxEntries = maxEntries;
+		_maxAge = maxAge;
+	}
 
 	/**
 	 * Add a new hash to the list of ones we've seen
@@ -35,14 +90,20 @@ public class SyncHashCache {
 	 * @return new SyncTreeEntry for the hash
 	 */
 	public SyncTreeEntry addHash(byte[] hash, SyncNodeCache snc) {
-		synchronized (this) {
-			SyncTreeEntry entry = _hashes.get(new SyncHashEntry(hash));
-			if (null == entry) {
-				entry = new SyncTreeEntry(hash, snc);
-				_hashes.put(new SyncHashEntry(hash), entry);
+		SyncHashEntry she = new SyncHashEntry(hash);
+		long now = System.currentTimeMillis();
+		Slot slot = _hashes.get(she);
+		if (null == slot) {
+			Slot newSlot = new Slot(new SyncTreeEntry(hash, snc), now);
+			slot = _hashes.putIfAbsent(she, newSlot);
+			if (null == slot) {
+				_stats.increment(StatsEnum.Inserts);
+				return newSlot._entry;
 			}
-			return entry;
 		}
+		_stats.increment(StatsEnum.Hits);
+		slot._lastUsed = now;
+		return slot._entry;
 	}
 	
 	/**
@@ -53,9 +114,14 @@ public class SyncHashCache {
 	public SyncTreeEntry getHash(byte[] hash) {
 		if (null == hash)
 			return null;
-		synchronized (this) {
-			return _hashes.get(new SyncHashEntry(hash));
+		Slot slot = _hashes.get(new SyncHashEntry(hash));
+		if (null == slot) {
+			_stats.increment(StatsEnum.Misses);
+			return null;
 		}
+		_stats.increment(StatsEnum.Hits);
+		slot._lastUsed = System.currentTimeMillis();
+		return slot._entry;
 	}
 	
 	/**
@@ -63,12 +129,8 @@ public class SyncHashCache {
 	 */
 	public void putHashEntry(SyncTreeEntry entry) {
 		SyncHashEntry she = new SyncHashEntry(entry.getHash());
-		synchronized (this) {
-			SyncTreeEntry tste = _hashes.get(she);
-			if (null != tste)
-				_hashes.remove(she);
-			_hashes.put(she, entry);
-		}
+		if (null == _hashes.put(she, new Slot(entry, System.currentTimeMillis())))
+			_stats.increment(StatsEnum.Inserts);
 	}
 	
 	/**
@@ -77,8 +139,145 @@ public class SyncHashCache {
 	 */
 	public void removeHashEntry(SyncTreeEntry entry) {
 		SyncHashEntry she = new SyncHashEntry(entry.getHash());
-		synchronized (this) {
-			_hashes.remove(she);
+		_hashes.remove(she);
+	}
+	
+	/**
+	 * Drop entries to bring the cache back within its age and size limits. Should be called
+	 * when no comparison is in progress.
+	 * 
+	 * @param inUse entries which must be kept, may be null
+	 * @return the number of entries dropped
+	 */
+	public int trim(Collection<SyncTreeEntry> inUse) {
+		long now = System.currentTimeMillis();
+		boolean ageScan = _maxAge > 0 && now - _lastAgeScan >= _maxAge / AGE_SCANS;
+		if (_hashes.size() <= _maxEntries && !ageScan)
+			return 0;
+		if (ageScan)
+			_lastAgeScan = now;
+		IdentityHashMap<SyncTreeEntry, SyncTreeEntry> keep = new IdentityHashMap<SyncTreeEntry, SyncTreeEntry>();
+		if (null != inUse) {
+			for (SyncTreeEntry ste : inUse) {
+				if (null != ste)
+					keep.put(ste, ste);
+			}
+		}
+		
+		int dropped = 0;
+		long expired = now - _maxAge;
+		ArrayList<Map.Entry<SyncHashEntry, Slot>> candidates = new ArrayList<Map.Entry<SyncHashEntry, Slot>>();
+		for (Map.Entry<SyncHashEntry, Slot> mapEntry : _hashes.entrySet()) {
+			Slot slot = mapEntry.getValue();
+			if (keep.containsKey(slot._entry) || slot._entry.isLocal())
+				continue;
+			if (ageScan && slot._lastUsed < expired) {
+				if (_hashes.remove(mapEntry.getKey(), slot)) {
+					_stats.increment(StatsEnum.Expired);
+					dropped++;
+				}
+			} else
+				candidates.add(mapEntry);
+		}
+		
+		int excess = _hashes.size() - _maxEntries;
+		if (excess > 0) {
+			Collections.sort(candidates, new Comparator<Map.Entry<SyncHashEntry, Slot>>() {
+				public int compare(Map.Entry<SyncHashEntry, Slot> o1, Map.Entry<SyncHashEntry, Slot> o2) {
+					long t1 = o1.getValue()._lastUsed;
+					long t2 = o2.getValue()._lastUsed;
+					return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+				}
+			});
+			for (int i = 0; i < candidates.size() && excess > 0; i++) {
+				Map.Entry<SyncHashEntry, Slot> mapEntry = candidates.get(i);
+				if (_hashes.remove(mapEntry.getKey(), mapEntry.getValue())) {
+					_stats.increment(StatsEnum.Evictions);
+					dropped++;
+					excess--;
+				}
+			}
+		}
+		return dropped;
+	}
+	
+	/**
+	 * @return the number of entries in the cache
+	 */
+	public int size() {
+		return _hashes.size();
+	}
+	
+	/**
+	 * @return fraction of lookups which found an entry, 0 if there have been none
+	 */
+	public double hitRate() {
+		long hits = _stats.getCounter(StatsEnum.Hits.toString());
+		long lookups = hits + _stats.getCounter(StatsEnum.Misses.toString()) + _stats.getCounter(StatsEnum.Inserts.toString());
+		return lookups == 0 ? 0.0 : (double)hits / lookups;
+	}
+	
+	public String getStatus() {
+		return String.format("SyncHashCache: %d of %d entries, hit rate %.3f", size(), _maxEntries, hitRate());
+	}
+
+	// ==============================================================
+	// Statistics
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("ops", "Lookups which found an entry"),
+		Misses ("ops", "Lookups which found no entry"),
+		Inserts ("ops", "Entries added to the cache"),
+		Expired ("ops", "Entries dropped for not being used within the maximum age"),
+		Evictions ("ops", "Entries dropped to stay within the maximum size"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
 		}
 	}
 }
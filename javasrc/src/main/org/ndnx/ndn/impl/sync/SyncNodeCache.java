@@ -19,18 +19,39 @@
  */
 package org.ndnx.ndn.impl.sync;
 
-import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
 import org.ndnx.ndn.io.content.SyncNodeComposite;
+import org.ndnx.ndn.io.content.SyncNodeComposite.SyncNodeElement;
+import org.ndnx.ndn.protocol.ContentName;
 
 /**
- * Nodes can be cached by hash across different comparators. We use WeakReferences to avoid accidentally caching nodes that
- * no longer have any real referents.
+ * Nodes can be cached by hash across different comparators. The cache is bounded by an estimate of
+ * the memory used by the nodes it holds (SystemConfiguration.SYNC_NODE_CACHE_BYTES) and drops
+ * least recently used nodes beyond that. Dropping a node is always safe - entries for local nodes hold
+ * them directly, and nodes from the network can be requested again.
+ * 
+ * The nodes are split across several independently locked stripes by hash so that comparators
+ * for a slice don't all contend for one lock.
  * 
  * Since we only need to request nodes once per slice, the pending mechanism should be global
  */
-public class SyncNodeCache {
+public class SyncNodeCache implements NDNStatistics {
+	
+	protected static final int STRIPES = 16;
+	
+	// Rough per object costs used to estimate the size of a node
+	protected static final int NODE_OVERHEAD = 128;
+	protected static final int ELEMENT_OVERHEAD = 48;
+	protected static final int COMPONENT_OVERHEAD = 24;
 	
 	/**
 	 * This mechanism is used to avoid requesting the same node more than once (see below). One of
@@ -52,18 +73,73 @@ public class SyncNodeCache {
 	// For holding objects used as locks for each pending hash
 	private HashMap<SyncHashEntry, Pending> _hashesPending = new HashMap<SyncHashEntry, Pending>();
 	
-	protected HashMap<SyncHashEntry, WeakReference<SyncNodeComposite>> _nodes = new HashMap<SyncHashEntry, WeakReference<SyncNodeComposite>>();
+	/**
+	 * One lock stripe of the cache - an access ordered map which drops its least recently used
+	 * nodes when it is over its share of the byte budget.
+	 */
+	protected class Stripe extends LinkedHashMap<SyncHashEntry, SyncNodeComposite> {
+		private static final long serialVersionUID = -5412786937432611870L;
+		
+		protected long _bytes = 0;
+		
+		protected Stripe() {
+			super(16, 0.75f, true);
+		}
+		
+		/**
+		 * We may need to drop more than one node after a large insert, so we do the
+		 * removal ourselves. The newest node is always kept.
+		 */
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SyncHashEntry, SyncNodeComposite> eldest) {
+			Iterator<SyncNodeComposite> it = values().iterator();
+			while (_bytes > _stripeBytes && size() > 1) {
+				_bytes -= nodeSize(it.next());
+				it.remove();
+				_stats.increment(StatsEnum.Evictions);
+			}
+			return false;
+		}
+	}
+	
+	protected final Stripe [] _stripes = new Stripe[STRIPES];
+	protected final long _maxBytes;
+	protected final long _stripeBytes;
+
+	/**
+	 * Create a cache sized by SystemConfiguration.SYNC_NODE_CACHE_BYTES
+	 */
+	public SyncNodeCache() {
+		this(SystemConfiguration.SYNC_NODE_CACHE_BYTES);
+	}
+	
+	/**
+	 * @param maxBytes	estimated memory the cached nodes may use
+	 */
+	public SyncNodeCache(long maxBytes) {
+		_maxBytes = maxBytes;
+		_stripeBytes = Math.max(1, maxBytes / STRIPES);
+		for (int i = 0; i < STRIPES; i++)
+			_stripes[i] = new Stripe();
+	}
 
 	/**
 	 * Put a newly decoded node into the cache
 	 * @param node
 	 */
 	public void putNode(SyncNodeComposite node) {
-		synchronized (this) {
-			WeakReference<SyncNodeComposite> wr = new WeakReference<SyncNodeComposite>(node);
-			_nodes.put((new SyncHashEntry(node.getHash())), wr);
-			clearPending(node.getHash());
+		SyncHashEntry she = new SyncHashEntry(node.getHash());
+		Stripe stripe = stripe(she);
+		synchronized (stripe) {
+			SyncNodeComposite old = stripe.remove(she);
+			if (null != old)
+				stripe._bytes -= nodeSize(old);
+			else
+				_stats.increment(StatsEnum.Inserts);
+			stripe._bytes += nodeSize(node);
+			stripe.put(she, node);
 		}
+		clearPending(node.getHash());
 	}
 	
 	/**
@@ -74,12 +150,14 @@ public class SyncNodeCache {
 	public SyncNodeComposite getNode(byte[] hash) {
 		if (null == hash)
 			return null;
-		synchronized (this) {
-			WeakReference<SyncNodeComposite> wr = _nodes.get(new SyncHashEntry(hash));
-			if (null == wr)
-				return null;
-			return wr.get();
+		SyncHashEntry she = new SyncHashEntry(hash);
+		Stripe stripe = stripe(she);
+		SyncNodeComposite node;
+		synchronized (stripe) {
+			node = stripe.get(she);
 		}
+		_stats.increment(null == node ? StatsEnum.Misses : StatsEnum.Hits);
+		return node;
 	}
 	
 	/**
@@ -141,4 +219,142 @@ public class SyncNodeCache {
 			}
 		}
 	}
+	
+	/**
+	 * @return the number of nodes in the cache
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : _stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * @return the estimated memory used by the nodes in the cache
+	 */
+	public long bytes() {
+		long bytes = 0;
+		for (Stripe stripe : _stripes) {
+			synchronized (stripe) {
+				bytes += stripe._bytes;
+			}
+		}
+		return bytes;
+	}
+	
+	/**
+	 * @return the budget for the estimated memory used by the cache
+	 */
+	public long maxBytes() {
+		return _maxBytes;
+	}
+	
+	/**
+	 * @return fraction of getNode calls which found a node, 0 if there have been none
+	 */
+	public double hitRate() {
+		long hits = _stats.getCounter(StatsEnum.Hits.toString());
+		long lookups = hits + _stats.getCounter(StatsEnum.Misses.toString());
+		return lookups == 0 ? 0.0 : (double)hits / lookups;
+	}
+	
+	public void clear() {
+		for (Stripe stripe : _stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+				stripe._bytes = 0;
+			}
+		}
+	}
+	
+	protected Stripe stripe(SyncHashEntry she) {
+		return _stripes[(she.hashCode() & Integer.MAX_VALUE) % STRIPES];
+	}
+	
+	/**
+	 * Estimate the memory used by a node from its references
+	 */
+	protected static long nodeSize(SyncNodeComposite node) {
+		long size = NODE_OVERHEAD;
+		if (null == node._refs)
+			return size;
+		for (SyncNodeElement sne : node._refs) {
+			size += ELEMENT_OVERHEAD;
+			if (null != sne._data)
+				size += sne._data.length;
+			ContentName name = sne._name;
+			if (null != name) {
+				for (int i = 0; i < name.count(); i++)
+					size += COMPONENT_OVERHEAD + name.component(i).length;
+			}
+		}
+		return size;
+	}
+	
+	public String getStatus() {
+		return String.format("SyncNodeCache: %d nodes, %d of %d bytes, hit rate %.3f", size(), bytes(), _maxBytes, hitRate());
+	}
+
+	// ==============================================================
+	// Statistics
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("ops", "Lookups which found a node"),
+		Misses ("ops", "Lookups which found no node"),
+		Inserts ("ops", "Nodes added to the cache"),
+		Evictions ("ops", "Nodes dropped to stay within the memory budget"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
 }
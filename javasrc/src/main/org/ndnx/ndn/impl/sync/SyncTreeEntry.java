@@ -106,6 +106,8 @@ public class SyncTreeEntry {
 	public SyncNodeComposite getNode(XMLDecoder decoder) {
 		SyncNodeComposite node = getNodeIfPossible();
 		synchronized (this) {
+			if (null == node && null == _rawContent)
+				node = getNodeIfPossible();	// Someone else may have just decoded it
 			if (null != node || null == _rawContent || null == decoder) {
 				if (null != node)
 					_rawContent = null;
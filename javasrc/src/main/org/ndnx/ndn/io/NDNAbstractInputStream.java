@@ -28,16 +28,20 @@ import java.security.InvalidKeyException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 
 import org.ndnx.ndn.NDNContentHandler;
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.security.crypto.ContentKeys;
+import org.ndnx.ndn.impl.security.crypto.DecryptionThreadPool;
 import org.ndnx.ndn.impl.support.DataUtils;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.io.content.Link.LinkObject;
@@ -132,9 +136,32 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 	/**
 	 *  Encryption/decryption handler.
 	 */
-	protected Cipher _cipher;
 	protected ContentKeys _keys;
 
+	/**
+	 * A pipelined segment being decrypted on the DecryptionThreadPool ahead of the reader,
+	 * with what it was decrypted for so we only use it if that still matches.
+	 */
+	protected static class DecryptedSegment {
+		protected final ContentObject _segment;
+		protected final ContentName _baseName;
+		protected final PublisherPublicKeyDigest _publisher;
+		protected final Future<byte []> _content;
+
+		protected DecryptedSegment(ContentObject segment, ContentName baseName, PublisherPublicKeyDigest publisher, Future<byte []> content) {
+			_segment = segment;
+			_baseName = baseName;
+			_publisher = publisher;
+			_content = content;
+		}
+	}
+
+	/**
+	 * Segments being decrypted ahead, by segment number. Only used if
+	 * SystemConfiguration.DECRYPT_THREADS is non-zero.
+	 */
+	protected final TreeMap<Long, DecryptedSegment> _decryptedSegments = new TreeMap<Long, DecryptedSegment>();
+
 	/**
 	 * If this content uses Merkle Hash Trees or other bulk signatures to amortize
 	 * signature cost, we can amortize verification cost as well by caching verification
@@ -173,6 +200,10 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 
 	private double avgResponseTime = -1;
 
+	// Only used if the window is adaptive, see pipelineSize()
+	protected final PipelineWindow _pipelineWindow = SystemConfiguration.PIPELINE_ADAPTIVE ?
+			new PipelineWindow(SystemConfiguration.PIPELINE_SIZE, SystemConfiguration.PIPELINE_MAX_SIZE) : null;
+
 	private final Object processingSegmentLock = new Object();
 	private long processingSegment = -1;
 
@@ -394,6 +425,8 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 				//this is the next segment in order
 				inOrderSegments.add(co);
 				_lastInOrderSegment = returnedSegment;
+				if (null != _pipelineWindow)
+					_pipelineWindow.inOrder();
 				//do we have any out of order segments to move over?
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: before checking ooos:" );
@@ -467,6 +500,59 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 				inOrderSegments.notifyAll();
 			}
 		}
+
+		if (returnedSegment != -1)
+			decryptAhead(co, returnedSegment);
+	}
+
+	/**
+	 * Start decrypting a pipelined segment on the decryption threads, so segments which arrive
+	 * ahead of the reader, in or out of order, are decrypted while it is busy with earlier ones.
+	 * Does nothing if we don't have keys yet or there are no decryption threads.
+	 */
+	private void decryptAhead(ContentObject co, long segmentNumber) {
+		ContentKeys keys = _keys;
+		if (null == keys || DecryptionThreadPool.threads() == 0 || co.isType(ContentType.GONE))
+			return;
+		ContentName baseName = getBaseName();
+		PublisherPublicKeyDigest publisher = co.signedInfo().getPublisherKeyID();
+		synchronized (_decryptedSegments) {
+			if (_decryptedSegments.size() >= SystemConfiguration.PIPELINE_MAX_SIZE || _decryptedSegments.containsKey(segmentNumber))
+				return;
+			try {
+				Future<byte []> content = DecryptionThreadPool.decrypt(keys, baseName, publisher, segmentNumber, co.content());
+				_decryptedSegments.put(segmentNumber, new DecryptedSegment(co, baseName, publisher, content));
+			} catch (RejectedExecutionException ree) {
+				// the reader will decrypt it
+			}
+		}
+	}
+
+	/**
+	 * Get the result of decrypting a segment ahead, if we did and it was decrypted for the
+	 * same name and publisher. Drops anything decrypted ahead of segments before this one.
+	 * @return the decrypted content, or null if the caller should decrypt the segment itself
+	 */
+	private byte [] decryptedAhead(ContentObject segment, long segmentNumber) {
+		DecryptedSegment decrypted;
+		synchronized (_decryptedSegments) {
+			if (_decryptedSegments.isEmpty())
+				return null;
+			decrypted = _decryptedSegments.remove(segmentNumber);
+			_decryptedSegments.headMap(segmentNumber).clear();
+		}
+		if (null == decrypted || !(decrypted._segment == segment || decrypted._segment.equals(segment)) ||
+				!decrypted._baseName.equals(getBaseName()) || !decrypted._publisher.equals(_publisher))
+			return null;
+		try {
+			return decrypted._content.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+				Log.info(Log.FAC_IO, "Decrypting segment {0} ahead failed, decrypting it again: {1}", segmentNumber, e.getCause());
+		}
+		return null;
 	}
 
 	private void advancePipeline() {
@@ -489,7 +575,7 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 
 			Interest i = null;
 
-			while (_sentInterests.size() + inOrderSegments.size() + outOfOrderSegments.size() + processingDefer < SystemConfiguration.PIPELINE_SIZE && !doneAdvancing) {
+			while (_sentInterests.size() + inOrderSegments.size() + outOfOrderSegments.size() + processingDefer < pipelineSize() && !doneAdvancing) {
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: _sentInterests.size() = {0} inOrderSegments.size() = {1} outOfOrderSegments.size()  = {2} processingDefer = {3} total = {4}", _sentInterests.size(), inOrderSegments.size(), outOfOrderSegments.size(), processingDefer, (_sentInterests.size() + inOrderSegments.size() + outOfOrderSegments.size() + processingDefer) );
 
@@ -522,7 +608,7 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 						_sentInterests.add(i);
 						_lastRequestedPipelineSegment++;
 						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-							Log.info(Log.FAC_PIPELINE, "PIPELINE: requested segment "+_lastRequestedPipelineSegment +" ("+(SystemConfiguration.PIPELINE_SIZE - _sentInterests.size())+" tokens)");
+							Log.info(Log.FAC_PIPELINE, "PIPELINE: requested segment "+_lastRequestedPipelineSegment +" ("+(pipelineSize() - _sentInterests.size())+" tokens)");
 					} catch (IOException e) {
 						// This could happen if the handle got closed underneath us - maybe that's OK?
 						// For now will leave it as a warning
@@ -677,7 +763,8 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 						elapsed2 = System.currentTimeMillis() - expressed.userTime;
 						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 							Log.info(Log.FAC_PIPELINE, "PIPELINE: elapsed2 time {0}", elapsed2);
-						if(elapsed2 > avgResponseTime * SystemConfiguration.PIPELINE_RTTFACTOR && avgResponseTime > -1) {
+						double holeTimeout = holeTimeout(SystemConfiguration.PIPELINE_RTTFACTOR);
+						if(elapsed2 > holeTimeout && holeTimeout > -1) {
 							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 								Log.info(Log.FAC_PIPELINE, "PIPELINE: expressing the next interest! {0} old express time {1} new express time {2}", i, expressed.userTime, newUserTime);
 							//i.userTime = System.currentTimeMillis();
@@ -714,7 +801,8 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 					}
 				}
 
-				if((elapsed1 > avgResponseTime * 2 && avgResponseTime > -1) || (avgResponseTime == -1 && elapsed1 > SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT) || notRequested) {
+				double holeTimeout = holeTimeout(2);
+				if((elapsed1 > holeTimeout && holeTimeout > -1) || (holeTimeout == -1 && elapsed1 > SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT) || notRequested) {
 					//long userTime = System.currentTimeMillis();
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
 						if (notRequested)
@@ -759,7 +847,39 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 		}
 	}
 
+	/**
+	 * @return the number of segments we may have requested or buffered at once
+	 */
+	protected int pipelineSize() {
+		return (null == _pipelineWindow) ? SystemConfiguration.PIPELINE_SIZE : _pipelineWindow.window();
+	}
+
+	/**
+	 * @param factor multiple of the average response time to wait, if we aren't using the
+	 * 	adaptive window's retransmission timeout
+	 * @return how long to wait for a segment before trying again to fill a hole at it, or -1 if
+	 * 	we don't know yet
+	 */
+	private double holeTimeout(int factor) {
+		if (null != _pipelineWindow) {
+			long rto = _pipelineWindow.rto();
+			if (rto > 0)
+				return rto;
+		}
+		return (avgResponseTime > -1) ? avgResponseTime * factor : -1;
+	}
+
+	/**
+	 * @return the adaptive pipeline window for this stream, or null if it uses a fixed window
+	 * 	of SystemConfiguration.PIPELINE_SIZE
+	 */
+	public PipelineWindow getPipelineWindow() {
+		return _pipelineWindow;
+	}
+
 	private void adjustAvgResponseTimeForHole() {
+		if (null != _pipelineWindow)
+			_pipelineWindow.loss();
 		synchronized (processingSegmentLock) {
 			Log.info(Log.FAC_PIPELINE, "PIPELINE: before adjusting avgResponseTime for hole. avgResponseTime = {0}", avgResponseTime);
 			avgResponseTime = 0.9 * avgResponseTime + 0.1 * (SystemConfiguration.PIPELINE_RTTFACTOR * avgResponseTime);
@@ -1056,6 +1176,11 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 			_lastSegmentNumber = -1;
 			_currentSegment = null;
 		}
+		synchronized (_decryptedSegments) {
+			for (DecryptedSegment decrypted : _decryptedSegments.values())
+				decrypted._content.cancel(false);
+			_decryptedSegments.clear();
+		}
 	}
 
 
@@ -1147,6 +1272,10 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 
 		synchronized(processingSegmentLock) {
 			Log.info(Log.FAC_PIPELINE, "PIPELINE: before adjusting avgResponseTime after reception. avgResponseTime = {0} elapsed time {1}", avgResponseTime, (starttime - interest.userTime));
+			// Hole filling interests keep the time of the first request so they don't
+			// tell us the round trip time
+			if (null != _pipelineWindow && null == interest.exclude() && interest.userTime > 0)
+				_pipelineWindow.rttSample(starttime - interest.userTime);
 			if (avgResponseTime == -1) {
 				avgResponseTime = starttime - interest.userTime;
 			} else {
@@ -1461,71 +1590,48 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 			if (_keys != null) {
 				// We only do automated lookup of keys on first segment. Otherwise
 				// we assume we must have the keys or don't try to decrypt.
-				try {
-					// Reuse of current segment OK. Don't expect to have two separate readers
-					// independently use this stream without state confusion anyway.
-
-					// Assume getBaseName() returns name without segment information.
-					// Log verification only on highest log level (won't execute on lower logging level).
-					if (Log.isLoggable(Log.FAC_IO, Level.FINEST)) {
-						if (!SegmentationProfile.segmentRoot(_currentSegment.name()).equals(getBaseName())) {
-							Log.finest(Log.FAC_IO, "ASSERT: getBaseName()={0} does not match segmentless part of _currentSegment.name()={1}",
-									getBaseName(),
-									SegmentationProfile.segmentRoot(_currentSegment.name()));
+				long segmentNumber = SegmentationProfile.getSegmentNumber(_currentSegment.name());
+				byte [] segmentData = decryptedAhead(_currentSegment, segmentNumber);
+				if (null == segmentData) {
+					try {
+						// Reuse of current segment OK. Don't expect to have two separate readers
+						// independently use this stream without state confusion anyway.
+
+						// Assume getBaseName() returns name without segment information.
+						// Log verification only on highest log level (won't execute on lower logging level).
+						if (Log.isLoggable(Log.FAC_IO, Level.FINEST)) {
+							if (!SegmentationProfile.segmentRoot(_currentSegment.name()).equals(getBaseName())) {
+								Log.finest(Log.FAC_IO, "ASSERT: getBaseName()={0} does not match segmentless part of _currentSegment.name()={1}",
+										getBaseName(),
+										SegmentationProfile.segmentRoot(_currentSegment.name()));
+							}
 						}
+						// Let's optimize random access to this buffer (e.g. as used by the decoders) by
+						// decrypting a whole ContentObject at a time. It's not a huge security risk,
+						// and right now we can't rewind the buffers so if we do try to decode out of
+						// an encrypted block we constantly restart from the beginning and redecrypt
+						// the content.
+						// Previously we used our own UnbufferedCipherInputStream class directly as
+						// our _segmentReadStream for encrypted data, as Java's CipherInputStreams
+						// assume block-oriented boundaries for decryption, and buffer incorrectly as a result.
+						// If we want to go back to incremental decryption, putting a small cache into that
+						// class to optimize going backwards would help.
+						segmentData = _keys.decryptSegment(getBaseName(), _publisher, segmentNumber, _currentSegment.content());
+					} catch (InvalidKeyException e) {
+						Log.warning(Log.FAC_IO, "InvalidKeyException: " + e.getMessage());
+						throw new IOException("InvalidKeyException: " + e.getMessage());
+					} catch (InvalidAlgorithmParameterException e) {
+						Log.warning(Log.FAC_IO, "InvalidAlgorithmParameterException: " + e.getMessage());
+						throw new IOException("InvalidAlgorithmParameterException: " + e.getMessage());
+					} catch (IllegalBlockSizeException e) {
+						Log.warning(Log.FAC_IO, "IllegalBlockSizeException: " + e.getMessage());
+						throw new IOException("IllegalBlockSizeException: " + e.getMessage());
+					} catch (BadPaddingException e) {
+						Log.warning(Log.FAC_IO, "BadPaddingException: " + e.getMessage());
+						throw new IOException("BadPaddingException: " + e.getMessage());
 					}
-					_cipher = _keys.getSegmentDecryptionCipher(getBaseName(), _publisher,
-							SegmentationProfile.getSegmentNumber(_currentSegment.name()));
-				} catch (InvalidKeyException e) {
-					Log.warning(Log.FAC_IO, "InvalidKeyException: " + e.getMessage());
-					throw new IOException("InvalidKeyException: " + e.getMessage());
-				} catch (InvalidAlgorithmParameterException e) {
-					Log.warning(Log.FAC_IO, "InvalidAlgorithmParameterException: " + e.getMessage());
-					throw new IOException("InvalidAlgorithmParameterException: " + e.getMessage());
-				}
-
-				// Let's optimize random access to this buffer (e.g. as used by the decoders) by
-				// decrypting a whole ContentObject at a time. It's not a huge security risk,
-				// and right now we can't rewind the buffers so if we do try to decode out of
-				// an encrypted block we constantly restart from the beginning and redecrypt
-				// the content.
-				// Previously we used our own UnbufferedCipherInputStream class directly as
-				// our _segmentReadStream for encrypted data, as Java's CipherInputStreams
-				// assume block-oriented boundaries for decryption, and buffer incorrectly as a result.
-				// If we want to go back to incremental decryption, putting a small cache into that
-				// class to optimize going backwards would help.
-
-				// Unless we use a compressing cipher, the maximum data length for decrypted data
-				//  is _currentSegment.content().length. But we might as well make something
-				// general that will handle all cases. There may be a more efficient way to
-				// do this; want to minimize copies.
-				byte [] bodyData = _cipher.update(_currentSegment.content());
-				byte[] tailData;
-				try {
-					tailData = _cipher.doFinal();
-				} catch (IllegalBlockSizeException e) {
-					Log.warning(Log.FAC_IO, "IllegalBlockSizeException: " + e.getMessage());
-					throw new IOException("IllegalBlockSizeException: " + e.getMessage());
-				} catch (BadPaddingException e) {
-					Log.warning(Log.FAC_IO, "BadPaddingException: " + e.getMessage());
-					throw new IOException("BadPaddingException: " + e.getMessage());
-				}
-				if ((null == tailData) || (0 == tailData.length)) {
-					if (null == bodyData)
-						_segmentReadStream = new ByteArrayInputStream(new byte[0]);
-					else 
-						_segmentReadStream = new ByteArrayInputStream(bodyData);
-				}
-				else if ((null == bodyData) || (0 == bodyData.length)) {
-					_segmentReadStream = new ByteArrayInputStream(tailData);
-				}
-				else {
-					byte [] allData = new byte[bodyData.length + tailData.length];
-					// Still avoid 1.6 array ops
-					System.arraycopy(bodyData, 0, allData, 0, bodyData.length);
-					System.arraycopy(tailData, 0, allData, bodyData.length, tailData.length);
-					_segmentReadStream = new ByteArrayInputStream(allData);
 				}
+				_segmentReadStream = new ByteArrayInputStream(segmentData);
 			} else {
 				if (_currentSegment.signedInfo().getType().equals(ContentType.ENCR)) {
 					// We only do automated lookup of keys on first segment.
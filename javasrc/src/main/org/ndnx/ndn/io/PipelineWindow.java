@@ -0,0 +1,204 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.io;
+
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+
+/**
+ * Congestion window for the interest pipeline of one NDNAbstractInputStream. The window is the
+ * number of segments the stream may have outstanding or buffered at once.
+ * 
+ * The window grows additively as segments arrive in order: by one per segment until the first loss
+ * (slow start), then by about one per round trip. Each loss - a segment we have to ask for again -
+ * halves it, but only once per round trip so that a burst of losses from one congestion event only
+ * backs off once.
+ * 
+ * Round trip times are estimated as in TCP (RFC 6298) from segments which were only asked for once,
+ * and the retransmission timeout derived from them is used to decide when to refetch a segment.
+ */
+public class PipelineWindow implements NDNStatistics {
+
+	public static final int MIN_WINDOW = 1;
+	public static final double DECREASE_FACTOR = 0.5;
+	public static final long MIN_RTO = 10;		// ms
+	public static final long MAX_RTO = 4000;	// ms
+
+	protected final int _maxWindow;
+	protected double _window;
+	protected double _threshold;		// slow start threshold
+	protected double _srtt = -1;		// smoothed RTT, ms
+	protected double _rttvar = 0;		// RTT variation, ms
+	protected long _recoveryEnd = 0;	// no further decrease before this time
+
+	/**
+	 * @param initialWindow
+	 * @param maxWindow
+	 */
+	public PipelineWindow(int initialWindow, int maxWindow) {
+		_maxWindow = Math.max(maxWindow, MIN_WINDOW);
+		_window = Math.max(MIN_WINDOW, Math.min(initialWindow, _maxWindow));
+		_threshold = _maxWindow;
+	}
+
+	/**
+	 * @return the number of segments which may currently be outstanding or buffered
+	 */
+	public synchronized int window() {
+		return (int)_window;
+	}
+
+	/**
+	 * Add a round trip time sample. Only segments which were asked for once should be sampled,
+	 * otherwise we can't tell which request the segment is a response to.
+	 * @param rtt in ms
+	 */
+	public synchronized void rttSample(long rtt) {
+		if (rtt < 0)
+			return;
+		if (_srtt < 0) {
+			_srtt = rtt;
+			_rttvar = rtt / 2.0;
+		} else {
+			_rttvar = 0.75 * _rttvar + 0.25 * Math.abs(_srtt - rtt);
+			_srtt = 0.875 * _srtt + 0.125 * rtt;
+		}
+		_stats.addSample(StatsEnum.RoundTripTime, rtt);
+	}
+
+	/**
+	 * A segment arrived in order - open the window
+	 */
+	public synchronized void inOrder() {
+		_stats.increment(StatsEnum.SegmentsInOrder);
+		if (_window >= _maxWindow)
+			return;
+		if (_window < _threshold)
+			_window += 1;
+		else
+			_window += 1 / _window;
+		if (_window > _maxWindow)
+			_window = _maxWindow;
+		_stats.addSample(StatsEnum.Window, (long)_window);
+	}
+
+	/**
+	 * We had to ask for a segment again - back off, unless we already have within the last round trip
+	 */
+	public synchronized void loss() {
+		long now = System.currentTimeMillis();
+		if (now < _recoveryEnd) {
+			_stats.increment(StatsEnum.LossesInRecovery);
+			return;
+		}
+		_stats.increment(StatsEnum.LossEvents);
+		_threshold = Math.max(MIN_WINDOW, _window * DECREASE_FACTOR);
+		_window = _threshold;
+		_recoveryEnd = now + ((_srtt < 0) ? MIN_RTO : (long)_srtt);
+		_stats.addSample(StatsEnum.Window, (long)_window);
+	}
+
+	/**
+	 * @return how long in ms to wait for a segment before asking for it again, or -1 if we don't
+	 * 	have an RTT estimate yet
+	 */
+	public synchronized long rto() {
+		if (_srtt < 0)
+			return -1;
+		long rto = (long)(_srtt + 4 * _rttvar);
+		return Math.min(MAX_RTO, Math.max(MIN_RTO, rto));
+	}
+
+	/**
+	 * @return the smoothed round trip time in ms, or -1 if there have been no samples
+	 */
+	public synchronized double srtt() {
+		return _srtt;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("window %.1f threshold %.1f srtt %.1f rto %d", _window, _threshold, _srtt, rto());
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.SegmentsInOrder);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		SegmentsInOrder ("segments", "Number of segments which arrived in order"),
+		LossEvents ("events", "Number of times the window was reduced because a segment had to be asked for again"),
+		LossesInRecovery ("segments", "Number of segments asked for again without reducing the window further"),
+		Window ("segments", "The window size after each change"),
+		RoundTripTime ("ms", "Round trip time of segments asked for once"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
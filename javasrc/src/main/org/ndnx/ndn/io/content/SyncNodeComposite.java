@@ -225,8 +225,47 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 		decoder.readEndElement();
 	}
 
+	/**
+	 * We don't normally send nodes, but this is the inverse of decode so that nodes can be
+	 * served to other comparators, for instance in tests.
+	 */
 	public void encode(XMLEncoder encoder) throws ContentEncodingException {
-		// No current need to encode this - will add if needed
+		if (!validate())
+			throw new ContentEncodingException("Sync node failed to validate!");
+		encoder.writeStartElement(getElementLabel());
+		encoder.writeElement(SyncVersion, _version);
+		encoder.writeStartElement(NDNProtocolDTags.SyncNodeElements);
+		for (SyncNodeElement ref : _refs)
+			encodeElement(encoder, ref);
+		encoder.writeEndElement();
+		encoder.writeElement(NDNProtocolDTags.SyncContentHash, _longhash);
+		encodeElement(encoder, _minName);
+		encodeElement(encoder, _maxName);
+		encoder.writeElement(NDNProtocolDTags.SyncNodeKind, _kind);
+		encoder.writeElement(NDNProtocolDTags.SyncLeafCount, _leafCount);
+		encoder.writeElement(NDNProtocolDTags.SyncTreeDepth, _treeDepth);
+		encoder.writeElement(NDNProtocolDTags.SyncByteCount, _byteCount);
+		encoder.writeEndElement();
+	}
+	
+	/**
+	 * Elements within a node are encoded without the SyncNodeElement wrapper
+	 */
+	private void encodeElement(XMLEncoder encoder, SyncNodeElement sne) throws ContentEncodingException {
+		switch (sne.getType()) {
+		case LEAF:
+			sne.getName().encode(encoder);
+			break;
+		case HASH:
+			encoder.writeElement(NDNProtocolDTags.SyncContentHash, sne.getData());
+			break;
+		case COMPONENT:
+			encoder.writeElement(NDNProtocolDTags.Component, sne.getData());
+			break;
+		case BINARY:
+			encoder.writeElement(NDNProtocolDTags.BinaryValue, sne.getData());
+			break;
+		}
 	}
 	
 	/**
@@ -0,0 +1,606 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.profiles.security.access.group;
+
+import java.io.IOException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.io.content.NDNNetworkObject;
+import org.ndnx.ndn.io.content.UpdateListener;
+import org.ndnx.ndn.profiles.security.access.AccessControlProfile;
+import org.ndnx.ndn.profiles.security.access.group.ACL.ACLObject;
+import org.ndnx.ndn.profiles.security.access.group.GroupAccessControlProfile.PrincipalInfo;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.NDNTime;
+
+/**
+ * Remembers the results of the lookups a GroupAccessControlManager makes over and over for
+ * the nodes of its namespace, so that reading or writing many objects under the same ACL doesn't
+ * cost a search of the network for each one. Three things are kept:
+ * - the effective ACL of a node. An entry only answers for the node it was stored for: a search
+ *   for the ACL of a node looks at each of its ancestors up to the one with the ACL, so an entry
+ *   is stored for each of those, but a descendant of one may have an ACL of its own. A lookup for
+ *   a node without an entry gives the nearest ancestor with one, so that only the nodes below that
+ *   need to be searched.
+ * - the latest node key stored at a node with an ACL, once it has been checked not to be dirty,
+ *   along with the versions of the group keys it was wrapped under. Each time the node key is used
+ *   these are checked against the groups' current keys, so a change in a group's membership by
+ *   anyone makes the node key dirty straight away, as it would be without the cache.
+ * - the effective node key (data key wrapping key) derived for a data node, along with the name
+ *   of the stored node key it was derived from.
+ *
+ * Entries expire after a fixed time to live. The manager invalidates everything at or below a
+ * node when it changes the ACL or node key there itself; no ancestor's effective ACL depends on
+ * that. We listen for new versions of the ACLs we have cached so that a change made by someone
+ * else is noticed too, until no entry refers to the ACL any more. An ACL newly interposed by
+ * someone else below a cached one is only seen once the entries below it expire.
+ */
+public class AccessControlCache implements UpdateListener, NDNStatistics {
+
+	/**
+	 * Most derived data key wrapping keys we keep - the least recently used are dropped
+	 */
+	public static final int MAX_WRAPPING_KEYS = 1024;
+
+	/**
+	 * Finds the current version of a group's public key
+	 */
+	public interface GroupKeyVersions {
+		/**
+		 * @param group	a group principal
+		 * @return the version of the group's latest public key
+		 */
+		public NDNTime publicKeyVersion(PrincipalInfo group) throws IOException;
+	}
+
+	protected static class Cached<V> {
+		protected final V _value;
+		protected final ContentName _keyName;	// for wrapping keys, the stored node key used
+		protected final List<PrincipalInfo> _groups;	// for node keys, the groups it is wrapped for
+		protected final long _expires;
+
+		protected Cached(V value, ContentName keyName, long expires) {
+			this(value, keyName, null, expires);
+		}
+
+		protected Cached(V value, ContentName keyName, List<PrincipalInfo> groups, long expires) {
+			_value = value;
+			_keyName = keyName;
+			_groups = groups;
+			_expires = expires;
+		}
+	}
+
+	/**
+	 * An ACL we are listening to, and how many effective ACL entries refer to it
+	 */
+	protected static class Watched {
+		protected final ACLObject _aclo;
+		protected int _refs;
+
+		protected Watched(ACLObject aclo, int refs) {
+			_aclo = aclo;
+			_refs = refs;
+		}
+	}
+
+	protected final long _ttl;
+	protected long _nextPurge = 0;
+
+	/**
+	 * The node with the effective ACL, by the node it is effective at
+	 */
+	protected final HashMap<ContentName, Cached<ContentName>> _acls = new HashMap<ContentName, Cached<ContentName>>();
+	protected final HashMap<ContentName, Cached<NodeKey>> _nodeKeys = new HashMap<ContentName, Cached<NodeKey>>();
+	protected final LinkedHashMap<ContentName, Cached<Key>> _wrappingKeys = new LinkedHashMap<ContentName, Cached<Key>>(64, 0.75f, true) {
+		private static final long serialVersionUID = -2905617245405262114L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ContentName, Cached<Key>> eldest) {
+			return size() > MAX_WRAPPING_KEYS;
+		}
+	};
+
+	/**
+	 * The ACLs we have found, by the name of the node they control. We listen for new
+	 * versions of these, so they are kept up to date, until the last entry referring to
+	 * one goes.
+	 */
+	protected final HashMap<ContentName, Watched> _aclObjects = new HashMap<ContentName, Watched>();
+
+	/**
+	 * @param ttl	how long in milliseconds an entry may be used, must be more than 0
+	 */
+	public AccessControlCache(long ttl) {
+		if (ttl <= 0)
+			throw new IllegalArgumentException("AccessControlCache needs a positive lifetime: " + ttl);
+		_ttl = ttl;
+	}
+
+	/**
+	 * @return how long in milliseconds an entry may be used
+	 */
+	public long ttl() {
+		return _ttl;
+	}
+
+	/**
+	 * Look up the effective ACL for a node
+	 *
+	 * @param nodeName	the node
+	 * @return the ACL cached for exactly that node, or null if none
+	 */
+	public ACLObject getEffectiveACL(ContentName nodeName) {
+		ArrayList<ACLObject> unwatch = new ArrayList<ACLObject>();
+		ACLObject aclo = null;
+		synchronized (this) {
+			ContentName aclNodeName = getEffectiveACLNode(nodeName, unwatch);
+			Watched watched = (null == aclNodeName) ? null : _aclObjects.get(aclNodeName);
+			if (null != watched)
+				aclo = watched._aclo;
+		}
+		unwatch(unwatch);
+		return aclo;
+	}
+
+	/**
+	 * Remember the effective ACL found by a search from a node
+	 *
+	 * @return true if this is an ACL we aren't watching, in which case the caller should
+	 * 	start updating it in the background with us as a listener
+	 * @see #putEffectiveACLNode(ContentName, ContentName, ContentName)
+	 */
+	public boolean putEffectiveACL(ContentName nodeName, ACLObject aclo, ContentName cachedAncestor) {
+		ContentName aclNodeName = AccessControlProfile.accessRoot(aclo.getBaseName());
+		ArrayList<ACLObject> unwatch = new ArrayList<ACLObject>();
+		boolean added = false;
+		synchronized (this) {
+			added = watch(aclNodeName, aclo);
+			putEffectiveACLNode(nodeName, aclNodeName, cachedAncestor, unwatch);
+		}
+		unwatch(unwatch);
+		return added;
+	}
+
+	public boolean putEffectiveACL(ContentName nodeName, ACLObject aclo) {
+		return putEffectiveACL(nodeName, aclo, null);
+	}
+
+	/**
+	 * Look up where the effective ACL for a node is
+	 *
+	 * @param nodeName	the node
+	 * @return the node holding the ACL, as cached for exactly that node, or null if none
+	 */
+	public ContentName getEffectiveACLNode(ContentName nodeName) {
+		ArrayList<ACLObject> unwatch = new ArrayList<ACLObject>();
+		ContentName aclNodeName;
+		synchronized (this) {
+			aclNodeName = getEffectiveACLNode(nodeName, unwatch);
+		}
+		unwatch(unwatch);
+		return aclNodeName;
+	}
+
+	protected ContentName getEffectiveACLNode(ContentName nodeName, List<ACLObject> unwatch) {
+		ContentName aclNodeName = liveACLEntry(nodeName, unwatch);
+		_stats.increment((null == aclNodeName) ? StatsEnum.ACLMisses : StatsEnum.ACLHits);
+		return aclNodeName;
+	}
+
+	/**
+	 * Find the nearest ancestor of a node whose effective ACL is cached, so that a search for the
+	 * node's effective ACL only has to look below that.
+	 *
+	 * @param nodeName	the node
+	 * @return the ancestor, not including the node itself, or null if none
+	 */
+	public ContentName getCachedAncestor(ContentName nodeName) {
+		ArrayList<ACLObject> unwatch = new ArrayList<ACLObject>();
+		ContentName ancestor = null;
+		synchronized (this) {
+			ContentName name = nodeName;
+			while (name.count() > 0) {
+				name = name.parent();
+				if (null != liveACLEntry(name, unwatch)) {
+					ancestor = name;
+					break;
+				}
+			}
+		}
+		unwatch(unwatch);
+		return ancestor;
+	}
+
+	/**
+	 * Remember where the effective ACL for a node is, as found by a search from the node
+	 * up to the node with the ACL. Every node on the way was checked, so each gets an entry.
+	 */
+	public void putEffectiveACLNode(ContentName nodeName, ContentName aclNodeName) {
+		putEffectiveACLNode(nodeName, aclNodeName, null);
+	}
+
+	/**
+	 * Remember where the effective ACL for a node is
+	 *
+	 * @param cachedAncestor	if not null, the search stopped here and used its cached entry,
+	 * 	so only the nodes below it were checked
+	 */
+	public void putEffectiveACLNode(ContentName nodeName, ContentName aclNodeName, ContentName cachedAncestor) {
+		ArrayList<ACLObject> unwatch = new ArrayList<ACLObject>();
+		synchronized (this) {
+			putEffectiveACLNode(nodeName, aclNodeName, cachedAncestor, unwatch);
+		}
+		unwatch(unwatch);
+	}
+
+	protected void putEffectiveACLNode(ContentName nodeName, ContentName aclNodeName, ContentName cachedAncestor,
+			List<ACLObject> unwatch) {
+		long now = now();
+		purgeExpired(now, unwatch);
+		Cached<ContentName> entry = new Cached<ContentName>(aclNodeName, null, now + _ttl);
+		ContentName name = nodeName;
+		while (true) {
+			// Count the new reference first, in case the entry replaced held the last one
+			Watched watched = _aclObjects.get(aclNodeName);
+			if (null != watched)
+				watched._refs++;
+			removeACLEntry(name, unwatch);
+			_acls.put(name, entry);
+			if (name.equals(aclNodeName) || name.count() == 0 || !aclNodeName.isPrefixOf(name))
+				break;
+			name = name.parent();
+			if (name.equals(cachedAncestor))
+				break;
+		}
+	}
+
+	/**
+	 * @return the ACL node cached for exactly this node, dropping the entry if it has expired
+	 */
+	protected ContentName liveACLEntry(ContentName nodeName, List<ACLObject> unwatch) {
+		Cached<ContentName> entry = _acls.get(nodeName);
+		if (null == entry)
+			return null;
+		if (entry._expires > now())
+			return entry._value;
+		removeACLEntry(nodeName, unwatch);
+		_stats.increment(StatsEnum.Expired);
+		return null;
+	}
+
+	/**
+	 * Drop an effective ACL entry, and stop watching its ACL if nothing else refers to it
+	 *
+	 * @param unwatch	where to add an ACL we should stop watching once we release our lock
+	 */
+	protected void removeACLEntry(ContentName nodeName, List<ACLObject> unwatch) {
+		Cached<ContentName> entry = _acls.remove(nodeName);
+		if (null == entry)
+			return;
+		Watched watched = _aclObjects.get(entry._value);
+		if (null != watched && --watched._refs <= 0) {
+			_aclObjects.remove(entry._value);
+			unwatch.add(watched._aclo);
+		}
+	}
+
+	/**
+	 * Start keeping an ACL, if we aren't already, for as long as entries refer to it
+	 *
+	 * @return true if it is new to us
+	 */
+	protected boolean watch(ContentName aclNodeName, ACLObject aclo) {
+		if (_aclObjects.containsKey(aclNodeName))
+			return false;
+		// Entries stored without the object refer to it too
+		int refs = 0;
+		for (Cached<ContentName> entry : _acls.values()) {
+			if (entry._value.equals(aclNodeName))
+				refs++;
+		}
+		_aclObjects.put(aclNodeName, new Watched(aclo, refs));
+		return true;
+	}
+
+	/**
+	 * Stop listening for new versions of ACLs
+	 */
+	protected void unwatch(List<ACLObject> acls) {
+		for (ACLObject aclo : acls) {
+			aclo.removeListener(this);
+			aclo.cancelInterest();
+		}
+	}
+
+	/**
+	 * Drop entries which have expired without being looked up, at most once per time to live
+	 */
+	protected void purgeExpired(long now, List<ACLObject> unwatch) {
+		if (now < _nextPurge)
+			return;
+		_nextPurge = now + _ttl;
+		int count = 0;
+		for (ContentName name : new ArrayList<ContentName>(_acls.keySet())) {
+			if (_acls.get(name)._expires <= now) {
+				removeACLEntry(name, unwatch);
+				count++;
+			}
+		}
+		count += purgeExpired(_nodeKeys, now) + purgeExpired(_wrappingKeys, now);
+		_stats.increment(StatsEnum.Expired, count);
+	}
+
+	protected static <V> int purgeExpired(Map<ContentName, Cached<V>> map, long now) {
+		int count = 0;
+		Iterator<Cached<V>> it = map.values().iterator();
+		while (it.hasNext()) {
+			if (it.next()._expires <= now) {
+				it.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Look up the latest, clean, node key stored at a node. The key is only returned if none
+	 * of the groups it is wrapped for has a newer key than the one it was wrapped under; if one
+	 * has, the node key is dirty and is dropped.
+	 *
+	 * @param nodeName	the node with the ACL, not the name of the node key
+	 * @param versions	finds the current versions of the groups' keys
+	 * @return the node key or null if none is cached or it is now dirty
+	 */
+	public NodeKey getNodeKey(ContentName nodeName, GroupKeyVersions versions) {
+		Cached<NodeKey> entry;
+		synchronized (this) {
+			entry = _nodeKeys.get(nodeName);
+			if (null != entry && entry._expires <= now()) {
+				_nodeKeys.remove(nodeName);
+				_stats.increment(StatsEnum.Expired);
+				entry = null;
+			}
+			if (null == entry) {
+				_stats.increment(StatsEnum.NodeKeyMisses);
+				return null;
+			}
+		}
+		// Don't hold the lock while we look for the groups
+		for (PrincipalInfo group : entry._groups) {
+			NDNTime version = null;
+			try {
+				version = versions.publicKeyVersion(group);
+			} catch (IOException e) {
+				Log.warning(Log.FAC_ACCESSCONTROL, "AccessControlCache: cannot check the key of group {0}, dropping node key {1}: {2}",
+						group.friendlyName(), entry._value.storedNodeKeyName(), e.getMessage());
+			}
+			if (null == version || version.after(group.versionTimestamp())) {
+				if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE))
+					Log.fine(Log.FAC_ACCESSCONTROL, "AccessControlCache: key of group {0} has changed, node key {1} is dirty",
+							group.friendlyName(), entry._value.storedNodeKeyName());
+				synchronized (this) {
+					if (_nodeKeys.get(nodeName) == entry)
+						_nodeKeys.remove(nodeName);
+				}
+				_stats.increment(StatsEnum.Dirty);
+				_stats.increment(StatsEnum.NodeKeyMisses);
+				return null;
+			}
+		}
+		_stats.increment(StatsEnum.NodeKeyHits);
+		return entry._value;
+	}
+
+	/**
+	 * Remember the latest node key stored at a node, once it is known not to be dirty
+	 *
+	 * @param groups	the group principals the node key is wrapped for, with the versions
+	 * 	of their keys it is wrapped under
+	 */
+	public synchronized void putNodeKey(ContentName nodeName, NodeKey nodeKey, Collection<PrincipalInfo> groups) {
+		_nodeKeys.put(nodeName, new Cached<NodeKey>(nodeKey, null, new ArrayList<PrincipalInfo>(groups), now() + _ttl));
+	}
+
+	/**
+	 * Look up the key wrapping the data keys of a data node
+	 *
+	 * @param dataNodeName		the data node
+	 * @param wrappingKeyName	the name of the stored node key the data key was wrapped under
+	 * @return the effective node key, or null if none is cached for that stored node key
+	 */
+	public synchronized Key getWrappingKey(ContentName dataNodeName, ContentName wrappingKeyName) {
+		Cached<Key> entry = _wrappingKeys.get(dataNodeName);
+		if (null != entry && entry._expires <= now()) {
+			_wrappingKeys.remove(dataNodeName);
+			_stats.increment(StatsEnum.Expired);
+			entry = null;
+		}
+		if (null == entry || !entry._keyName.equals(wrappingKeyName)) {
+			_stats.increment(StatsEnum.WrappingKeyMisses);
+			return null;
+		}
+		_stats.increment(StatsEnum.WrappingKeyHits);
+		return entry._value;
+	}
+
+	/**
+	 * Remember the key wrapping the data keys of a data node
+	 */
+	public synchronized void putWrappingKey(ContentName dataNodeName, ContentName wrappingKeyName, Key wrappingKey) {
+		_wrappingKeys.put(dataNodeName, new Cached<Key>(wrappingKey, wrappingKeyName, now() + _ttl));
+	}
+
+	/**
+	 * Forget everything cached for a node and its descendants, because its ACL or node
+	 * key has changed. The effective ACLs of its ancestors don't depend on it, so they are kept,
+	 * but any entry naming an ACL at or below the node is dropped wherever it is.
+	 */
+	public void invalidate(ContentName nodeName) {
+		ArrayList<ACLObject> unwatch = new ArrayList<ACLObject>();
+		int count;
+		synchronized (this) {
+			count = invalidate(_nodeKeys, nodeName) + invalidate(_wrappingKeys, nodeName);
+			for (Map.Entry<ContentName, Cached<ContentName>> entry : new ArrayList<Map.Entry<ContentName, Cached<ContentName>>>(_acls.entrySet())) {
+				if (nodeName.isPrefixOf(entry.getKey()) || nodeName.isPrefixOf(entry.getValue()._value)) {
+					removeACLEntry(entry.getKey(), unwatch);
+					count++;
+				}
+			}
+		}
+		unwatch(unwatch);
+		_stats.increment(StatsEnum.Invalidated, count);
+		if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE))
+			Log.fine(Log.FAC_ACCESSCONTROL, "AccessControlCache: invalidated {0} entries at or below {1}", count, nodeName);
+	}
+
+	protected static <V> int invalidate(Map<ContentName, Cached<V>> map, ContentName nodeName) {
+		int count = 0;
+		Iterator<ContentName> it = map.keySet().iterator();
+		while (it.hasNext()) {
+			if (nodeName.isPrefixOf(it.next())) {
+				it.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * A new version of an ACL we are watching has arrived
+	 */
+	public void newVersionAvailable(NDNNetworkObject<?> newVersion, boolean wasSave) {
+		if (newVersion instanceof ACLObject)
+			invalidate(AccessControlProfile.accessRoot(newVersion.getBaseName()));
+	}
+
+	/**
+	 * @return the number of entries of all kinds in the cache
+	 */
+	public synchronized int size() {
+		return _acls.size() + _nodeKeys.size() + _wrappingKeys.size();
+	}
+
+	/**
+	 * @return the number of ACLs we are listening to
+	 */
+	public synchronized int watching() {
+		return _aclObjects.size();
+	}
+
+	/**
+	 * Forget everything and stop listening for new versions of ACLs
+	 */
+	public void clear() {
+		ArrayList<ACLObject> unwatch = new ArrayList<ACLObject>();
+		synchronized (this) {
+			_acls.clear();
+			_nodeKeys.clear();
+			_wrappingKeys.clear();
+			for (Watched watched : _aclObjects.values())
+				unwatch.add(watched._aclo);
+			_aclObjects.clear();
+		}
+		unwatch(unwatch);
+	}
+
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.ACLHits);
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		ACLHits ("lookups", "Number of effective ACL searches avoided"),
+		ACLMisses ("lookups", "Number of effective ACLs not in the cache"),
+		NodeKeyHits ("lookups", "Number of node key retrievals and freshness checks avoided"),
+		NodeKeyMisses ("lookups", "Number of node keys not in the cache"),
+		Dirty ("entries", "Number of node keys dropped because the key of a group they are wrapped for changed"),
+		WrappingKeyHits ("lookups", "Number of data key wrapping key derivations avoided"),
+		WrappingKeyMisses ("lookups", "Number of data key wrapping keys not in the cache"),
+		Invalidated ("entries", "Number of entries dropped because an ACL or node key changed"),
+		Expired ("entries", "Number of entries dropped because they were too old"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
@@ -39,6 +39,7 @@ import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.KeyManager;
 import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
 import org.ndnx.ndn.impl.NDNFlowControl.SaveType;
 import org.ndnx.ndn.impl.support.ByteArrayCompare;
 import org.ndnx.ndn.impl.support.DataUtils;
@@ -74,6 +75,7 @@ import org.ndnx.ndn.profiles.security.access.group.GroupAccessControlProfile.Pri
 import org.ndnx.ndn.protocol.ContentName;
 import org.ndnx.ndn.protocol.ContentObject;
 import org.ndnx.ndn.protocol.MalformedContentNameStringException;
+import org.ndnx.ndn.protocol.NDNTime;
 import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
 import org.ndnx.ndn.protocol.SignedInfo.ContentType;
 
@@ -238,6 +240,20 @@ public class GroupAccessControlManager extends AccessControlManager {
 	private TreeMap<byte[], GroupManager> hashToGroupManagerMap = new TreeMap<byte[], GroupManager>(byteArrayComparator);
 	private HashMap<ContentName, GroupManager> prefixToGroupManagerMap = new HashMap<ContentName, GroupManager>();
 	private HashSet<ContentName> _myIdentities = new HashSet<ContentName>();
+	protected AccessControlCache _cache = null;
+
+	/**
+	 * Lets the cache check the groups of a cached node key as #nodeKeyIsDirty(ContentName) does
+	 */
+	protected final AccessControlCache.GroupKeyVersions _groupKeyVersions = new AccessControlCache.GroupKeyVersions() {
+		public NDNTime publicKeyVersion(PrincipalInfo group) throws IOException {
+			GroupManager gm = groupManager(group.distinguishingHash());
+			if (null == gm)
+				return null;
+			Group theGroup = gm.getGroup(group.friendlyName(), SystemConfiguration.EXTRA_LONG_TIMEOUT);
+			return (null == theGroup) ? null : theGroup.publicKeyVersion();
+		}
+	};
 
 	public GroupAccessControlManager() {
 		// must call initialize
@@ -351,9 +367,52 @@ public class GroupAccessControlManager extends AccessControlManager {
 				_userStorage.add(pName);
 			}
 		}
+		if (SystemConfiguration.ACCESS_CONTROL_CACHE_TTL > 0)
+			setCacheTTL(SystemConfiguration.ACCESS_CONTROL_CACHE_TTL);
 		return true;
 	}
 
+	/**
+	 * Turn caching of effective ACLs and node keys on or off, or change how long cached
+	 * entries are used. Any current cache is discarded.
+	 * @param ttl how long in milliseconds to use a cached entry, 0 to turn off caching
+	 * @see AccessControlCache
+	 */
+	public synchronized void setCacheTTL(long ttl) {
+		if (null != _cache) {
+			NDNStatsRegistry.unregister(_cache);
+			_cache.clear();
+			_cache = null;
+		}
+		if (ttl > 0) {
+			_cache = new AccessControlCache(ttl);
+			NDNStatsRegistry.register("AccessControlCache", _cache, "namespace", _namespace.toString());
+		}
+	}
+
+	/**
+	 * Drop anything cached at or below a node whose ACL or node key we have changed.
+	 * What is cached for its ancestors doesn't depend on it, so is kept.
+	 */
+	protected void invalidateCache(ContentName nodeName) {
+		AccessControlCache cache = cache();
+		if (null != cache)
+			cache.invalidate(nodeName);
+	}
+
+	/**
+	 * @return the cache of effective ACLs and node keys, or null if caching is off
+	 */
+	public synchronized AccessControlCache cache() {
+		return _cache;
+	}
+
+	@Override
+	public void shutdown() {
+		setCacheTTL(0);
+		super.shutdown();
+	}
+
 	public GroupManager groupManager() {
 		if (_groupManager.size() > 1) throw new RuntimeException("A group manager can only be retrieved by name when there are more than one.");
 		return _groupManager.get(0); 	
@@ -623,8 +682,35 @@ public class GroupAccessControlManager extends AccessControlManager {
 	 */
 	public ACLObject getEffectiveACLObject(ContentName nodeName) throws ContentDecodingException, IOException {
 
+		AccessControlCache cache = cache();
+		ContentName cachedAncestor = null;
+		ACLObject aclo = null;
+		if (null != cache) {
+			aclo = cache.getEffectiveACL(nodeName);
+			if (null != aclo)
+				return aclo;
+			// Any node below the nearest one we know about may have an ACL of its own, so
+			// those still need searching, but no further.
+			cachedAncestor = cache.getCachedAncestor(nodeName);
+			if (null != cachedAncestor) {
+				aclo = findAncestorWithACL(nodeName, cachedAncestor);
+				if (null != aclo) {
+					aclo.update();
+				} else {
+					aclo = cache.getEffectiveACL(cachedAncestor);
+					if (null == aclo)
+						cachedAncestor = null;	// gone since, search all the way
+				}
+			}
+		}
+		if (null != aclo) {
+			if (cache.putEffectiveACL(nodeName, aclo, cachedAncestor))
+				aclo.updateInBackground(true, cache);
+			return aclo;
+		}
+
 		// Find the closest node that has a non-gone ACL
-		ACLObject aclo = findAncestorWithACL(nodeName, null);
+		aclo = findAncestorWithACL(nodeName, null);
 		if (null != aclo) {
 			// parallel find doesn't get us the latest version. Serial does,
 			// but it's kind of an artifact.
@@ -634,7 +720,12 @@ public class GroupAccessControlManager extends AccessControlManager {
 				Log.info(Log.FAC_ACCESSCONTROL, "No ACL found between node {0} and namespace root {1}. Returning root ACL.",
 						nodeName, getNamespaceRoot());
 			}
-			return getACLObjectForNode(getNamespaceRoot());
+			aclo = getACLObjectForNode(getNamespaceRoot());
+		}
+		if (null != cache && null != aclo) {
+			// Notice when someone else changes this ACL
+			if (cache.putEffectiveACL(nodeName, aclo))
+				aclo.updateInBackground(true, cache);
 		}
 		return aclo;
 	}
@@ -869,6 +960,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 		// write the acl
 		ACLObject aclo = new ACLObject(GroupAccessControlProfile.aclName(nodeName), newACL, handle());
 		aclo.save();
+		invalidateCache(nodeName);
 		return aclo.acl();
 	}
 	
@@ -896,6 +988,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 		// write the acl
 		ACLObject aclo = new ACLObject(GroupAccessControlProfile.aclName(nodeName), newACL, handle());
 		aclo.save();
+		invalidateCache(nodeName);
 		return aclo.acl();
 	}
 
@@ -962,6 +1055,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 
 		// Then mark the ACL as gone.
 		thisNodeACL.saveAsGone();
+		invalidateCache(nodeName);
 	}
 
 	/**
@@ -1050,6 +1144,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 		// If we got here, we got the node key we were updating, so we are allowed
 		// to at least read this stuff (though maybe not write it). Save the acl.
 		currentACL.save(newACL);
+		invalidateCache(nodeName);
 		return newACL;
 
 	}
@@ -1189,7 +1284,8 @@ public class GroupAccessControlManager extends AccessControlManager {
 	ContentDecodingException, IOException, NoSuchAlgorithmException {
 		// climb up looking for node keys, then make sure that one isn't GONE
 		// if it isn't, call read-side routine to figure out how to decrypt it
-		ACLObject effectiveACL = findAncestorWithACL(nodeName, null);
+		// If we are caching, the effective ACL search is cached too.
+		ACLObject effectiveACL = (null != cache()) ? getEffectiveACLObject(nodeName) : findAncestorWithACL(nodeName, null);
 
 		if (null != effectiveACL) {
 			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
@@ -1410,12 +1506,50 @@ public class GroupAccessControlManager extends AccessControlManager {
 	ContentEncodingException, ContentNotReadyException, ContentGoneException, IOException, NoSuchAlgorithmException {
 		Log.finest(FAC_ACCESSCONTROL, "GACM.getFreshEffectiveNodeKey");
 
+		// A cached node key was clean when we cached it, and the cache checks none of
+		// its groups' keys have changed since.
+		AccessControlCache cache = cache();
+		NodeKey nodeKey = null;
+		if (null != cache) {
+			ACLObject aclo = getEffectiveACLObject(nodeName);
+			if (null != aclo)
+				nodeKey = cache.getNodeKey(AccessControlProfile.accessRoot(aclo.getBaseName()), _groupKeyVersions);
+		}
+		if (null != nodeKey) {
+			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
+				Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: Found cached node key {0}", nodeKey.storedNodeKeyName());
+			}
+		} else {
+			nodeKey = getFreshNodeKey(nodeName, cache);
+		}
+		if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
+			Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: retrieved node key for node {0} label {1}: {2}", nodeName, nodeKeyLabel(), nodeKey);
+		}
+		NodeKey effectiveNodeKey = nodeKey.computeDescendantNodeKey(nodeName, nodeKeyLabel()); 
+		if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
+			Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: computed effective node key for node {0} label {1}: {2} using stored node key {3}"
+					, nodeName, nodeKeyLabel(), effectiveNodeKey, effectiveNodeKey.storedNodeKeyName());
+		}
+		return effectiveNodeKey;
+	}
+
+	/**
+	 * Find the latest node key stored at or above a node, generating a new one if it
+	 * is dirty.
+	 * @param nodeName
+	 * @param cache if not null, where to remember the node key if it was found clean
+	 * @return the stored node key
+	 */
+	protected NodeKey getFreshNodeKey(ContentName nodeName, AccessControlCache cache) 
+	throws AccessDeniedException, InvalidKeyException, ContentDecodingException, 
+	ContentEncodingException, ContentNotReadyException, ContentGoneException, IOException, NoSuchAlgorithmException {
 		NodeKey nodeKey = findAncestorWithNodeKey(nodeName);
 		if (null == nodeKey) {
 			throw new AccessDeniedException("Cannot retrieve node key for node: " + nodeName + ".");
 		}
 		// This should be the latest node key; i.e. not superseded.
-		if (nodeKeyIsDirty(nodeKey.storedNodeKeyName())) {
+		ArrayList<PrincipalInfo> groups = nodeKeyGroupsIfClean(nodeKey.storedNodeKeyName());
+		if (null == groups) {
 			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
 				Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: Found node key at {0}, updating.", nodeKey.storedNodeKeyName());
 			}
@@ -1426,16 +1560,10 @@ public class GroupAccessControlManager extends AccessControlManager {
 			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
 				Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: Found node key at {0}", nodeKey.storedNodeKeyName());
 			}
+			if (null != cache)
+				cache.putNodeKey(GroupAccessControlProfile.accessRoot(nodeKey.storedNodeKeyName()), nodeKey, groups);
 		}
-		if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
-			Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: retrieved node key for node {0} label {1}: {2}", nodeName, nodeKeyLabel(), nodeKey);
-		}
-		NodeKey effectiveNodeKey = nodeKey.computeDescendantNodeKey(nodeName, nodeKeyLabel()); 
-		if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
-			Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: computed effective node key for node {0} label {1}: {2} using stored node key {3}"
-					, nodeName, nodeKeyLabel(), effectiveNodeKey, effectiveNodeKey.storedNodeKeyName());
-		}
-		return effectiveNodeKey;
+		return nodeKey;
 	}
 
 	/**
@@ -1466,6 +1594,18 @@ public class GroupAccessControlManager extends AccessControlManager {
 	 * @throws ContentDecodingException 
 	 */
 	public boolean nodeKeyIsDirty(ContentName theNodeKeyName) throws ContentDecodingException, IOException {
+		return null == nodeKeyGroupsIfClean(theNodeKeyName);
+	}
+
+	/**
+	 * Check whether a node key is dirty as #nodeKeyIsDirty(ContentName) does, and if it isn't
+	 * say which groups it is wrapped for, and under which versions of their keys.
+	 * @param theNodeKeyName the node key or the node where it is stored
+	 * @return null if the node key is dirty, otherwise the group principals it is wrapped for
+	 * @throws IOException 
+	 * @throws ContentDecodingException 
+	 */
+	protected ArrayList<PrincipalInfo> nodeKeyGroupsIfClean(ContentName theNodeKeyName) throws ContentDecodingException, IOException {
 		if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE)) {
 			Log.fine(Log.FAC_ACCESSCONTROL, "NodeKeyIsDirty({0}) called.", theNodeKeyName);
 		}
@@ -1482,8 +1622,9 @@ public class GroupAccessControlManager extends AccessControlManager {
 			nodeKeyDirectory.waitForChildren();
 
 			if (nodeKeyDirectory.hasSupersededBlock()) {
-				return true;
+				return null;
 			}
+			ArrayList<PrincipalInfo> groups = new ArrayList<PrincipalInfo>();
 			for (PrincipalInfo principal : nodeKeyDirectory.getCopyOfPrincipals().values()) {
 				if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE)) {
 					Log.fine(Log.FAC_ACCESSCONTROL, "NodeKeyIsDirty: found principal called {0}", principal.friendlyName());
@@ -1494,8 +1635,9 @@ public class GroupAccessControlManager extends AccessControlManager {
 						if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE)) {
 							Log.fine(Log.FAC_ACCESSCONTROL, "NodeKeyIsDirty: the key of principal {0} is out of date", principal.friendlyName());
 						}
-						return true;
+						return null;
 					} else {
+						groups.add(principal);
 						if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE)) {
 							Log.fine(Log.FAC_ACCESSCONTROL, "NodeKeyIsDirty: the key of principal {0} is up to date", principal.friendlyName());
 						}						
@@ -1511,7 +1653,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 					// from the wrapped key object.
 				}
 			}			
-			return false;
+			return groups;
 
 		} finally {
 			if (null != nodeKeyDirectory)
@@ -1583,8 +1725,17 @@ public class GroupAccessControlManager extends AccessControlManager {
 	public Key getDataKeyWrappingKey(ContentName dataNodeName, WrappedKeyObject wrappedDataKeyObject) 
 	throws InvalidKeyException, ContentNotReadyException, ContentGoneException, ContentEncodingException, 
 	ContentDecodingException, IOException, NoSuchAlgorithmException {
+		AccessControlCache cache = cache();
+		ContentName wrappingKeyName = wrappedDataKeyObject.wrappedKey().wrappingKeyName();
+		if (null != cache) {
+			Key key = cache.getWrappingKey(dataNodeName, wrappingKeyName);
+			if (null != key)
+				return key;
+		}
 		NodeKey enk = getNodeKeyForObject(dataNodeName, wrappedDataKeyObject);
 		if (null != enk) {
+			if (null != cache)
+				cache.putWrappingKey(dataNodeName, wrappingKeyName, enk.nodeKey());
 			return enk.nodeKey();
 		} 
 		return null;
@@ -1601,6 +1752,12 @@ public class GroupAccessControlManager extends AccessControlManager {
 	 */
 	@Override 
 	public Key getDataKeyWrappingKey(ContentName dataNodeName, ContentName wrappingKeyName, Key cachedWrappingKey) throws InvalidKeyException, ContentEncodingException {
+		AccessControlCache cache = cache();
+		if (null != cache) {
+			Key key = cache.getWrappingKey(dataNodeName, wrappingKeyName);
+			if (null != key)
+				return key;
+		}
 		NodeKey cachedWrappingKeyNK = new NodeKey(wrappingKeyName, cachedWrappingKey);
 		if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
 			Log.info(Log.FAC_ACCESSCONTROL, "getDataKeyWrappingKey: retrieved cached stored node key for node {0} label {1}: {2}", dataNodeName, nodeKeyLabel(), cachedWrappingKeyNK);
@@ -1610,6 +1767,8 @@ public class GroupAccessControlManager extends AccessControlManager {
 			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
 				Log.info(Log.FAC_ACCESSCONTROL, "getDataKeyWrappingKey: used cache to compute effective node key for node {0} label {1}: {2}", dataNodeName, nodeKeyLabel(), enk);
 			}
+			if (null != cache)
+				cache.putWrappingKey(dataNodeName, wrappingKeyName, enk.nodeKey());
 			return enk.nodeKey();
 		} else {
 			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
@@ -1798,6 +1957,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 				}
 			}
 		}
+		invalidateCache(nodeName);
 		// Return the key for use, along with its name.
 		return theNodeKey;
 	}
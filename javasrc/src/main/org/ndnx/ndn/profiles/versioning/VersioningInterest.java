@@ -29,9 +29,11 @@ import java.util.Set;
 
 import org.ndnx.ndn.NDNContentHandler;
 import org.ndnx.ndn.NDNHandle;
+import org.ndnx.ndn.impl.NDNNetworkManager;
 import org.ndnx.ndn.impl.NDNStats;
 import org.ndnx.ndn.impl.NDNStats.NDNCategorizedStatistics;
 import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.NDNStatsRegistry;
 import org.ndnx.ndn.protocol.ContentName;
 import org.ndnx.ndn.protocol.ContentObject;
 import org.ndnx.ndn.protocol.Interest;
@@ -82,6 +84,11 @@ public class VersioningInterest implements NDNCategorizedStatistics {
 	 */
 	public VersioningInterest(NDNHandle handle) {
 		_handle = handle;
+		NDNNetworkManager manager = handle.getNetworkManager();
+		if (null != manager)
+			NDNStatsRegistry.register("VersioningInterest", "prefix", this, "handle", Integer.toString(manager.getId()));
+		else
+			NDNStatsRegistry.register("VersioningInterest", "prefix", this);
 	}
 	
 	/**
@@ -23,6 +23,7 @@ package org.ndnx.ndn.protocol;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.DigestOutputStream;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -37,6 +38,8 @@ import org.ndnx.ndn.ContentVerifier;
 import org.ndnx.ndn.KeyManager;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.encoding.BinaryXMLCodec;
+import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
+import org.ndnx.ndn.impl.encoding.BinaryXMLEncoder;
 import org.ndnx.ndn.impl.encoding.NDNProtocolDTags;
 import org.ndnx.ndn.impl.encoding.GenericXMLEncodable;
 import org.ndnx.ndn.impl.encoding.XMLCodecFactory;
@@ -45,6 +48,7 @@ import org.ndnx.ndn.impl.encoding.XMLEncodable;
 import org.ndnx.ndn.impl.encoding.XMLEncoder;
 import org.ndnx.ndn.impl.security.crypto.NDNDigestHelper;
 import org.ndnx.ndn.impl.security.crypto.NDNSignatureHelper;
+import org.ndnx.ndn.impl.security.crypto.VerifiedSignatureCache;
 import org.ndnx.ndn.impl.support.DataUtils;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.io.NullOutputStream;
@@ -59,6 +63,10 @@ import org.ndnx.ndn.protocol.SignedInfo.ContentType;
  * 
  * prepareContent() is called to create the MerkelTree hash.  That encoding can be cached because
  * _name, _signedInfo, and _content are only assigned in a constructor or in decode.
+ *
+ * Objects decoded by a BinaryXMLDecoder which is retaining wire bytes (as the network channel's
+ * does) keep a copy of their original encoding. digest(), prepareContent() and encoding to
+ * the binary codec then use those bytes directly rather than re-encoding the object.
  */
 public class ContentObject extends GenericXMLEncodable implements XMLEncodable, Comparable<ContentObject>, ContentNameProvider {
 
@@ -74,6 +82,15 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 */
 	protected byte [] _digest = null;
 	protected Signature _signature; 
+
+	/**
+	 * The binary encoding this object was decoded from, if it was retained, and the
+	 * range of it covered by the signature (Name through Content). Cleared if the
+	 * signature is changed.
+	 */
+	protected byte [] _wire = null;
+	protected int _signedStart = 0;
+	protected int _signedEnd = 0;
 	
 	/**
 	 * We don't specify a required publisher, and right now we don't enforce
@@ -364,11 +381,21 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * @see org.ndnx.ndn.impl.encoding.XMLEncodable
 	 */
 	public void decode(XMLDecoder decoder) throws ContentDecodingException {
+		BinaryXMLDecoder wireDecoder = null;
+		int wireStart = -1, signedStart = -1, signedEnd = -1;
+		if ((decoder instanceof BinaryXMLDecoder) && ((BinaryXMLDecoder)decoder).retainWire()) {
+			wireDecoder = (BinaryXMLDecoder)decoder;
+			wireStart = wireDecoder.wireOffset();
+		}
+
 		decoder.readStartElement(getElementLabel());
 
 		_signature = new Signature();
 		_signature.decode(decoder);
 
+		if (null != wireDecoder)
+			signedStart = wireDecoder.wireOffset();
+
 		_name = new ContentName();
 		_name.decode(decoder);
 
@@ -377,7 +404,45 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 
 		_content = decoder.readBinaryElement(NDNProtocolDTags.Content);
 
+		if (null != wireDecoder)
+			signedEnd = wireDecoder.wireOffset();
+
 		decoder.readEndElement();
+
+		_wire = null;
+		_digest = null;
+		if (null != wireDecoder && wireStart >= 0) {
+			_wire = wireDecoder.wireBytes(wireStart, wireDecoder.wireOffset());
+			_signedStart = signedStart - wireStart;
+			_signedEnd = signedEnd - wireStart;
+		}
+	}
+
+	/**
+	 * @return true if this object holds the binary encoding it was decoded from
+	 */
+	public boolean hasWireEncoding() {
+		return null != _wire;
+	}
+
+	/**
+	 * If we still have the bytes we were decoded from, write those rather than re-encoding
+	 * when the binary codec is wanted.
+	 */
+	@Override
+	public void encode(OutputStream ostream, String codec) throws ContentEncodingException {
+		if (null != _wire) {
+			String codecName = (null == codec) ? XMLCodecFactory.getDefaultCodecName() : codec;
+			if (BinaryXMLCodec.CODEC_NAME.equals(codecName)) {
+				try {
+					ostream.write(_wire);
+				} catch (IOException e) {
+					throw new ContentEncodingException(e.getMessage(), e);
+				}
+				return;
+			}
+		}
+		super.encode(ostream, codec);
 	}
 
 	/**
@@ -388,6 +453,10 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		if (!validate()) {
 			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
 		}
+		if ((null != _wire) && (encoder instanceof BinaryXMLEncoder)) {
+			((BinaryXMLEncoder)encoder).writeEncoded(_wire);
+			return;
+		}
 		encoder.writeStartElement(getElementLabel());
 
 		signature().encode(encoder);
@@ -465,6 +534,7 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 				Log.fine(Log.FAC_SIGNING, "Setting signature to null on content object: " + name());
 		}
 		_signature = signature;
+		_wire = null;
 	}
 
 	public void sign(Key signingKey) throws InvalidKeyException, SignatureException {
@@ -591,13 +661,28 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 			return false;
 		}
 
+		// If we've already verified this signature over this proxy (e.g. for another segment
+		// under the same Merkle root), or over exactly this signed content, we're done.
+		VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+		byte [] signed = null;
+		if (null != cache) {
+			signed = (null != contentProxy) ? contentProxy : NDNDigestHelper.digest(object.prepareContent());
+			if (cache.isVerified(signed, null != contentProxy, object.signature().signature(), object.signature().digestAlgorithm(), key))
+				return true;
+		}
+
 		boolean result; 
 		
 		if (null != contentProxy) {
 			result = NDNSignatureHelper.verify(contentProxy, object.signature().signature(), object.signature().digestAlgorithm(), key);
+		} else if (object.hasWireEncoding()) {
+			result = NDNSignatureHelper.verify(object.prepareContent(), object.signature().signature(), object.signature().digestAlgorithm(), key);
 		} else {
 			result = verify(object.name(), object.signedInfo(), object.content(), object.signature(), key);
 		}
+
+		if (result && null != cache)
+			cache.verified(signed, null != contentProxy, object.signature().signature(), object.signature().digestAlgorithm(), key);
 	
 		if ((!result) && Log.isLoggable(Log.FAC_VERIFY, Level.WARNING)) {
 			Log.info("VERIFICATION FAILURE: " + object.name() + " timestamp: " + object.signedInfo().getTimestamp() + " content length: " + object.contentLength() + 
@@ -720,12 +805,15 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		}
 		// Have to eventually handle various forms of witnesses...
 		// Need to take an algorithm to control the digest used.
-		byte[] blockDigest = NDNDigestHelper.digest(
-					prepareContent());
+		byte[] blockDigest = (null != _wire) ?
+					NDNDigestHelper.digest(_wire, _signedStart, _signedEnd - _signedStart) :
+					NDNDigestHelper.digest(prepareContent());
 		return signature().computeProxy(blockDigest, true);
 	}
 	
 	public byte [] prepareContent() throws ContentEncodingException {
+		if (null != _wire)
+			return Arrays.copyOfRange(_wire, _signedStart, _signedEnd);
 		return prepareContent(name(), signedInfo(), content());
 	}
 
@@ -774,6 +862,8 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * Encode this object and calculate the digest.
 	 */
 	protected byte[] calcDigest() {
+		if (null != _wire)
+			return NDNDigestHelper.digest(_wire);
 		MessageDigest md;
 		try {
 			md = MessageDigest.getInstance(NDNDigestHelper.DEFAULT_DIGEST_ALGORITHM);
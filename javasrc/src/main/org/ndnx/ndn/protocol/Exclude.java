@@ -23,6 +23,7 @@ package org.ndnx.ndn.protocol;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.ndnx.ndn.impl.encoding.NDNProtocolDTags;
 import org.ndnx.ndn.impl.encoding.GenericXMLEncodable;
@@ -30,6 +31,7 @@ import org.ndnx.ndn.impl.encoding.XMLDecoder;
 import org.ndnx.ndn.impl.encoding.XMLEncodable;
 import org.ndnx.ndn.impl.encoding.XMLEncoder;
 import org.ndnx.ndn.impl.support.ByteArrayCompare;
+import org.ndnx.ndn.impl.support.DataUtils;
 import org.ndnx.ndn.io.content.ContentDecodingException;
 import org.ndnx.ndn.io.content.ContentEncodingException;
 
@@ -48,6 +50,10 @@ import org.ndnx.ndn.io.content.ContentEncodingException;
  * 2. An any element or a bloom filter element must not be followed by an any element or bloom filter.
  * @see Filler
  * I.E. Any elements or bloom filters must be separated by at least one name component element.
+ * 
+ * Relying on that ordering, match binary searches the components rather than scanning the elements,
+ * as excludes built for version enumeration can hold hundreds of components. The elements are kept
+ * in an immutable form which the mutators replace (copy on write), so matching does not lock.
  */
 public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		Comparable<Exclude> {
@@ -73,8 +79,101 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		public abstract boolean match(byte [] component);
 	}
 
-	protected ArrayList<Element> _values = new ArrayList<Element>();
-	
+	/**
+	 * The elements of a filter compiled for matching: the values of the component elements
+	 * in order, so they can be binary searched, and the filler (if any) in each gap between them.
+	 * Never modified once built - the mutators build a new one and replace it, so a filter can
+	 * be matched without locking while it's being added to.
+	 */
+	protected static class Compiled {
+		protected final Element [] _elements;
+		protected final byte [][] _components;
+
+		/**
+		 * _fillers[i] is the filler before _components[i], and _fillers[_components.length]
+		 * the filler after the last component. null if there isn't one.
+		 */
+		protected final Filler [] _fillers;
+
+		protected Compiled(List<Element> elements) {
+			_elements = elements.toArray(new Element[elements.size()]);
+			int count = 0;
+			for (Element ee : _elements) {
+				if (ee instanceof ExcludeComponent)
+					count++;
+			}
+			_components = new byte[count][];
+			_fillers = new Filler[count + 1];
+			int i = 0;
+			for (Element ee : _elements) {
+				if (ee instanceof ExcludeComponent)
+					_components[i++] = ((ExcludeComponent)ee).body;
+				else
+					_fillers[i] = (Filler)ee;
+			}
+		}
+
+		protected boolean match(byte [] component) {
+			int low = 0;
+			int high = _components.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int res = DataUtils.compare(_components[mid], component);
+				if (res < 0)
+					low = mid + 1;
+				else if (res > 0)
+					high = mid - 1;
+				else
+					return true; // we exactly matched a component in the filter
+			}
+			// Not a component in the filter, so excluded only if the filler in the gap where
+			// it would go matches it.
+			Filler filler = _fillers[low];
+			if (null == filler)
+				return false;
+			if (filler instanceof ExcludeAny)
+				return true;
+			return filler.match(component);
+		}
+
+		protected byte [][] excludedRun(byte [] component) {
+			int low = 0;
+			int high = _components.length - 1;
+			int found = -1;
+			while (low <= high && found < 0) {
+				int mid = (low + high) >>> 1;
+				int res = DataUtils.compare(_components[mid], component);
+				if (res < 0)
+					low = mid + 1;
+				else if (res > 0)
+					high = mid - 1;
+				else
+					found = mid;
+			}
+			// first and last are the indices of the lowest and highest components in the run,
+			// -1 and _components.length if it's unbounded.
+			int first, last;
+			if (found >= 0) {
+				first = last = found;
+			} else {
+				if (!(_fillers[low] instanceof ExcludeAny))
+					return null;
+				first = low - 1;
+				last = low;
+			}
+			while (first >= 0 && _fillers[first] instanceof ExcludeAny)
+				first--;
+			while (last < _components.length && _fillers[last + 1] instanceof ExcludeAny)
+				last++;
+			return new byte [][] {first < 0 ? null : _components[first],
+					last >= _components.length ? null : _components[last]};
+		}
+	}
+
+	protected static final Compiled EMPTY = new Compiled(new ArrayList<Element>());
+
+	protected volatile Compiled _values = EMPTY;
+
 	/**
 	 * @param values Must be a list of ExcludeElements - Components must be in increasing order
 	 * and there must not be more than one BloomFilter in a row.
@@ -99,7 +198,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 				throw new InvalidParameterException("bloom filters or anys are not allowed to follow each other");
 			last = ee;
 		}			
-		_values.addAll(values);
+		_values = new Compiled(values);
 	}
 
 	/**
@@ -112,9 +211,11 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (omissions == null || omissions.length == 0)
 			throw new IllegalArgumentException("No omissions");
 		Arrays.sort(omissions, new ByteArrayCompare());
+		ArrayList<Element> values = new ArrayList<Element>(omissions.length);
 		for (byte[] omission : omissions) {
-			_values.add(new ExcludeComponent(omission));
+			values.add(new ExcludeComponent(omission));
 		}
+		_values = new Compiled(values);
 	}
 
 	public Exclude() {} // for use by decoders
@@ -127,11 +228,11 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	public static Exclude uptoFactory(byte [] component) {
 		if ( component == null)
 			return null;
+		ArrayList<Element> values = new ArrayList<Element>(2);
+		values.add(new ExcludeAny());
+		values.add(new ExcludeComponent(component));
 		Exclude ef = new Exclude();
-		synchronized (ef._values) {
-			ef._values.add(new ExcludeAny());
-			ef._values.add(new ExcludeComponent(component));
-		}
+		ef._values = new Compiled(values);
 		return ef;
 	}
 
@@ -151,29 +252,23 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return true if this component would be excluded by the exclude filter
 	 */
 	public boolean match(byte [] component) {
-		Filler lastFiller = null;
-		synchronized (_values) {
-			for (Element ee : _values) {
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					int res = ec.compareTo(component);
-					if (res == 0) {
-						// we exactly matched a component in the filter
-						return true;
-					} else if (res > 0) {
-						// we reached a component in the filter that is lexicographically after than the one
-						// we're looking for so check if there was a filler between the last component
-						// we saw and this one.
-						return lastFiller != null && lastFiller.match(component);
-					}
-					lastFiller = null;
-				} else {
-					// The element is not a component - so track what filler it was.
-					lastFiller = (Filler) ee;
-				}
-			}
-		}
-		return lastFiller != null && lastFiller.match(component);
+		return _values.match(component);
+	}
+
+	/**
+	 * Find the run of name components around a component which are all excluded by this filter -
+	 * components in the filter with only Any elements between them, and the ranges the Any elements
+	 * cover. A search through sorted candidates can then skip the whole run rather than testing
+	 * each candidate in it. Bloom filters only exclude the components put in them, so never
+	 * extend a run.
+	 * 
+	 * @param component - A name component
+	 * @return the first and last components of the run, which are both excluded. A null first or last
+	 * 	means the run extends to the first or last possible component. null if the component is not
+	 * 	excluded by a component or Any element of the filter.
+	 */
+	public byte [][] excludedRun(byte [] component) {
+		return _values.excludedRun(component);
 	}
 
 	/**
@@ -188,55 +283,50 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 
 		Arrays.sort(omissions, new ByteArrayCompare());
 
-		/*
-		 * i is an outer loop on the omissions list
-		 * j is an inner loop on the ExcludeEntries
-		 */
-		int i = 0, j = 0;
-		byte [] omission;
-		Element ee;
-		Filler lastFiller = null;
-		synchronized (_values) {
-			for(;i<omissions.length && j<_values.size();) {
-				omission = omissions[i];
-				ee = _values.get(j);
+		synchronized (this) {
+			Element [] elements = _values._elements;
+			ArrayList<Element> values = new ArrayList<Element>(elements.length + omissions.length);
+
+			/*
+			 * i is an index into the omissions list, merged in as we copy the existing elements
+			 */
+			int i = 0;
+			Filler lastFiller = null;
+			for (Element ee : elements) {
 				if (ee instanceof ExcludeComponent) {
 					ExcludeComponent ec = (ExcludeComponent) ee;
-					int res = ec.compareTo(omission);
-					if (res > 0) {
-						// we reached a component in the filter that is lexigraphically after than the one
-						// we're looking for.
+					for (; i < omissions.length; i++) {
+						byte [] omission = omissions[i];
+						int res = ec.compareTo(omission);
+						if (res < 0)
+							break;
+						if (res == 0) {
+							// we matched a component already in the filter, so no need to add one in, just skip it.
+							continue;
+						}
+						// the omission comes before this component in the filter
 						if (lastFiller != null && lastFiller.match(omission)) {
 							// the filler already matches the component, no need to add it!
-							i++;
 							continue;
 						}
 						// no bloom or the bloom does not match - so add the component explicitly
-						_values.add(j, new ExcludeComponent(omission));
-						j++; // skip the component we just added
+						values.add(new ExcludeComponent(omission));
 						if (lastFiller != null) {
 							// there was a non matching bloom, so copy it to ensure same values get excluded
 							// TODO: should this be a clone()?
-							_values.add(j, lastFiller);
-							j++; // skip the bloom we just added
+							values.add(lastFiller);
 						}
-						i++;
-						continue;
-					} else if (res == 0) {
-						// we matched a component already in the filter, so no need to add one in, just skip it.
-						i++;
-						continue;
 					}
 					lastFiller = null;
 				} else
 					lastFiller = (Filler) ee;
-				j++;
+				values.add(ee);
 			}
 			// if we have values still to add, then add them to the end of the list
 			for(;i<omissions.length;i++) {
-				omission = omissions[i];
-				_values.add(new ExcludeComponent(omission));
+				values.add(new ExcludeComponent(omissions[i]));
 			}
+			_values = new Compiled(values);
 		}
 	}
 	
@@ -251,10 +341,11 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 			return;
 
 		Filler lastFiller = null;
-		synchronized (_values) {
+		synchronized (this) {
+			ArrayList<Element> values = new ArrayList<Element>(Arrays.asList(_values._elements));
 			int res = -2;
 			int removes = 0;
-			for (Element ee : _values) {
+			for (Element ee : values) {
 				if (ee instanceof ExcludeComponent) {
 					ExcludeComponent ec = (ExcludeComponent) ee;
 					res = ec.compareTo(component);
@@ -267,30 +358,24 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 				}
 				removes++;
 			}
-			for (int i = 0; i < removes; i++)
-				_values.remove(0);
+			values.subList(0, removes).clear();
 			if (res == 0) {
 				// we exactly matched a component already in the filter
 				// prefix it with an Any element, and we're done.
-				_values.add(0, new ExcludeAny());
+				values.add(0, new ExcludeAny());
+			} else if (lastFiller == null) {
+				// there was no filler, so prefix the list with an Any and the component, and we're done
+				values.add(0, new ExcludeAny());
+				values.add(1, new ExcludeComponent(component));
+			} else if (lastFiller instanceof ExcludeAny) {
+				values.add(0, new ExcludeAny());
 			} else {
-	
-				if (lastFiller == null) {
-					// there was no filler, so prefix the list with an Any and the component, and we're done
-					_values.add(0, new ExcludeAny());
-					_values.add(1, new ExcludeComponent(component));
-					return;
-				}
-				if (lastFiller instanceof ExcludeAny) {
-					_values.add(0, new ExcludeAny());
-					return;
-				}
-				_values.add(0, new ExcludeAny());
-				_values.add(1, new ExcludeComponent(component));
-				_values.add(2, lastFiller);
+				values.add(0, new ExcludeAny());
+				values.add(1, new ExcludeComponent(component));
+				values.add(2, lastFiller);
 			}
+			_values = new Compiled(values);
 		}
-		return;		
 	}
 
 	/**
@@ -298,15 +383,14 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return true if exclude has no elements
 	 */
 	public boolean empty() {
-		synchronized (_values) {
-			return _values.isEmpty();
-		}
+		return _values._elements.length == 0;
 	}
 
 	public void decode(XMLDecoder decoder) throws ContentDecodingException {
 		decoder.readStartElement(getElementLabel());
 		
-		synchronized (_values) {
+		synchronized (this) {
+			ArrayList<Element> values = new ArrayList<Element>(Arrays.asList(_values._elements));
 			boolean component;
 			boolean any = false;
 			while ((component = decoder.peekStartElement(NDNProtocolDTags.Component)) || 
@@ -315,9 +399,10 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 				@SuppressWarnings("deprecation")
 				Element ee = component?new ExcludeComponent(): any ? new ExcludeAny() : new BloomFilter();
 				ee.decode(decoder);
-				_values.add(ee);
+				values.add(ee);
 			}
 			decoder.readEndElement();
+			_values = new Compiled(values);
 		}
 	}
 
@@ -326,15 +411,14 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
 		}
 		// if everything is null, output nothing
-		if (empty())
+		Element [] elements = _values._elements;
+		if (elements.length == 0)
 			return;
 		
 		encoder.writeStartElement(getElementLabel());
 
-		synchronized (_values) {
-			for (Element element : _values)
-				element.encode(encoder);
-		}
+		for (Element element : elements)
+			element.encode(encoder);
 
 		encoder.writeEndElement();
 	}
@@ -355,9 +439,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (!empty()) {
 			if (o.empty())
 				return 1;
-			synchronized (_values) {
-				result = _values.size() - o._values.size();
-			}
+			result = size() - o.size();
 			// TODO: need a better definition of ordering between exclude filters
 			// it's definitely an error to report they are the same just based on length
 			// but first - is this ever used?
@@ -375,13 +457,11 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (getClass() != obj.getClass())
 			return false;
 		Exclude other = (Exclude) obj;
-		synchronized (_values) {
-			return _values.equals(other._values);
-		}
+		return Arrays.equals(_values._elements, other._values._elements);
 	}
 	
 	public int hashCode() {
-		return _values.hashCode();
+		return Arrays.hashCode(_values._elements);
 	}
 
 	/**
@@ -389,35 +469,29 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return number of elements
 	 */
 	public int size() {
-		synchronized (_values) {
-			return _values.size();
-		}
+		return _values._elements.length;
 	}
 	
 	/**
 	 * DEBUGGING ONLY -- may need to be removed.
 	 */
 	public Element value(int i) {
-		synchronized(_values) {
-			return _values.get(i);
-		}
+		return _values._elements[i];
 	}
 
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		boolean first = true;
-		synchronized (_values) {
-			for (Element ee : _values) {
-				if (first)
-					first = false;
-				else
-					sb.append(",");
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					sb.append(Component.printURI(ec.body));
-				} else {
-					sb.append("B");
-				}
+		for (Element ee : _values._elements) {
+			if (first)
+				first = false;
+			else
+				sb.append(",");
+			if (ee instanceof ExcludeComponent) {
+				ExcludeComponent ec = (ExcludeComponent) ee;
+				sb.append(Component.printURI(ec.body));
+			} else {
+				sb.append("B");
 			}
 		}
 		return sb.toString();
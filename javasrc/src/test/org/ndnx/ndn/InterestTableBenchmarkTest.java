@@ -0,0 +1,120 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import org.ndnx.ndn.impl.InterestTable;
+import org.ndnx.ndn.impl.PrefixIndexedInterestTable;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times content dispatch through InterestTable and
+ * PrefixIndexedInterestTable with 1k, 10k and 100k pending interests, laid
+ * out the way pipelined segment readers leave them in a network manager.
+ * It does not need a running ndnd.
+ */
+public class InterestTableBenchmarkTest {
+
+	public static final int [] TABLE_SIZES = new int[]{1000, 10000, 100000};
+	public static final int STREAMS = 100;
+	public static final int NUM_ITER = 1000;
+
+	public static final double NanoToMicro = 1000.0d;
+
+	public static ContentName prefix;
+	public static SignedInfo signedInfo;
+	public static Signature signature;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Random rnd = new Random();
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		byte [] sigBytes = new byte[128];
+		rnd.nextBytes(sigBytes);
+		prefix = ContentName.fromNative("/test/InterestTableBenchmark");
+		signedInfo = new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key")));
+		signature = new Signature(sigBytes);
+		format.setMaximumFractionDigits(3);
+	}
+
+	protected static ContentName segmentName(int i) {
+		ContentName stream = new ContentName(prefix, "stream" + (i % STREAMS));
+		return SegmentationProfile.segmentName(stream, i / STREAMS);
+	}
+
+	protected static void fill(InterestTable<Integer> table, int size) {
+		for (int i = 0; i < size; i++)
+			table.add(new Interest(segmentName(i)), i);
+	}
+
+	protected void runBenchmark(int count, String desc, InterestTable<Integer> table, ContentObject [] objects) {
+		// Warm up and check the answer while we're at it
+		for (ContentObject co : objects)
+			assertEquals(1, table.getValues(co).size());
+
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++)
+			table.getValues(objects[i % objects.length]);
+		long dur = System.nanoTime() - start;
+		System.out.println("Avg. to dispatch content with " + desc + " (" + count + " iterations) = " +
+				format.format(dur/count/NanoToMicro) + " us.");
+	}
+
+	@Test
+	public void testDispatch() throws Exception {
+		System.out.println("==== Content dispatch through InterestTable");
+		Random rnd = new Random();
+		for (int size : TABLE_SIZES) {
+			ContentObject [] objects = new ContentObject[100];
+			for (int i = 0; i < objects.length; i++)
+				objects[i] = new ContentObject(segmentName(rnd.nextInt(size)), signedInfo, "benchmark".getBytes(), signature);
+
+			InterestTable<Integer> table = new InterestTable<Integer>();
+			fill(table, size);
+			// The unindexed table scans every entry so keep its run time reasonable
+			runBenchmark(NUM_ITER * TABLE_SIZES[0] / size, "InterestTable, " + size + " entries", table, objects);
+
+			table = new PrefixIndexedInterestTable<Integer>();
+			fill(table, size);
+			runBenchmark(NUM_ITER, "PrefixIndexedInterestTable, " + size + " entries", table, objects);
+			System.out.println("");
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import org.ndnx.ndn.impl.encoding.BinaryXMLBufferEncoder;
+import org.ndnx.ndn.io.NDNWriter;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures the time and the bytes allocated on the writing thread
+ * for encoding 4KB segments for the network, first comparing the old encode-to-byte-array
+ * path with the reusable direct buffer encoder used by the network manager (no ndnd needed),
+ * then for NDNWriter.put of 4KB segments through a handle (needs ndnd).
+ *
+ * Allocation counts need a JVM whose ThreadMXBean supports getThreadAllocatedBytes; on
+ * others only times are reported.
+ */
+public class WriteAllocationBenchmarkTest {
+
+	public static final int SEGMENT_LENGTH = 4096;
+	public static final int NUM_ITER = 10000;
+	public static final int NUM_PUTS = 2000;
+
+	public static final double NanoToMicro = 1000.0d;
+
+	public static NDNTestHelper testHelper = new NDNTestHelper(WriteAllocationBenchmarkTest.class);
+
+	public static byte [] payload;
+	public static ContentObject segment;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Random rnd = new Random();
+		payload = new byte[SEGMENT_LENGTH];
+		rnd.nextBytes(payload);
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		byte [] sigBytes = new byte[128];
+		rnd.nextBytes(sigBytes);
+		ContentName name = SegmentationProfile.segmentName(
+				VersioningProfile.addVersion(ContentName.fromNative("/test/WriteAllocationBenchmark")), 0);
+		segment = new ContentObject(name, new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key"))), payload, new Signature(sigBytes));
+		format.setMaximumFractionDigits(3);
+	}
+
+	/**
+	 * @return bytes allocated by this thread so far, or -1 if the JVM can't tell us
+	 */
+	protected static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled())
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	protected static abstract class Operation {
+		abstract void execute(int i) throws Exception;
+
+		public void runBenchmark(int count, String desc) throws Exception {
+			// Warm up
+			for (int i = 0; i < Math.min(count, 1000); i++)
+				execute(i);
+
+			long startBytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++)
+				execute(i);
+			long dur = System.nanoTime() - start;
+			long bytes = allocatedBytes() - startBytes;
+			System.out.println("Avg. to " + desc + " (" + count + " iterations) = " +
+					format.format(dur/count/NanoToMicro) + " us" +
+					((startBytes < 0) ? "." : (", " + format.format(bytes/count) + " bytes allocated.")));
+		}
+	}
+
+	@Test
+	public void testEncode() throws Exception {
+		System.out.println("==== Encoding " + SEGMENT_LENGTH + " byte segments for the network");
+		Operation heap = new Operation() {
+			void execute(int i) throws Exception {
+				ByteBuffer.wrap(segment.encode());
+			}
+		};
+		heap.runBenchmark(NUM_ITER, "encode to byte array");
+
+		final BinaryXMLBufferEncoder encoder = new BinaryXMLBufferEncoder(SEGMENT_LENGTH * 2);
+		Operation pooled = new Operation() {
+			void execute(int i) throws Exception {
+				encoder.encode(segment);
+			}
+		};
+		pooled.runBenchmark(NUM_ITER, "encode to reused direct buffer");
+	}
+
+	@Test
+	public void testWriterPut() throws Exception {
+		System.out.println("==== NDNWriter.put of " + SEGMENT_LENGTH + " byte segments");
+		NDNHandle handle = NDNHandle.open();
+		try {
+			final ContentName name = VersioningProfile.addVersion(new ContentName(testHelper.getTestNamespace("testWriterPut"), "data"));
+			final NDNWriter writer = new NDNWriter(name, handle);
+			writer.disableFlowControl();
+			Operation put = new Operation() {
+				void execute(int i) throws Exception {
+					writer.put(SegmentationProfile.segmentName(name, i), payload);
+				}
+			};
+			put.runBenchmark(NUM_PUTS, "sign and put segment");
+			writer.close();
+		} finally {
+			handle.close();
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test that CoalescingWriter writes everything, in order, and does coalesce concurrent writes.
+ */
+public class CoalescingWriterTest {
+
+	protected static class TestWriter extends CoalescingWriter {
+		protected final ByteArrayOutputStream _written = new ByteArrayOutputStream();
+		protected final long _writeMillis;
+
+		public TestWriter(int delayMicros, long writeMillis) {
+			super(delayMicros, DEFAULT_MAX_BATCH);
+			_writeMillis = writeMillis;
+		}
+
+		@Override
+		protected int writeBatch(ByteBuffer batch) throws IOException {
+			try {
+				Thread.sleep(_writeMillis);
+			} catch (InterruptedException e) {}
+			int length = batch.remaining();
+			byte [] bytes = new byte[length];
+			batch.get(bytes);
+			synchronized (_written) {
+				_written.write(bytes);
+			}
+			return length;
+		}
+	}
+
+	protected static ByteBuffer packet(int writer, int seq) {
+		ByteBuffer packet = ByteBuffer.allocate(3);
+		packet.put((byte)writer).put((byte)(seq >> 8)).put((byte)seq);
+		packet.flip();
+		return packet;
+	}
+
+	protected static void waitForPackets(CoalescingWriter writer, long packets) throws InterruptedException {
+		// The last batches may still be going out from a pool thread
+		long start = System.currentTimeMillis();
+		while (writer.getPacketCount() < packets && System.currentTimeMillis() - start < 5000)
+			Thread.sleep(10);
+	}
+
+	@Test
+	public void testSingleWriter() throws Exception {
+		TestWriter writer = new TestWriter(0, 0);
+		for (int i = 0; i < 100; i++)
+			Assert.assertEquals(3, writer.write(packet(0, i)));
+		Assert.assertEquals(writer.write(new ByteBuffer[]{packet(0, 100), packet(0, 101)}), 6);
+		byte [] written = writer._written.toByteArray();
+		Assert.assertEquals(102 * 3, written.length);
+		for (int i = 0; i < 102; i++)
+			Assert.assertEquals(i, ((written[i * 3 + 1] & 0xff) << 8) | (written[i * 3 + 2] & 0xff));
+		// Nobody else was writing so nothing to coalesce
+		Assert.assertEquals(101, writer.getBatchCount());
+		Assert.assertEquals(102, writer.getPacketCount());
+	}
+
+	@Test
+	public void testConcurrentWriters() throws Exception {
+		final int WRITERS = 8;
+		final int PACKETS = 200;
+		final TestWriter writer = new TestWriter(0, 1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < WRITERS; t++) {
+			final int id = t;
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < PACKETS; i++)
+							writer.write(packet(id, i));
+					} catch (IOException e) {
+						Assert.fail(e.getMessage());
+					}
+				}
+			});
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		waitForPackets(writer, WRITERS * PACKETS);
+
+		byte [] written = writer._written.toByteArray();
+		Assert.assertEquals(WRITERS * PACKETS * 3, written.length);
+		int [] next = new int[WRITERS];
+		for (int i = 0; i < written.length; i += 3) {
+			int id = written[i];
+			int seq = ((written[i + 1] & 0xff) << 8) | (written[i + 2] & 0xff);
+			Assert.assertEquals("packets from writer " + id + " out of order", next[id]++, seq);
+		}
+		Assert.assertEquals(WRITERS * PACKETS, writer.getPacketCount());
+		Assert.assertTrue("no writes were coalesced", writer.getBatchCount() < writer.getPacketCount());
+	}
+
+	@Test
+	public void testDelay() throws Exception {
+		TestWriter writer = new TestWriter(20000, 0);
+		long start = System.nanoTime();
+		writer.write(packet(0, 0));
+		Assert.assertTrue(System.nanoTime() - start >= 20000000L);
+		Assert.assertEquals(1, writer.getBatchCount());
+	}
+
+	@Test
+	public void testFailedBatchRetried() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch queued = new CountDownLatch(1);
+		final TestWriter writer = new TestWriter(0, 0) {
+			boolean _failed = false;
+
+			@Override
+			protected int writeBatch(ByteBuffer batch) throws IOException {
+				if (!_failed) {
+					_failed = true;
+					writing.countDown();
+					try {
+						queued.await();
+					} catch (InterruptedException e) {}
+					throw new IOException("test failure");
+				}
+				return super.writeBatch(batch);
+			}
+		};
+		Thread flusher = new Thread() {
+			public void run() {
+				try {
+					writer.write(packet(0, 0));
+					Assert.fail("write failure not reported");
+				} catch (IOException e) {}
+			}
+		};
+		flusher.start();
+		writing.await();
+		// Queued behind the failing batch, so told it succeeded
+		Assert.assertEquals(3, writer.write(packet(1, 0)));
+		queued.countDown();
+		flusher.join();
+		Assert.assertEquals(0, writer._written.size());
+
+		Assert.assertEquals(3, writer.write(packet(2, 0)));
+		waitForPackets(writer, 3);
+		byte [] written = writer._written.toByteArray();
+		Assert.assertEquals(9, written.length);
+		for (int i = 0; i < 3; i++)
+			Assert.assertEquals(i, written[i * 3]);
+		Assert.assertEquals(3, writer.getPacketCount());
+	}
+
+	@Test
+	public void testFlushBounded() throws Exception {
+		final TestWriter writer = new TestWriter(0, 20);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final AtomicInteger sent = new AtomicInteger(0);
+		Thread busy = new Thread() {
+			public void run() {
+				long start = System.currentTimeMillis();
+				try {
+					while (!stop.get() && System.currentTimeMillis() - start < 2000) {
+						writer.write(packet(1, sent.get()));
+						sent.incrementAndGet();
+						Thread.sleep(1);
+					}
+				} catch (Exception e) {
+					Assert.fail(e.getMessage());
+				}
+			}
+		};
+		busy.start();
+		// Whenever we end up flushing we should only write what was queued, not everything the
+		// other thread keeps adding
+		long longest = 0;
+		for (int i = 0; i < 20; i++) {
+			long start = System.currentTimeMillis();
+			writer.write(packet(0, i));
+			longest = Math.max(longest, System.currentTimeMillis() - start);
+			Thread.sleep(5);
+		}
+		stop.set(true);
+		busy.join();
+		Assert.assertTrue("write held for " + longest + "ms", longest < 500);
+		waitForPackets(writer, 20 + sent.get());
+		Assert.assertEquals(20 + sent.get(), writer.getPacketCount());
+	}
+}
@@ -24,6 +24,8 @@ import java.util.Random;
 
 import org.ndnx.ndn.impl.NDNStats;
 import org.ndnx.ndn.impl.NDNStats.ExampleClassWithStatistics;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.ExampleClassWithStatistics.MyStats;
 import org.ndnx.ndn.impl.support.Log;
 import org.junit.Assert;
 import org.junit.Test;
@@ -109,5 +111,115 @@ public class NDNStatTest {
 						avg_delta / sends, std_delta / sends));
 		Log.info(Log.FAC_TEST, "Completed testPerformance");
 
-	}	
+	}
+
+	@Test
+	public void testPercentiles() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testPercentiles");
+
+		NDNEnumStats<MyStats> stats = new NDNEnumStats<MyStats>(MyStats.SendRequests);
+		String name = MyStats.BytesPerPacket.toString();
+		Assert.assertFalse(stats.isAveragingCounter(name));
+		Assert.assertTrue(Double.isNaN(stats.getPercentile(name, 50.0)));
+		Assert.assertTrue(Double.isNaN(stats.getMaximum(name)));
+
+		// 1..100000 in a random order
+		int count = 100000;
+		long [] samples = new long[count];
+		for (int i = 0; i < count; i++)
+			samples[i] = i + 1;
+		for (int i = count - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			long t = samples[i];
+			samples[i] = samples[j];
+			samples[j] = t;
+		}
+		for (long sample : samples)
+			stats.addSample(MyStats.BytesPerPacket, sample);
+
+		Assert.assertTrue(stats.isAveragingCounter(name));
+		double [] avgstd = stats.getAverageAndStdev(name);
+		Assert.assertEquals((count + 1) / 2.0, avgstd[0], 0.001);
+		Assert.assertEquals(28867.66, avgstd[1], 0.1);
+		for (double percentile : NDNStats.REPORTED_PERCENTILES) {
+			double expected = percentile / 100.0 * count;
+			double actual = stats.getPercentile(name, percentile);
+			Assert.assertTrue("p" + percentile + " is " + actual, Math.abs(actual - expected) <= expected * 0.035);
+		}
+		Assert.assertEquals(count, stats.getMaximum(name), 0.0);
+		Assert.assertEquals(count, stats.getPercentile(name, 100.0), 0.0);
+		Assert.assertEquals(1.0, stats.getPercentile(name, 0.0), 0.0);
+
+		// Small values are exact
+		stats.clearCounters();
+		for (int i = 0; i < 10; i++)
+			stats.addSample(MyStats.BytesPerPacket, i);
+		Assert.assertEquals(4.0, stats.getPercentile(name, 50.0), 0.0);
+		Assert.assertEquals(9.0, stats.getMaximum(name), 0.0);
+		System.out.println(stats.toString());
+
+		Log.info(Log.FAC_TEST, "Completed testPercentiles");
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSnapshot");
+
+		NDNEnumStats<MyStats> stats = new NDNEnumStats<MyStats>(MyStats.SendRequests);
+		String name = MyStats.BytesPerPacket.toString();
+		for (int i = 1; i <= 100; i++) {
+			stats.increment(MyStats.SendRequests);
+			stats.addSample(MyStats.BytesPerPacket, i);
+		}
+
+		NDNStats copy = stats.snapshot(false);
+		stats.addSample(MyStats.BytesPerPacket, 1000);
+		Assert.assertEquals(100, copy.getCounter(MyStats.SendRequests.toString()));
+		Assert.assertEquals(100.0, copy.getMaximum(name), 0.0);
+		Assert.assertEquals(1000.0, stats.getMaximum(name), 0.0);
+
+		// Each interval only has its own samples
+		NDNStats interval = stats.snapshot(true);
+		Assert.assertEquals(100, interval.getCounter(MyStats.SendRequests.toString()));
+		Assert.assertEquals(1000.0, interval.getMaximum(name), 0.0);
+		Assert.assertEquals(0, stats.getCounter(MyStats.SendRequests.toString()));
+		Assert.assertFalse(stats.isAveragingCounter(name));
+		stats.addSample(MyStats.BytesPerPacket, 7);
+		interval = stats.snapshot(true);
+		Assert.assertEquals(7.0, interval.getAverageAndStdev(name)[0], 0.0);
+		Assert.assertEquals(7.0, interval.getPercentile(name, 99.0), 0.0);
+
+		Log.info(Log.FAC_TEST, "Completed testSnapshot");
+	}
+
+	@Test
+	public void testConcurrentSamples() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testConcurrentSamples");
+
+		final NDNEnumStats<MyStats> stats = new NDNEnumStats<MyStats>(MyStats.SendRequests);
+		final int samples = 1024 * 1024;
+		int threadCount = 8;
+		Thread [] threads = new Thread[threadCount];
+		long start = System.nanoTime();
+		for (int t = 0; t < threadCount; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < samples; i++)
+						stats.addSample(MyStats.BytesPerPacket, i & 1023);
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		long elapsed = System.nanoTime() - start;
+		System.out.println(String.format("Added %d samples from %d threads in %f nanos/sample",
+				samples * threadCount, threadCount, (double) elapsed / (samples * threadCount)));
+
+		String name = MyStats.BytesPerPacket.toString();
+		Assert.assertEquals(511.5, stats.getAverageAndStdev(name)[0], 0.001);
+		Assert.assertEquals(1023.0, stats.getMaximum(name), 0.0);
+
+		Log.info(Log.FAC_TEST, "Completed testConcurrentSamples");
+	}
 }
@@ -0,0 +1,225 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.ndnx.ndn.impl.NDNStats.ExampleClassWithStatistics;
+import org.ndnx.ndn.impl.NDNStats.NDNCategorizedStatistics;
+import org.ndnx.ndn.impl.support.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test exporting registered statistics as text and as MBeans
+ */
+public class NDNStatsRegistryTest {
+
+	/**
+	 * Two categories, each with its own example statistics
+	 */
+	static class CategorizedExample implements NDNCategorizedStatistics {
+		ExampleClassWithStatistics _a = new ExampleClassWithStatistics();
+		ExampleClassWithStatistics _b = new ExampleClassWithStatistics();
+
+		public Object [] getCategoryNames() {
+			return new Object[] {"/test/a", "/test/b"};
+		}
+
+		public NDNStats getStatsByName(Object category) {
+			return "/test/a".equals(category) ? _a.getStats() : _b.getStats();
+		}
+	}
+
+	@Test
+	public void testMetricName() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMetricName");
+
+		Assert.assertEquals("ndnx_network_manager_send_requests", NDNStatsRegistry.metricName("NetworkManager", "SendRequests"));
+		Assert.assertEquals("ndnx_sync_hash_cache_hits", NDNStatsRegistry.metricName("SyncHashCache", "Hits"));
+		Assert.assertEquals("ndnx_repo2_odd_name", NDNStatsRegistry.metricName("Repo2", "Odd-Name"));
+
+		Log.info(Log.FAC_TEST, "Completed testMetricName");
+	}
+
+	@Test
+	public void testScrape() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testScrape");
+
+		ExampleClassWithStatistics ecws = new ExampleClassWithStatistics();
+		for (int i = 0; i < 10; i++)
+			ecws.send(this, 100);
+		ecws.recv(this);
+		CategorizedExample categorized = new CategorizedExample();
+		categorized._b.recv(this);
+
+		NDNStatsRegistry.register("RegistryTest", ecws, "handle", "7");
+		NDNStatsRegistry.register("RegistryCategories", "prefix", categorized);
+		try {
+			String text = NDNStatsRegistry.scrape();
+			System.out.println(text);
+			Assert.assertTrue(text.contains("# HELP ndnx_registry_test_send_requests The number of packets sent (packets)\n"));
+			Assert.assertTrue(text.contains("# TYPE ndnx_registry_test_send_requests untyped\n"));
+			Assert.assertTrue(text.contains("ndnx_registry_test_send_requests{handle=\"7\"} 10\n"));
+			Assert.assertTrue(text.contains("ndnx_registry_test_recv_messages{handle=\"7\"} 1\n"));
+			Assert.assertTrue(text.contains("# TYPE ndnx_registry_test_bytes_per_packet summary\n"));
+			Assert.assertTrue(text.contains("ndnx_registry_test_bytes_per_packet{handle=\"7\",quantile=\"0.999\"} "));
+			Assert.assertTrue(text.contains("ndnx_registry_test_bytes_per_packet_max{handle=\"7\"} 100.0\n"));
+			Assert.assertTrue(text.contains("ndnx_registry_categories_recv_messages{prefix=\"/test/a\"} 0\n"));
+			Assert.assertTrue(text.contains("ndnx_registry_categories_recv_messages{prefix=\"/test/b\"} 1\n"));
+
+			// All samples of a metric must be together, after its type
+			int type = text.indexOf("# TYPE ndnx_registry_categories_recv_messages ");
+			int a = text.indexOf("ndnx_registry_categories_recv_messages{prefix=\"/test/a\"}");
+			int b = text.indexOf("ndnx_registry_categories_recv_messages{prefix=\"/test/b\"}");
+			Assert.assertTrue(type >= 0 && a > type && b > type);
+			int next = text.indexOf("# ", Math.min(a, b));
+			Assert.assertTrue(next == -1 || next > Math.max(a, b));
+		} finally {
+			NDNStatsRegistry.unregister(ecws);
+			NDNStatsRegistry.unregister(categorized);
+		}
+		Assert.assertFalse(NDNStatsRegistry.scrape().contains("ndnx_registry_test_"));
+
+		Log.info(Log.FAC_TEST, "Completed testScrape");
+	}
+
+	@Test
+	public void testScrapeSameLabels() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testScrapeSameLabels");
+
+		// Such as the hash caches of several comparators of one sync slice
+		ExampleClassWithStatistics first = new ExampleClassWithStatistics();
+		ExampleClassWithStatistics second = new ExampleClassWithStatistics();
+		first.recv(this);
+		second.recv(this);
+		second.recv(this);
+		NDNStatsRegistry.register("RegistrySame", first, "slice", "/test");
+		NDNStatsRegistry.register("RegistrySame", second, "slice", "/test");
+		try {
+			String text = NDNStatsRegistry.scrape();
+			// Each series must be unique or the whole scrape is rejected
+			Assert.assertFalse(text.contains("ndnx_registry_same_recv_messages{slice=\"/test\"}"));
+			Assert.assertTrue(text.matches("(?s).*ndnx_registry_same_recv_messages\\{slice=\"/test\",id=\"\\d+\"\\} 1\n.*"));
+			Assert.assertTrue(text.matches("(?s).*ndnx_registry_same_recv_messages\\{slice=\"/test\",id=\"\\d+\"\\} 2\n.*"));
+
+			// Once they can be told apart again the id goes
+			NDNStatsRegistry.unregister(second);
+			Assert.assertTrue(NDNStatsRegistry.scrape().contains("ndnx_registry_same_recv_messages{slice=\"/test\"} 1\n"));
+		} finally {
+			NDNStatsRegistry.unregister(first);
+			NDNStatsRegistry.unregister(second);
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testScrapeSameLabels");
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testJmx");
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ExampleClassWithStatistics ecws = new ExampleClassWithStatistics();
+		ecws.send(this, 42);
+		ecws.send(this, 42);
+		NDNStatsRegistry.enableJmx();
+		NDNStatsRegistry.register("RegistryJmx", ecws, "handle", "9");
+		ObjectName name = NDNStatsRegistry.getObjectName(ecws);
+		try {
+			Assert.assertNotNull(name);
+			Assert.assertEquals(new ObjectName("org.ndnx.ndn:type=RegistryJmx,handle=\"9\""), name);
+			Assert.assertEquals(2L, server.getAttribute(name, "SendRequests"));
+			Assert.assertEquals(42.0, (Double)server.getAttribute(name, "BytesPerPacket.max"), 0.0);
+			Assert.assertEquals(42.0, (Double)server.getAttribute(name, "BytesPerPacket.avg"), 0.0);
+			Assert.assertNotNull(server.getAttribute(name, "BytesPerPacket.p999"));
+			Assert.assertTrue(((String)server.getAttribute(name, NDNStatsRegistry.SUMMARY_ATTRIBUTE)).contains("SendRequests"));
+
+			// A second source with the same labels still gets its own MBean
+			ExampleClassWithStatistics other = new ExampleClassWithStatistics();
+			NDNStatsRegistry.register("RegistryJmx", other, "handle", "9");
+			ObjectName otherName = NDNStatsRegistry.getObjectName(other);
+			Assert.assertNotNull(otherName);
+			Assert.assertFalse(name.equals(otherName));
+			NDNStatsRegistry.unregister(other);
+			Assert.assertFalse(server.isRegistered(otherName));
+		} finally {
+			NDNStatsRegistry.unregister(ecws);
+			NDNStatsRegistry.disableJmx();
+		}
+		Assert.assertFalse(server.isRegistered(name));
+
+		Log.info(Log.FAC_TEST, "Completed testJmx");
+	}
+
+	@Test
+	public void testScrapeServer() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testScrapeServer");
+
+		ExampleClassWithStatistics ecws = new ExampleClassWithStatistics();
+		ecws.recv(this);
+		NDNStatsRegistry.register("RegistryServer", ecws);
+		int port = NDNStatsRegistry.startScrapeServer(0);
+		try {
+			Socket socket = new Socket(InetAddress.getByName(null), port);
+			OutputStream out = socket.getOutputStream();
+			out.write("GET /metrics HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("US-ASCII"));
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			Assert.assertEquals("HTTP/1.0 200 OK", in.readLine());
+			boolean found = false;
+			String line;
+			while (null != (line = in.readLine())) {
+				if (line.equals("ndnx_registry_server_recv_messages 1"))
+					found = true;
+			}
+			socket.close();
+			Assert.assertTrue(found);
+		} finally {
+			NDNStatsRegistry.stopScrapeServer();
+			NDNStatsRegistry.unregister(ecws);
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testScrapeServer");
+	}
+
+	@Test
+	public void testWeakSources() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testWeakSources");
+
+		int before = NDNStatsRegistry.size();
+		NDNStatsRegistry.register("RegistryWeak", new ExampleClassWithStatistics());
+		for (int i = 0; i < 20 && NDNStatsRegistry.size() > before; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		Assert.assertEquals(before, NDNStatsRegistry.size());
+
+		Log.info(Log.FAC_TEST, "Completed testWeakSources");
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.Test;
+
+/**
+ * Runs the InterestTable tests against PrefixIndexedInterestTable, plus
+ * some checks of the cases the index handles specially.
+ */
+public class PrefixIndexedInterestTableTest extends InterestTableTest {
+
+	@Override
+	protected <T> InterestTable<T> newTable() {
+		return new PrefixIndexedInterestTable<T>();
+	}
+	
+	@Test
+	public void testDigestMatch() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDigestMatch");
+
+		ContentName name = ContentName.fromNative("/a/b/c");
+		SignedInfo si = new SignedInfo(keyids[0], new KeyLocator(ContentName.fromNative("/key")));
+		ContentObject co = new ContentObject(name, si, "digest match".getBytes(), fakeSignature);
+		
+		InterestTable<Integer> table = newTable();
+		table.add(new Interest(co.fullName()), 1);
+		table.add(new Interest(new ContentName(name, "other")), 2);
+		table.add(new Interest(ContentName.fromNative("/a")), 3);
+		
+		assertEquals(2, table.getMatches(co).size());
+		assertEquals(1, table.getValue(co).intValue());
+		assertEquals(1, table.removeValue(co).intValue());
+		assertEquals(3, table.removeValue(co).intValue());
+		assertNull(table.removeValue(co));
+		assertEquals(1, table.size());
+		
+		Log.info(Log.FAC_TEST, "Completed testDigestMatch");
+	}
+	
+	@Test
+	public void testRemovePrunesIndex() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testRemovePrunesIndex");
+
+		ContentName abc = ContentName.fromNative("/a/b/c");
+		ContentName ab = ContentName.fromNative("/a/b");
+		
+		PrefixIndexedInterestTable<Integer> table = new PrefixIndexedInterestTable<Integer>();
+		table.add(abc, 1);
+		table.add(ab, 2);
+		table.remove(abc, 1);
+		assertNull(table.findNode(abc));
+		assertEquals(1, table.getMatches(abc).size());
+		table.remove(ab, 2);
+		assertNull(table.findNode(ContentName.fromNative("/a")));
+		assertEquals(0, table.getMatches(abc).size());
+
+		Log.info(Log.FAC_TEST, "Completed testRemovePrunesIndex");
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.impl.support.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueuedContentHandlerTest {
+
+	protected static class TestHandler extends QueuedContentHandler<Integer> {
+		protected final List<Integer> _processed = Collections.synchronizedList(new ArrayList<Integer>());
+		protected final List<Integer> _dropped = Collections.synchronizedList(new ArrayList<Integer>());
+		protected final AtomicInteger _expired = new AtomicInteger(0);
+		protected final AtomicInteger _timed = new AtomicInteger(0);
+		protected CountDownLatch _release = null;
+		protected CountDownLatch _started = null;
+
+		@Override
+		protected void process(Integer e) {
+			if (null != _started)
+				_started.countDown();
+			if (null != _release) {
+				try {
+					_release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ie) {}
+			}
+			_processed.add(e);
+		}
+
+		@Override
+		protected void processed(Integer e, long waitTime, long serviceTime) {
+			if (waitTime >= 0 && serviceTime >= 0)
+				_timed.incrementAndGet();
+		}
+
+		@Override
+		protected void dropped(Integer e, boolean expired) {
+			if (expired)
+				_expired.incrementAndGet();
+			else
+				_dropped.add(e);
+		}
+	}
+
+	@Test
+	public void testWorkersProcessEverything() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testWorkersProcessEverything");
+
+		TestHandler handler = new TestHandler();
+		handler.startWorkers("QueuedContentHandlerTest", 4, 10000, 0);
+		Assert.assertEquals(4, handler.workers());
+		for (int i = 0; i < 1000; i++)
+			handler.add(i);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (handler._timed.get() < 1000 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals(1000, handler._processed.size());
+		Assert.assertEquals(1000, handler._timed.get());
+		Assert.assertEquals(0, handler._dropped.size());
+		Assert.assertEquals(0, handler.queueDepth());
+		ArrayList<Integer> sorted = new ArrayList<Integer>(handler._processed);
+		Collections.sort(sorted);
+		for (int i = 0; i < 1000; i++)
+			Assert.assertEquals(i, sorted.get(i).intValue());
+		handler.stopWorkers();
+
+		Log.info(Log.FAC_TEST, "Completed testWorkersProcessEverything");
+	}
+
+	@Test
+	public void testDropOldestWhenFull() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDropOldestWhenFull");
+
+		TestHandler handler = new TestHandler();
+		handler._release = new CountDownLatch(1);
+		handler._started = new CountDownLatch(1);
+		handler.startWorkers("QueuedContentHandlerTest", 1, 5, 0);
+
+		// Block the only worker, then overfill the queue
+		handler.add(-1);
+		Assert.assertTrue(handler._started.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 8; i++)
+			handler.add(i);
+		Assert.assertEquals(5, handler.queueDepth());
+		Assert.assertEquals(3, handler._dropped.size());
+		for (int i = 0; i < 3; i++)
+			Assert.assertEquals(i, handler._dropped.get(i).intValue());
+
+		handler._release.countDown();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (handler._processed.size() < 6 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals(6, handler._processed.size());
+		Assert.assertEquals(-1, handler._processed.get(0).intValue());
+		for (int i = 1; i < 6; i++)
+			Assert.assertEquals(i + 2, handler._processed.get(i).intValue());
+		handler.stopWorkers();
+
+		Log.info(Log.FAC_TEST, "Completed testDropOldestWhenFull");
+	}
+
+	@Test
+	public void testExpiredNotProcessed() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testExpiredNotProcessed");
+
+		TestHandler handler = new TestHandler();
+		handler._release = new CountDownLatch(1);
+		handler._started = new CountDownLatch(1);
+		handler.startWorkers("QueuedContentHandlerTest", 1, 100, 50);
+
+		handler.add(-1);
+		Assert.assertTrue(handler._started.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 3; i++)
+			handler.add(i);
+		Thread.sleep(200);
+		handler._release.countDown();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (handler._expired.get() < 3 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals(3, handler._expired.get());
+		Assert.assertEquals(1, handler._processed.size());
+
+		// Fresh entries are still processed
+		handler.add(10);
+		while (handler._processed.size() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals(10, handler._processed.get(1).intValue());
+		handler.stopWorkers();
+
+		Log.info(Log.FAC_TEST, "Completed testExpiredNotProcessed");
+	}
+
+	@Test
+	public void testMaxWaitPerEntry() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMaxWaitPerEntry");
+
+		// Odd entries may wait as long as they like
+		TestHandler handler = new TestHandler() {
+			@Override
+			protected long maxWait(Integer e) {
+				return (e % 2 == 0) ? super.maxWait(e) : 0;
+			}
+		};
+		handler._release = new CountDownLatch(1);
+		handler._started = new CountDownLatch(1);
+		handler.startWorkers("QueuedContentHandlerTest", 1, 100, 50);
+
+		handler.add(-1);
+		Assert.assertTrue(handler._started.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 4; i++)
+			handler.add(i);
+		Thread.sleep(200);
+		handler._release.countDown();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (handler._processed.size() + handler._expired.get() < 5 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals(2, handler._expired.get());
+		Assert.assertEquals(3, handler._processed.size());
+		Assert.assertEquals(1, handler._processed.get(1).intValue());
+		Assert.assertEquals(3, handler._processed.get(2).intValue());
+		handler.stopWorkers();
+
+		Log.info(Log.FAC_TEST, "Completed testMaxWaitPerEntry");
+	}
+
+	@Test
+	public void testStopDiscards() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testStopDiscards");
+
+		TestHandler handler = new TestHandler();
+		handler._release = new CountDownLatch(1);
+		handler._started = new CountDownLatch(1);
+		handler.startWorkers("QueuedContentHandlerTest", 1, 100, 0);
+		handler.add(-1);
+		Assert.assertTrue(handler._started.await(10, TimeUnit.SECONDS));
+		handler.add(1);
+		handler.stopWorkers();
+		Assert.assertEquals(0, handler.queueDepth());
+		handler.add(2);
+		Assert.assertEquals(0, handler.queueDepth());
+		handler._release.countDown();
+		Thread.sleep(100);
+		Assert.assertEquals(1, handler._processed.size());
+
+		Log.info(Log.FAC_TEST, "Completed testStopDiscards");
+	}
+}
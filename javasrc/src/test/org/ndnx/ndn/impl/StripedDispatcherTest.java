@@ -0,0 +1,203 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.ndnx.ndn.impl.support.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedDispatcherTest {
+	
+	@Test
+	public void testOrderPerKey() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testOrderPerKey");
+
+		final int keys = 8;
+		final int count = 1000;
+		StripedDispatcher dispatcher = new StripedDispatcher("StripedDispatcherTest", 4);
+		final CountDownLatch done = new CountDownLatch(keys * count);
+		final List<List<Integer>> seen = new ArrayList<List<Integer>>();
+		for (int k = 0; k < keys; k++)
+			seen.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		
+		for (int i = 0; i < count; i++) {
+			for (int k = 0; k < keys; k++) {
+				final int key = k;
+				final int value = i;
+				dispatcher.dispatch("key" + key, new Runnable() {
+					public void run() {
+						seen.get(key).add(value);
+						done.countDown();
+					}
+				});
+			}
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int k = 0; k < keys; k++) {
+			for (int i = 0; i < count; i++)
+				Assert.assertEquals(i, seen.get(k).get(i).intValue());
+		}
+		Assert.assertEquals(0, dispatcher.queueDepth());
+		dispatcher.shutdown();
+		
+		Log.info(Log.FAC_TEST, "Completed testOrderPerKey");
+	}
+	
+	@Test
+	public void testSlowKeyDoesNotBlockOthers() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSlowKeyDoesNotBlockOthers");
+
+		final StripedDispatcher dispatcher = new StripedDispatcher("StripedDispatcherTest", 2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch other = new CountDownLatch(1);
+		
+		// Find two keys that land on different stripes
+		String slowKey = "slow";
+		String otherKey = "other";
+		for (int i = 0; dispatcher.stripe(slowKey) == dispatcher.stripe(otherKey); i++)
+			otherKey = "other" + i;
+		
+		dispatcher.dispatch(slowKey, new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {}
+			}
+		});
+		dispatcher.dispatch(otherKey, new Runnable() {
+			public void run() {
+				other.countDown();
+			}
+		});
+		Assert.assertTrue(other.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		dispatcher.shutdown();
+		
+		try {
+			dispatcher.dispatch(otherKey, new Runnable() { public void run() {} });
+			Assert.fail("Dispatch after shutdown should be rejected");
+		} catch (RejectedExecutionException ree) {
+			// expected
+		}
+		Assert.assertEquals(0, dispatcher.queueDepth());
+		
+		Log.info(Log.FAC_TEST, "Completed testSlowKeyDoesNotBlockOthers");
+	}
+
+	protected static Runnable waitFor(final CountDownLatch started, final CountDownLatch release) {
+		return new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {}
+			}
+		};
+	}
+
+	@Test
+	public void testFullStripeBlocks() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testFullStripeBlocks");
+
+		final StripedDispatcher dispatcher = new StripedDispatcher("StripedDispatcherTest", 1, 2, null);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		dispatcher.dispatch("key", waitFor(started, release));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, dispatcher.busyThreads(0).size());
+		Assert.assertEquals(0, dispatcher.busyThreads(60000).size());
+
+		final CountDownLatch ran = new CountDownLatch(3);
+		Runnable count = new Runnable() {
+			public void run() {
+				ran.countDown();
+			}
+		};
+		dispatcher.dispatch("key", count);
+		dispatcher.dispatch("key", count);
+		final CountDownLatch dispatched = new CountDownLatch(1);
+		final Runnable third = count;
+		Thread blocked = new Thread() {
+			public void run() {
+				dispatcher.dispatch("key", third);
+				dispatched.countDown();
+			}
+		};
+		blocked.start();
+		Assert.assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(3, dispatcher.queueDepth());
+
+		release.countDown();
+		Assert.assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+		dispatcher.shutdown();
+		Assert.assertTrue(dispatcher.awaitTermination(5000));
+		Assert.assertEquals(0, dispatcher.queueDepth());
+
+		Log.info(Log.FAC_TEST, "Completed testFullStripeBlocks");
+	}
+
+	@Test
+	public void testHandover() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testHandover");
+
+		StripedDispatcher old = new StripedDispatcher("StripedDispatcherTest old", 2);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		old.dispatch("key", waitFor(started, release));
+		old.dispatch("key", new Runnable() {
+			public void run() {
+				order.add("old");
+			}
+		});
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// The replacement, on a different number of stripes, must wait for what the old one has
+		StripedDispatcher replacement = new StripedDispatcher("StripedDispatcherTest new", 3, 10, old);
+		old.shutdown();
+		final CountDownLatch done = new CountDownLatch(1);
+		replacement.dispatch("key", new Runnable() {
+			public void run() {
+				order.add("new");
+				done.countDown();
+			}
+		});
+		Assert.assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+		release.countDown();
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(2, order.size());
+		Assert.assertEquals("old", order.get(0));
+		Assert.assertEquals("new", order.get(1));
+		Assert.assertTrue(old.awaitTermination(5000));
+		replacement.shutdownNow();
+		Assert.assertTrue(replacement.awaitTermination(5000));
+
+		Log.info(Log.FAC_TEST, "Completed testHandover");
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.ndnx.ndn.impl.VerificationStage.StatsEnum;
+import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class VerificationStageTest {
+
+	static KeyPair pair;
+	static PublisherPublicKeyDigest publisher;
+
+	/**
+	 * Knows only our test key
+	 */
+	static class TestStage extends VerificationStage {
+		TestStage(int threads, int capacity) {
+			super("VerificationStageTest", threads, capacity, null);
+		}
+
+		@Override
+		protected PublicKey getKey(PublisherPublicKeyDigest id) {
+			return publisher.equals(id) ? pair.getPublic() : null;
+		}
+	}
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512); // go for fast
+		pair = kpg.generateKeyPair();
+		publisher = new PublisherPublicKeyDigest(pair.getPublic());
+	}
+
+	static ContentObject [] makeSegments(String name, int count) throws Exception {
+		SignedInfo si = new SignedInfo(publisher, new KeyLocator(pair.getPublic()));
+		ContentObject [] cos = new ContentObject[count];
+		for (int i = 0; i < count; i++) {
+			cos[i] = new ContentObject(SegmentationProfile.segmentName(new ContentName("test", "stage", name), i),
+									   si, ("segment " + i).getBytes(), (Signature)null);
+		}
+		new NDNMerkleTree(cos, pair.getPrivate());
+		return cos;
+	}
+
+	static long counter(VerificationStage stage, StatsEnum stat) {
+		return stage.getStats().getCounter(stat.toString());
+	}
+
+	@Test
+	public void testOrderAndVerification() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testOrderAndVerification");
+
+		ContentObject [] cos = makeSegments("order", 200);
+		VerificationStage stage = new TestStage(4, 1000);
+		final List<ContentObject> seen = Collections.synchronizedList(new ArrayList<ContentObject>());
+		final CountDownLatch done = new CountDownLatch(cos.length);
+		for (final ContentObject co : cos) {
+			Assert.assertTrue(stage.submit(co, new Runnable() {
+				public void run() {
+					seen.add(co);
+					done.countDown();
+				}
+			}));
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < cos.length; i++)
+			Assert.assertSame(cos[i], seen.get(i));
+		Assert.assertEquals(cos.length, counter(stage, StatsEnum.Verified));
+		Assert.assertEquals(0, counter(stage, StatsEnum.Failed));
+		stage.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testOrderAndVerification");
+	}
+
+	@Test
+	public void testUnverifiedStillDelivered() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testUnverifiedStillDelivered");
+
+		ContentObject good = makeSegments("good", 2)[0];
+		ContentObject bad = new ContentObject(good.name(), good.signedInfo(), "changed".getBytes(), good.signature());
+		ContentObject unknown = new ContentObject(ContentName.fromNative("/test/stage/unknown"),
+				new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), null), "data".getBytes(), good.signature());
+
+		VerificationStage stage = new TestStage(2, 10);
+		final CountDownLatch done = new CountDownLatch(3);
+		Runnable delivery = new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		};
+		stage.submit(good, delivery);
+		stage.submit(bad, delivery);
+		stage.submit(unknown, delivery);
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(1, counter(stage, StatsEnum.Verified));
+		Assert.assertEquals(1, counter(stage, StatsEnum.Failed));
+		Assert.assertEquals(1, counter(stage, StatsEnum.NoKey));
+		stage.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testUnverifiedStillDelivered");
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBackpressure");
+
+		final ContentObject [] cos = makeSegments("backpressure", 4);
+		final VerificationStage stage = new TestStage(1, 2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch submitted = new CountDownLatch(1);
+		final Runnable blocked = new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {}
+			}
+		};
+		Thread submitter = new Thread() {
+			public void run() {
+				try {
+					for (ContentObject co : cos)
+						stage.submit(co, blocked);
+					submitted.countDown();
+				} catch (InterruptedException e) {}
+			}
+		};
+		submitter.start();
+
+		// First delivery holds the delivery thread, one more fits, the rest have to wait
+		Assert.assertFalse(submitted.await(500, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, counter(stage, StatsEnum.Blocked));
+		release.countDown();
+		Assert.assertTrue(submitted.await(10, TimeUnit.SECONDS));
+		stage.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testBackpressure");
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.encoding;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test that encoding into a reused buffer gives the same bytes as the normal encode path.
+ */
+public class BinaryXMLBufferEncoderTest {
+
+	protected static byte [] read(ByteBuffer buffer) {
+		byte [] result = new byte[buffer.remaining()];
+		buffer.get(result);
+		return result;
+	}
+
+	protected static ContentObject contentObject(ContentName name, int length) throws Exception {
+		Random rnd = new Random();
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		byte [] sigBytes = new byte[128];
+		rnd.nextBytes(sigBytes);
+		byte [] content = new byte[length];
+		rnd.nextBytes(content);
+		return new ContentObject(name, new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key"))), content, new Signature(sigBytes));
+	}
+
+	@Test
+	public void testEncode() throws Exception {
+		// Start small so we have to grow the buffer
+		BinaryXMLBufferEncoder encoder = new BinaryXMLBufferEncoder(64);
+		ContentName name = ContentName.fromNative("/test/BinaryXMLBufferEncoder");
+
+		Interest interest = new Interest(name);
+		ByteBuffer buffer = encoder.encode(interest);
+		Assert.assertArrayEquals(interest.encode(), read(buffer));
+
+		ContentObject co = contentObject(name, 4096);
+		buffer = encoder.encode(co);
+		Assert.assertTrue(buffer.isDirect());
+		Assert.assertArrayEquals(co.encode(), encoder.encodedBytes());
+		Assert.assertArrayEquals(co.encode(), read(buffer));
+
+		// And reuse for something smaller
+		co = contentObject(name, 10);
+		Assert.assertArrayEquals(co.encode(), read(encoder.encode(co)));
+	}
+
+	@Test
+	public void testEncodeBatch() throws Exception {
+		BinaryXMLBufferEncoder encoder = new BinaryXMLBufferEncoder(64);
+		ContentName name = ContentName.fromNative("/test/BinaryXMLBufferEncoder/batch");
+		List<XMLEncodable> packets = new ArrayList<XMLEncodable>();
+		for (int i = 0; i < 10; i++) {
+			packets.add(new Interest(new ContentName(name, "interest" + i)));
+			packets.add(contentObject(new ContentName(name, "content" + i), 100 * i));
+		}
+		ByteBuffer [] buffers = encoder.encode(packets);
+		Assert.assertEquals(packets.size(), buffers.length);
+		for (int i = 0; i < buffers.length; i++)
+			Assert.assertArrayEquals(packets.get(i).encode(), read(buffers[i]));
+	}
+
+	@Test
+	public void testRetainedWireEncoding() throws Exception {
+		ContentObject co = contentObject(ContentName.fromNative("/test/BinaryXMLBufferEncoder/wire"), 100);
+		byte [] encoded = co.encode();
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.setRetainWire(true);
+		ContentObject decoded = new ContentObject();
+		decoded.decode(encoded, decoder);
+		Assert.assertTrue(decoded.hasWireEncoding());
+
+		BinaryXMLBufferEncoder encoder = new BinaryXMLBufferEncoder(1024);
+		Assert.assertArrayEquals(encoded, read(encoder.encode(decoded)));
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.FileRef;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+
+/**
+ * Test the LRU and byte budget behaviour of the repository's decoded object cache.
+ */
+public class ContentObjectCacheTest {
+
+	protected static FileRef ref(int id, long offset) {
+		FileRef ref = new FileRef();
+		ref.id = id;
+		ref.offset = offset;
+		return ref;
+	}
+
+	protected static ContentObject contentObject(int i, int length) throws Exception {
+		Random rnd = new Random(i);
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		byte [] sigBytes = new byte[128];
+		rnd.nextBytes(sigBytes);
+		byte [] content = new byte[length];
+		rnd.nextBytes(content);
+		return new ContentObject(ContentName.fromNative("/test/ContentObjectCache/" + i),
+				new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key"))), content, new Signature(sigBytes));
+	}
+
+	protected static long counter(ContentObjectCache cache, ContentObjectCache.StatsEnum counter) {
+		return cache.getStats().getCounter(counter.toString());
+	}
+
+	@Test
+	public void testHitAndMiss() throws Exception {
+		ContentObjectCache cache = new ContentObjectCache(1024 * 1024);
+		ContentObject co = contentObject(1, 100);
+		Assert.assertNull(cache.get(ref(0, 10)));
+		cache.put(ref(0, 10), co);
+		// A new but equal reference must find the entry
+		Assert.assertSame(co, cache.get(ref(0, 10)));
+		Assert.assertNull(cache.get(ref(1, 10)));
+		Assert.assertNull(cache.get(ref(0, 11)));
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(ContentObjectCache.sizeOf(co), cache.bytes());
+
+		Assert.assertEquals(1, counter(cache, ContentObjectCache.StatsEnum.Hits));
+		Assert.assertEquals(3, counter(cache, ContentObjectCache.StatsEnum.Misses));
+		Assert.assertEquals(1, counter(cache, ContentObjectCache.StatsEnum.Inserts));
+		Assert.assertTrue(cache.getStatus().startsWith("Cached objects: 1,"));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		ContentObject [] objects = new ContentObject[10];
+		for (int i = 0; i < objects.length; i++)
+			objects[i] = contentObject(i, 1000);
+		long each = ContentObjectCache.sizeOf(objects[0]);
+
+		// Room for 4 objects
+		ContentObjectCache cache = new ContentObjectCache(4 * each + each / 2);
+		for (int i = 0; i < 4; i++)
+			cache.put(ref(0, i), objects[i]);
+		Assert.assertEquals(4, cache.size());
+
+		// Touch the first so the second is now least recently used
+		Assert.assertNotNull(cache.get(ref(0, 0)));
+		cache.put(ref(0, 4), objects[4]);
+		Assert.assertEquals(4, cache.size());
+		Assert.assertNull(cache.get(ref(0, 1)));
+		Assert.assertSame(objects[0], cache.get(ref(0, 0)));
+		Assert.assertSame(objects[4], cache.get(ref(0, 4)));
+
+		for (int i = 5; i < objects.length; i++)
+			cache.put(ref(0, i), objects[i]);
+		Assert.assertEquals(4, cache.size());
+		Assert.assertTrue(cache.bytes() <= cache.maxBytes());
+		Assert.assertEquals(6, counter(cache, ContentObjectCache.StatsEnum.Evictions));
+	}
+
+	@Test
+	public void testOversizeAndRemove() throws Exception {
+		ContentObject small = contentObject(1, 100);
+		ContentObject big = contentObject(2, 8000);
+		ContentObjectCache cache = new ContentObjectCache(4096);
+
+		cache.put(ref(0, 0), big);
+		Assert.assertEquals(0, cache.size());
+		Assert.assertNull(cache.get(ref(0, 0)));
+
+		cache.put(ref(0, 1), small);
+		Assert.assertEquals(1, cache.size());
+		cache.remove(ref(0, 1));
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.bytes());
+		Assert.assertNull(cache.get(ref(0, 1)));
+
+		cache.put(ref(0, 1), small);
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.bytes());
+	}
+
+	@Test
+	public void testSizeChargedAtInsert() throws Exception {
+		ContentObject co = contentObject(1, 1000);
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.setRetainWire(true);
+		ContentObject wco = new ContentObject();
+		wco.decode(co.encode(), decoder);
+		Assert.assertTrue(wco.hasWireEncoding());
+
+		ContentObjectCache cache = new ContentObjectCache(1024 * 1024);
+		cache.put(ref(0, 0), wco);
+		long charged = ContentObjectCache.sizeOf(wco);
+		Assert.assertEquals(charged, cache.bytes());
+
+		// Dropping the wire encoding changes the estimate but not what we were charged
+		wco.setSignature(co.signature());
+		Assert.assertFalse(wco.hasWireEncoding());
+		Assert.assertTrue(ContentObjectCache.sizeOf(wco) < charged);
+		cache.remove(ref(0, 0));
+		Assert.assertEquals(0, cache.bytes());
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ndnx.ndn.impl.support.ByteArrayCompare;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Exclude;
+import org.ndnx.ndn.protocol.ExcludeAny;
+import org.ndnx.ndn.protocol.ExcludeComponent;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+
+/**
+ * Test ContentTree searches for versions under interests with excludes against
+ * the answers found by checking every version.
+ */
+public class ContentTreeTest {
+
+	public static final int VERSIONS = 500;
+
+	/**
+	 * Holds its content in memory, and counts reads of it
+	 */
+	public static class MemoryRef extends ContentRef {
+		public final ContentObject _content;
+
+		public MemoryRef(ContentObject content) {
+			_content = content;
+		}
+	}
+
+	public static class MemoryGetter implements ContentTree.ContentGetter {
+		public int _reads = 0;
+
+		public ContentObject get(ContentRef ref) {
+			_reads++;
+			return ((MemoryRef)ref)._content;
+		}
+	}
+
+	public static ContentName base;
+	public static ContentTree tree;
+	public static ArrayList<byte []> versions = new ArrayList<byte []>();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		base = ContentName.fromNative("/test/ContentTree/versions");
+		tree = new ContentTree();
+		fill(tree, base, VERSIONS, new Random(1), versions);
+	}
+
+	/**
+	 * Insert the first segment of count versions of base, with random gaps between the versions
+	 */
+	public static void fill(ContentTree tree, ContentName base, int count, Random rnd, ArrayList<byte []> versions) throws Exception {
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		SignedInfo signedInfo = new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key")));
+		byte [] sigBytes = new byte[128];
+		rnd.nextBytes(sigBytes);
+		Signature signature = new Signature(sigBytes);
+		MemoryGetter getter = new MemoryGetter();
+		long version = System.currentTimeMillis() - 86400000L;
+		for (int i = 0; i < count; i++) {
+			version += 1 + rnd.nextInt(1000);
+			ContentName versionName = VersioningProfile.addVersion(base, version);
+			versions.add(versionName.lastComponent());
+			ContentObject co = new ContentObject(SegmentationProfile.segmentName(versionName, SegmentationProfile.baseSegment()),
+					signedInfo, ("version " + i).getBytes(), signature);
+			tree.insert(co, new MemoryRef(co), version, getter, null);
+		}
+	}
+
+	/**
+	 * An exclude of some random ranges and individual versions
+	 */
+	protected static Exclude randomExclude(Random rnd) {
+		TreeSet<byte []> components = new TreeSet<byte []>(new ByteArrayCompare());
+		int count = 1 + rnd.nextInt(40);
+		while (components.size() < count)
+			components.add(versions.get(rnd.nextInt(versions.size())));
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		if (rnd.nextInt(3) == 0)
+			elements.add(new ExcludeAny());
+		for (byte [] component : components) {
+			if (elements.size() > 0 && !(elements.get(elements.size() - 1) instanceof ExcludeAny) && rnd.nextInt(4) == 0)
+				elements.add(new ExcludeAny());
+			elements.add(new ExcludeComponent(component));
+		}
+		if (rnd.nextInt(3) == 0)
+			elements.add(new ExcludeAny());
+		return new Exclude(elements);
+	}
+
+	protected void checkSearch(boolean right) {
+		Random rnd = new Random(right ? 2 : 3);
+		for (int i = 0; i < 500; i++) {
+			Exclude exclude = randomExclude(rnd);
+			Interest interest = new Interest(base);
+			interest.exclude(exclude);
+			if (right)
+				interest.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+
+			byte [] expected = null;
+			for (byte [] version : versions) {
+				if (!exclude.match(version)) {
+					expected = version;
+					if (!right)
+						break;
+				}
+			}
+
+			MemoryGetter getter = new MemoryGetter();
+			ContentObject result = tree.get(interest, getter);
+			if (null == expected) {
+				Assert.assertNull(result);
+			} else {
+				Assert.assertNotNull(result);
+				Assert.assertArrayEquals(expected, result.name().component(base.count()));
+				// Only the answer should have been read
+				Assert.assertEquals(1, getter._reads);
+			}
+		}
+	}
+
+	@Test
+	public void testRightSearchWithExcludes() throws Exception {
+		checkSearch(true);
+	}
+
+	@Test
+	public void testLeftSearchWithExcludes() throws Exception {
+		checkSearch(false);
+	}
+
+	@Test
+	public void testNextVersion() throws Exception {
+		// What Interest.next asks for - the leftmost version after a given one
+		for (int i = 0; i < versions.size() - 1; i += 7) {
+			Interest interest = Interest.next(new ContentName(base, versions.get(i)), base.count(), null);
+			MemoryGetter getter = new MemoryGetter();
+			ContentObject result = tree.get(interest, getter);
+			Assert.assertNotNull(result);
+			Assert.assertArrayEquals(versions.get(i + 1), result.name().component(base.count()));
+		}
+	}
+
+	@Test
+	public void testLatestVersion() throws Exception {
+		Interest interest = VersioningProfile.latestVersionInterest(base, null, null);
+		ContentObject result = tree.get(interest, new MemoryGetter());
+		Assert.assertNotNull(result);
+		Assert.assertArrayEquals(versions.get(versions.size() - 1), result.name().component(base.count()));
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.profiles.nameenum.NameEnumerationResponse;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Signature;
+
+/**
+ * Test that the repository's ingest pipeline saves everything, in order, with and without
+ * preparation threads, and throttles when it falls behind.
+ */
+public class IngestPipelineTest {
+
+	/**
+	 * Records what was committed and when we were asked to throttle
+	 */
+	protected static class RecordingListener implements IngestPipeline.IngestListener {
+		protected final List<ContentObject> _committed = Collections.synchronizedList(new ArrayList<ContentObject>());
+		protected final List<Boolean> _throttles = Collections.synchronizedList(new ArrayList<Boolean>());
+		protected int _largestBatch = 0;
+
+		public void throttle(boolean throttle) {
+			_throttles.add(throttle);
+		}
+
+		public void committed(List<ContentObject> saved, List<NameEnumerationResponse> responses) {
+			_committed.addAll(saved);
+			_largestBatch = Math.max(_largestBatch, saved.size());
+		}
+	}
+
+	/**
+	 * A MemoryRepoStore without a handle
+	 */
+	protected static class TestStore extends MemoryRepoStore {
+		public TestStore() {
+			super(null);
+			_index = new ContentTree();
+		}
+	}
+
+	protected static Thread start(final IngestPipeline pipeline) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				pipeline.run();
+			}
+		}, "IngestPipelineTest");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	protected void checkOrderedIngest(int threads) throws Exception {
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 1000, 100);
+		TestStore store = new TestStore();
+		RecordingListener listener = new RecordingListener();
+		IngestPipeline pipeline = new IngestPipeline("IngestPipelineTest", store, threads, listener);
+		Assert.assertEquals(threads, pipeline.threads());
+		Thread thread = start(pipeline);
+		for (ContentObject co : objects)
+			pipeline.add(co);
+		pipeline.shutdown();
+		thread.join(10000);
+
+		Assert.assertEquals(objects.size(), listener._committed.size());
+		for (int i = 0; i < objects.size(); i++)
+			Assert.assertSame(objects.get(i), listener._committed.get(i));
+		Assert.assertTrue(listener._largestBatch <= IngestPipeline.ACKNOWLEDGE_BATCH);
+		Assert.assertEquals(0, pipeline.queueDepth());
+		for (ContentObject co : objects)
+			Assert.assertTrue(store.hasContent(co.fullName()));
+	}
+
+	@Test
+	public void testSerialIngest() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSerialIngest");
+		checkOrderedIngest(0);
+		Log.info(Log.FAC_TEST, "Completed testSerialIngest");
+	}
+
+	@Test
+	public void testParallelIngest() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testParallelIngest");
+		checkOrderedIngest(4);
+		Log.info(Log.FAC_TEST, "Completed testParallelIngest");
+	}
+
+	protected void checkInvalidNotSaved(int threads) throws Exception {
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 2, 100);
+		ContentObject invalid = new ContentObject(ContentName.fromNative("/test/IngestPipeline/invalid"),
+				objects.get(0).signedInfo(), "no signature".getBytes(), (Signature)null);
+		TestStore store = new TestStore();
+		RecordingListener listener = new RecordingListener();
+		IngestPipeline pipeline = new IngestPipeline("IngestPipelineTest", store, threads, listener);
+		Thread thread = start(pipeline);
+		pipeline.add(objects.get(0));
+		pipeline.add(invalid);
+		pipeline.add(objects.get(1));
+		pipeline.shutdown();
+		thread.join(10000);
+
+		Assert.assertEquals(2, listener._committed.size());
+		Assert.assertSame(objects.get(0), listener._committed.get(0));
+		Assert.assertSame(objects.get(1), listener._committed.get(1));
+		Assert.assertEquals(1, pipeline.getStats().getCounter(IngestPipeline.StatsEnum.Invalid.toString()));
+		Assert.assertEquals(0, pipeline.getStats().getCounter(IngestPipeline.StatsEnum.Errors.toString()));
+	}
+
+	@Test
+	public void testInvalidNotSaved() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testInvalidNotSaved");
+		checkInvalidNotSaved(0);
+		checkInvalidNotSaved(2);
+		Log.info(Log.FAC_TEST, "Completed testInvalidNotSaved");
+	}
+
+	@Test
+	public void testThrottle() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testThrottle");
+
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, IngestPipeline.THROTTLE_TOP + 10, 10);
+		TestStore store = new TestStore();
+		RecordingListener listener = new RecordingListener();
+		IngestPipeline pipeline = new IngestPipeline("IngestPipelineTest", store, 2, listener);
+
+		// Nothing is taken to be saved until run() is called, so the queue must fill
+		for (ContentObject co : objects)
+			pipeline.add(co);
+		Assert.assertEquals(objects.size(), pipeline.queueDepth());
+		Assert.assertEquals(1, listener._throttles.size());
+		Assert.assertTrue(listener._throttles.get(0));
+
+		Thread thread = start(pipeline);
+		pipeline.shutdown();
+		thread.join(10000);
+		Assert.assertEquals(2, listener._throttles.size());
+		Assert.assertFalse(listener._throttles.get(1));
+		Assert.assertEquals(objects.size(), listener._committed.size());
+
+		Log.info(Log.FAC_TEST, "Completed testThrottle");
+	}
+}
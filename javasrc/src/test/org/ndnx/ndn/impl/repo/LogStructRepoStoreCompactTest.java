@@ -0,0 +1,281 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.LogStructRepoStoreProfile;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.RepoFile;
+import org.ndnx.ndn.impl.support.DataUtils;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+
+/**
+ * Test LogStructRepoStore file rollover, and that compaction keeps live content readable, both
+ * straight away and after a restart, while deleting files and versions which are no longer needed.
+ */
+public class LogStructRepoStoreCompactTest {
+
+	protected File _dir;
+	protected long _fileMaxBytes;
+	protected int _batchBytes;
+	protected int _keepVersions;
+	protected long _compactRate;
+
+	@Before
+	public void setUp() throws Exception {
+		_dir = File.createTempFile("LogStructRepoStoreCompactTest", "");
+		_dir.delete();
+		_dir.mkdirs();
+		_fileMaxBytes = SystemConfiguration.REPO_FILE_MAX_BYTES;
+		_batchBytes = SystemConfiguration.REPO_WRITE_BATCH_BYTES;
+		_keepVersions = SystemConfiguration.REPO_KEEP_VERSIONS;
+		_compactRate = SystemConfiguration.REPO_COMPACT_RATE;
+		SystemConfiguration.REPO_FILE_MAX_BYTES = 32 * 1024;
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = 4 * 1024;
+		SystemConfiguration.REPO_COMPACT_RATE = 0;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		SystemConfiguration.REPO_FILE_MAX_BYTES = _fileMaxBytes;
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = _batchBytes;
+		SystemConfiguration.REPO_KEEP_VERSIONS = _keepVersions;
+		SystemConfiguration.REPO_COMPACT_RATE = _compactRate;
+		DataUtils.deleteDirectory(_dir);
+	}
+
+	protected int fileCount() {
+		int count = 0;
+		for (String name : _dir.list()) {
+			if (name.startsWith(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Make count segments of a version of /test/LogStructRepoStoreCompact
+	 */
+	protected static List<ContentObject> makeVersion(long version, int count, int length) throws Exception {
+		Random rnd = new Random(version);
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		SignedInfo signedInfo = new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key")));
+		ContentName name = VersioningProfile.addVersion(ContentName.fromNative("/test/LogStructRepoStoreCompact"), version);
+		ArrayList<ContentObject> objects = new ArrayList<ContentObject>(count);
+		for (int i = 0; i < count; i++) {
+			byte [] content = new byte[length];
+			rnd.nextBytes(content);
+			byte [] sigBytes = new byte[128];
+			rnd.nextBytes(sigBytes);
+			objects.add(new ContentObject(SegmentationProfile.segmentName(name, i), signedInfo, content, new Signature(sigBytes)));
+		}
+		return objects;
+	}
+
+	@Test
+	public void testRollover() throws Exception {
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 200, 1000);
+		for (ContentObject co : objects)
+			store.saveContent(co);
+		LogStructRepoStoreIndexTest.checkObjects(store, objects);
+		store.commit();
+		Assert.assertTrue(fileCount() > 4);
+		for (String name : _dir.list()) {
+			if (name.startsWith(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX))
+				Assert.assertTrue(new File(_dir, name).length() < SystemConfiguration.REPO_FILE_MAX_BYTES + 2048);
+		}
+
+		// From the checkpoint and from the files
+		store.shutDown();
+		LogStructRepoStoreIndexTest.checkObjects(LogStructRepoStoreIndexTest.openStore(_dir), objects);
+		SystemConfiguration.REPO_INDEX_CHECKPOINT = false;
+		try {
+			LogStructRepoStoreIndexTest.checkObjects(LogStructRepoStoreIndexTest.openStore(_dir), objects);
+		} finally {
+			SystemConfiguration.REPO_INDEX_CHECKPOINT = SystemConfiguration.REPO_INDEX_CHECKPOINT_DEFAULT;
+		}
+	}
+
+	@Test
+	public void testCompactDuplicates() throws Exception {
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 100, 1000);
+		for (ContentObject co : objects)
+			store.saveContent(co);
+		// Resaving leaves garbage in the files
+		for (int i = 0; i < 3; i++) {
+			for (ContentObject co : objects)
+				store.saveContent(co);
+		}
+		store.commit();
+		int files = fileCount();
+
+		RepoCompactor compactor = new RepoCompactor(store);
+		Assert.assertTrue(compactor.compact() > 0);
+		Assert.assertTrue(fileCount() < files);
+		Assert.assertEquals(0, compactor.getStats().getCounter(RepoCompactor.StatsEnum.ObjectsPruned.toString()));
+		LogStructRepoStoreIndexTest.checkObjects(store, objects);
+
+		// Nothing left worth compacting
+		Assert.assertEquals(0, compactor.compact());
+
+		store.shutDown();
+		LogStructRepoStoreIndexTest.checkObjects(LogStructRepoStoreIndexTest.openStore(_dir), objects);
+	}
+
+	@Test
+	public void testKeepVersions() throws Exception {
+		SystemConfiguration.REPO_KEEP_VERSIONS = 2;
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+		ArrayList<List<ContentObject>> versions = new ArrayList<List<ContentObject>>();
+		for (int v = 1; v <= 5; v++) {
+			List<ContentObject> version = makeVersion(v, 40, 1000);
+			for (ContentObject co : version)
+				store.saveContent(co);
+			versions.add(version);
+		}
+		store.commit();
+		int files = fileCount();
+
+		RepoCompactor compactor = new RepoCompactor(store);
+		Assert.assertTrue(compactor.compact() > 0);
+		Assert.assertTrue(fileCount() < files);
+		Assert.assertEquals(3 * 40, compactor.getStats().getCounter(RepoCompactor.StatsEnum.ObjectsPruned.toString()));
+		for (int v = 0; v < 3; v++) {
+			for (ContentObject co : versions.get(v))
+				Assert.assertFalse(store.hasContent(co.fullName()));
+		}
+		LogStructRepoStoreIndexTest.checkObjects(store, versions.get(3));
+		LogStructRepoStoreIndexTest.checkObjects(store, versions.get(4));
+
+		// A full rescan of what's left must not bring back more than the pruned versions still
+		// in the file being written
+		store.shutDown();
+		store = LogStructRepoStoreIndexTest.openStore(_dir);
+		LogStructRepoStoreIndexTest.checkObjects(store, versions.get(3));
+		LogStructRepoStoreIndexTest.checkObjects(store, versions.get(4));
+		for (ContentObject co : versions.get(0))
+			Assert.assertFalse(store.hasContent(co.fullName()));
+	}
+
+	@Test
+	public void testPruneSurvivesRestart() throws Exception {
+		SystemConfiguration.REPO_KEEP_VERSIONS = 1;
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+		List<ContentObject> old = makeVersion(1, 5, 100);
+		List<ContentObject> latest = makeVersion(2, 5, 100);
+		for (ContentObject co : old)
+			store.saveContent(co);
+		for (ContentObject co : latest)
+			store.saveContent(co);
+		Assert.assertTrue(store.checkpointIndex());
+
+		// Everything is in the file being written, so this only prunes
+		RepoCompactor compactor = new RepoCompactor(store);
+		Assert.assertEquals(0, compactor.compact());
+		Assert.assertEquals(old.size(), compactor.getStats().getCounter(RepoCompactor.StatsEnum.ObjectsPruned.toString()));
+		store.shutDown();
+
+		store = LogStructRepoStoreIndexTest.openStore(_dir);
+		LogStructRepoStoreIndexTest.checkObjects(store, latest);
+		for (ContentObject co : old)
+			Assert.assertFalse(store.hasContent(co.fullName()));
+
+		// Rereading the files brings the old version back until it is pruned again
+		SystemConfiguration.REPO_INDEX_CHECKPOINT = false;
+		try {
+			store = LogStructRepoStoreIndexTest.openStore(_dir);
+			LogStructRepoStoreIndexTest.checkObjects(store, old);
+			new RepoCompactor(store).compact();
+			for (ContentObject co : old)
+				Assert.assertFalse(store.hasContent(co.fullName()));
+			LogStructRepoStoreIndexTest.checkObjects(store, latest);
+		} finally {
+			SystemConfiguration.REPO_INDEX_CHECKPOINT = SystemConfiguration.REPO_INDEX_CHECKPOINT_DEFAULT;
+		}
+	}
+
+	@Test
+	public void testReclaimWhenUnmapped() throws Exception {
+		boolean mmap = SystemConfiguration.REPO_MMAP_READS;
+		SystemConfiguration.REPO_MMAP_READS = true;
+		try {
+			LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+			List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 100, 1000);
+			for (ContentObject co : objects)
+				store.saveContent(co);
+			for (ContentObject co : objects)
+				store.saveContent(co);
+			store.commit();
+			LogStructRepoStoreIndexTest.checkObjects(store, objects);
+
+			// Hold on to a region of every full file as a reader might
+			ArrayList<ByteBuffer> held = new ArrayList<ByteBuffer>();
+			for (RepoFile rfile : store._files.values()) {
+				if (rfile == store._activeWriteFile)
+					continue;
+				if (null == rfile.mapped)
+					rfile.mapped = new MappedRepoFile(rfile.file);
+				held.add(rfile.mapped.slice(0, rfile.file.length()));
+			}
+
+			RepoCompactor compactor = new RepoCompactor(store);
+			Assert.assertTrue(compactor.compact() > 0);
+			Assert.assertTrue(compactor.unreleasedBytes() > 0);
+			long reclaimed = compactor.getStats().getCounter(RepoCompactor.StatsEnum.BytesReclaimed.toString());
+			for (ByteBuffer buffer : held)
+				Assert.assertTrue(buffer.remaining() > 0);
+
+			// Only counted once the mapping is collected
+			held = null;
+			long deadline = System.currentTimeMillis() + 10000;
+			while (compactor.unreleasedBytes() > 0 && System.currentTimeMillis() < deadline) {
+				System.gc();
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, compactor.unreleasedBytes());
+			Assert.assertTrue(compactor.getStats().getCounter(RepoCompactor.StatsEnum.BytesReclaimed.toString()) > reclaimed);
+			LogStructRepoStoreIndexTest.checkObjects(store, objects);
+			store.shutDown();
+		} finally {
+			SystemConfiguration.REPO_MMAP_READS = mmap;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndnx.ndn.config.UserConfiguration;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.LogStructRepoStoreProfile;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.RepoFile;
+import org.ndnx.ndn.impl.support.DataUtils;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+
+/**
+ * Test that LogStructRepoStore rebuilds the same index from its index checkpoint plus the
+ * content written after it as from reading all its files, and that it ignores unusable
+ * checkpoints. The store is set up without a handle so ndnd is not needed.
+ */
+public class LogStructRepoStoreIndexTest {
+
+	protected File _dir;
+
+	@Before
+	public void setUp() throws Exception {
+		_dir = File.createTempFile("LogStructRepoStoreIndexTest", "");
+		_dir.delete();
+		_dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		DataUtils.deleteDirectory(_dir);
+	}
+
+	/**
+	 * Set up a store on an existing directory of repository files and build its index
+	 */
+	protected static LogStructRepoStore openStore(File dir) {
+		return openStore(dir, new LogStructRepoStore());
+	}
+
+	/**
+	 * Set up a store of our own, such as a subclass, as openStore() does
+	 */
+	protected static LogStructRepoStore openStore(File dir, LogStructRepoStore store) {
+		store._repositoryFile = dir;
+		store._repositoryMeta = dir.getPath() + UserConfiguration.FILE_SEP + LogStructRepoStoreProfile.META_DIR;
+		new File(store._repositoryMeta).mkdirs();
+		store._files = new HashMap<Integer, RepoFile>();
+		store._currentFileIndex = store.createIndex();
+		return store;
+	}
+
+	/**
+	 * Set up a store as openStore() does, ready to save content to
+	 */
+	protected static LogStructRepoStore openWritableStore(File dir) {
+		LogStructRepoStore store = openStore(dir);
+		store.openWriteFile();
+		return store;
+	}
+
+	/**
+	 * Make segments first to first+count-1 of a stream with count byte contents
+	 */
+	protected static List<ContentObject> makeObjects(int first, int count, int length) throws Exception {
+		Random rnd = new Random(first);
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		SignedInfo signedInfo = new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key")));
+		ContentName base = ContentName.fromNative("/test/LogStructRepoStoreIndex");
+		ArrayList<ContentObject> objects = new ArrayList<ContentObject>(count);
+		for (int i = first; i < first + count; i++) {
+			byte [] content = new byte[length];
+			rnd.nextBytes(content);
+			byte [] sigBytes = new byte[128];
+			rnd.nextBytes(sigBytes);
+			objects.add(new ContentObject(SegmentationProfile.segmentName(new ContentName(base, "s" + (i % 10)), i),
+					signedInfo, content, new Signature(sigBytes)));
+		}
+		return objects;
+	}
+
+	/**
+	 * Append objects made by makeObjects() to a repository file
+	 */
+	protected static List<ContentObject> writeObjects(File dir, int fileId, int first, int count, int length) 
+			throws Exception {
+		List<ContentObject> objects = makeObjects(first, count, length);
+		FileOutputStream fos = new FileOutputStream(new File(dir, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + fileId), true);
+		try {
+			for (ContentObject co : objects)
+				fos.write(co.encode());
+		} finally {
+			fos.close();
+		}
+		return objects;
+	}
+
+	protected static void checkObjects(LogStructRepoStore store, List<ContentObject> objects) throws Exception {
+		for (ContentObject co : objects) {
+			Assert.assertTrue(store.hasContent(co.fullName()));
+			Assert.assertEquals(co, store.getContent(new Interest(co.name())));
+		}
+	}
+
+	protected File checkpointFile() {
+		return new File(new File(_dir, LogStructRepoStoreProfile.META_DIR), LogStructRepoStoreProfile.INDEX_CHECKPOINT_FILE);
+	}
+
+	@Test
+	public void testCheckpointAndReplay() throws Exception {
+		List<ContentObject> objects = writeObjects(_dir, 1, 0, 200, 100);
+		LogStructRepoStore store = openStore(_dir);
+		Assert.assertNull(store._checkpointExtents);
+		checkObjects(store, objects);
+		Assert.assertTrue(store.checkpointIndex());
+		Assert.assertTrue(checkpointFile().exists());
+		// Nothing changed so nothing to do
+		Assert.assertFalse(store.checkpointIndex());
+
+		// Content written after the checkpoint, in the same and a new file
+		objects.addAll(writeObjects(_dir, 1, 200, 50, 100));
+		objects.addAll(writeObjects(_dir, 2, 250, 30, 100));
+		store = openStore(_dir);
+		Assert.assertNotNull(store._checkpointExtents);
+		Assert.assertEquals(1, store._checkpointExtents.size());
+		checkObjects(store, objects);
+
+		// And again from a checkpoint covering both files
+		Assert.assertTrue(store.checkpointIndex());
+		store = openStore(_dir);
+		Assert.assertEquals(2, store._checkpointExtents.size());
+		checkObjects(store, objects);
+	}
+
+	@Test
+	public void testBadCheckpoint() throws Exception {
+		List<ContentObject> objects = writeObjects(_dir, 1, 0, 100, 100);
+		LogStructRepoStore store = openStore(_dir);
+		Assert.assertTrue(store.checkpointIndex());
+
+		// Corrupt the checkpoint
+		RandomAccessFile raf = new RandomAccessFile(checkpointFile(), "rw");
+		raf.seek(raf.length() / 2);
+		int b = raf.read();
+		raf.seek(raf.length() / 2);
+		raf.write(b ^ 0xff);
+		raf.close();
+		store = openStore(_dir);
+		Assert.assertNull(store._checkpointExtents);
+		checkObjects(store, objects);
+
+		// Repository file shorter than when checkpointed
+		Assert.assertTrue(store.checkpointIndex());
+		truncate(new File(_dir, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + 1), 10);
+		store = openStore(_dir);
+		Assert.assertNull(store._checkpointExtents);
+		Assert.assertFalse(store.hasContent(objects.get(objects.size() - 1).fullName()));
+	}
+
+	protected static void truncate(File file, long by) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - by);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.config.SystemConfiguration.RepoSyncMode;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.LogStructRepoStoreProfile;
+import org.ndnx.ndn.impl.support.DataUtils;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+
+/**
+ * Test batched saves to LogStructRepoStore: content is readable as soon as it is saved,
+ * is written when the batch fills or is committed, and ends up in the file in the order saved.
+ */
+public class LogStructRepoStoreWriteTest {
+
+	protected File _dir;
+	protected int _batchBytes;
+	protected RepoSyncMode _syncMode;
+
+	@Before
+	public void setUp() throws Exception {
+		_dir = File.createTempFile("LogStructRepoStoreWriteTest", "");
+		_dir.delete();
+		_dir.mkdirs();
+		_batchBytes = SystemConfiguration.REPO_WRITE_BATCH_BYTES;
+		_syncMode = SystemConfiguration.REPO_SYNC_MODE;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = _batchBytes;
+		SystemConfiguration.REPO_SYNC_MODE = _syncMode;
+		DataUtils.deleteDirectory(_dir);
+	}
+
+	protected File repoFile() {
+		return new File(_dir, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + 1);
+	}
+
+	@Test
+	public void testCommit() throws Exception {
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = 1024 * 1024;
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 100, 500);
+		for (ContentObject co : objects)
+			store.saveContent(co);
+
+		// Not written yet but we can read it
+		Assert.assertEquals(0, repoFile().length());
+		LogStructRepoStoreIndexTest.checkObjects(store, objects);
+
+		store.commit();
+		long length = repoFile().length();
+		Assert.assertEquals(store._activeWriteFile.nextWritePos, length);
+		Assert.assertEquals(length, store._activeWriteFile.writtenPos);
+		Assert.assertTrue(store._unwritten.isEmpty());
+		LogStructRepoStoreIndexTest.checkObjects(store, objects);
+
+		// Nothing more to do
+		store.commit();
+		Assert.assertEquals(length, repoFile().length());
+
+		// The file holds exactly what was saved
+		LogStructRepoStoreIndexTest.checkObjects(LogStructRepoStoreIndexTest.openStore(_dir), objects);
+	}
+
+	@Test
+	public void testFailedCommit() throws Exception {
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = 1024 * 1024;
+		SystemConfiguration.REPO_SYNC_MODE = RepoSyncMode.NONE;
+		final int [] failures = new int[] { 0 };
+		LogStructRepoStore store = new LogStructRepoStore() {
+			@Override
+			protected int writeBatch(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+				if (failures[0] > 0) {
+					failures[0]--;
+					// Get some of it out before failing
+					ByteBuffer part = buffer.duplicate();
+					part.limit(part.position() + part.remaining() / 2);
+					int written = channel.write(part, position);
+					buffer.position(buffer.position() + written);
+					throw new IOException("Injected write failure");
+				}
+				return super.writeBatch(channel, buffer, position);
+			}
+		};
+		LogStructRepoStoreIndexTest.openStore(_dir, store);
+		store.openWriteFile();
+
+		List<ContentObject> first = LogStructRepoStoreIndexTest.makeObjects(0, 50, 500);
+		for (ContentObject co : first)
+			store.saveContent(co);
+		long firstEnd = store._activeWriteFile.nextWritePos;
+		failures[0] = 1;
+		try {
+			store.commit();
+			Assert.fail("Commit should have failed");
+		} catch (RepositoryException e) {}
+
+		// Nothing is lost, and the batch is still to be written from the start of the file
+		Assert.assertEquals(0, store._batchStart);
+		Assert.assertEquals(firstEnd, store._activeWriteFile.nextWritePos);
+		Assert.assertEquals(0, store._activeWriteFile.writtenPos);
+		Assert.assertEquals(first.size(), store._unwritten.size());
+		// (hasContent() would commit)
+		for (ContentObject co : first)
+			Assert.assertEquals(co, store.getContent(new Interest(co.name())));
+
+		// Content saved after the failure goes after what failed
+		List<ContentObject> second = LogStructRepoStoreIndexTest.makeObjects(50, 50, 500);
+		for (ContentObject co : second)
+			store.saveContent(co);
+		store.commit();
+		Assert.assertEquals(store._activeWriteFile.nextWritePos, repoFile().length());
+		Assert.assertEquals(store._activeWriteFile.nextWritePos, store._activeWriteFile.writtenPos);
+		Assert.assertTrue(store._unwritten.isEmpty());
+		LogStructRepoStoreIndexTest.checkObjects(store, first);
+		LogStructRepoStoreIndexTest.checkObjects(store, second);
+
+		// and a full scan finds all of it
+		LogStructRepoStore reopened = LogStructRepoStoreIndexTest.openStore(_dir);
+		LogStructRepoStoreIndexTest.checkObjects(reopened, first);
+		LogStructRepoStoreIndexTest.checkObjects(reopened, second);
+	}
+
+	@Test
+	public void testBatchFills() throws Exception {
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = 8 * 1024;
+		SystemConfiguration.REPO_SYNC_MODE = RepoSyncMode.BATCH;
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 100, 1000);
+		for (ContentObject co : objects) {
+			store.saveContent(co);
+			Assert.assertTrue(store._activeWriteFile.nextWritePos - repoFile().length() < 
+					SystemConfiguration.REPO_WRITE_BATCH_BYTES);
+		}
+		Assert.assertTrue(repoFile().length() > 0);
+		store.shutDown();
+		Assert.assertEquals(store._activeWriteFile.nextWritePos, repoFile().length());
+		LogStructRepoStoreIndexTest.checkObjects(LogStructRepoStoreIndexTest.openStore(_dir), objects);
+	}
+
+	@Test
+	public void testUnbatched() throws Exception {
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = 0;
+		SystemConfiguration.REPO_SYNC_MODE = RepoSyncMode.PERIODIC;
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(_dir);
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, 20, 1000);
+		for (ContentObject co : objects) {
+			store.saveContent(co);
+			Assert.assertEquals(store._activeWriteFile.nextWritePos, repoFile().length());
+		}
+		Assert.assertTrue(store._syncNeeded);
+		store.sync();
+		Assert.assertFalse(store._syncNeeded);
+		LogStructRepoStoreIndexTest.checkObjects(LogStructRepoStoreIndexTest.openStore(_dir), objects);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
+import org.ndnx.ndn.impl.encoding.ByteBufferInputStream;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.LogStructRepoStoreProfile;
+import org.ndnx.ndn.impl.support.DataUtils;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+
+/**
+ * Test reading repository content through memory mappings, including objects which
+ * start near the end of a mapped region and a file which grows while mapped.
+ */
+public class MappedRepoFileTest {
+
+	protected File _dir;
+
+	@Before
+	public void setUp() throws Exception {
+		_dir = File.createTempFile("MappedRepoFileTest", "");
+		_dir.delete();
+		_dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		DataUtils.deleteDirectory(_dir);
+	}
+
+	protected static ContentObject decode(ByteBuffer buffer) throws Exception {
+		ContentObject co = new ContentObject();
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.beginDecoding(new ByteBufferInputStream(buffer));
+		co.decode(decoder);
+		decoder.endDecoding();
+		return co;
+	}
+
+	protected static long [] offsets(List<ContentObject> objects, long start) throws Exception {
+		long [] offsets = new long[objects.size()];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = start;
+			start += objects.get(i).encode().length;
+		}
+		return offsets;
+	}
+
+	@Test
+	public void testRegions() throws Exception {
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.writeObjects(_dir, 1, 0, 100, 300);
+		File file = new File(_dir, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + 1);
+		long length = file.length();
+		long [] offsets = offsets(objects, 0);
+
+		// Regions much smaller than the file so many objects span a region boundary
+		MappedRepoFile mapped = new MappedRepoFile(file, 1000);
+		try {
+			for (int i = 0; i < offsets.length; i++)
+				Assert.assertEquals(objects.get(i), decode(mapped.slice(offsets[i], length)));
+			Assert.assertEquals(length, mapped.mappedLength());
+			Assert.assertNull(mapped.slice(length, length));
+
+			// Grow the file, the old part is still readable and the new once we say it's there
+			List<ContentObject> more = LogStructRepoStoreIndexTest.writeObjects(_dir, 1, 100, 20, 300);
+			long [] moreOffsets = offsets(more, length);
+			Assert.assertNull(mapped.slice(moreOffsets[0], length));
+			long newLength = file.length();
+			for (int i = 0; i < moreOffsets.length; i++)
+				Assert.assertEquals(more.get(i), decode(mapped.slice(moreOffsets[i], newLength)));
+			Assert.assertEquals(objects.get(0), decode(mapped.slice(0, newLength)));
+			Assert.assertEquals(newLength, mapped.mappedLength());
+		} finally {
+			mapped.close();
+		}
+	}
+
+	@Test
+	public void testConcurrentStoreReads() throws Exception {
+		final List<ContentObject> objects = LogStructRepoStoreIndexTest.writeObjects(_dir, 1, 0, 500, 300);
+		boolean mmap = SystemConfiguration.REPO_MMAP_READS;
+		SystemConfiguration.REPO_MMAP_READS = true;
+		try {
+			final LogStructRepoStore store = LogStructRepoStoreIndexTest.openStore(_dir);
+			final ArrayList<Throwable> failures = new ArrayList<Throwable>();
+			Thread [] readers = new Thread[4];
+			for (int t = 0; t < readers.length; t++) {
+				final int first = t;
+				readers[t] = new Thread() {
+					public void run() {
+						try {
+							for (int i = first; i < objects.size(); i += 2) {
+								ContentObject co = objects.get(i);
+								Assert.assertEquals(co, store.getContent(new Interest(co.name())));
+							}
+						} catch (Throwable e) {
+							synchronized (failures) {
+								failures.add(e);
+							}
+						}
+					}
+				};
+				readers[t].start();
+			}
+			for (Thread reader : readers)
+				reader.join();
+			Assert.assertTrue(failures.toString(), failures.isEmpty());
+			Assert.assertNotNull(store._files.get(1).mapped);
+		} finally {
+			SystemConfiguration.REPO_MMAP_READS = mmap;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.List;
+
+import org.junit.Test;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.config.SystemConfiguration.RepoSyncMode;
+import org.ndnx.ndn.impl.support.DataUtils;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures LogStructRepoStore ingest throughput for 4KB segments with
+ * and without write batching, under each sync mode. Content is committed every
+ * RepositoryDataHandler.ACKNOWLEDGE_BATCH saves as the data handler does.
+ * No ndnd is needed.
+ */
+public class RepoIngestBenchmarkTest {
+
+	public static final int SEGMENT_LENGTH = 4096;
+	public static final int NUM_SEGMENTS = 10000;
+	public static final int NUM_SYNCED_SEGMENTS = 500;	// For an fsync per segment
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	protected void runBenchmark(List<ContentObject> objects, int count, int batchBytes, RepoSyncMode mode) throws Exception {
+		int oldBatchBytes = SystemConfiguration.REPO_WRITE_BATCH_BYTES;
+		RepoSyncMode oldMode = SystemConfiguration.REPO_SYNC_MODE;
+		SystemConfiguration.REPO_WRITE_BATCH_BYTES = batchBytes;
+		SystemConfiguration.REPO_SYNC_MODE = mode;
+		File dir = File.createTempFile("RepoIngestBenchmark", "");
+		dir.delete();
+		dir.mkdirs();
+		try {
+			LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(dir);
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				store.saveContent(objects.get(i));
+				if ((i + 1) % RepositoryDataHandler.ACKNOWLEDGE_BATCH == 0)
+					store.commit();
+			}
+			store.commit();
+			if (mode == RepoSyncMode.PERIODIC)
+				store.sync();
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+			long bytes = store._activeWriteFile.nextWritePos;
+			System.out.println("Batch " + batchBytes + " bytes, sync " + mode + ": " + count + " segments, " + 
+					format.format(count / seconds) + " segments/s, " +
+					format.format(bytes / seconds / (1024 * 1024)) + " MB/s");
+		} finally {
+			SystemConfiguration.REPO_WRITE_BATCH_BYTES = oldBatchBytes;
+			SystemConfiguration.REPO_SYNC_MODE = oldMode;
+			DataUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testIngest() throws Exception {
+		format.setMaximumFractionDigits(1);
+		System.out.println("==== Repository ingest of " + SEGMENT_LENGTH + " byte segments");
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, NUM_SEGMENTS, SEGMENT_LENGTH);
+
+		// Warm up
+		runBenchmark(objects, NUM_SEGMENTS, 0, RepoSyncMode.NONE);
+
+		runBenchmark(objects, NUM_SEGMENTS, 0, RepoSyncMode.NONE);
+		runBenchmark(objects, NUM_SEGMENTS, SystemConfiguration.REPO_WRITE_BATCH_BYTES_DEFAULT, RepoSyncMode.NONE);
+		runBenchmark(objects, NUM_SEGMENTS, SystemConfiguration.REPO_WRITE_BATCH_BYTES_DEFAULT, RepoSyncMode.PERIODIC);
+		runBenchmark(objects, NUM_SEGMENTS, SystemConfiguration.REPO_WRITE_BATCH_BYTES_DEFAULT, RepoSyncMode.BATCH);
+		runBenchmark(objects, NUM_SYNCED_SEGMENTS, 0, RepoSyncMode.BATCH);
+	}
+}
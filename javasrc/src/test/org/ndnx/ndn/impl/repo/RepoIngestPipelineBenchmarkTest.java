@@ -0,0 +1,102 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.List;
+
+import org.junit.Test;
+import org.ndnx.ndn.impl.support.DataUtils;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures end to end repository ingest throughput through the
+ * IngestPipeline used by RepositoryDataHandler, for MemoryRepoStore and LogStructRepoStore,
+ * with content prepared by the saving thread and by increasing numbers of preparation
+ * threads. The objects are freshly made for each run so that their digests have to be
+ * calculated, as they would for content arriving from the network.
+ * No ndnd is needed.
+ */
+public class RepoIngestPipelineBenchmarkTest {
+
+	public static final int SEGMENT_LENGTH = 4096;
+	public static final int NUM_SEGMENTS = 10000;
+	public static final int [] THREADS = {0, 1, 2, 4};
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	protected void runBenchmark(String storeName, RepositoryStore store, int threads) throws Exception {
+		List<ContentObject> objects = LogStructRepoStoreIndexTest.makeObjects(0, NUM_SEGMENTS, SEGMENT_LENGTH);
+		final IngestPipeline pipeline = new IngestPipeline("RepoIngestPipelineBenchmark", store, threads, null);
+		Thread saver = new Thread(new Runnable() {
+			public void run() {
+				pipeline.run();
+			}
+		});
+		saver.start();
+		long start = System.nanoTime();
+		for (ContentObject co : objects)
+			pipeline.add(co);
+		pipeline.shutdown();
+		saver.join();
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		System.out.println(storeName + ", " + threads + " prepare threads: " + NUM_SEGMENTS + " segments, " +
+				format.format(NUM_SEGMENTS / seconds) + " segments/s, avg. latency " +
+				format.format(pipeline.getStats().getAverageAndStdev(IngestPipeline.StatsEnum.Latency.toString())[0] / 1000) + " us");
+	}
+
+	protected void runMemory(int threads) throws Exception {
+		MemoryRepoStore store = new MemoryRepoStore(null);
+		store._index = new ContentTree();
+		runBenchmark("MemoryRepoStore", store, threads);
+	}
+
+	protected void runLogStruct(int threads) throws Exception {
+		File dir = File.createTempFile("RepoIngestPipelineBenchmark", "");
+		dir.delete();
+		dir.mkdirs();
+		try {
+			LogStructRepoStore store = LogStructRepoStoreIndexTest.openWritableStore(dir);
+			runBenchmark("LogStructRepoStore", store, threads);
+			store.shutDown();
+		} finally {
+			DataUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testIngestPipeline() throws Exception {
+		format.setMaximumFractionDigits(1);
+		System.out.println("==== Repository pipelined ingest of " + SEGMENT_LENGTH + " byte segments, " +
+				Runtime.getRuntime().availableProcessors() + " processors");
+
+		// Warm up
+		runMemory(0);
+
+		for (int threads : THREADS)
+			runMemory(threads);
+		for (int threads : THREADS)
+			runLogStruct(threads);
+	}
+}
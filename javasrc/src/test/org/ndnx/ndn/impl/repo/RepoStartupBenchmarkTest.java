@@ -0,0 +1,86 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.File;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ndnx.ndn.impl.support.DataUtils;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures how long LogStructRepoStore takes to rebuild its index on startup
+ * for increasing repository sizes, by reading all of the repository files as it used to, from an
+ * index checkpoint, and from a checkpoint plus 10% more content written after it.
+ * No ndnd is needed.
+ */
+public class RepoStartupBenchmarkTest {
+
+	public static final int [] REPO_SIZES = { 10000, 40000, 160000 };
+	public static final int CONTENT_LENGTH = 256;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	protected static long timeOpen(File dir, boolean expectCheckpoint) {
+		long start = System.nanoTime();
+		LogStructRepoStore store = LogStructRepoStoreIndexTest.openStore(dir);
+		long dur = System.nanoTime() - start;
+		Assert.assertEquals(expectCheckpoint, null != store._checkpointExtents);
+		return dur / 1000000;
+	}
+
+	@Test
+	public void testStartup() throws Exception {
+		format.setMaximumFractionDigits(1);
+		System.out.println("==== Repository index startup time, " + CONTENT_LENGTH + " byte objects");
+		for (int size : REPO_SIZES) {
+			File dir = File.createTempFile("RepoStartupBenchmark", "");
+			dir.delete();
+			dir.mkdirs();
+			try {
+				List<ContentObject> objects = LogStructRepoStoreIndexTest.writeObjects(dir, 1, 0, size, CONTENT_LENGTH);
+				long repoBytes = new File(dir, LogStructRepoStore.LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + 1).length();
+
+				long fullScan = timeOpen(dir, false);
+				LogStructRepoStore store = LogStructRepoStoreIndexTest.openStore(dir);
+				long start = System.nanoTime();
+				Assert.assertTrue(store.checkpointIndex());
+				long write = (System.nanoTime() - start) / 1000000;
+				long fromCheckpoint = timeOpen(dir, true);
+
+				objects.addAll(LogStructRepoStoreIndexTest.writeObjects(dir, 1, size, size / 10, CONTENT_LENGTH));
+				long withTail = timeOpen(dir, true);
+
+				System.out.println(size + " objects (" + format.format(repoBytes / (1024.0 * 1024.0)) + " MB): full scan " + 
+						fullScan + " ms, checkpoint write " + write + " ms, load checkpoint " + fromCheckpoint + 
+						" ms, load checkpoint + 10% tail " + withTail + " ms, speedup " + 
+						format.format((double)fullScan / Math.max(1, fromCheckpoint)) + "x");
+			} finally {
+				DataUtils.deleteDirectory(dir);
+			}
+		}
+	}
+}
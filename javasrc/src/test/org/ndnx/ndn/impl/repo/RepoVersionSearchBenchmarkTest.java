@@ -0,0 +1,124 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ndnx.ndn.impl.repo.ContentTreeTest.MemoryGetter;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Exclude;
+import org.ndnx.ndn.protocol.ExcludeAny;
+import org.ndnx.ndn.protocol.ExcludeComponent;
+import org.ndnx.ndn.protocol.Interest;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times the repository's ContentTree answering version discovery
+ * interests for a name with 10k versions - the latest version, the latest version after
+ * a known one as getLatestVersion asks, the next version after a known one, and the latest
+ * version with the newest 200 versions excluded as VersioningInterestManager asks. Content
+ * is held in memory, so the times don't include reading from disk; the number of objects
+ * read per query is reported instead. It does not need a running ndnd.
+ */
+public class RepoVersionSearchBenchmarkTest {
+
+	public static final int VERSIONS = 10000;
+	public static final int EXCLUDED = 200;
+	public static final int NUM_ITER = 1000;
+
+	public static final double NanoToMicro = 1000.0d;
+
+	public static ContentName base;
+	public static ContentTree tree;
+	public static ArrayList<byte []> versions = new ArrayList<byte []>();
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		base = ContentName.fromNative("/test/RepoVersionSearchBenchmark/versions");
+		tree = new ContentTree();
+		ContentTreeTest.fill(tree, base, VERSIONS, new Random(1), versions);
+		format.setMaximumFractionDigits(3);
+	}
+
+	protected void runBenchmark(String desc, Interest [] interests, int [] expected) {
+		// Warm up and check the answers while we're at it
+		for (int i = 0; i < interests.length; i++) {
+			ContentObject result = tree.get(interests[i], new MemoryGetter());
+			Assert.assertNotNull(result);
+			Assert.assertArrayEquals(versions.get(expected[i]), result.name().component(base.count()));
+		}
+
+		MemoryGetter getter = new MemoryGetter();
+		long start = System.nanoTime();
+		for (int i = 0; i < NUM_ITER; i++)
+			tree.get(interests[i % interests.length], getter);
+		long dur = System.nanoTime() - start;
+		System.out.println("Avg. to find " + desc + " (" + NUM_ITER + " iterations) = " +
+				format.format(dur/(double)NUM_ITER/NanoToMicro) + " us, " +
+				format.format(getter._reads/(double)NUM_ITER) + " objects read.");
+	}
+
+	@Test
+	public void testVersionSearch() throws Exception {
+		System.out.println("==== Version discovery in a ContentTree with " + VERSIONS + " versions");
+		Random rnd = new Random(2);
+
+		runBenchmark("the latest version", new Interest[] {VersioningProfile.latestVersionInterest(base, null, null)},
+				new int[] {VERSIONS - 1});
+
+		Interest [] interests = new Interest[100];
+		int [] expected = new int[interests.length];
+		for (int i = 0; i < interests.length; i++) {
+			int known = rnd.nextInt(VERSIONS - 1);
+			interests[i] = VersioningProfile.latestVersionInterest(new ContentName(base, versions.get(known)), null, null);
+			expected[i] = VERSIONS - 1;
+		}
+		runBenchmark("the latest version after a known version", interests, expected);
+
+		for (int i = 0; i < interests.length; i++) {
+			int known = rnd.nextInt(VERSIONS - 1);
+			interests[i] = Interest.next(new ContentName(base, versions.get(known)), base.count(), null);
+			expected[i] = known + 1;
+		}
+		runBenchmark("the next version after a known version", interests, expected);
+
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		for (int i = VERSIONS - EXCLUDED; i < VERSIONS; i++)
+			elements.add(new ExcludeComponent(versions.get(i)));
+		elements.add(new ExcludeComponent(VersioningProfile.TOP_EXCLUDE_VERSION_MARKER));
+		elements.add(new ExcludeAny());
+		Interest interest = new Interest(base);
+		interest.exclude(new Exclude(elements));
+		interest.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		runBenchmark("the latest version with the newest " + EXCLUDED + " excluded", new Interest[] {interest},
+				new int[] {VERSIONS - EXCLUDED - 1});
+	}
+}
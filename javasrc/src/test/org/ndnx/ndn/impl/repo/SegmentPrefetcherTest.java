@@ -0,0 +1,173 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ndnx.ndn.impl.repo.ContentTreeTest.MemoryRef;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+
+/**
+ * Test that the repository's segment prefetcher reads ahead of sequential readers, and
+ * only of those.
+ */
+public class SegmentPrefetcherTest {
+
+	public static final int SEGMENTS = 100;
+	public static final int DEPTH = 8;
+
+	/**
+	 * Records which segments have been read
+	 */
+	protected static class RecordingGetter implements ContentTree.ContentGetter {
+		protected final Set<Long> _read = Collections.synchronizedSet(new HashSet<Long>());
+
+		public ContentObject get(ContentRef ref) {
+			ContentObject co = ((MemoryRef)ref)._content;
+			_read.add(SegmentationProfile.getSegmentNumber(co.name()));
+			return co;
+		}
+	}
+
+	public static ContentName stream;
+	public static ContentTree tree;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		stream = ContentName.fromNative("/test/SegmentPrefetcher/stream");
+		tree = new ContentTree();
+		Random rnd = new Random(1);
+		byte [] publisher = new byte[32];
+		rnd.nextBytes(publisher);
+		SignedInfo signedInfo = new SignedInfo(new PublisherPublicKeyDigest(publisher),
+				new KeyLocator(ContentName.fromNative("/test/key")));
+		byte [] sigBytes = new byte[128];
+		rnd.nextBytes(sigBytes);
+		Signature signature = new Signature(sigBytes);
+		ContentTreeTest.MemoryGetter getter = new ContentTreeTest.MemoryGetter();
+		for (int i = 0; i < SEGMENTS; i++) {
+			ContentObject co = new ContentObject(SegmentationProfile.segmentName(stream, i), signedInfo,
+					("segment " + i).getBytes(), signature);
+			tree.insert(co, new MemoryRef(co), i, getter, null);
+		}
+	}
+
+	protected static long counter(SegmentPrefetcher prefetcher, SegmentPrefetcher.StatsEnum stat) {
+		return prefetcher.getStats().getCounter(stat.toString());
+	}
+
+	protected static void waitFor(SegmentPrefetcher prefetcher, SegmentPrefetcher.StatsEnum stat, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (counter(prefetcher, stat) < count && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+	}
+
+	@Test
+	public void testSequentialReader() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSequentialReader");
+
+		RecordingGetter getter = new RecordingGetter();
+		SegmentPrefetcher prefetcher = new SegmentPrefetcher("SegmentPrefetcherTest", tree, getter, DEPTH);
+		for (int i = 0; i < SEGMENTS; i++) {
+			prefetcher.accessed(SegmentationProfile.segmentName(stream, i));
+			// Give the prefetch thread a chance to keep ahead
+			if (i % DEPTH == 0)
+				Thread.sleep(20);
+		}
+		waitFor(prefetcher, SegmentPrefetcher.StatsEnum.Missing, 1);
+
+		// Everything after the first two reads should have been read ahead
+		for (long i = 2; i < SEGMENTS; i++)
+			Assert.assertTrue("segment " + i + " not prefetched", getter._read.contains(i));
+		Assert.assertEquals(SEGMENTS - 2, counter(prefetcher, SegmentPrefetcher.StatsEnum.Prefetched));
+		Assert.assertEquals(SEGMENTS - 2, counter(prefetcher, SegmentPrefetcher.StatsEnum.Useful));
+		// Reads near the end keep looking for segments past it, in case they are still being written
+		Assert.assertTrue(counter(prefetcher, SegmentPrefetcher.StatsEnum.Missing) >= 1);
+		Assert.assertEquals(DEPTH, prefetcher.depth(stream));
+		prefetcher.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testSequentialReader");
+	}
+
+	@Test
+	public void testRandomReader() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testRandomReader");
+
+		RecordingGetter getter = new RecordingGetter();
+		SegmentPrefetcher prefetcher = new SegmentPrefetcher("SegmentPrefetcherTest", tree, getter, DEPTH);
+		Random rnd = new Random(2);
+		long last = -1;
+		for (int i = 0; i < SEGMENTS; i++) {
+			long segment;
+			do {
+				segment = rnd.nextInt(SEGMENTS);
+			} while (segment == last + 1);
+			prefetcher.accessed(SegmentationProfile.segmentName(stream, segment));
+			last = segment;
+		}
+		Thread.sleep(100);
+		Assert.assertEquals(0, getter._read.size());
+		Assert.assertEquals(0, counter(prefetcher, SegmentPrefetcher.StatsEnum.Prefetched));
+		Assert.assertEquals(0, prefetcher.depth(stream));
+
+		// Unsegmented names are ignored
+		prefetcher.accessed(stream);
+		Assert.assertEquals(1, prefetcher.streams());
+		prefetcher.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testRandomReader");
+	}
+
+	@Test
+	public void testJumpCountsWasted() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testJumpCountsWasted");
+
+		RecordingGetter getter = new RecordingGetter();
+		SegmentPrefetcher prefetcher = new SegmentPrefetcher("SegmentPrefetcherTest", tree, getter, DEPTH);
+		prefetcher.accessed(SegmentationProfile.segmentName(stream, 10));
+		prefetcher.accessed(SegmentationProfile.segmentName(stream, 11));
+		waitFor(prefetcher, SegmentPrefetcher.StatsEnum.Prefetched, SegmentPrefetcher.MIN_DEPTH);
+		Assert.assertEquals(SegmentPrefetcher.MIN_DEPTH, counter(prefetcher, SegmentPrefetcher.StatsEnum.Prefetched));
+		Assert.assertTrue(getter._read.contains(12L));
+		Assert.assertTrue(getter._read.contains(13L));
+
+		// Seek elsewhere - what we read ahead is wasted and the depth starts again
+		prefetcher.accessed(SegmentationProfile.segmentName(stream, 50));
+		Assert.assertEquals(SegmentPrefetcher.MIN_DEPTH, counter(prefetcher, SegmentPrefetcher.StatsEnum.Wasted));
+		Assert.assertEquals(0, prefetcher.depth(stream));
+		prefetcher.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testJumpCountsWasted");
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+package org.ndnx.ndn.io;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ndnx.ndn.KeyManager;
+import org.ndnx.ndn.NDNHandle;
+import org.ndnx.ndn.NDNTestHelper;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.security.crypto.ContentKeys;
+import org.ndnx.ndn.impl.security.crypto.StaticContentKeys;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.SignedInfo.ContentType;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times reading a plaintext and an encrypted segmented stream through the
+ * local ndnd, decrypting on the reader's thread and with SystemConfiguration.DECRYPT_THREADS
+ * decrypting pipelined segments ahead of the reader.
+ */
+public class EncryptedStreamBenchmarkTest {
+
+	public static final int SEGMENTS = 2000;
+	public static final int SEGMENT_LENGTH = 4096;
+	public static final int NUM_ITER = 3;
+	public static final int DECRYPT_THREADS = 4;
+
+	public static NDNTestHelper testHelper = new NDNTestHelper(EncryptedStreamBenchmarkTest.class);
+	public static NDNHandle readHandle;
+	public static NDNHandle writeHandle;
+	public static ContentName plainName;
+	public static ContentName encryptedName;
+	public static ContentKeys keys;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		readHandle = NDNHandle.open();
+		writeHandle = NDNHandle.open();
+		plainName = VersioningProfile.addVersion(new ContentName(testHelper.getTestNamespace("encryptedStreamBenchmark"), "plain"));
+		encryptedName = VersioningProfile.addVersion(new ContentName(testHelper.getTestNamespace("encryptedStreamBenchmark"), "encrypted"));
+		keys = StaticContentKeys.generateRandomKeys();
+		format.setMaximumFractionDigits(1);
+
+		PublisherPublicKeyDigest publisher = writeHandle.getDefaultPublisher();
+		Random rnd = new Random();
+		byte [] content = new byte[SEGMENT_LENGTH];
+		byte [] last = SegmentationProfile.getSegmentNumberNameComponent(SEGMENTS - 1);
+		for (int i = 0; i < SEGMENTS; i++) {
+			rnd.nextBytes(content);
+			writeHandle.put(ContentObject.buildContentObject(SegmentationProfile.segmentName(plainName, i), 
+					ContentType.DATA, content, publisher, writeHandle.keyManager(), last));
+			byte [] encrypted = keys.getSegmentEncryptionCipher(encryptedName, publisher, i).doFinal(content);
+			writeHandle.put(ContentObject.buildContentObject(SegmentationProfile.segmentName(encryptedName, i), 
+					ContentType.ENCR, encrypted, publisher, writeHandle.keyManager(), last));
+		}
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		readHandle.close();
+		writeHandle.close();
+		KeyManager.closeDefaultKeyManager();
+	}
+
+	/**
+	 * Read the whole stream
+	 */
+	protected void readStream(ContentName name, ContentKeys streamKeys) throws Exception {
+		NDNInputStream stream = new NDNInputStream(name, null, null, streamKeys, readHandle);
+		byte [] buffer = new byte[SEGMENT_LENGTH];
+		long received = 0;
+		int count;
+		while ((count = stream.read(buffer)) >= 0)
+			received += count;
+		stream.close();
+		Assert.assertEquals((long)SEGMENTS * SEGMENT_LENGTH, received);
+	}
+
+	protected void runBenchmark(String desc, ContentName name, ContentKeys streamKeys, int decryptThreads) throws Exception {
+		int saved = SystemConfiguration.DECRYPT_THREADS;
+		SystemConfiguration.DECRYPT_THREADS = decryptThreads;
+		try {
+			long total = 0;
+			for (int i = 0; i < NUM_ITER; i++) {
+				long start = System.nanoTime();
+				readStream(name, streamKeys);
+				total += System.nanoTime() - start;
+			}
+			double ms = total / 1000000.0 / NUM_ITER;
+			System.out.println(desc + ": " + format.format(ms) + " ms per stream, " +
+					format.format(SEGMENTS * (long)SEGMENT_LENGTH / 1024.0 / ms) + " KB/s");
+		} finally {
+			SystemConfiguration.DECRYPT_THREADS = saved;
+		}
+	}
+
+	@Test
+	public void testEncryptedStream() throws Exception {
+		System.out.println("==== Streams of " + SEGMENTS + " segments of " + SEGMENT_LENGTH + " bytes");
+		// Warm up
+		readStream(plainName, null);
+		readStream(encryptedName, keys);
+		runBenchmark("Plaintext", plainName, null, 0);
+		runBenchmark("Encrypted, decrypted by reader", encryptedName, keys, 0);
+		runBenchmark("Encrypted, " + DECRYPT_THREADS + " decryption threads", encryptedName, keys, DECRYPT_THREADS);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.io;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ndnx.ndn.KeyManager;
+import org.ndnx.ndn.NDNHandle;
+import org.ndnx.ndn.NDNTestHelper;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times reading one segmented stream through the local ndnd with the
+ * fixed pipeline window of SystemConfiguration.PIPELINE_SIZE and with the adaptive window.
+ */
+public class PipelineBenchmarkTest {
+
+	public static final int SEGMENTS = 2000;
+	public static final int SEGMENT_LENGTH = 4096;
+	public static final int NUM_ITER = 3;
+
+	public static NDNTestHelper testHelper = new NDNTestHelper(PipelineBenchmarkTest.class);
+	public static NDNHandle readHandle;
+	public static NDNHandle writeHandle;
+	public static ContentName testName;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		readHandle = NDNHandle.open();
+		writeHandle = NDNHandle.open();
+		testName = VersioningProfile.addVersion(new ContentName(testHelper.getTestNamespace("pipelineBenchmark"), "stream"));
+		format.setMaximumFractionDigits(1);
+
+		Random rnd = new Random();
+		byte [] content = new byte[SEGMENT_LENGTH];
+		byte [] last = SegmentationProfile.getSegmentNumberNameComponent(SEGMENTS - 1);
+		for (int i = 0; i < SEGMENTS; i++) {
+			rnd.nextBytes(content);
+			writeHandle.put(ContentObject.buildContentObject(SegmentationProfile.segmentName(testName, i), content, null, null, last));
+		}
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		readHandle.close();
+		writeHandle.close();
+		KeyManager.closeDefaultKeyManager();
+	}
+
+	/**
+	 * Read the whole stream
+	 * @return the stream, for its window statistics
+	 */
+	protected NDNInputStream readStream() throws Exception {
+		NDNInputStream stream = new NDNInputStream(testName, readHandle);
+		byte [] buffer = new byte[SEGMENT_LENGTH];
+		long received = 0;
+		int count;
+		while ((count = stream.read(buffer)) >= 0)
+			received += count;
+		stream.close();
+		Assert.assertEquals((long)SEGMENTS * SEGMENT_LENGTH, received);
+		return stream;
+	}
+
+	protected void runBenchmark(String desc, boolean adaptive) throws Exception {
+		boolean saved = SystemConfiguration.PIPELINE_ADAPTIVE;
+		SystemConfiguration.PIPELINE_ADAPTIVE = adaptive;
+		try {
+			long total = 0;
+			NDNInputStream stream = null;
+			for (int i = 0; i < NUM_ITER; i++) {
+				long start = System.nanoTime();
+				stream = readStream();
+				total += System.nanoTime() - start;
+			}
+			double ms = total / 1000000.0 / NUM_ITER;
+			System.out.println(desc + ": " + format.format(ms) + " ms per stream, " +
+					format.format(SEGMENTS * (long)SEGMENT_LENGTH / 1024.0 / ms) + " KB/s");
+			if (null != stream.getPipelineWindow()) {
+				System.out.println("  final " + stream.getPipelineWindow());
+				System.out.println(stream.getPipelineWindow().getStats());
+			}
+		} finally {
+			SystemConfiguration.PIPELINE_ADAPTIVE = saved;
+		}
+	}
+
+	@Test
+	public void testPipelineWindow() throws Exception {
+		System.out.println("==== Single stream of " + SEGMENTS + " segments of " + SEGMENT_LENGTH + " bytes");
+		// Warm up
+		readStream();
+		runBenchmark("Fixed window of " + SystemConfiguration.PIPELINE_SIZE, false);
+		runBenchmark("Adaptive window up to " + SystemConfiguration.PIPELINE_MAX_SIZE, true);
+	}
+}
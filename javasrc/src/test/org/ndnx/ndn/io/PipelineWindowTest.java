@@ -0,0 +1,91 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the growth, back off and RTT estimation of the adaptive pipeline window.
+ */
+public class PipelineWindowTest {
+
+	@Test
+	public void testGrowth() {
+		PipelineWindow window = new PipelineWindow(4, 32);
+		Assert.assertEquals(4, window.window());
+		// Slow start - one more per segment
+		for (int i = 0; i < 10; i++)
+			window.inOrder();
+		Assert.assertEquals(14, window.window());
+		for (int i = 0; i < 100; i++)
+			window.inOrder();
+		Assert.assertEquals(32, window.window());
+		Assert.assertEquals(110, window.getStats().getCounter(PipelineWindow.StatsEnum.SegmentsInOrder.toString()));
+	}
+
+	@Test
+	public void testBackOff() throws Exception {
+		PipelineWindow window = new PipelineWindow(16, 64);
+		window.rttSample(50);
+		window.loss();
+		Assert.assertEquals(8, window.window());
+		// Same round trip - no further back off
+		window.loss();
+		Assert.assertEquals(8, window.window());
+		Assert.assertEquals(1, window.getStats().getCounter(PipelineWindow.StatsEnum.LossEvents.toString()));
+		Assert.assertEquals(1, window.getStats().getCounter(PipelineWindow.StatsEnum.LossesInRecovery.toString()));
+
+		// Past the threshold growth is about one per window's worth of segments
+		for (int i = 0; i < 8; i++)
+			window.inOrder();
+		Assert.assertEquals(8, window.window());
+		for (int i = 0; i < 9; i++)
+			window.inOrder();
+		Assert.assertEquals(9, window.window());
+
+		Thread.sleep(100);
+		window.loss();
+		Assert.assertEquals(4, window.window());
+
+		// Never closes completely
+		for (int i = 0; i < 10; i++) {
+			Thread.sleep(60);
+			window.loss();
+		}
+		Assert.assertEquals(PipelineWindow.MIN_WINDOW, window.window());
+	}
+
+	@Test
+	public void testRTO() {
+		PipelineWindow window = new PipelineWindow(4, 64);
+		Assert.assertEquals(-1, window.rto());
+		window.rttSample(100);
+		Assert.assertEquals(100.0, window.srtt(), 0.001);
+		Assert.assertEquals(300, window.rto());
+		for (int i = 0; i < 100; i++)
+			window.rttSample(100);
+		Assert.assertEquals(100, window.rto());
+		for (int i = 0; i < 100; i++)
+			window.rttSample(1);
+		Assert.assertEquals(PipelineWindow.MIN_RTO, window.rto());
+	}
+}
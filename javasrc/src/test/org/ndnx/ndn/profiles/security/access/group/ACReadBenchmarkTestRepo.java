@@ -0,0 +1,164 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.profiles.security.access.group;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.ndnx.ndn.NDNHandle;
+import org.ndnx.ndn.NDNTestHelper;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.config.UserConfiguration;
+import org.ndnx.ndn.impl.NDNFlowControl.SaveType;
+import org.ndnx.ndn.io.NDNFileInputStream;
+import org.ndnx.ndn.io.NDNInputStream;
+import org.ndnx.ndn.io.NDNOutputStream;
+import org.ndnx.ndn.io.RepositoryFileOutputStream;
+import org.ndnx.ndn.io.content.Link;
+import org.ndnx.ndn.profiles.namespace.NamespaceManager;
+import org.ndnx.ndn.profiles.namespace.ParameterizedName;
+import org.ndnx.ndn.profiles.security.access.AccessControlManager;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.utils.CreateUserData;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures the cost of access control when writing and reading many small
+ * files under one ACL, with the GroupAccessControlManager's AccessControlCache off and on.
+ * The setup is that of ACPerformanceTestRepo: Alice manages an ACL giving Bob read access,
+ * Alice writes the files and Bob reads them.
+ * Needs ndnd and a repository.
+ */
+public class ACReadBenchmarkTestRepo {
+
+	public static final int NUM_FILES = 20;
+	public static final int FILE_LENGTH = 1024;
+	public static final long CACHE_TTL = 60000;
+
+	static String[] userNames = {"Alice", "Bob"};
+	static ContentName domainPrefix, userNamespace, baseDirectory;
+	static CreateUserData cua;
+	static Random rnd = new Random();
+	static GroupAccessControlManager _AliceACM, _BobACM;
+	static NDNHandle _AliceHandle, _BobHandle;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		NDNTestHelper testHelper = new NDNTestHelper(ACReadBenchmarkTestRepo.class);
+		domainPrefix = testHelper.getTestNamespace("testACCache");
+
+		userNamespace = GroupAccessControlProfile.userNamespaceName(UserConfiguration.defaultNamespace());
+		ContentName groupNamespace = GroupAccessControlProfile.groupNamespaceName(UserConfiguration.defaultNamespace());
+		ContentName userKeystore = new ContentName(UserConfiguration.defaultNamespace(), "_keystore_");
+
+		cua = new CreateUserData(userKeystore, userNames, userNames.length, true, "password".toCharArray());
+		cua.publishUserKeysToRepositorySetLocators(userNamespace);
+
+		ArrayList<Link> ACLcontents = new ArrayList<Link>();
+		ACLcontents.add(new Link(new ContentName(userNamespace, userNames[0]), ACL.LABEL_MANAGER, null));
+		ACL rootACL = new ACL(ACLcontents);
+
+		ArrayList<ParameterizedName> parameterizedNames = new ArrayList<ParameterizedName>();
+		parameterizedNames.add(new ParameterizedName("User", userNamespace, null));
+		parameterizedNames.add(new ParameterizedName("Group", groupNamespace, null));
+		ContentName profileName = ContentName.fromNative(GroupAccessControlManager.PROFILE_NAME_STRING);
+		GroupAccessControlManager.create(domainPrefix, profileName, rootACL, parameterizedNames, null, SaveType.REPOSITORY, NDNHandle.getHandle());
+
+		_AliceHandle = cua.getHandleForUser(userNames[0]);
+		_BobHandle = cua.getHandleForUser(userNames[1]);
+		NamespaceManager.clearSearchedPathCache();
+		AccessControlManager.loadAccessControlManagerForNamespace(domainPrefix, _AliceHandle);
+		AccessControlManager.loadAccessControlManagerForNamespace(domainPrefix, _BobHandle);
+		_AliceACM = (GroupAccessControlManager) AccessControlManager.findACM(domainPrefix, _AliceHandle);
+		_BobACM = (GroupAccessControlManager) AccessControlManager.findACM(domainPrefix, _BobHandle);
+		Assert.assertNotNull(_AliceACM);
+		Assert.assertNotNull(_BobACM);
+
+		// Alice manages and Bob reads the directory the files go in
+		baseDirectory = domainPrefix.append(ContentName.fromNative("/Alice/documents/"));
+		ACLcontents = new ArrayList<Link>();
+		ACLcontents.add(new Link(new ContentName(userNamespace, userNames[0]), ACL.LABEL_MANAGER, null));
+		ACLcontents.add(new Link(new ContentName(userNamespace, userNames[1]), ACL.LABEL_READER, null));
+		_AliceACM.setACL(baseDirectory, new ACL(ACLcontents));
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		_AliceACM.setCacheTTL(0);
+		_BobACM.setCacheTTL(0);
+		cua.closeAll();
+	}
+
+	protected void runBenchmark(String label, long ttl) throws Exception {
+		_AliceACM.setCacheTTL(ttl);
+		_BobACM.setCacheTTL(ttl);
+		ContentName directory = new ContentName(baseDirectory, label);
+		byte [] content = new byte[FILE_LENGTH];
+
+		long start = System.nanoTime();
+		for (int i = 0; i < NUM_FILES; i++) {
+			rnd.nextBytes(content);
+			NDNOutputStream ostream = new RepositoryFileOutputStream(new ContentName(directory, "file" + i), _AliceHandle);
+			ostream.setTimeout(SystemConfiguration.MAX_TIMEOUT);
+			ostream.write(content);
+			ostream.close();
+		}
+		double writeMs = (System.nanoTime() - start) / 1000000.0;
+
+		byte [] buffer = new byte[FILE_LENGTH];
+		start = System.nanoTime();
+		for (int i = 0; i < NUM_FILES; i++) {
+			NDNInputStream input = new NDNFileInputStream(new ContentName(directory, "file" + i), _BobHandle);
+			input.setTimeout(SystemConfiguration.MAX_TIMEOUT);
+			int total = 0;
+			int count;
+			while ((count = input.read(buffer)) != -1)
+				total += count;
+			input.close();
+			Assert.assertEquals(FILE_LENGTH, total);
+		}
+		double readMs = (System.nanoTime() - start) / 1000000.0;
+
+		System.out.println(label + ": write " + format.format(writeMs / NUM_FILES) + " ms/file, read " +
+				format.format(readMs / NUM_FILES) + " ms/file");
+		if (null != _AliceACM.cache()) {
+			System.out.println("  writer cache: " + _AliceACM.cache().getStats().toString());
+			System.out.println("  reader cache: " + _BobACM.cache().getStats().toString());
+		}
+	}
+
+	@Test
+	public void testACCache() throws Exception {
+		format.setMaximumFractionDigits(1);
+		System.out.println("==== Access controlled writes and reads of " + NUM_FILES + " files of " + FILE_LENGTH + " bytes");
+		runBenchmark("uncached", 0);
+		runBenchmark("cached", CACHE_TTL);
+	}
+}
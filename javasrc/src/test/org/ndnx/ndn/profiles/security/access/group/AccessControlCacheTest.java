@@ -0,0 +1,285 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.profiles.security.access.group;
+
+import java.io.IOException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.ndnx.ndn.profiles.NDNProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.profiles.security.access.group.ACL.ACLObject;
+import org.ndnx.ndn.profiles.security.access.group.GroupAccessControlProfile.PrincipalInfo;
+import org.ndnx.ndn.protocol.Component;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.NDNTime;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Check the lookups, expiry and invalidation of AccessControlCache, with its clock under our control.
+ * ACL objects need a network, so effective ACLs are checked by where they are.
+ */
+public class AccessControlCacheTest {
+
+	static class TestCache extends AccessControlCache {
+		long _now = 1000;
+		int _unwatched = 0;
+
+		TestCache(long ttl) {
+			super(ttl);
+		}
+
+		@Override
+		protected long now() {
+			return _now;
+		}
+
+		@Override
+		protected void unwatch(List<ACLObject> acls) {
+			_unwatched += acls.size();
+		}
+	}
+
+	/**
+	 * Group key versions we can change, standing in for the group managers
+	 */
+	static class TestVersions implements AccessControlCache.GroupKeyVersions {
+		HashMap<String, NDNTime> _versions = new HashMap<String, NDNTime>();
+		int _lookups = 0;
+
+		public NDNTime publicKeyVersion(PrincipalInfo group) throws IOException {
+			_lookups++;
+			return _versions.get(group.friendlyName());
+		}
+	}
+
+	static ArrayList<PrincipalInfo> noGroups = new ArrayList<PrincipalInfo>();
+	static TestVersions versions = new TestVersions();
+
+	static ContentName root;
+	static ContentName child;
+	static ContentName grandchild;
+	static ContentName sibling;
+	static ContentName other;
+	static NodeKey rootNodeKey;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		root = ContentName.fromNative("/ndn/test/accache");
+		child = new ContentName(root, "child");
+		grandchild = new ContentName(child, "grandchild");
+		sibling = new ContentName(child, "sibling");
+		other = new ContentName(root, "other");
+
+		byte [] key = new byte[NodeKey.DEFAULT_NODE_KEY_LENGTH];
+		new SecureRandom().nextBytes(key);
+		rootNodeKey = new NodeKey(VersioningProfile.addVersion(GroupAccessControlProfile.nodeKeyName(root)), key);
+	}
+
+	@Test
+	public void testEffectiveACL() throws Exception {
+		TestCache cache = new TestCache(100);
+		Assert.assertNull(cache.getEffectiveACLNode(grandchild));
+		cache.putEffectiveACLNode(root, root);
+
+		// An entry only answers for its own node; a descendant may have an ACL of its own,
+		// so it has to be searched for down to the nearest node we know about
+		Assert.assertNull(cache.getEffectiveACLNode(grandchild));
+		Assert.assertEquals(root, cache.getCachedAncestor(grandchild));
+		Assert.assertNull(cache.getCachedAncestor(root));
+
+		// Searching from grandchild up to the ACL at child checked both of them
+		cache.putEffectiveACLNode(grandchild, child, root);
+		Assert.assertEquals(child, cache.getEffectiveACLNode(grandchild));
+		Assert.assertEquals(child, cache.getEffectiveACLNode(child));
+		Assert.assertEquals(root, cache.getEffectiveACLNode(root));
+		Assert.assertNull(cache.getEffectiveACLNode(sibling));
+		Assert.assertEquals(child, cache.getCachedAncestor(sibling));
+		Assert.assertEquals(3, cache.size());
+
+		// Searching from other found nothing below root, so only other was checked
+		cache.putEffectiveACLNode(other, root, root);
+		Assert.assertEquals(root, cache.getEffectiveACLNode(other));
+		Assert.assertEquals(4, cache.size());
+		Assert.assertEquals(4, cache.getStats().getCounter(AccessControlCache.StatsEnum.ACLHits.toString()));
+		Assert.assertEquals(3, cache.getStats().getCounter(AccessControlCache.StatsEnum.ACLMisses.toString()));
+
+		// And expire
+		cache._now += 100;
+		Assert.assertNull(cache.getEffectiveACLNode(grandchild));
+		Assert.assertNull(cache.getCachedAncestor(sibling));
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(3, cache.getStats().getCounter(AccessControlCache.StatsEnum.Expired.toString()));
+	}
+
+	@Test
+	public void testWatching() throws Exception {
+		TestCache cache = new TestCache(100);
+		synchronized (cache) {
+			Assert.assertTrue(cache.watch(root, null));
+			Assert.assertTrue(cache.watch(child, null));
+			Assert.assertFalse(cache.watch(child, null));
+		}
+		cache.putEffectiveACLNode(grandchild, child);
+		cache.putEffectiveACLNode(sibling, child);
+		cache.putEffectiveACLNode(root, root);
+		cache.putEffectiveACLNode(other, root);
+		Assert.assertEquals(2, cache.watching());
+
+		// We keep watching child's ACL until the last entry naming it goes
+		cache.invalidate(grandchild);
+		cache.invalidate(sibling);
+		Assert.assertEquals(2, cache.watching());
+		cache.invalidate(child);
+		Assert.assertEquals(1, cache.watching());
+		Assert.assertEquals(1, cache._unwatched);
+
+		// Expired entries are purged without being looked up
+		cache._now += 100;
+		cache.putEffectiveACLNode(new ContentName(other, "x"), other);
+		Assert.assertEquals(0, cache.watching());
+		Assert.assertEquals(2, cache._unwatched);
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testKeys() throws Exception {
+		TestCache cache = new TestCache(100);
+		Assert.assertNull(cache.getNodeKey(root, versions));
+		cache.putNodeKey(root, rootNodeKey, noGroups);
+		Assert.assertSame(rootNodeKey, cache.getNodeKey(root, versions));
+		Assert.assertNull(cache.getNodeKey(child, versions));
+
+		Key wrappingKey = new SecretKeySpec(rootNodeKey.computeDescendantNodeKey(grandchild).nodeKey().getEncoded(), "AES");
+		cache.putWrappingKey(grandchild, rootNodeKey.storedNodeKeyName(), wrappingKey);
+		Assert.assertSame(wrappingKey, cache.getWrappingKey(grandchild, rootNodeKey.storedNodeKeyName()));
+		// Data key wrapped under some other node key
+		Assert.assertNull(cache.getWrappingKey(grandchild, GroupAccessControlProfile.nodeKeyName(child)));
+		Assert.assertEquals(2, cache.getStats().getCounter(AccessControlCache.StatsEnum.NodeKeyMisses.toString()));
+		Assert.assertEquals(1, cache.getStats().getCounter(AccessControlCache.StatsEnum.WrappingKeyHits.toString()));
+		Assert.assertEquals(1, cache.getStats().getCounter(AccessControlCache.StatsEnum.WrappingKeyMisses.toString()));
+
+		cache._now += 99;
+		Assert.assertSame(rootNodeKey, cache.getNodeKey(root, versions));
+		cache._now += 1;
+		Assert.assertNull(cache.getNodeKey(root, versions));
+		Assert.assertNull(cache.getWrappingKey(grandchild, rootNodeKey.storedNodeKeyName()));
+	}
+
+	/**
+	 * Make the principal info for a group whose key has the given version, as it is found
+	 * in a node key's key directory
+	 */
+	static PrincipalInfo groupPrincipal(String friendlyName, NDNTime version) {
+		byte [] hash = new byte[PrincipalInfo.DISTINGUISHING_HASH_LENGTH];
+		byte [] name = Component.parseNative(friendlyName);
+		byte [] time = version.toBinaryTime();
+		byte [] sep = NDNProfile.COMPONENT_SEPARATOR;
+		byte [] prefix = GroupAccessControlProfile.GROUP_PRINCIPAL_PREFIX;
+		byte [] component = new byte[prefix.length + hash.length + name.length + time.length + 3 * sep.length];
+		int offset = 0;
+		for (byte [] part : new byte[][] { prefix, sep, hash, sep, name, sep, time }) {
+			System.arraycopy(part, 0, component, offset, part.length);
+			offset += part.length;
+		}
+		PrincipalInfo pi = new PrincipalInfo(component);
+		Assert.assertTrue(pi.isGroup());
+		return pi;
+	}
+
+	@Test
+	public void testGroupKeyChange() throws Exception {
+		TestCache cache = new TestCache(100000);
+		TestVersions groupVersions = new TestVersions();
+		NDNTime v1 = new NDNTime(1000000);
+		NDNTime v2 = new NDNTime(2000000);
+		ArrayList<PrincipalInfo> groups = new ArrayList<PrincipalInfo>();
+		groups.add(groupPrincipal("readers", v1));
+		groups.add(groupPrincipal("writers", v1));
+		groupVersions._versions.put("readers", v1);
+		groupVersions._versions.put("writers", v1);
+
+		cache.putNodeKey(root, rootNodeKey, groups);
+		cache.putNodeKey(other, rootNodeKey, noGroups);
+		Assert.assertSame(rootNodeKey, cache.getNodeKey(root, groupVersions));
+		Assert.assertEquals(2, groupVersions._lookups);
+
+		// Someone is removed from a group, which gets a new key - the node key wrapped
+		// under the old one must not be used to write anything more
+		groupVersions._versions.put("writers", v2);
+		Assert.assertNull(cache.getNodeKey(root, groupVersions));
+		Assert.assertEquals(1, cache.getStats().getCounter(AccessControlCache.StatsEnum.Dirty.toString()));
+		// and it's gone, even if the group were to look the same again
+		groupVersions._versions.put("writers", v1);
+		Assert.assertNull(cache.getNodeKey(root, groupVersions));
+		// A group we can't find any more is treated the same way
+		cache.putNodeKey(root, rootNodeKey, groups);
+		groupVersions._versions.remove("readers");
+		Assert.assertNull(cache.getNodeKey(root, groupVersions));
+		Assert.assertEquals(2, cache.getStats().getCounter(AccessControlCache.StatsEnum.Dirty.toString()));
+
+		// Keys which aren't wrapped for the group are unaffected
+		Assert.assertSame(rootNodeKey, cache.getNodeKey(other, groupVersions));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		TestCache cache = new TestCache(100);
+		cache.putEffectiveACLNode(root, root);
+		cache.putEffectiveACLNode(other, root);
+		cache.putNodeKey(root, rootNodeKey, noGroups);
+		cache.putWrappingKey(grandchild, rootNodeKey.storedNodeKeyName(), rootNodeKey.nodeKey());
+		// Before child has an ACL of its own
+		cache.putEffectiveACLNode(grandchild, root);
+		Assert.assertEquals(root, cache.getEffectiveACLNode(grandchild));
+		Assert.assertEquals(6, cache.size());
+
+		// An ACL is set at child: what is below it must be searched for again, and that search
+		// has to look at child, not just take root's answer
+		cache.invalidate(child);
+		Assert.assertEquals(3, cache.size());
+		Assert.assertNull(cache.getEffectiveACLNode(grandchild));
+		Assert.assertNull(cache.getEffectiveACLNode(child));
+		Assert.assertEquals(root, cache.getCachedAncestor(grandchild));
+		Assert.assertEquals(root, cache.getEffectiveACLNode(other));
+		Assert.assertSame(rootNodeKey, cache.getNodeKey(root, versions));
+		cache.putEffectiveACLNode(grandchild, child, root);
+		Assert.assertEquals(child, cache.getEffectiveACLNode(grandchild));
+
+		// The ACL at child is deleted: nothing may still name it
+		cache.invalidate(child);
+		Assert.assertNull(cache.getEffectiveACLNode(grandchild));
+		Assert.assertEquals(root, cache.getEffectiveACLNode(root));
+
+		// A change at the root affects everything
+		cache.invalidate(root);
+		Assert.assertEquals(0, cache.size());
+		Assert.assertNull(cache.getCachedAncestor(grandchild));
+		Assert.assertEquals(8, cache.getStats().getCounter(AccessControlCache.StatsEnum.Invalidated.toString()));
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.profiles.sync;
+
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+
+import org.ndnx.ndn.impl.sync.SyncHashCache;
+import org.ndnx.ndn.impl.sync.SyncNodeCache;
+import org.ndnx.ndn.impl.sync.SyncTreeEntry;
+import org.ndnx.ndn.io.content.SyncNodeComposite;
+import org.ndnx.ndn.io.content.SyncNodeComposite.SyncNodeElement;
+import org.ndnx.ndn.protocol.ContentName;
+import org.junit.Test;
+
+/**
+ * Test the bounds on the sync hash and node caches
+ */
+public class SyncCacheTest {
+
+	@Test
+	public void testNodeCacheBound() throws Exception {
+		SyncNodeCache snc = new SyncNodeCache(64 * 1024);
+		ArrayList<SyncNodeComposite> nodes = new ArrayList<SyncNodeComposite>();
+		for (int i = 0; i < 200; i++) {
+			SyncNodeComposite node = createNode("testNodeCacheBound", i, 10);
+			nodes.add(node);
+			snc.putNode(node);
+		}
+		Assert.assertTrue(snc.bytes() <= snc.maxBytes());
+		Assert.assertTrue(snc.size() < nodes.size());
+		Assert.assertTrue(snc.getStats().getCounter(SyncNodeCache.StatsEnum.Evictions.toString()) > 0);
+
+		// The most recent node is always there
+		SyncNodeComposite last = nodes.get(nodes.size() - 1);
+		Assert.assertSame(last, snc.getNode(last.getHash()));
+		Assert.assertNull(snc.getNode(nodes.get(0).getHash()));
+		Assert.assertTrue(snc.hitRate() > 0.0 && snc.hitRate() < 1.0);
+	}
+
+	@Test
+	public void testHashCacheTrim() throws Exception {
+		SyncNodeCache snc = new SyncNodeCache();
+		SyncHashCache shc = new SyncHashCache(10, 0);
+		ArrayList<SyncTreeEntry> inUse = new ArrayList<SyncTreeEntry>();
+		SyncTreeEntry local = null;
+		for (int i = 0; i < 50; i++) {
+			SyncNodeComposite node = createNode("testHashCacheTrim", i, 2);
+			SyncTreeEntry ste = shc.addHash(node.getHash(), snc);
+			if (i == 0) {
+				ste.setLocal(true);
+				local = ste;
+			}
+			if (i < 5)
+				inUse.add(ste);
+		}
+		SyncTreeEntry recent = shc.addHash(createNode("testHashCacheTrim", 49, 2).getHash(), snc);
+
+		// Nothing is dropped until we trim
+		Assert.assertEquals(50, shc.size());
+		Assert.assertEquals(40, shc.trim(inUse));
+		Assert.assertEquals(10, shc.size());
+
+		for (SyncTreeEntry ste : inUse)
+			Assert.assertSame(ste, shc.getHash(ste.getHash()));
+		Assert.assertSame(local, shc.getHash(local.getHash()));
+		Assert.assertSame(recent, shc.getHash(recent.getHash()));
+
+		// Entries which can't be dropped may leave the cache over its size
+		SyncHashCache small = new SyncHashCache(1, 0);
+		for (SyncTreeEntry ste : inUse)
+			small.putHashEntry(ste);
+		Assert.assertEquals(0, small.trim(inUse));
+		Assert.assertEquals(inUse.size(), small.size());
+	}
+
+	@Test
+	public void testHashCacheAge() throws Exception {
+		SyncNodeCache snc = new SyncNodeCache();
+		SyncHashCache shc = new SyncHashCache(1000, 50);
+		SyncTreeEntry old = shc.addHash(createNode("testHashCacheAge", 0, 2).getHash(), snc);
+		SyncTreeEntry oldLocal = shc.addHash(createNode("testHashCacheAge", 1, 2).getHash(), snc);
+		oldLocal.setLocal(true);
+		Thread.sleep(100);
+		SyncTreeEntry young = shc.addHash(createNode("testHashCacheAge", 2, 2).getHash(), snc);
+		Assert.assertEquals(1, shc.trim(null));
+		Assert.assertNull(shc.getHash(old.getHash()));
+		Assert.assertSame(oldLocal, shc.getHash(oldLocal.getHash()));
+		Assert.assertSame(young, shc.getHash(young.getHash()));
+	}
+
+	private SyncNodeComposite createNode(String test, int node, int names) throws Exception {
+		// Node hashes are built from the last components of the names so these must differ
+		ArrayList<SyncNodeElement> refs = new ArrayList<SyncNodeElement>();
+		for (int i = 0; i < names; i++)
+			refs.add(new SyncNodeElement(ContentName.fromNative("/test/" + test + "/node" + node + "/name" + i + "-" + node)));
+		return new SyncNodeComposite(refs, refs.get(0), refs.get(names - 1), names, 1);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.profiles.sync;
+
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.NDNSyncHandler;
+import org.ndnx.ndn.impl.sync.NodeBuilder;
+import org.ndnx.ndn.impl.sync.SliceComparator;
+import org.ndnx.ndn.impl.sync.SyncException;
+import org.ndnx.ndn.impl.sync.SyncHashCache;
+import org.ndnx.ndn.impl.sync.SyncHashEntry;
+import org.ndnx.ndn.impl.sync.SyncNodeCache;
+import org.ndnx.ndn.impl.sync.SyncTreeEntry;
+import org.ndnx.ndn.io.content.ConfigSlice;
+import org.ndnx.ndn.io.content.SyncNodeComposite;
+import org.ndnx.ndn.io.content.SyncNodeComposite.SyncNodeElement;
+import org.ndnx.ndn.io.content.SyncNodeComposite.SyncNodeType;
+import org.ndnx.ndn.protocol.ContentName;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures how long a SliceComparator takes to catch up with a remote sync tree
+ * which has names its own tree lacks, with and without prefetching (SystemConfiguration.SYNC_FETCH_PIPELINE).
+ * Both trees are built in process and node requests are answered after a fixed delay to stand in for
+ * the network. No ndnd needed.
+ */
+public class SyncCompareBenchmarkTest {
+
+	public static final int BASE_NAMES = 100000;
+	public static final int NEW_NAMES = 2000;
+	public static final int NODE_DELAY = 20; // ms
+
+	public static byte [] localRoot;
+	public static byte [] remoteRoot;
+	public static SyncNodeCache localNodes;
+	public static HashMap<SyncHashEntry, byte []> remoteNodes = new HashMap<SyncHashEntry, byte []>();
+	public static ScheduledExecutorService network = Executors.newScheduledThreadPool(4);
+
+	/**
+	 * Comparator which gets its nodes from remoteNodes rather than the network
+	 */
+	protected static class LocalComparator extends SliceComparator {
+
+		protected AtomicInteger _requests = new AtomicInteger(0);
+
+		public LocalComparator(SyncNodeCache snc, NDNSyncHandler callback, byte [] startHash, int fetchWindow) {
+			super(null, snc, callback, null, startHash, null, null);
+			_fetchWindow = fetchWindow;
+		}
+
+		@Override
+		protected void requestNode(SyncTreeEntry srt) throws SyncException {
+			final byte [] hash = srt.getHash();
+			final byte [] content = remoteNodes.get(new SyncHashEntry(hash));
+			if (null == content)
+				throw new SyncException("No remote node");
+			_requests.incrementAndGet();
+			network.schedule(new Runnable() {
+				public void run() {
+					nodeArrived(hash, content);
+				}
+			}, NODE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	protected static class NameCounter implements NDNSyncHandler {
+		protected AtomicInteger _names = new AtomicInteger(0);
+
+		public void handleContentName(ConfigSlice syncSlice, ContentName syncedContent) {
+			_names.incrementAndGet();
+		}
+	}
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		ContentName prefix = ContentName.fromNative("/test/SyncCompareBenchmark");
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		Random rnd = new Random(1);
+		TreeSet<ContentName> localNames = new TreeSet<ContentName>();
+		TreeSet<ContentName> remoteNames = new TreeSet<ContentName>();
+		for (int i = 0; i < BASE_NAMES + NEW_NAMES; i++) {
+			// Sync names end in a digest
+			ContentName name = new ContentName(prefix, "item-" + rnd.nextInt(), md.digest(Integer.toString(i).getBytes()));
+			remoteNames.add(name);
+			if (i < BASE_NAMES)
+				localNames.add(name);
+		}
+
+		NodeBuilder nb = new NodeBuilder();
+		localNodes = new SyncNodeCache();
+		localRoot = nb.newNode(localNames, new SyncHashCache(), localNodes).getHash();
+
+		SyncNodeCache remoteCache = new SyncNodeCache();
+		remoteRoot = nb.newNode(remoteNames, new SyncHashCache(), remoteCache).getHash();
+		encodeTree(remoteRoot, remoteCache);
+	}
+
+	protected static void encodeTree(byte [] hash, SyncNodeCache cache) throws Exception {
+		SyncNodeComposite node = cache.getNode(hash);
+		remoteNodes.put(new SyncHashEntry(hash), node.encode());
+		for (SyncNodeElement sne : node.getRefs()) {
+			if (sne.getType() == SyncNodeType.HASH)
+				encodeTree(sne.getData(), cache);
+		}
+	}
+
+	protected void catchUp(String desc, int fetchWindow) throws Exception {
+		// Start with only our own tree's nodes so the remote ones must all be fetched
+		SyncNodeCache snc = new SyncNodeCache();
+		copyTree(localRoot, snc);
+		NameCounter counter = new NameCounter();
+		LocalComparator sc = new LocalComparator(snc, counter, localRoot, fetchWindow);
+
+		long start = System.currentTimeMillis();
+		sc.addPending(sc.getHashCache().addHash(remoteRoot, snc));
+		sc.kickCompare();
+		while (counter._names.get() < NEW_NAMES || sc.comparing()) {
+			Thread.sleep(1);
+			Assert.assertTrue("Catch up took too long", System.currentTimeMillis() - start < 120000);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		sc.shutdownIfUseless();
+		Assert.assertEquals(NEW_NAMES, counter._names.get());
+		System.out.println("Catch up " + desc + ": " + elapsed + " ms, " + sc._requests.get() + " node requests");
+	}
+
+	protected void copyTree(byte [] hash, SyncNodeCache snc) {
+		SyncNodeComposite node = localNodes.getNode(hash);
+		snc.putNode(node);
+		for (SyncNodeElement sne : node.getRefs()) {
+			if (sne.getType() == SyncNodeType.HASH)
+				copyTree(sne.getData(), snc);
+		}
+	}
+
+	@Test
+	public void testCatchUp() throws Exception {
+		System.out.println("==== Catching up " + NEW_NAMES + " names missing from " + (BASE_NAMES + NEW_NAMES) + " with "
+				+ NODE_DELAY + " ms node fetches (" + remoteNodes.size() + " remote nodes)");
+		catchUp("warm up", 64);
+		catchUp("without prefetch", 0);
+		catchUp("with prefetch window 16", 16);
+		catchUp("with prefetch window 64", 64);
+		catchUp("with prefetch window 256", 256);
+	}
+}
@@ -38,6 +38,7 @@ import org.ndnx.ndn.protocol.KeyLocator;
 import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
 import org.ndnx.ndn.protocol.Signature;
 import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
 import org.ndnx.ndn.impl.encoding.XMLEncodableTester;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -196,4 +197,45 @@ public class ContentObjectTest {
 		
 		Log.info(Log.FAC_TEST, "Completed testDigest");
 	}
+
+	@Test
+	public void testRetainedWireEncoding() {
+		Log.info(Log.FAC_TEST, "Starting testRetainedWireEncoding");
+
+		try {
+			ContentObject [] objects = new ContentObject[] {
+					new ContentObject(name, auth, document3, pair.getPrivate()),
+					new ContentObject(name, auth, new byte[0], pair.getPrivate()),
+					new ContentObject(name, auth, null, pair.getPrivate())};
+			for (ContentObject co : objects) {
+				byte [] encoded = co.encode();
+
+				BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+				decoder.setRetainWire(true);
+				ContentObject wco = new ContentObject();
+				wco.decode(encoded, decoder);
+				Assert.assertTrue(wco.hasWireEncoding());
+				Assert.assertEquals(co, wco);
+				Assert.assertArrayEquals(encoded, wco.encode());
+				Assert.assertArrayEquals(co.digest(), wco.digest());
+				Assert.assertArrayEquals(co.prepareContent(), wco.prepareContent());
+				Assert.assertTrue(wco.verify(pair.getPublic()));
+
+				// Without retention we re-encode as before
+				ContentObject pco = new ContentObject();
+				pco.decode(encoded, new BinaryXMLDecoder());
+				Assert.assertFalse(pco.hasWireEncoding());
+				Assert.assertArrayEquals(wco.digest(), pco.digest());
+
+				wco.setSignature(co.signature());
+				Assert.assertFalse(wco.hasWireEncoding());
+				Assert.assertArrayEquals(encoded, wco.encode());
+			}
+		} catch (Exception e) {
+			Log.warningStackTrace(Log.FAC_TEST, e);
+			Assert.fail("Exception: " + e.getClass().getName() + ": " + e.getMessage());
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testRetainedWireEncoding");
+	}
 }
@@ -0,0 +1,152 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.protocol;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.profiles.versioning.VersionNumber;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times Exclude.match against the linear scan of the elements it
+ * used to do, for excludes of 50 to 200 versions laid out the way VersioningInterestManager
+ * builds them (Any, start, versions..., stop, Any), and times adding to such an exclude.
+ * It does not need a running ndnd.
+ */
+public class ExcludeBenchmarkTest {
+
+	public static final int [] EXCLUDE_SIZES = new int[]{50, 100, 200};
+	public static final int CANDIDATES = 1000;
+	public static final int NUM_ITER = 1000000;
+	public static final int ADD_ITER = 10000;
+
+	public static final double NanoToMicro = 1000.0d;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		format.setMaximumFractionDigits(3);
+	}
+
+	protected static Exclude versionExclude(long start, int size, Random rnd, ArrayList<byte []> excluded) {
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		elements.add(new ExcludeAny());
+		long version = start;
+		elements.add(new ExcludeComponent(new VersionNumber(version).getVersionBytes()));
+		for (int i = 0; i < size; i++) {
+			version += 1 + rnd.nextInt(1000);
+			byte [] component = new VersionNumber(version).getVersionBytes();
+			excluded.add(component);
+			elements.add(new ExcludeComponent(component));
+		}
+		elements.add(new ExcludeComponent(VersioningProfile.TOP_EXCLUDE_VERSION_MARKER));
+		elements.add(new ExcludeAny());
+		return new Exclude(elements);
+	}
+
+	protected byte [][] candidates(long start, ArrayList<byte []> excluded, Random rnd) {
+		// Half versions already excluded, half new versions within the range of the exclude
+		long range = new VersionNumber(excluded.get(excluded.size() - 1)).getAsMillis() - start;
+		byte [][] candidates = new byte[CANDIDATES][];
+		for (int i = 0; i < CANDIDATES; i++) {
+			if (i % 2 == 0)
+				candidates[i] = excluded.get(rnd.nextInt(excluded.size()));
+			else
+				candidates[i] = new VersionNumber(start + (long)(rnd.nextDouble() * range)).getVersionBytes();
+		}
+		return candidates;
+	}
+
+	@Test
+	public void testMatch() throws Exception {
+		System.out.println("==== Exclude.match on version excludes");
+		Random rnd = new Random(1);
+		long start = System.currentTimeMillis() - 86400000L;
+		for (int size : EXCLUDE_SIZES) {
+			ArrayList<byte []> excluded = new ArrayList<byte []>();
+			Exclude exclude = versionExclude(start, size, rnd, excluded);
+			byte [][] candidates = candidates(start, excluded, rnd);
+
+			// Warm up and check the answers while we're at it
+			int matches = 0;
+			for (byte [] candidate : candidates) {
+				assertEquals(ExcludeTest.scanMatch(exclude, candidate), exclude.match(candidate));
+				if (exclude.match(candidate))
+					matches++;
+			}
+
+			long begin = System.nanoTime();
+			int count = 0;
+			for (int i = 0; i < NUM_ITER; i++) {
+				if (ExcludeTest.scanMatch(exclude, candidates[i % CANDIDATES]))
+					count++;
+			}
+			long dur = System.nanoTime() - begin;
+			System.out.println("Avg. to match by scanning, " + size + " versions (" + NUM_ITER + " iterations) = " +
+					format.format(dur/(double)NUM_ITER/NanoToMicro) + " us.");
+
+			begin = System.nanoTime();
+			count = 0;
+			for (int i = 0; i < NUM_ITER; i++) {
+				if (exclude.match(candidates[i % CANDIDATES]))
+					count++;
+			}
+			dur = System.nanoTime() - begin;
+			System.out.println("Avg. to match by binary search, " + size + " versions (" + NUM_ITER + " iterations) = " +
+					format.format(dur/(double)NUM_ITER/NanoToMicro) + " us.");
+			assertEquals(matches * (NUM_ITER / CANDIDATES), count);
+			System.out.println("");
+		}
+	}
+
+	@Test
+	public void testAdd() throws Exception {
+		System.out.println("==== Exclude.add of one version to version excludes");
+		Random rnd = new Random(2);
+		long start = System.currentTimeMillis() - 86400000L;
+		for (int size : EXCLUDE_SIZES) {
+			ArrayList<byte []> excluded = new ArrayList<byte []>();
+			Exclude base = versionExclude(start, size, rnd, excluded);
+			byte [][] candidates = candidates(start, excluded, rnd);
+			ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+			for (int i = 0; i < base.size(); i++)
+				elements.add(base.value(i));
+
+			long begin = System.nanoTime();
+			for (int i = 0; i < ADD_ITER; i++) {
+				Exclude exclude = new Exclude(elements);
+				exclude.add(new byte [][] {candidates[i % CANDIDATES]});
+			}
+			long dur = System.nanoTime() - begin;
+			System.out.println("Avg. to copy and add to an exclude of " + size + " versions (" + ADD_ITER + " iterations) = " +
+					format.format(dur/(double)ADD_ITER/NanoToMicro) + " us.");
+		}
+	}
+}
@@ -23,7 +23,10 @@ package org.ndnx.ndn.protocol;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
 
+import org.ndnx.ndn.impl.support.ByteArrayCompare;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.io.content.ContentDecodingException;
 import org.ndnx.ndn.io.content.ContentEncodingException;
@@ -245,4 +248,177 @@ public class ExcludeTest {
 		
 		Log.info(Log.FAC_TEST, "Completed testEncodeDecode");
 	}
+
+	/**
+	 * Match by scanning the elements in order, as Exclude did before it binary searched
+	 */
+	public static boolean scanMatch(Exclude exclude, byte [] component) {
+		Exclude.Filler lastFiller = null;
+		for (int i = 0; i < exclude.size(); i++) {
+			Exclude.Element ee = exclude.value(i);
+			if (ee instanceof ExcludeComponent) {
+				int res = ((ExcludeComponent)ee).compareTo(component);
+				if (res == 0)
+					return true;
+				if (res > 0)
+					return lastFiller != null && lastFiller.match(component);
+				lastFiller = null;
+			} else
+				lastFiller = (Exclude.Filler)ee;
+		}
+		return lastFiller != null && lastFiller.match(component);
+	}
+
+	/**
+	 * A random valid exclude of up to size components with fillers in some of the gaps
+	 */
+	public static Exclude randomExclude(Random rnd, int size) {
+		TreeSet<byte []> components = new TreeSet<byte []>(new ByteArrayCompare());
+		while (components.size() < size)
+			components.add(randomComponent(rnd));
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		for (byte [] component : components) {
+			int filler = rnd.nextInt(6);
+			if (filler == 0) {
+				elements.add(new ExcludeAny());
+			} else if (filler == 1) {
+				BloomFilter bf = new BloomFilter(8, bloomSeed);
+				for (int i = 0; i < 8; i++)
+					bf.insert(randomComponent(rnd));
+				elements.add(bf);
+			}
+			elements.add(new ExcludeComponent(component));
+		}
+		if (rnd.nextBoolean())
+			elements.add(new ExcludeAny());
+		return new Exclude(elements);
+	}
+
+	public static byte [] randomComponent(Random rnd) {
+		byte [] component = new byte[1 + rnd.nextInt(3)];
+		rnd.nextBytes(component);
+		return component;
+	}
+
+	@Test
+	public void testMatchAgainstScan() {
+		Log.info(Log.FAC_TEST, "Starting testMatchAgainstScan");
+
+		Random rnd = new Random(1);
+		for (int i = 0; i < 200; i++) {
+			Exclude exclude = randomExclude(rnd, rnd.nextInt(200));
+			for (int j = 0; j < 200; j++) {
+				byte [] component = (j % 2 == 0 && exclude.size() > 0) ? null : randomComponent(rnd);
+				if (null == component) {
+					Exclude.Element ee = exclude.value(rnd.nextInt(exclude.size()));
+					if (!(ee instanceof ExcludeComponent))
+						continue;
+					component = ((ExcludeComponent)ee).getComponent();
+				}
+				assertEquals(scanMatch(exclude, component), exclude.match(component));
+			}
+
+			// and the same after adding to the filter
+			byte [][] omissions = new byte[1 + rnd.nextInt(10)][];
+			for (int j = 0; j < omissions.length; j++)
+				omissions[j] = randomComponent(rnd);
+			exclude.add(omissions);
+			for (byte [] omission : omissions)
+				assertTrue(exclude.match(omission));
+			for (int j = 0; j < 100; j++) {
+				byte [] component = randomComponent(rnd);
+				assertEquals(scanMatch(exclude, component), exclude.match(component));
+			}
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testMatchAgainstScan");
+	}
+
+	@Test
+	public void testExcludeUptoMatch() {
+		Log.info(Log.FAC_TEST, "Starting testExcludeUptoMatch");
+
+		Random rnd = new Random(2);
+		for (int i = 0; i < 100; i++) {
+			Exclude exclude = randomExclude(rnd, 1 + rnd.nextInt(50));
+			byte [] upto = randomComponent(rnd);
+			exclude.excludeUpto(upto);
+			assertTrue(exclude.match(upto));
+			for (int j = 0; j < 100; j++) {
+				byte [] component = randomComponent(rnd);
+				assertEquals(scanMatch(exclude, component), exclude.match(component));
+				if (new ByteArrayCompare().compare(component, upto) <= 0)
+					assertTrue(exclude.match(component));
+			}
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testExcludeUptoMatch");
+	}
+
+	@Test
+	public void testExcludedRun() {
+		Log.info(Log.FAC_TEST, "Starting testExcludedRun");
+
+		byte [] b2 = "2".getBytes();
+		byte [] b4 = "4".getBytes();
+		byte [] b5 = "5".getBytes();
+		byte [] b7 = "7".getBytes();
+		// 1, Any, 3, 4, bloom, 6, Any
+		al.add(c1);
+		al.add(any);
+		al.add(c3);
+		al.add(new ExcludeComponent(b4));
+		al.add(bloom);
+		al.add(new ExcludeComponent("6".getBytes()));
+		al.add(any);
+		ef = new Exclude(al);
+
+		assertNull(ef.excludedRun(b0));
+		byte [][] run = ef.excludedRun(b2);
+		assertArrayEquals(b1, run[0]);
+		assertArrayEquals(b3, run[1]);
+		run = ef.excludedRun(b1);
+		assertArrayEquals(b1, run[0]);
+		assertArrayEquals(b3, run[1]);
+		run = ef.excludedRun(b4);
+		assertArrayEquals(b4, run[0]);
+		assertArrayEquals(b4, run[1]);
+		// the bloom filter gap doesn't make a run even for a value it matches
+		assertNull(ef.excludedRun(b5));
+		run = ef.excludedRun(b7);
+		assertArrayEquals("6".getBytes(), run[0]);
+		assertNull(run[1]);
+
+		ef = Exclude.uptoFactory(b3);
+		run = ef.excludedRun(b1);
+		assertNull(run[0]);
+		assertArrayEquals(b3, run[1]);
+		assertNull(ef.excludedRun(b4));
+
+		// every component in a run must be excluded, and the components either side not
+		Random rnd = new Random(3);
+		for (int i = 0; i < 200; i++) {
+			Exclude exclude = randomExclude(rnd, 1 + rnd.nextInt(30));
+			byte [] component = randomComponent(rnd);
+			run = exclude.excludedRun(component);
+			if (null == run)
+				continue;
+			assertTrue(exclude.match(component));
+			if (null != run[0])
+				assertTrue(exclude.match(run[0]));
+			if (null != run[1])
+				assertTrue(exclude.match(run[1]));
+			for (int j = 0; j < exclude.size(); j++) {
+				Exclude.Element ee = exclude.value(j);
+				if (!(ee instanceof ExcludeComponent))
+					continue;
+				byte [] c = ((ExcludeComponent)ee).getComponent();
+				ByteArrayCompare compare = new ByteArrayCompare();
+				if ((null == run[0] || compare.compare(c, run[0]) >= 0) && (null == run[1] || compare.compare(c, run[1]) <= 0))
+					assertNotNull(exclude.excludedRun(c));
+			}
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testExcludedRun");
+	}
 }
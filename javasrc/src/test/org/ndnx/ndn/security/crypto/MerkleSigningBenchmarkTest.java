@@ -0,0 +1,168 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.security.crypto;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import org.ndnx.ndn.NDNHandle;
+import org.ndnx.ndn.NDNTestHelper;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNFlowControl;
+import org.ndnx.ndn.impl.NDNSegmenter;
+import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
+import org.ndnx.ndn.io.NDNOutputStream;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures bulk signing throughput with and without the signing
+ * threads (SystemConfiguration.SIGNING_THREADS), first for building Merkle trees over batches of
+ * NDNSegmenter.HOLD_COUNT 4KB segments (no ndnd needed), then for writing a large stream through
+ * NDNOutputStream with flow control disabled, where the segmenter also overlaps signing of each
+ * batch with output of the previous one (needs ndnd).
+ */
+public class MerkleSigningBenchmarkTest {
+
+	public static final int SEGMENT_LENGTH = 4096;
+	public static final int NUM_BATCHES = 40;
+	public static final int STREAM_LENGTH = 16 * 1024 * 1024;
+
+	public static NDNTestHelper testHelper = new NDNTestHelper(MerkleSigningBenchmarkTest.class);
+
+	public static KeyPair pair;
+	public static ContentObject [][] batches;
+	public static byte [] data;
+	public static int threads = Runtime.getRuntime().availableProcessors();
+	public static int savedThreads;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		savedThreads = SystemConfiguration.SIGNING_THREADS;
+		format.setMaximumFractionDigits(2);
+
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(1024);
+		pair = kpg.generateKeyPair();
+		PublisherPublicKeyDigest publisher = new PublisherPublicKeyDigest(pair.getPublic());
+		KeyLocator locator = new KeyLocator(pair.getPublic());
+
+		Random rnd = new Random();
+		data = new byte[STREAM_LENGTH];
+		rnd.nextBytes(data);
+		ContentName name = VersioningProfile.addVersion(ContentName.fromNative("/test/MerkleSigningBenchmark"));
+		batches = new ContentObject[NUM_BATCHES][NDNSegmenter.HOLD_COUNT];
+		for (int i = 0; i < NUM_BATCHES; i++) {
+			for (int j = 0; j < NDNSegmenter.HOLD_COUNT; j++) {
+				int segment = i * NDNSegmenter.HOLD_COUNT + j;
+				batches[i][j] = new ContentObject(SegmentationProfile.segmentName(name, segment),
+						new SignedInfo(publisher, locator), data, (segment * SEGMENT_LENGTH) % (STREAM_LENGTH - SEGMENT_LENGTH),
+						SEGMENT_LENGTH, (Signature)null);
+			}
+		}
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		SystemConfiguration.SIGNING_THREADS = savedThreads;
+	}
+
+	protected void report(String desc, long bytes, long nanos) {
+		double seconds = nanos / 1000000000.0;
+		System.out.println(desc + ": " + format.format(seconds * 1000) + " ms, " +
+				format.format(bytes / seconds / (1024 * 1024)) + " MB/s");
+	}
+
+	protected void clearSignatures() {
+		for (ContentObject [] batch : batches)
+			for (ContentObject co : batch)
+				co.setSignature(null);
+	}
+
+	protected long signBatches() throws Exception {
+		clearSignatures();
+		long start = System.nanoTime();
+		for (ContentObject [] batch : batches)
+			new NDNMerkleTree(batch, pair.getPrivate());
+		return System.nanoTime() - start;
+	}
+
+	@Test
+	public void testTreeSigning() throws Exception {
+		System.out.println("==== Signing " + NUM_BATCHES + " batches of " + NDNSegmenter.HOLD_COUNT + " " + SEGMENT_LENGTH + " byte segments");
+		long bytes = (long)NUM_BATCHES * NDNSegmenter.HOLD_COUNT * SEGMENT_LENGTH;
+		try {
+			SystemConfiguration.SIGNING_THREADS = 0;
+			signBatches(); // warm up
+			report("Serial", bytes, signBatches());
+
+			SystemConfiguration.SIGNING_THREADS = threads;
+			signBatches();
+			report(threads + " signing threads", bytes, signBatches());
+		} finally {
+			SystemConfiguration.SIGNING_THREADS = savedThreads;
+		}
+	}
+
+	protected long writeStream(NDNHandle handle, String label) throws Exception {
+		ContentName name = VersioningProfile.addVersion(new ContentName(testHelper.getTestNamespace("testStreamSigning"), label));
+		NDNFlowControl flowControl = new NDNFlowControl(name, handle);
+		flowControl.disable();
+		long start = System.nanoTime();
+		NDNOutputStream ostream = new NDNOutputStream(name, null, null, null, null, flowControl);
+		ostream.write(data, 0, data.length);
+		ostream.close();
+		return System.nanoTime() - start;
+	}
+
+	@Test
+	public void testStreamSigning() throws Exception {
+		System.out.println("==== Writing a " + STREAM_LENGTH + " byte stream with flow control disabled");
+		NDNHandle handle = NDNHandle.open();
+		try {
+			SystemConfiguration.SIGNING_THREADS = 0;
+			writeStream(handle, "warmup");
+			report("Serial", STREAM_LENGTH, writeStream(handle, "serial"));
+
+			SystemConfiguration.SIGNING_THREADS = threads;
+			writeStream(handle, "warmup-parallel");
+			report(threads + " signing threads", STREAM_LENGTH, writeStream(handle, "parallel"));
+		} finally {
+			SystemConfiguration.SIGNING_THREADS = savedThreads;
+			handle.close();
+		}
+	}
+}
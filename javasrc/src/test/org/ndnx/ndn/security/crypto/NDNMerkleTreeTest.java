@@ -26,6 +26,7 @@ import java.security.Security;
 import java.util.Random;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.security.crypto.NDNDigestHelper;
 import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
 import org.ndnx.ndn.impl.support.DataUtils;
@@ -124,6 +125,45 @@ public class NDNMerkleTreeTest {
 		Log.info(Log.FAC_TEST, "Completed testMerkleTreeBuf");
 	}
 
+	@Test
+	public void testParallelMerkleTree() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testParallelMerkleTree");
+
+		int threads = SystemConfiguration.SIGNING_THREADS;
+		int threshold = SystemConfiguration.SIGNING_PARALLEL_THRESHOLD;
+		try {
+			int [] nodecounts = new int[]{2,3,5,17,64,127,128,129,1000,1025};
+			for (int i=0; i < nodecounts.length; ++i) {
+				ContentName theName = VersioningProfile.addVersion(new ContentName(baseName, "testParallel.txt"), i);
+				ContentObject [] parallel = makeContent(theName, nodecounts[i], 512, true);
+				ContentObject [] serial = new ContentObject[parallel.length];
+				for (int j=0; j < parallel.length; ++j) {
+					serial[j] = new ContentObject(parallel[j].name(), parallel[j].signedInfo(), parallel[j].content(), (Signature)null);
+				}
+
+				SystemConfiguration.SIGNING_THREADS = 0;
+				NDNMerkleTree serialTree = new NDNMerkleTree(serial, pair.getPrivate());
+				SystemConfiguration.SIGNING_THREADS = 4;
+				SystemConfiguration.SIGNING_PARALLEL_THRESHOLD = 2;
+				NDNMerkleTree parallelTree = new NDNMerkleTree(parallel, pair.getPrivate());
+
+				Assert.assertArrayEquals(serialTree.root(), parallelTree.root());
+				for (int j=1; j <= serialTree.size(); ++j) {
+					Assert.assertArrayEquals("Node " + j + " of " + nodecounts[i], serialTree.get(j), parallelTree.get(j));
+				}
+				for (int j=0; j < parallel.length; ++j) {
+					Assert.assertEquals(serial[j].signature(), parallel[j].signature());
+					Assert.assertTrue("Block " + j + " of " + nodecounts[i] + " failed to verify.", parallel[j].verify(pair.getPublic()));
+				}
+			}
+		} finally {
+			SystemConfiguration.SIGNING_THREADS = threads;
+			SystemConfiguration.SIGNING_PARALLEL_THRESHOLD = threshold;
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testParallelMerkleTree");
+	}
+
 	public static void testTreeWrapper(int testNodeCount, int blockWidth, boolean randomWidths) {
 		try {
 			testTree(testNodeCount, blockWidth, randomWidths);
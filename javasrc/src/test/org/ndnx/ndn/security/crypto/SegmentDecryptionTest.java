@@ -0,0 +1,181 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+package org.ndnx.ndn.security.crypto;
+
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.security.crypto.ContentKeys;
+import org.ndnx.ndn.impl.security.crypto.DecryptionThreadPool;
+import org.ndnx.ndn.impl.security.crypto.EncryptedIVStaticContentKeys;
+import org.ndnx.ndn.impl.security.crypto.KDFContentKeys;
+import org.ndnx.ndn.impl.security.crypto.KeyDerivationFunction;
+import org.ndnx.ndn.impl.security.crypto.StaticContentKeys;
+import org.ndnx.ndn.impl.security.crypto.ContentKeys.ContentInfo;
+import org.ndnx.ndn.impl.security.crypto.ContentKeys.KeyAndIV;
+import org.ndnx.ndn.impl.security.crypto.util.CryptoConstants;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test that decrypting whole segments with ContentKeys#decryptSegment, on the caller's
+ * thread or on the DecryptionThreadPool, gives the same results as the segment ciphers.
+ */
+public class SegmentDecryptionTest {
+
+	static final int SEGMENTS = 40;
+	static final int SEGMENT_SIZE = 4096;
+
+	static SecureRandom random = new SecureRandom();
+	static PublisherPublicKeyDigest publisher = null;
+	static ContentName testName = null;
+	static byte [][] plaintext = new byte[SEGMENTS][];
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		byte [] ppd = new byte[32];
+		random.nextBytes(ppd);
+		publisher = new PublisherPublicKeyDigest(ppd);
+		testName = VersioningProfile.addVersion(ContentName.fromNative("/ndn/test/SegmentDecryptionTest"));
+		for (int i = 0; i < SEGMENTS; i++) {
+			// odd sizes so padding modes have something to do
+			plaintext[i] = new byte[SEGMENT_SIZE - i];
+			random.nextBytes(plaintext[i]);
+		}
+	}
+
+	@Test
+	public void testDecryptSegment() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDecryptSegment");
+
+		for (ContentKeys keys : allKeys())
+			checkDecryptSegment(keys);
+
+		Log.info(Log.FAC_TEST, "Completed testDecryptSegment");
+	}
+
+	@Test
+	public void testDecryptionThreadPool() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDecryptionThreadPool");
+
+		int oldThreads = SystemConfiguration.DECRYPT_THREADS;
+		SystemConfiguration.DECRYPT_THREADS = 4;
+		try {
+			Assert.assertEquals(4, DecryptionThreadPool.threads());
+			for (ContentKeys keys : allKeys()) {
+				byte [][] ciphertext = encrypt(keys);
+				ArrayList<Future<byte []>> results = new ArrayList<Future<byte []>>();
+				// out of order, as pipelined segments may arrive
+				for (int i = SEGMENTS - 1; i >= 0; i--)
+					results.add(DecryptionThreadPool.decrypt(keys, testName, publisher, i, ciphertext[i]));
+				for (int i = 0; i < SEGMENTS; i++)
+					Assert.assertArrayEquals("Segment " + i + " decrypted wrongly with " + keys.getClass().getName(),
+							plaintext[i], results.get(SEGMENTS - 1 - i).get());
+			}
+		} finally {
+			SystemConfiguration.DECRYPT_THREADS = oldThreads;
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testDecryptionThreadPool");
+	}
+
+	@Test
+	public void testConcurrentKeyDerivation() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testConcurrentKeyDerivation");
+
+		final byte [] key = new byte[16];
+		random.nextBytes(key);
+		final ContentName [] names = new ContentName[SEGMENTS];
+		KeyAndIV [] expected = new KeyAndIV[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			names[i] = new ContentName(testName, "kdf" + i);
+			expected[i] = KeyDerivationFunction.DeriveKeysForObject(ContentKeys.DEFAULT_KEY_ALGORITHM, key,
+					new ContentInfo(names[i], publisher, "SegmentDecryptionTest"));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			ArrayList<Future<KeyAndIV>> results = new ArrayList<Future<KeyAndIV>>();
+			for (int round = 0; round < 10; round++) {
+				for (int i = 0; i < SEGMENTS; i++) {
+					final ContentName name = names[i];
+					results.add(executor.submit(new Callable<KeyAndIV>() {
+						public KeyAndIV call() throws Exception {
+							return KeyDerivationFunction.DeriveKeysForObject(ContentKeys.DEFAULT_KEY_ALGORITHM, key,
+									new ContentInfo(name, publisher, "SegmentDecryptionTest"));
+						}
+					}));
+				}
+			}
+			for (int i = 0; i < results.size(); i++)
+				Assert.assertEquals(expected[i % SEGMENTS], results.get(i).get());
+		} finally {
+			executor.shutdown();
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testConcurrentKeyDerivation");
+	}
+
+	/**
+	 * One of each kind of keys, including a CBC mode cipher so padding is exercised.
+	 */
+	protected ContentKeys [] allKeys() throws Exception {
+		byte [] key = new byte[16];
+		byte [] iv = new byte[StaticContentKeys.IV_MASTER_LENGTH];
+		random.nextBytes(key);
+		random.nextBytes(iv);
+		return new ContentKeys[] { StaticContentKeys.generateRandomKeys(),
+				new EncryptedIVStaticContentKeys(CryptoConstants.AES_CBC_MODE, key, iv),
+				new KDFContentKeys(key, "SegmentDecryptionTest") };
+	}
+
+	protected void checkDecryptSegment(ContentKeys keys) throws Exception {
+		byte [][] ciphertext = encrypt(keys);
+		for (int i = 0; i < SEGMENTS; i++) {
+			byte [] viaCipher = keys.getSegmentDecryptionCipher(testName, publisher, i).doFinal(ciphertext[i]);
+			Assert.assertArrayEquals(plaintext[i], viaCipher);
+			Assert.assertArrayEquals("Segment " + i + " decrypted wrongly with " + keys.getClass().getName(),
+					viaCipher, keys.decryptSegment(testName, publisher, i, ciphertext[i]));
+		}
+		// and again, reusing this thread's cipher out of order
+		for (int i = SEGMENTS - 1; i >= 0; i -= 3)
+			Assert.assertArrayEquals(plaintext[i], keys.decryptSegment(testName, publisher, i, ciphertext[i]));
+	}
+
+	protected byte [][] encrypt(ContentKeys keys) throws Exception {
+		byte [][] ciphertext = new byte[SEGMENTS][];
+		for (int i = 0; i < SEGMENTS; i++)
+			ciphertext[i] = keys.getSegmentEncryptionCipher(testName, publisher, i).doFinal(plaintext[i]);
+		return ciphertext;
+	}
+}
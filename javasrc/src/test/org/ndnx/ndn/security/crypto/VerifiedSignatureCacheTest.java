@@ -0,0 +1,138 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.security.crypto;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Random;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
+import org.ndnx.ndn.impl.security.crypto.VerifiedSignatureCache;
+import org.ndnx.ndn.impl.security.crypto.VerifiedSignatureCache.StatsEnum;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test that the verified signature cache saves public key operations for
+ * bulk signed segments without accepting anything the full verify wouldn't.
+ */
+public class VerifiedSignatureCacheTest {
+
+	static KeyPair pair = null;
+	static KeyPair otherPair = null;
+	static Random rand = new Random();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512); // go for fast
+		pair = kpg.generateKeyPair();
+		otherPair = kpg.generateKeyPair();
+	}
+
+	protected static ContentObject [] makeSegments(String name, int count) {
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), new KeyLocator(pair.getPublic()));
+		ContentObject [] cos = new ContentObject[count];
+		for (int i = 0; i < count; i++) {
+			byte [] content = new byte[100];
+			rand.nextBytes(content);
+			cos[i] = new ContentObject(SegmentationProfile.segmentName(new ContentName("test", "verify", name), i),
+									   si, content, (Signature)null);
+		}
+		return cos;
+	}
+
+	protected static long hits(VerifiedSignatureCache cache) {
+		return cache.getStats().getCounter(StatsEnum.Hits.toString());
+	}
+
+	@Test
+	public void testBulkSignedSegments() throws Exception {
+		Assert.assertTrue(SystemConfiguration.VERIFY_CACHE_SIZE > 0);
+		VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+
+		ContentObject [] cos = makeSegments("bulk", 32);
+		new NDNMerkleTree(cos, pair.getPrivate());
+
+		long before = hits(cache);
+		for (ContentObject co : cos)
+			Assert.assertTrue(co.verify(pair.getPublic()));
+		Assert.assertEquals(cos.length - 1, hits(cache) - before);
+
+		// Changed content gives a different root, so must go back to the signature and fail
+		byte [] content = cos[3].content().clone();
+		content[0] ^= 1;
+		ContentObject forged = new ContentObject(cos[3].name(), cos[3].signedInfo(), content, cos[3].signature());
+		Assert.assertFalse(forged.verify(pair.getPublic()));
+
+		// A signature verified with one key says nothing about another
+		Assert.assertFalse(cos[5].verify(otherPair.getPublic()));
+	}
+
+	@Test
+	public void testSingleSignedObject() throws Exception {
+		VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+		ContentObject co = makeSegments("single", 1)[0];
+		co.sign(pair.getPrivate());
+
+		long before = hits(cache);
+		Assert.assertTrue(co.verify(pair.getPublic()));
+		Assert.assertTrue(co.verify(pair.getPublic()));
+		Assert.assertEquals(1, hits(cache) - before);
+
+		byte [] content = co.content().clone();
+		content[content.length - 1] ^= 1;
+		ContentObject forged = new ContentObject(co.name(), co.signedInfo(), content, co.signature());
+		Assert.assertFalse(forged.verify(pair.getPublic()));
+	}
+
+	@Test
+	public void testBound() throws Exception {
+		VerifiedSignatureCache cache = new VerifiedSignatureCache(32);
+		byte [] signature = new byte[64];
+		rand.nextBytes(signature);
+		byte [][] digests = new byte[100][32];
+		for (int i = 0; i < digests.length; i++) {
+			rand.nextBytes(digests[i]);
+			cache.verified(digests[i], true, signature, null, pair.getPublic());
+		}
+		Assert.assertTrue(cache.size() <= cache.maxEntries());
+		Assert.assertTrue(cache.isVerified(digests[99], true, signature, null, pair.getPublic()));
+		Assert.assertFalse(cache.isVerified(digests[99], false, signature, null, pair.getPublic()));
+		Assert.assertFalse(cache.isVerified(digests[99], true, signature, null, otherPair.getPublic()));
+
+		VerifiedSignatureCache single = new VerifiedSignatureCache(1);
+		single.verified(digests[0], true, signature, null, pair.getPublic());
+		single.verified(digests[1], true, signature, null, pair.getPublic());
+		Assert.assertEquals(1, single.size());
+		Assert.assertFalse(single.isVerified(digests[0], true, signature, null, pair.getPublic()));
+		Assert.assertTrue(single.isVerified(digests[1], true, signature, null, pair.getPublic()));
+	}
+}
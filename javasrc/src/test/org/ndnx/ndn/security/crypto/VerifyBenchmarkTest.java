@@ -0,0 +1,119 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ * 
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.security.crypto;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNSegmenter;
+import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
+import org.ndnx.ndn.impl.security.crypto.VerifiedSignatureCache;
+import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures the cost per segment of verifying batches of NDNSegmenter.HOLD_COUNT
+ * 4KB segments signed with a single NDNMerkleTree, with and without the verified signature
+ * cache (SystemConfiguration.VERIFY_CACHE_SIZE). No ndnd needed.
+ */
+public class VerifyBenchmarkTest {
+
+	public static final int SEGMENT_LENGTH = 4096;
+	public static final int NUM_BATCHES = 20;
+
+	public static final double NanoToMicro = 1000.0d;
+
+	public static KeyPair pair;
+	public static ContentObject [][] batches;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		format.setMaximumFractionDigits(2);
+
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(1024);
+		pair = kpg.generateKeyPair();
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), new KeyLocator(pair.getPublic()));
+
+		Random rnd = new Random();
+		ContentName name = VersioningProfile.addVersion(ContentName.fromNative("/test/VerifyBenchmark"));
+		batches = new ContentObject[NUM_BATCHES][NDNSegmenter.HOLD_COUNT];
+		for (int i = 0; i < NUM_BATCHES; i++) {
+			for (int j = 0; j < NDNSegmenter.HOLD_COUNT; j++) {
+				byte [] content = new byte[SEGMENT_LENGTH];
+				rnd.nextBytes(content);
+				batches[i][j] = new ContentObject(SegmentationProfile.segmentName(name, i * NDNSegmenter.HOLD_COUNT + j),
+						si, content, (Signature)null);
+			}
+			new NDNMerkleTree(batches[i], pair.getPrivate());
+		}
+	}
+
+	protected long verifyBatches() throws Exception {
+		long start = System.nanoTime();
+		for (ContentObject [] batch : batches)
+			for (ContentObject co : batch)
+				Assert.assertTrue(co.verify(pair.getPublic()));
+		return System.nanoTime() - start;
+	}
+
+	protected void report(String desc, long nanos) {
+		int segments = NUM_BATCHES * NDNSegmenter.HOLD_COUNT;
+		System.out.println("Avg. to verify a segment " + desc + " (" + segments + " segments) = " +
+				format.format(nanos / segments / NanoToMicro) + " us");
+	}
+
+	@Test
+	public void testVerifyBatches() throws Exception {
+		System.out.println("==== Verifying " + NUM_BATCHES + " batches of " + NDNSegmenter.HOLD_COUNT + " " + SEGMENT_LENGTH + " byte segments");
+		int cacheSize = SystemConfiguration.VERIFY_CACHE_SIZE;
+		try {
+			SystemConfiguration.VERIFY_CACHE_SIZE = 0;
+			verifyBatches(); // warm up
+			report("without cache", verifyBatches());
+
+			SystemConfiguration.VERIFY_CACHE_SIZE = (cacheSize > 0) ? cacheSize : SystemConfiguration.VERIFY_CACHE_SIZE_DEFAULT;
+			VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+			verifyBatches(); // warm up
+			cache.clear();
+			report("with cache", verifyBatches());
+			System.out.println(cache.getStatus());
+		} finally {
+			SystemConfiguration.VERIFY_CACHE_SIZE = cacheSize;
+		}
+	}
+}